@@ -27,6 +27,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.support.annotation.Nullable;
 import android.support.v4.app.ListFragment;
+import android.text.TextUtils;
 import android.util.Pair;
 import android.util.SparseArray;
 import android.view.ActionMode;
@@ -37,7 +38,6 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
-import android.widget.BaseAdapter;
 import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
@@ -49,6 +49,7 @@ import com.intel.jndn.management.types.FaceStatus;
 import net.named_data.jndn.Name;
 import net.named_data.jndn_xx.util.FaceUri;
 import net.named_data.nfd.utils.G;
+import net.named_data.nfd.utils.ListDiff;
 import net.named_data.nfd.utils.NfdcHelper;
 import net.named_data.nfd.utils.PermanentFaceUriAndRouteManager;
 
@@ -169,6 +170,7 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
   {
     super.onCreateOptionsMenu(menu, inflater);
     inflater.inflate(R.menu.menu_face_list, menu);
+    menu.findItem(R.id.face_list_auto_refresh).setChecked(m_isAutoRefreshEnabled);
   }
 
   @Override
@@ -178,6 +180,16 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
       case R.id.face_list_refresh:
         retrieveFaceList();
         return true;
+      case R.id.face_list_auto_refresh:
+        m_isAutoRefreshEnabled = !item.isChecked();
+        item.setChecked(m_isAutoRefreshEnabled);
+        if (m_isAutoRefreshEnabled) {
+          scheduleAutoRefresh();
+        }
+        else {
+          m_timeoutHandler.removeCallbacks(m_autoRefreshRunnable);
+        }
+        return true;
       case R.id.face_list_add:
         FaceCreateDialogFragment dialog = FaceCreateDialogFragment.newInstance();
         dialog.setTargetFragment(FaceListFragment.this, 0);
@@ -190,13 +202,17 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
   @Override
   public void onResume() {
     super.onResume();
+    PermanentFaceUriAndRouteManager.addOnChangeListener(m_permanentFaceChangeListener);
     startFaceListRetrievalTask();
   }
 
   @Override
   public void onPause() {
     super.onPause();
+    PermanentFaceUriAndRouteManager.removeOnChangeListener(m_permanentFaceChangeListener);
     stopFaceListRetrievalTask();
+    m_timeoutHandler.removeCallbacks(m_autoRefreshRunnable);
+    m_timeoutHandler.removeCallbacks(m_permanentFaceRefreshRunnable);
 
     if (m_faceDestroyAsyncTask != null) {
       m_faceDestroyAsyncTask.cancel(false);
@@ -245,19 +261,31 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
   /////////////////////////////////////////////////////////////////////////
 
   /**
-   * Updates the underlying adapter with the given list of FaceStatus.
+   * Updates the underlying adapter with the difference from its list of FaceStatus,
+   * leaving the rows that did not change alone.
    *
    * Note: This method should only be called from the UI thread.
    *
-   * @param list Update ListView with the given List&lt;FaceStatus&gt;
+   * @param diff Difference to the new List&lt;FaceStatus&gt;, or null if unavailable
    */
-  private void updateFaceList(List<FaceStatus> list) {
-    if (list == null) {
+  private void updateFaceList(ListDiff<Integer, FaceStatus> diff) {
+    if (diff == null) {
       m_faceListInfoUnavailableView.setVisibility(View.VISIBLE);
       return;
     }
 
-    ((FaceListAdapter)getListAdapter()).updateList(list);
+    m_faceListInfoUnavailableView.setVisibility(View.GONE);
+    m_faceListAdapter.applyDiff(diff, getListView());
+  }
+
+  /**
+   * Retrieve the face list again after AUTO_REFRESH_INTERVAL_MS, if auto refresh is on.
+   */
+  private void scheduleAutoRefresh() {
+    m_timeoutHandler.removeCallbacks(m_autoRefreshRunnable);
+    if (m_isAutoRefreshEnabled && isResumed()) {
+      m_timeoutHandler.postDelayed(m_autoRefreshRunnable, AUTO_REFRESH_INTERVAL_MS);
+    }
   }
 
   /**
@@ -277,7 +305,14 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
    * Create a new AsyncTask for face list information retrieval.
    */
   private void startFaceListRetrievalTask() {
-    m_faceListAsyncTask = new FaceListAsyncTask();
+    startFaceListRetrievalTask(false);
+  }
+
+  /**
+   * @param isAutoRefresh Whether to retrieve the list without showing progress
+   */
+  private void startFaceListRetrievalTask(boolean isAutoRefresh) {
+    m_faceListAsyncTask = new FaceListAsyncTask(isAutoRefresh);
     m_faceListAsyncTask.execute();
   }
 
@@ -294,36 +329,22 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
   /**
    * Custom adapter for displaying face information in a ListView.
    */
-  private static class FaceListAdapter extends BaseAdapter {
+  private static class FaceListAdapter extends KeyedListAdapter<Integer, FaceStatus> {
     private FaceListAdapter(Context context) {
+      super(ITEM_CALLBACK);
       m_layoutInflater = LayoutInflater.from(context);
     }
 
-    private void
-    updateList(List<FaceStatus> faces) {
-      m_faces = faces;
-      notifyDataSetChanged();
-    }
-
-    @Override
-    public FaceStatus
-    getItem(int i)
-    {
-      assert m_faces != null;
-      return m_faces.get(i);
-    }
-
     @Override
     public long getItemId(int i)
     {
-      assert m_faces != null;
-      return m_faces.get(i).getFaceId();
+      return getItem(i).getFaceId();
     }
 
     @Override
-    public int getCount()
+    public boolean hasStableIds()
     {
-      return (m_faces != null) ? m_faces.size() : 0;
+      return true;
     }
 
     @SuppressLint("InflateParams")
@@ -355,34 +376,59 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
       private TextView m_faceId;
     }
 
+    /** Faces are identified by face ID; rows show the remote FaceUri */
+    private static final ListDiff.ItemCallback<Integer, FaceStatus> ITEM_CALLBACK =
+      new ListDiff.ItemCallback<Integer, FaceStatus>() {
+        @Override
+        public Integer
+        getKey(FaceStatus face) {
+          return face.getFaceId();
+        }
+
+        @Override
+        public boolean
+        isSameContent(FaceStatus oldFace, FaceStatus newFace) {
+          return TextUtils.equals(oldFace.getRemoteUri(), newFace.getRemoteUri());
+        }
+      };
+
     private final LayoutInflater m_layoutInflater;
-    private List<FaceStatus> m_faces;
   }
 
   /**
    * AsyncTask that gets the list of faces from the running NFD.
    */
-  private class FaceListAsyncTask extends AsyncTask<Void, Void, Pair<List<FaceStatus>, Exception>> {
+  private class FaceListAsyncTask
+    extends AsyncTask<Void, Void, Pair<ListDiff<Integer, FaceStatus>, Exception>> {
+    FaceListAsyncTask(boolean isAutoRefresh) {
+      m_isAutoRefresh = isAutoRefresh;
+    }
+
     @Override
     protected void
     onPreExecute() {
       // Display progress bar
-      m_reloadingListProgressBar.setVisibility(View.VISIBLE);
+      if (!m_isAutoRefresh) {
+        m_reloadingListProgressBar.setVisibility(View.VISIBLE);
+      }
+      m_oldList = m_faceListAdapter.getList();
+      m_context = getActivity().getApplicationContext();
     }
 
     @Override
-    protected Pair<List<FaceStatus>, Exception>
+    protected Pair<ListDiff<Integer, FaceStatus>, Exception>
     doInBackground(Void... params) {
       Exception returnException = null;
       NfdcHelper nfdcHelper = new NfdcHelper();
-      List<FaceStatus> faceStatusList = null;
+      ListDiff<Integer, FaceStatus> diff = null;
       try {
-        faceStatusList = nfdcHelper.faceList(getActivity().getApplicationContext());
+        List<FaceStatus> faceStatusList = nfdcHelper.faceList(m_context);
+        diff = m_faceListAdapter.diff(m_oldList, faceStatusList);
       } catch (Exception e) {
         returnException = e;
       }
       nfdcHelper.shutdown();
-      return new Pair<>(faceStatusList, returnException);
+      return new Pair<>(diff, returnException);
     }
 
     @Override
@@ -396,17 +442,22 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
 
     @Override
     protected void
-    onPostExecute(Pair<List<FaceStatus>, Exception> result) {
+    onPostExecute(Pair<ListDiff<Integer, FaceStatus>, Exception> result) {
       // Remove progress bar
       m_reloadingListProgressBar.setVisibility(View.GONE);
 
-      if (result.second != null) {
+      if (result.second != null && !m_isAutoRefresh) {
         Toast.makeText(getActivity(), "Error communicating with NFD (" + result.second.getMessage() + ")",
                        Toast.LENGTH_LONG).show();
       }
 
       updateFaceList(result.first);
+      scheduleAutoRefresh();
     }
+
+    private final boolean m_isAutoRefresh;
+    private List<FaceStatus> m_oldList;
+    private Context m_context;
   }
 
   /**
@@ -501,8 +552,8 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
     protected String
     doInBackground(Void... params)
     {
+      NfdcHelper nfdcHelper = new NfdcHelper();
       try {
-        NfdcHelper nfdcHelper = new NfdcHelper();
         Context context = getActivity().getApplicationContext();
         int faceId = nfdcHelper.faceCreate(m_faceUri);
         if (m_isPermanent) {
@@ -512,7 +563,6 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
                                          );
           PermanentFaceUriAndRouteManager.addPermanentFaceId(context, faceId);
         }
-        nfdcHelper.shutdown();
         return "OK. Face id: " + String.valueOf(faceId);
       }
       catch (FaceUri.CanonizeError e) {
@@ -524,6 +574,9 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
       catch (Exception e) {
         return "Error communicating with NFD (" + e.getMessage() + ")";
       }
+      finally {
+        nfdcHelper.shutdown();
+      }
     }
 
     @Override
@@ -591,4 +644,41 @@ public class FaceListFragment extends ListFragment implements FaceCreateDialogFr
 
   private Handler m_timeoutHandler = new Handler();
 
+  /** Flag that marks that the face list is retrieved periodically while visible */
+  private boolean m_isAutoRefreshEnabled = false;
+
+  private final Runnable m_autoRefreshRunnable = new Runnable() {
+    @Override
+    public void run() {
+      stopFaceListRetrievalTask();
+      startFaceListRetrievalTask(true);
+    }
+  };
+
+  /**
+   * Refreshes the list without progress when faces become permanent or stop being so,
+   * e.g., once NfdService has restored the permanent faces
+   */
+  private final Runnable m_permanentFaceRefreshRunnable = new Runnable() {
+    @Override
+    public void run() {
+      if (isResumed()) {
+        stopFaceListRetrievalTask();
+        startFaceListRetrievalTask(true);
+      }
+    }
+  };
+
+  /** Called on the thread that changed the records, so it only posts the refresh */
+  private final PermanentFaceUriAndRouteManager.OnChangeListener m_permanentFaceChangeListener =
+    new PermanentFaceUriAndRouteManager.OnChangeListener() {
+      @Override
+      public void onPermanentFaceUriAndRouteChanged() {
+        m_timeoutHandler.removeCallbacks(m_permanentFaceRefreshRunnable);
+        m_timeoutHandler.post(m_permanentFaceRefreshRunnable);
+      }
+    };
+
+  private static final long AUTO_REFRESH_INTERVAL_MS = 5000;
+
 }
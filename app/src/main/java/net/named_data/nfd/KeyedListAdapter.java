@@ -0,0 +1,132 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd;
+
+import android.view.View;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+
+import net.named_data.nfd.utils.ListDiff;
+
+import java.util.List;
+
+/**
+ * Adapter of a list whose items are identified by a key, which is updated with the
+ * difference between snapshots (see {@link ListDiff}) rather than replaced wholesale.
+ *
+ * When nothing that is displayed changed, the ListView is left alone; when only the
+ * content of some rows changed, just those of them that are on screen are bound again;
+ * otherwise the ListView is refreshed, keeping the first visible row where it was.
+ */
+abstract class KeyedListAdapter<K, T> extends BaseAdapter {
+
+  KeyedListAdapter(ListDiff.ItemCallback<K, T> itemCallback) {
+    m_itemCallback = itemCallback;
+  }
+
+  /**
+   * @return the current snapshot, to compute the next diff against; never modified
+   */
+  List<T>
+  getList() {
+    return m_items;
+  }
+
+  /**
+   * Compute the diff from the current snapshot to newList.  May be called on any thread,
+   * with the list returned by getList() on the UI thread.
+   */
+  ListDiff<K, T>
+  diff(List<T> oldList, List<T> newList) {
+    return ListDiff.compute(oldList, newList, m_itemCallback);
+  }
+
+  /**
+   * Apply the diff to the adapter and to the ListView that shows it.
+   *
+   * Note: This method should only be called from the UI thread.
+   */
+  void
+  applyDiff(ListDiff<K, T> diff, ListView listView) {
+    if (diff.getOldList() != m_items && !(m_items == null && diff.getOldList().isEmpty())) {
+      // computed against a snapshot that was replaced meanwhile
+      m_items = diff.getNewList();
+      notifyDataSetChanged();
+      return;
+    }
+
+    m_items = diff.getNewList();
+    if (diff.isEmpty()) {
+      return;
+    }
+
+    int nHeaders = listView.getHeaderViewsCount();
+    int firstVisible = listView.getFirstVisiblePosition();
+    if (diff.isStructural()) {
+      // keep the first visible row in place, as positions shift around it
+      int anchor = firstVisible - nHeaders;
+      List<T> oldList = diff.getOldList();
+      if (anchor < 0 || anchor >= oldList.size() || listView.getChildCount() == 0) {
+        notifyDataSetChanged();
+        return;
+      }
+      K anchorKey = m_itemCallback.getKey(oldList.get(anchor));
+      int anchorTop = listView.getChildAt(0).getTop();
+
+      notifyDataSetChanged();
+      for (int i = 0; i < m_items.size(); i++) {
+        if (anchorKey.equals(m_itemCallback.getKey(m_items.get(i)))) {
+          listView.setSelectionFromTop(i + nHeaders, anchorTop);
+          break;
+        }
+      }
+      return;
+    }
+
+    // positions are unchanged: bind the changed rows on screen again, in place
+    int lastVisible = listView.getLastVisiblePosition();
+    for (int position : diff.getChanged()) {
+      int listPosition = position + nHeaders;
+      if (listPosition >= firstVisible && listPosition <= lastVisible) {
+        View row = listView.getChildAt(listPosition - firstVisible);
+        getView(position, row, listView);
+      }
+    }
+  }
+
+  @Override
+  public int
+  getCount() {
+    return (m_items == null) ? 0 : m_items.size();
+  }
+
+  @Override
+  public T
+  getItem(int i) {
+    assert m_items != null;
+    return m_items.get(i);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final ListDiff.ItemCallback<K, T> m_itemCallback;
+
+  private List<T> m_items;
+}
@@ -22,6 +22,8 @@ package net.named_data.nfd;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.view.LayoutInflater;
@@ -35,11 +37,22 @@ import android.widget.ListView;
 import android.widget.TextView;
 
 import net.named_data.nfd.utils.G;
+import net.named_data.nfd.utils.LogFlushScheduler;
+import net.named_data.nfd.utils.LogRingBuffer;
+import net.named_data.nfd.utils.NfdLogReader;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Logcat fragment that houses the output of LogCat in a ListView for viewing.
@@ -50,6 +63,18 @@ import java.util.ArrayList;
  * log lines that is allowed to be displayed is set by
  * {@link net.named_data.nfd.LogcatFragment#s_logMaxLines}.
  *
+ * Log lines are handed from the capture thread to the UI through a
+ * {@link LogRingBuffer}, which bounds memory use regardless of how long logging runs.
+ * The UI takes in new lines in batches, at most every {@link #s_flushIntervalMs} (or
+ * sooner once {@link #s_flushMaxLines} lines are pending, see {@link LogFlushScheduler}),
+ * with a single adapter update per batch.  Lines the UI could not keep up with are dropped
+ * and counted.
+ *
+ * NFD's own log records are read in-process from the ring file that NFD writes them to
+ * (see {@link NfdLogReader}), with the tags filtered natively.  The other tags, e.g. the
+ * app's own, are captured from a logcat process, and merged in.  When NFD has never run,
+ * all tags are captured from logcat.
+ *
  */
 public class LogcatFragment extends Fragment {
 
@@ -72,8 +97,9 @@ public class LogcatFragment extends Fragment {
 
     // Get UI Elements
     m_logListView = (ListView) v.findViewById(R.id.log_output);
-    m_logListAdapter = new LogListAdapter(inflater, s_logMaxLines);
+    m_logListAdapter = new LogListAdapter(inflater);
     m_logListView.setAdapter(m_logListAdapter);
+    m_droppedLinesTextView = (TextView) v.findViewById(R.id.log_dropped_lines);
 
     return v;
   }
@@ -132,26 +158,49 @@ public class LogcatFragment extends Fragment {
    * Starts logging by spawning a new thread to capture logs.
    */
   private void startLogging() {
+    // Use a new buffer for every capture thread, so that a capture thread that is still
+    // winding down never shares a buffer with its successor (one producer per buffer)
+    final LogRingBuffer buffer = new LogRingBuffer(s_logMaxLines);
+    m_logBuffer = buffer;
+    m_logListAdapter.setBuffer(buffer);
+    m_droppedLinesTextView.setVisibility(View.GONE);
+    m_numBatches = 0;
+
     // Clear output, update UI and get tag arguments
     clearLogOutput();
-    appendLogText(getString(R.string.loading_logger));
+    buffer.offer(getString(R.string.loading_logger));
+    refreshLogOutput();
     m_tagArguments = LogcatSettingsManager.get(getActivity()).getTags();
+    final File nfdLogFile = NfdLogReader.getLogFile(getActivity());
+    final Set<String> nfdModules = NfdLogReader.loadModules(getActivity());
+
+    final CaptureSession session = new CaptureSession();
+    m_session = session;
+    final LogFlushScheduler flushScheduler =
+      new LogFlushScheduler(m_handler, m_flushRunnable, s_flushIntervalMs, s_flushMaxLines);
+    m_flushScheduler = flushScheduler;
 
     new Thread(){
       @Override
       public void run() {
-        captureLog();
+        captureLog(buffer, nfdLogFile, nfdModules, session, flushScheduler);
         G.Log("Thread done capturing logs.");
       }
     }.start();
   }
 
   /**
-   * Stops the logging by killing the process running logcat.
+   * Stops the logging by stopping the capture thread, and the process running
+   * logcat if any.
    */
   private void stopLogging() {
-    // Kill process
-    m_logProcess.destroy();
+    m_session.stop();
+
+    // the capture thread may still be adding lines until it notices; their flushes
+    // would run after this fragment is paused, or even detached
+    m_flushScheduler.cancel();
+    G.Log("Logcat display: " + m_numBatches + " batches, " +
+          (m_logBuffer.getDroppedCount() + m_session.sourceDroppedCount) + " lines dropped");
   }
 
   /**
@@ -162,20 +211,107 @@ public class LogcatFragment extends Fragment {
   }
 
   /**
-   * Convenience method to append a message to the log output
+   * Convenience method to show lines newly added to the log buffer
    * and scroll to the bottom of the log.
+   */
+  private void refreshLogOutput() {
+    if (m_logListAdapter.refresh()) {
+      m_logListView.setSelection(m_logListAdapter.getCount() - 1);
+      m_numBatches++;
+    }
+
+    long numDropped = m_logBuffer.getDroppedCount() + m_session.sourceDroppedCount;
+    if (numDropped > 0) {
+      m_droppedLinesTextView.setText(getString(R.string.log_dropped_lines, numDropped));
+      m_droppedLinesTextView.setVisibility(View.VISIBLE);
+    }
+  }
+
+  /**
+   * Capture NFD's log records from its log file, and the other tags from logcat; or
+   * everything from logcat if NFD has never written that file.
+   *
+   * This thread is the only one adding to the buffer: lines from logcat are handed over
+   * by a separate thread, through a queue.
    *
-   * @param message String message to be posted to the text view.
+   * @param buffer Buffer to append the captured lines to.
+   * @param nfdLogFile NFD's log file.
+   * @param nfdModules NFD's log modules, whose records are in nfdLogFile.
+   * @param session Session of the capture, stopped to stop capturing.
+   * @param flushScheduler Notified of the captured lines.
    */
-  private void appendLogText(String message) {
-    m_logListAdapter.addMessage(message);
-    m_logListView.setSelection(m_logListAdapter.getCount() - 1);
+  private void captureLog(LogRingBuffer buffer, File nfdLogFile, Set<String> nfdModules,
+                          final CaptureSession session, LogFlushScheduler flushScheduler) {
+    NfdLogReader reader = null;
+    if (!nfdModules.isEmpty()) {
+      try {
+        reader = new NfdLogReader(nfdLogFile);
+        reader.setFilter(m_tagArguments);
+      } catch (IOException e) {
+        G.Log("captureLog(): " + e + ", falling back to logcat");
+      }
+    }
+
+    final String logcatTags = reader == null ? m_tagArguments : getOtherTags(m_tagArguments, nfdModules);
+    final BlockingQueue<String> logcatLines = new LinkedBlockingQueue<>(s_logMaxLines);
+    final AtomicLong logcatDroppedCount = new AtomicLong();
+    if (logcatTags != null) {
+      new Thread(){
+        @Override
+        public void run() {
+          captureLogcat(logcatTags, logcatLines, logcatDroppedCount, session);
+        }
+      }.start();
+    }
+
+    List<NfdLogReader.Record> records = new ArrayList<>();
+    List<String> lines = new ArrayList<>();
+    try {
+      while (session.isCapturing()) {
+        int numLines = 0;
+        if (reader != null) {
+          records.clear();
+          reader.read(records);
+          for (NfdLogReader.Record record : records) {
+            buffer.offer(record.toString());
+          }
+          numLines += records.size();
+        }
+
+        lines.clear();
+        logcatLines.drainTo(lines);
+        if (numLines == 0 && lines.isEmpty()) {
+          // wait for logcat, or until NFD may have written new records
+          String line = logcatLines.poll(s_nfdLogPollIntervalMs, TimeUnit.MILLISECONDS);
+          if (line != null) {
+            lines.add(line);
+          }
+        }
+        for (String line : lines) {
+          buffer.offer(line);
+        }
+        numLines += lines.size();
+
+        session.sourceDroppedCount = (reader == null ? 0 : reader.getDroppedCount()) + logcatDroppedCount.get();
+        if (numLines > 0) {
+          flushScheduler.linesAdded(numLines);
+        }
+      }
+    } catch (InterruptedException e) {
+      G.Log("captureLog(): " + e);
+    }
   }
 
   /**
    * Convenience method to capture the output from logcat.
+   *
+   * @param tagArguments Tag arguments to logcat.
+   * @param lines Queue to hand the captured lines over to the capture thread.
+   * @param droppedCount Incremented for every line the queue had no room for.
+   * @param session Session of the capture, which destroys the logcat process when stopped.
    */
-  private void captureLog() {
+  private void captureLogcat(String tagArguments, BlockingQueue<String> lines, AtomicLong droppedCount,
+                             CaptureSession session) {
     try {
       /**
        * NOTE: The use of the 'time' log output format is hard
@@ -186,32 +322,48 @@ public class LogcatFragment extends Fragment {
        * placed in the log preference settings.
        */
       // Build command for execution
-      String cmd = String.format("%s -v time %s *:S",
+      String cmd = String.format("%s -v time %s",
           "logcat",
-          m_tagArguments);
+          tagArguments);
 
       G.Log("LogCat Command: " + cmd);
 
-      m_logProcess =  Runtime.getRuntime().exec(cmd);
+      Process logProcess = Runtime.getRuntime().exec(cmd);
+      session.setLogProcess(logProcess);
       BufferedReader in = new BufferedReader(
-          new InputStreamReader(m_logProcess.getInputStream()));
+          new InputStreamReader(logProcess.getInputStream()));
 
       String line;
       while ((line = in.readLine()) != null) {
-        final String message = line;
-        getActivity().runOnUiThread(new Runnable() {
-          @Override
-          public void run() {
-            appendLogText(message);
-          }
-        });
+        if (!lines.offer(line)) {
+          droppedCount.incrementAndGet(); // the capture thread is behind, as is the UI
+        }
       }
 
       // Wait for process to join this thread
-      m_logProcess.waitFor();
+      logProcess.waitFor();
     } catch (IOException | InterruptedException e) {
-      G.Log("captureLog(): " + e);
+      G.Log("captureLogcat(): " + e);
+    }
+  }
+
+  /**
+   * Get the logcat filter for the tags that are not NFD modules.
+   *
+   * @param tagArguments Logcat filter, e.g. "Forwarder:D NFDService:V *:S"
+   * @param nfdModules NFD's log modules.
+   * @return Filter of the other tags, e.g. "NFDService:V *:S", or null if there are none.
+   */
+  private static String getOtherTags(String tagArguments, Set<String> nfdModules) {
+    StringBuilder otherTags = new StringBuilder();
+    for (String item : tagArguments.trim().split("\\s+")) {
+      int separator = item.lastIndexOf(':');
+      String tag = separator < 0 ? item : item.substring(0, separator);
+      if (!tag.isEmpty() && !tag.equals("*") && !nfdModules.contains(tag)) {
+        otherTags.append(item).append(' ');
+      }
     }
+    return otherTags.length() == 0 ? null : otherTags.append("*:S").toString();
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -223,32 +375,36 @@ public class LogcatFragment extends Fragment {
   private static class LogListAdapter extends BaseAdapter {
 
     /**
-     * Create a ListView compatible adapter with an
-     * upper bound on the maximum number of entries that will
-     * be displayed in the ListView.
-     *
-     * @param maxLines Maximum number of entries allowed in
-     *                 the ListView for this adapter.
+     * Create a ListView compatible adapter displaying the lines
+     * of a {@link LogRingBuffer}, which bounds the number of entries
+     * that will be displayed in the ListView.
      */
-    public LogListAdapter(LayoutInflater layoutInflater, int maxLines) {
-      m_data = new ArrayList<>();
+    public LogListAdapter(LayoutInflater layoutInflater) {
       m_layoutInflater = layoutInflater;
-      m_maxLines = maxLines;
     }
 
     /**
-     * Add a message to be displayed in the log's list view.
+     * Display the lines of the given buffer from now on.
      *
-     * @param message Message to be added to the underlying data store
-     *                and displayed on thi UI.
+     * @param buffer Buffer whose consumer is the UI thread.
      */
-    public void addMessage(String message) {
-      if (m_data.size() == m_maxLines) {
-        m_data.get(0);
-      }
+    public void setBuffer(LogRingBuffer buffer) {
+      m_data = buffer;
+      notifyDataSetChanged();
+    }
 
-      m_data.add(message);
+    /**
+     * Take in lines added to the buffer since the last refresh and
+     * update the UI.
+     *
+     * @return true if there were new lines
+     */
+    public boolean refresh() {
+      if (m_data == null || m_data.refresh() == 0) {
+        return false;
+      }
       notifyDataSetChanged();
+      return true;
     }
 
     /**
@@ -256,13 +412,15 @@ public class LogcatFragment extends Fragment {
      * data store and update the UI.
      */
     public void clearMessages() {
-      m_data.clear();
+      if (m_data != null) {
+        m_data.clear();
+      }
       this.notifyDataSetChanged();
     }
 
     @Override
     public int getCount() {
-      return m_data.size();
+      return m_data == null ? 0 : m_data.size();
     }
 
     @Override
@@ -296,13 +454,10 @@ public class LogcatFragment extends Fragment {
     }
 
     /** Underlying message data store for log messages*/
-    private final ArrayList<String> m_data;
+    private LogRingBuffer m_data;
 
     /** Layout inflater for inflating views */
     private final LayoutInflater m_layoutInflater;
-
-    /** Maximum number of log lines to display */
-    private final int m_maxLines;
   }
 
   /**
@@ -312,6 +467,46 @@ public class LogcatFragment extends Fragment {
     public TextView logLineTextView;
   }
 
+  /**
+   * State of one logging session, shared by its capture threads and stopLogging(), so
+   * that the threads of a session still winding down never touch the next session.
+   */
+  private static class CaptureSession {
+    boolean isCapturing() {
+      return m_isCapturing.get();
+    }
+
+    /**
+     * Hand over the logcat process, to be destroyed by stop(); destroyed at once if the
+     * session was already stopped.
+     */
+    synchronized void setLogProcess(Process logProcess) {
+      if (!m_isCapturing.get()) {
+        logProcess.destroy();
+        return;
+      }
+      m_logProcess = logProcess;
+    }
+
+    /**
+     * Stop the capture threads, and the process running logcat if any.
+     */
+    synchronized void stop() {
+      m_isCapturing.set(false);
+      if (m_logProcess != null) {
+        m_logProcess.destroy();
+      }
+    }
+
+    /** Number of lines lost before being captured, e.g. overwritten in NFD's log file */
+    volatile long sourceDroppedCount = 0;
+
+    private final AtomicBoolean m_isCapturing = new AtomicBoolean(true);
+
+    /** Process in which logcat is running, if capturing from logcat; guarded by this */
+    private Process m_logProcess = null;
+  }
+
   //////////////////////////////////////////////////////////////////////////////
 
   public interface Callbacks {
@@ -323,8 +518,42 @@ public class LogcatFragment extends Fragment {
   /** Maximum number of log lines to be displayed by the backing adapter of the ListView */
   private static final int s_logMaxLines = 380;
 
-  /** Process in which logcat is running in */
-  private Process m_logProcess;
+  /** Maximum time between a line being captured and displayed, in ms (a few frames) */
+  private static final long s_flushIntervalMs = 50;
+
+  /** Number of pending lines that triggers a batch before s_flushIntervalMs elapses */
+  private static final int s_flushMaxLines = s_logMaxLines / 2;
+
+  /** Time to wait before reading NFD's log file again when there was nothing new, in ms */
+  private static final long s_nfdLogPollIntervalMs = 100;
+
+  /** Takes in pending lines on the UI thread, see m_flushScheduler */
+  private final Runnable m_flushRunnable = new Runnable() {
+    @Override
+    public void run() {
+      if (!isAdded()) {
+        return; // refreshLogOutput() needs the activity, e.g. for getString()
+      }
+      refreshLogOutput();
+    }
+  };
+
+  private final Handler m_handler = new Handler(Looper.getMainLooper());
+
+  /** Batches the lines of the current logging session for m_flushRunnable */
+  private LogFlushScheduler m_flushScheduler;
+
+  /** Number of batches displayed in the current logging session */
+  private long m_numBatches;
+
+  /** Buffer of the current logging session */
+  private LogRingBuffer m_logBuffer;
+
+  /** Capture threads, logcat process and dropped lines of the current logging session */
+  private CaptureSession m_session;
+
+  /** Shows the number of dropped lines, if any */
+  private TextView m_droppedLinesTextView;
 
   /** ListView for displaying log output in */
   private ListView m_logListView;
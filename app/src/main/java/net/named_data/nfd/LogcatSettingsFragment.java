@@ -27,6 +27,7 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Message;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
@@ -42,7 +43,13 @@ import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import net.named_data.nfd.service.NfdService;
+import net.named_data.nfd.service.NfdServiceMessages;
+import net.named_data.nfd.utils.NfdLogReader;
+
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
 
 public class LogcatSettingsFragment extends ListFragment {
 
@@ -188,6 +195,7 @@ public class LogcatSettingsFragment extends ListFragment {
 
       // Save setting items
       m_logcatSettingsManager.saveSettingItems();
+      applyNfdLogLevels();
       break;
     case REQUEST_CODE_DIALOG_SET_LOG_LEVEL:
       newLogLevel = data.getStringExtra(ResetLogLevelDialog.EXTRA_RESET_LOG_LEVEL_VALUE);
@@ -195,18 +203,57 @@ public class LogcatSettingsFragment extends ListFragment {
           = data.getIntExtra(ResetLogLevelDialog.EXTRA_LOG_ITEM_LIST_POSITION, -1);
 
       if (listPosition != -1) {
-        m_logcatSettingItems.get(listPosition).setLogLevel(newLogLevel);
+        LogcatSettingItem item = m_logcatSettingItems.get(listPosition);
+        item.setLogLevel(newLogLevel);
 
         // Update UI
         updateListUI();
 
         // Save setting items
         m_logcatSettingsManager.saveSettingItems();
+        applyNfdLogLevel(item.getLogTag());
       }
       break;
     }
   }
 
+  /**
+   * Apply the log levels of the current settings to the running NFD, so that NFD only
+   * formats the messages that are displayed.  If NfdService is not running, nothing
+   * is done now: NFD reads the settings when it starts.
+   */
+  private void applyNfdLogLevels() {
+    Bundle levels = new Bundle();
+    for (Map.Entry<String, String> level : m_logcatSettingsManager.getNfdLogLevels().entrySet()) {
+      levels.putString(level.getKey(), level.getValue());
+    }
+
+    Message message = Message.obtain(null, NfdService.SET_NFD_LOG_LEVELS);
+    message.setData(levels);
+    NfdServiceMessages.sendIfRunning(getActivity(), message);
+  }
+
+  /**
+   * Apply the log level of a single tag of the current settings to the running NFD,
+   * leaving the levels of the other modules as they are.
+   *
+   * @param tag Tag whose level changed.
+   */
+  private void applyNfdLogLevel(String tag) {
+    Set<String> nfdModules = NfdLogReader.loadModules(getActivity());
+    if (!nfdModules.isEmpty() && !nfdModules.contains(tag)) {
+      return; // not an NFD module, e.g. one of the app's own tags
+    }
+
+    Bundle data = new Bundle();
+    data.putString(NfdService.EXTRA_LOG_MODULE, tag);
+    data.putString(NfdService.EXTRA_LOG_LEVEL, m_logcatSettingsManager.getNfdLogLevels().get(tag));
+
+    Message message = Message.obtain(null, NfdService.SET_NFD_LOG_LEVEL);
+    message.setData(data);
+    NfdServiceMessages.sendIfRunning(getActivity(), message);
+  }
+
   /**
    * Convenience method that updates the UI by notifying the backing list adapter
    * that changes has been made to the underlying data set.
@@ -125,6 +125,32 @@ public class LogcatSettingsManager {
     return TextUtils.join(" ", arr);
   }
 
+  /**
+   * Generate the NFD log level of each tag, so that NFD only formats the messages that
+   * are displayed.  Tags that are not NFD modules are ignored by NFD.
+   *
+   * @return Map of tag to NFD log level, e.g. "Forwarder" to "DEBUG"
+   */
+  public Map<String, String> getNfdLogLevels() {
+    Map<String, String> levels = new HashMap<>();
+    for (LogcatSettingItem item : m_logcatSettingItems) {
+      levels.put(item.getLogTag(), getNfdLogLevel(getPriorityName(item.getLogLevel())));
+    }
+    return levels;
+  }
+
+  /**
+   * Read the NFD log levels from the persistent storage, rather than from the
+   * singleton settings manager, which may be out of date when the settings were
+   * changed by another process.
+   *
+   * @param context Current application context
+   * @return Map of tag to NFD log level, as returned by getNfdLogLevels()
+   */
+  public static Map<String, String> readNfdLogLevels(Context context) {
+    return new LogcatSettingsManager(context.getApplicationContext()).getNfdLogLevels();
+  }
+
   /**
    * Convenience method that saves all tags present in m_logcatSettingItems
    * to the persistent JSON storage file.
@@ -209,6 +235,31 @@ public class LogcatSettingsManager {
     return null;
   }
 
+  /**
+   * Convenience method that gets the NFD log level matching a logcat priority
+   * name.  For instance, if "D" were passed in, the returned string would be "DEBUG".
+   * NFD logs fatal messages unconditionally, so both "F" and "S" give "NONE".
+   *
+   * @param priority Short form priority name, e.g. "D"
+   * @return NFD log level, e.g. "DEBUG" for a priority argument of "D"
+   */
+  private static String getNfdLogLevel(String priority) {
+    switch (priority) {
+      case "V":
+        return "TRACE";
+      case "D":
+        return "DEBUG";
+      case "I":
+        return "INFO";
+      case "W":
+        return "WARN";
+      case "E":
+        return "ERROR";
+      default:
+        return "NONE";
+    }
+  }
+
   /**
    * Convenience method that gets the priority name from the verbose name. For instance,
    * if "Verbose" were passed in, the returned string would be "V". This is
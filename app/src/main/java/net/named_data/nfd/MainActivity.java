@@ -73,6 +73,8 @@ public class MainActivity extends ActionBarActivity
       //                                            DRAWER_ITEM_STRATEGIES));
       items.add(new DrawerFragment.DrawerItem(R.string.drawer_item_logcat, 0,
                                               DRAWER_ITEM_LOGCAT));
+      items.add(new DrawerFragment.DrawerItem(R.string.drawer_item_nfd_settings, 0,
+                                              DRAWER_ITEM_NFD_SETTINGS));
 
       // ag TODO
       items.add(new DrawerFragment.DrawerItem(R.string.drawer_item_wifidirect, 0, DRAWER_ITEM_WIFIDIRECT));
@@ -168,6 +170,9 @@ public class MainActivity extends ActionBarActivity
         case DRAWER_ITEM_WIFIDIRECT:
           fragment = WiFiDirectFragment.newInstance();
           break;
+        case DRAWER_ITEM_NFD_SETTINGS:
+          fragment = NfdSettingsFragment.newInstance();
+          break;
         default:
           // Invalid; Nothing else needs to be done
           return;
@@ -216,4 +221,5 @@ public class MainActivity extends ActionBarActivity
 
   // ag TODO
   public static final int DRAWER_ITEM_WIFIDIRECT = 6;
+  public static final int DRAWER_ITEM_NFD_SETTINGS = 7;
 }
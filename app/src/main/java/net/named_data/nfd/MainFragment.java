@@ -25,7 +25,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
@@ -42,11 +41,9 @@ import android.widget.CompoundButton;
 import android.widget.Switch;
 import android.widget.TextView;
 
-import com.intel.jndn.management.types.ForwarderStatus;
-
 import net.named_data.nfd.service.NfdService;
+import net.named_data.nfd.service.NfdStatusStreamer;
 import net.named_data.nfd.utils.G;
-import net.named_data.nfd.utils.NfdcHelper;
 
 import org.joda.time.Period;
 import org.joda.time.format.PeriodFormat;
@@ -130,8 +127,8 @@ public class MainFragment extends Fragment {
   onPause() {
     super.onPause();
 
+    sendNfdServiceMessage(NfdService.UNSUBSCRIBE_NFD_STATUS);
     unbindNfdService();
-    m_handler.removeCallbacks(m_statusUpdateRunnable);
     m_handler.removeCallbacks(m_retryConnectionToNfdService);
   }
 
@@ -157,6 +154,7 @@ public class MainFragment extends Fragment {
       // Unbind from Service
       getActivity().unbindService(m_ServiceConnection);
       m_isNfdServiceConnected = false;
+      m_nfdServiceMessenger = null;
 
       G.Log("MainFragment::unbindNfdService()");
     }
@@ -178,8 +176,8 @@ public class MainFragment extends Fragment {
     sendNfdServiceMessage(NfdService.STOP_NFD_SERVICE);
 
     // disable status block
+    sendNfdServiceMessage(NfdService.UNSUBSCRIBE_NFD_STATUS);
     m_nfdStatusView.setVisibility(View.GONE);
-    m_handler.removeCallbacks(m_statusUpdateRunnable);
   }
 
   /**
@@ -240,7 +238,7 @@ public class MainFragment extends Fragment {
           setNfdServiceRunning();
           G.Log("ClientHandler: NFD is Running.");
 
-          m_handler.postDelayed(m_statusUpdateRunnable, 500);
+          sendNfdServiceMessage(NfdService.SUBSCRIBE_NFD_STATUS);
           break;
 
         case NfdService.NFD_SERVICE_STOPPED:
@@ -248,6 +246,12 @@ public class MainFragment extends Fragment {
           G.Log("ClientHandler: NFD is Stopped.");
           break;
 
+        case NfdService.NFD_STATUS_UPDATE:
+          if (m_isNfdServiceConnected && m_nfdStartStopSwitch.isChecked()) {
+            showStatus(msg.getData());
+          }
+          break;
+
         default:
           super.handleMessage(msg);
           break;
@@ -311,62 +315,62 @@ public class MainFragment extends Fragment {
     }
   };
 
-  private class StatusUpdateTask extends AsyncTask<Void, Void, ForwarderStatus> {
-    /**
-     * @param voids
-     * @return ForwarderStatus if operation succeeded, null if operation failed
-     */
-    @Override
-    protected ForwarderStatus
-    doInBackground(Void... voids)
-    {
-      try {
-        NfdcHelper nfdcHelper = new NfdcHelper();
-        ForwarderStatus fs = nfdcHelper.generalStatus();
-        nfdcHelper.shutdown();
-        return fs;
-      }
-      catch (Exception e) {
-        G.Log("Error communicating with NFD (" + e.getMessage() + ")");
-        return null;
-      }
-    }
+  /**
+   * Show an update pushed by NfdService's status streamer.
+   */
+  private void
+  showStatus(Bundle status)
+  {
+    m_versionView.setText(status.getString(NfdStatusStreamer.VERSION));
+    m_uptimeView.setText(PeriodFormat.getDefault().print(new Period(
+      status.getLong(NfdStatusStreamer.UPTIME_MS))));
+    m_nameTreeEntriesView.setText(String.valueOf(
+      status.getLong(NfdStatusStreamer.N_NAME_TREE_ENTRIES)));
+    m_fibEntriesView.setText(String.valueOf(status.getLong(NfdStatusStreamer.N_FIB_ENTRIES)));
+    m_pitEntriesView.setText(formatCounter(status, NfdStatusStreamer.N_PIT_ENTRIES,
+                                           NfdStatusStreamer.PIT_GROWTH_RATE,
+                                           R.string.status_entries_with_growth));
+    m_measurementEntriesView.setText(String.valueOf(
+      status.getLong(NfdStatusStreamer.N_MEASUREMENTS_ENTRIES)));
+    m_csEntriesView.setText(formatCounter(status, NfdStatusStreamer.N_CS_ENTRIES,
+                                          NfdStatusStreamer.CS_GROWTH_RATE,
+                                          R.string.status_entries_with_growth));
+
+    m_inInterestsView.setText(formatCounter(status, NfdStatusStreamer.N_IN_INTERESTS,
+                                            NfdStatusStreamer.IN_INTERESTS_RATE,
+                                            R.string.status_counter_with_rate));
+    m_outInterestsView.setText(formatCounter(status, NfdStatusStreamer.N_OUT_INTERESTS,
+                                             NfdStatusStreamer.OUT_INTERESTS_RATE,
+                                             R.string.status_counter_with_rate));
+
+    m_inDataView.setText(formatCounter(status, NfdStatusStreamer.N_IN_DATA,
+                                       NfdStatusStreamer.IN_DATA_RATE,
+                                       R.string.status_counter_with_rate));
+    m_outDataView.setText(formatCounter(status, NfdStatusStreamer.N_OUT_DATA,
+                                        NfdStatusStreamer.OUT_DATA_RATE,
+                                        R.string.status_counter_with_rate));
+
+    m_inNacksView.setText(formatCounter(status, NfdStatusStreamer.N_IN_NACKS,
+                                        NfdStatusStreamer.IN_NACKS_RATE,
+                                        R.string.status_counter_with_rate));
+    m_outNacksView.setText(formatCounter(status, NfdStatusStreamer.N_OUT_NACKS,
+                                         NfdStatusStreamer.OUT_NACKS_RATE,
+                                         R.string.status_counter_with_rate));
+
+    m_nfdStatusView.setVisibility(View.VISIBLE);
+  }
 
-    @Override
-    protected void
-    onPostExecute(ForwarderStatus fs)
-    {
-      if (fs == null) {
-        // when failed, try after 0.5 seconds
-        m_handler.postDelayed(m_statusUpdateRunnable, 500);
-      }
-      else {
-        m_versionView.setText(fs.getNfdVersion());
-        m_uptimeView.setText(PeriodFormat.getDefault().print(new Period(
-          fs.getCurrentTimestamp() - fs.getStartTimestamp())));
-        m_nameTreeEntriesView.setText(String.valueOf(
-          fs.getNNameTreeEntries()));
-        m_fibEntriesView.setText(String.valueOf(fs.getNFibEntries()));
-        m_pitEntriesView.setText(String.valueOf(fs.getNPitEntries()));
-        m_measurementEntriesView.setText(String.valueOf(
-          fs.getNMeasurementsEntries()));
-        m_csEntriesView.setText(String.valueOf(fs.getNCsEntries()));
-
-        m_inInterestsView.setText(String.valueOf(fs.getNInInterests()));
-        m_outInterestsView.setText(String.valueOf(fs.getNOutInterests()));
-
-        m_inDataView.setText(String.valueOf(fs.getNInDatas()));
-        m_outDataView.setText(String.valueOf(fs.getNOutDatas()));
-
-        m_inNacksView.setText(String.valueOf(fs.getNInNacks()));
-        m_outNacksView.setText(String.valueOf(fs.getNOutNacks()));
-
-        m_nfdStatusView.setVisibility(View.VISIBLE);
-
-        // refresh after 5 seconds
-        m_handler.postDelayed(m_statusUpdateRunnable, 5000);
-      }
+  /**
+   * @return the counter, followed by its rate when the update has one
+   */
+  private String
+  formatCounter(Bundle status, String counterKey, String rateKey, int formatId)
+  {
+    long counter = status.getLong(counterKey);
+    if (!status.containsKey(rateKey)) {
+      return String.valueOf(counter);
     }
+    return getString(formatId, counter, status.getDouble(rateKey));
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -401,13 +405,6 @@ public class MainFragment extends Fragment {
   private TextView m_outNacksView;
 
   private Handler m_handler;
-  private Runnable m_statusUpdateRunnable = new Runnable() {
-    @Override
-    public void run()
-    {
-      new StatusUpdateTask().execute();
-    }
-  };
 
   private SharedPreferences m_sharedPreferences;
 
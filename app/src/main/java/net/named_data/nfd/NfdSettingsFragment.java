@@ -0,0 +1,176 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ *
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ *
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd;
+
+import android.os.Bundle;
+import android.os.Message;
+import android.support.v4.app.Fragment;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.CompoundButton;
+import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.Switch;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import net.named_data.nfd.service.NfdService;
+import net.named_data.nfd.service.NfdServiceMessages;
+import net.named_data.nfd.wifidirect.utils.NDNController;
+
+import java.util.Arrays;
+
+/**
+ * Fragment for editing the NFD forwarder settings of {@link NfdSettingsManager}.
+ */
+public class NfdSettingsFragment extends Fragment {
+
+  public static NfdSettingsFragment newInstance() {
+    return new NfdSettingsFragment();
+  }
+
+  @Override
+  public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                           Bundle savedInstanceState) {
+    View v = inflater.inflate(R.layout.fragment_nfd_settings, container, false);
+
+    m_csMaxPacketsEditText = (EditText) v.findViewById(R.id.nfd_settings_cs_max_packets);
+    m_csPolicySpinner = (Spinner) v.findViewById(R.id.nfd_settings_cs_policy);
+    m_strategyChoiceEditText = (EditText) v.findViewById(R.id.nfd_settings_strategy_choice);
+    m_tcpEnabledSwitch = (Switch) v.findViewById(R.id.nfd_settings_tcp_enabled);
+    m_tcpWifiDirectWarningTextView = (TextView) v.findViewById(R.id.nfd_settings_tcp_wifidirect_warning);
+    m_udpEnabledSwitch = (Switch) v.findViewById(R.id.nfd_settings_udp_enabled);
+    m_udpMulticastEnabledSwitch = (Switch) v.findViewById(R.id.nfd_settings_udp_multicast_enabled);
+    m_udpIdleTimeoutEditText = (EditText) v.findViewById(R.id.nfd_settings_udp_idle_timeout);
+    m_webSocketEnabledSwitch = (Switch) v.findViewById(R.id.nfd_settings_websocket_enabled);
+
+    ArrayAdapter<String> policyAdapter =
+      new ArrayAdapter<>(getActivity(), android.R.layout.simple_spinner_item,
+                         NfdSettingsManager.CS_POLICIES);
+    policyAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+    m_csPolicySpinner.setAdapter(policyAdapter);
+
+    m_tcpEnabledSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+      @Override
+      public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+        updateTcpWifiDirectWarning();
+      }
+    });
+
+    m_udpEnabledSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+      @Override
+      public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+        m_udpMulticastEnabledSwitch.setEnabled(isChecked);
+        m_udpIdleTimeoutEditText.setEnabled(isChecked);
+      }
+    });
+
+    Button saveButton = (Button) v.findViewById(R.id.nfd_settings_save);
+    saveButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        saveSettings();
+      }
+    });
+
+    if (savedInstanceState == null) {
+      loadSettings();
+    }
+    return v;
+  }
+
+  @Override
+  public void onResume() {
+    super.onResume();
+    // WiFi Direct may have been turned on or off meanwhile
+    updateTcpWifiDirectWarning();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private void loadSettings() {
+    NfdSettingsManager settings = new NfdSettingsManager(getActivity());
+
+    m_csMaxPacketsEditText.setText(String.valueOf(settings.getCsMaxPackets()));
+    int policy = Arrays.asList(NfdSettingsManager.CS_POLICIES).indexOf(settings.getCsPolicy());
+    m_csPolicySpinner.setSelection(Math.max(policy, 0));
+    m_strategyChoiceEditText.setText(settings.getStrategyChoice());
+    m_tcpEnabledSwitch.setChecked(settings.isTcpEnabled());
+    m_udpEnabledSwitch.setChecked(settings.isUdpEnabled());
+    m_udpMulticastEnabledSwitch.setChecked(settings.isUdpMulticastEnabled());
+    m_udpMulticastEnabledSwitch.setEnabled(settings.isUdpEnabled());
+    m_udpIdleTimeoutEditText.setText(String.valueOf(settings.getUdpIdleTimeout()));
+    m_udpIdleTimeoutEditText.setEnabled(settings.isUdpEnabled());
+    m_webSocketEnabledSwitch.setChecked(settings.isWebSocketEnabled());
+  }
+
+  /**
+   * Warn that WiFi Direct, whose faces are TCP faces (see NDNController.URI_TRANSPORT_PREFIX),
+   * cannot work with TCP faces turned off.
+   */
+  private void updateTcpWifiDirectWarning() {
+    boolean isBreakingWifiDirect = !m_tcpEnabledSwitch.isChecked() &&
+      NDNController.URI_TRANSPORT_PREFIX.equals(NDNController.URI_TCP_PREFIX) &&
+      WiFiDirectFragment.isWifiDirectEnabled(getActivity());
+    m_tcpWifiDirectWarningTextView.setVisibility(isBreakingWifiDirect ? View.VISIBLE : View.GONE);
+  }
+
+  private void saveSettings() {
+    try {
+      new NfdSettingsManager(getActivity())
+        .save(Integer.parseInt(m_csMaxPacketsEditText.getText().toString().trim()),
+              (String) m_csPolicySpinner.getSelectedItem(),
+              m_strategyChoiceEditText.getText().toString(),
+              Integer.parseInt(m_udpIdleTimeoutEditText.getText().toString().trim()),
+              m_tcpEnabledSwitch.isChecked(),
+              m_udpEnabledSwitch.isChecked(),
+              m_udpMulticastEnabledSwitch.isChecked(),
+              m_webSocketEnabledSwitch.isChecked());
+      reloadNfdConfig();
+      Toast.makeText(getActivity(), R.string.nfd_settings_saved, Toast.LENGTH_LONG).show();
+    }
+    catch (IllegalArgumentException e) {
+      // NumberFormatException included
+      Toast.makeText(getActivity(), e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+  }
+
+  /**
+   * Apply the saved settings to NFD, if it is running.
+   */
+  private void reloadNfdConfig() {
+    NfdServiceMessages.sendIfRunning(getActivity(), Message.obtain(null, NfdService.RELOAD_NFD_CONFIG));
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private EditText m_csMaxPacketsEditText;
+  private Spinner m_csPolicySpinner;
+  private EditText m_strategyChoiceEditText;
+  private Switch m_tcpEnabledSwitch;
+  private TextView m_tcpWifiDirectWarningTextView;
+  private Switch m_udpEnabledSwitch;
+  private Switch m_udpMulticastEnabledSwitch;
+  private EditText m_udpIdleTimeoutEditText;
+  private Switch m_webSocketEnabledSwitch;
+}
@@ -0,0 +1,245 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Manager of the NFD forwarder settings (Content Store, strategy choice, face system),
+ * which are persisted in preferences and rendered into the "tables" and "face_system"
+ * sections of NFD's configuration when NFD starts.
+ *
+ * The settings are written by the app and read by NfdService, which runs in its own
+ * process, so every manager reads the preferences afresh rather than being a singleton.
+ */
+@SuppressWarnings("deprecation") // MODE_MULTI_PROCESS, there is no replacement for preferences
+public class NfdSettingsManager {
+
+  public NfdSettingsManager(Context context) {
+    m_context = context.getApplicationContext();
+    m_preferences = m_context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_MULTI_PROCESS);
+  }
+
+  public int getCsMaxPackets() {
+    return m_preferences.getInt(PREF_CS_MAX_PACKETS, getDefaultCsMaxPackets());
+  }
+
+  public String getCsPolicy() {
+    return m_preferences.getString(PREF_CS_POLICY, CS_POLICIES[0]);
+  }
+
+  /**
+   * @return Strategy choice, one "namespace strategy" pair per line
+   */
+  public String getStrategyChoice() {
+    return m_preferences.getString(PREF_STRATEGY_CHOICE, DEFAULT_STRATEGY_CHOICE);
+  }
+
+  /**
+   * @return Idle timeout of on-demand UDP faces, in seconds
+   */
+  public int getUdpIdleTimeout() {
+    return m_preferences.getInt(PREF_UDP_IDLE_TIMEOUT, DEFAULT_UDP_IDLE_TIMEOUT);
+  }
+
+  public boolean isTcpEnabled() {
+    return m_preferences.getBoolean(PREF_TCP_ENABLED, true);
+  }
+
+  public boolean isUdpEnabled() {
+    return m_preferences.getBoolean(PREF_UDP_ENABLED, true);
+  }
+
+  public boolean isUdpMulticastEnabled() {
+    return m_preferences.getBoolean(PREF_UDP_MULTICAST_ENABLED, false);
+  }
+
+  public boolean isWebSocketEnabled() {
+    return m_preferences.getBoolean(PREF_WEBSOCKET_ENABLED, true);
+  }
+
+  /**
+   * Save the settings; they apply the next time NFD starts.
+   *
+   * @throws IllegalArgumentException if a value is out of range, the Content Store policy
+   *         is not one of CS_POLICIES, or the strategy choice is malformed or names a
+   *         strategy NFD does not have
+   */
+  public void save(int csMaxPackets, String csPolicy, String strategyChoice,
+                   int udpIdleTimeout, boolean isTcpEnabled, boolean isUdpEnabled,
+                   boolean isUdpMulticastEnabled, boolean isWebSocketEnabled) {
+    if (csMaxPackets < 0) {
+      throw new IllegalArgumentException("Content Store capacity must not be negative");
+    }
+    if (udpIdleTimeout <= 0) {
+      throw new IllegalArgumentException("UDP idle timeout must be positive");
+    }
+    if (!Arrays.asList(CS_POLICIES).contains(csPolicy)) {
+      throw new IllegalArgumentException("Unknown Content Store policy: " + csPolicy);
+    }
+    for (String line : strategyChoice.split("\n")) {
+      String[] pair = line.trim().split("\\s+");
+      if (!line.trim().isEmpty() && (pair.length != 2 || !pair[0].startsWith("/") ||
+                                     !pair[1].startsWith("/"))) {
+        throw new IllegalArgumentException("Invalid strategy choice: " + line);
+      }
+      if (!line.trim().isEmpty() && !isKnownStrategy(pair[1])) {
+        throw new IllegalArgumentException("Unknown strategy: " + pair[1]);
+      }
+    }
+
+    m_preferences.edit()
+      .putInt(PREF_CS_MAX_PACKETS, csMaxPackets)
+      .putString(PREF_CS_POLICY, csPolicy)
+      .putString(PREF_STRATEGY_CHOICE, strategyChoice.trim())
+      .putInt(PREF_UDP_IDLE_TIMEOUT, udpIdleTimeout)
+      .putBoolean(PREF_TCP_ENABLED, isTcpEnabled)
+      .putBoolean(PREF_UDP_ENABLED, isUdpEnabled)
+      .putBoolean(PREF_UDP_MULTICAST_ENABLED, isUdpMulticastEnabled)
+      .putBoolean(PREF_WEBSOCKET_ENABLED, isWebSocketEnabled)
+      .commit(); // synchronously, as NfdService may read them right away
+  }
+
+  /**
+   * Render the settings as NFD configuration sections, for NfdService.startNfd().
+   *
+   * @return Map of "config.&lt;section&gt;" to the section in INFO format
+   */
+  public Map<String, String> getConfigParams() {
+    Map<String, String> params = new HashMap<>();
+    params.put("config.tables", renderTables());
+    params.put("config.face_system", renderFaceSystem());
+    return params;
+  }
+
+  /**
+   * Default Content Store capacity, sized to the device: a sixteenth of the memory an
+   * app may use, assuming packets of about 4 KB.
+   */
+  public int getDefaultCsMaxPackets() {
+    ActivityManager activityManager =
+      (ActivityManager) m_context.getSystemService(Context.ACTIVITY_SERVICE);
+    return activityManager.getMemoryClass() * 1024 / 4 / 16;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * @return whether NFD has the strategy, given with or without a version component
+   */
+  private static boolean isKnownStrategy(String strategy) {
+    for (String known : STRATEGIES) {
+      if (strategy.equals(known) || strategy.startsWith(known + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String renderTables() {
+    StringBuilder config = new StringBuilder();
+    config.append("cs_max_packets ").append(getCsMaxPackets()).append("\n");
+    config.append("cs_policy ").append(getCsPolicy()).append("\n");
+    config.append("strategy_choice\n{\n");
+    for (String line : getStrategyChoice().split("\n")) {
+      if (!line.trim().isEmpty()) {
+        config.append("  ").append(line.trim()).append("\n");
+      }
+    }
+    config.append("}\n");
+    return config.toString();
+  }
+
+  private String renderFaceSystem() {
+    StringBuilder config = new StringBuilder();
+    if (isTcpEnabled()) {
+      config.append("tcp\n{\n")
+        .append("  listen yes\n")
+        .append("  port 6363\n")
+        .append("  enable_v4 yes\n")
+        .append("  enable_v6 yes\n")
+        .append("}\n");
+    }
+    if (isUdpEnabled()) {
+      config.append("udp\n{\n")
+        .append("  port 6363\n")
+        .append("  enable_v4 yes\n")
+        .append("  enable_v6 yes\n")
+        .append("  idle_timeout ").append(getUdpIdleTimeout()).append("\n")
+        .append("  keep_alive_interval 25\n")
+        .append("  mcast ").append(isUdpMulticastEnabled() ? "yes" : "no").append("\n")
+        .append("}\n");
+    }
+    if (isWebSocketEnabled()) {
+      config.append("websocket\n{\n")
+        .append("  listen yes\n")
+        .append("  port 9696\n")
+        .append("  enable_v4 yes\n")
+        .append("  enable_v6 yes\n")
+        .append("}\n");
+    }
+    return config.toString();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /** Content Store policies supported by NFD; the first one is the default */
+  public static final String[] CS_POLICIES = { "priority_fifo", "lru" };
+
+  /** Strategies built into NFD (see nfd.mk), as named in the strategy choice */
+  private static final String[] STRATEGIES = {
+    "/localhost/nfd/strategy/access",
+    "/localhost/nfd/strategy/asf",
+    "/localhost/nfd/strategy/best-route",
+    "/localhost/nfd/strategy/client-control",
+    "/localhost/nfd/strategy/multicast",
+    "/localhost/nfd/strategy/ncc"
+  };
+
+  private static final String DEFAULT_STRATEGY_CHOICE =
+    "/ /localhost/nfd/strategy/best-route\n" +
+    "/localhost /localhost/nfd/strategy/multicast\n" +
+    "/localhost/nfd /localhost/nfd/strategy/best-route\n" +
+    "/ndn/broadcast /localhost/nfd/strategy/multicast\n" +
+    "/ndn/multicast /localhost/nfd/strategy/multicast";
+
+  private static final int DEFAULT_UDP_IDLE_TIMEOUT = 600;
+
+  private static final String PREFERENCES_NAME = "NFD_SETTINGS";
+  private static final String PREF_CS_MAX_PACKETS = "CS_MAX_PACKETS";
+  private static final String PREF_CS_POLICY = "CS_POLICY";
+  private static final String PREF_STRATEGY_CHOICE = "STRATEGY_CHOICE";
+  private static final String PREF_UDP_IDLE_TIMEOUT = "UDP_IDLE_TIMEOUT";
+  private static final String PREF_TCP_ENABLED = "TCP_ENABLED";
+  private static final String PREF_UDP_ENABLED = "UDP_ENABLED";
+  private static final String PREF_UDP_MULTICAST_ENABLED = "UDP_MULTICAST_ENABLED";
+  private static final String PREF_WEBSOCKET_ENABLED = "WEBSOCKET_ENABLED";
+
+  /** Context for retrieving preferences and system services */
+  private final Context m_context;
+
+  private final SharedPreferences m_preferences;
+}
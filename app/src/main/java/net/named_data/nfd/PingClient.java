@@ -19,18 +19,14 @@
 
 package net.named_data.nfd;
 
-import android.os.Handler;
-import android.os.HandlerThread;
-
 import net.named_data.jndn.Data;
-import net.named_data.jndn.Face;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.Name;
 import net.named_data.jndn.NetworkNack;
 import net.named_data.jndn.OnData;
 import net.named_data.jndn.OnNetworkNack;
 import net.named_data.jndn.OnTimeout;
-import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.nfd.utils.FaceEventLoop;
 import net.named_data.nfd.utils.G;
 
 import java.io.IOException;
@@ -69,9 +65,10 @@ class PingClient {
   private String m_pingPrefix;
   private long m_pingSeq;
   private AtomicBoolean m_isRunning = new AtomicBoolean(false);
-  private Handler m_handler;
-  private Face m_face;
-  private HandlerThread m_thread;
+  private FaceEventLoop m_eventLoop;
+
+  /** Id of the outstanding ping Interest, -1 if none; accessed on the event loop thread only */
+  private long m_pendingInterestId = -1;
 
   /////////////////////////////////////////////////////////////////////////
 
@@ -96,10 +93,9 @@ class PingClient {
   }
 
   public void start() {
-    m_thread = new HandlerThread("PingClientThread");
-    m_thread.start();
-    m_handler = new Handler(m_thread.getLooper());
-    m_handler.post(new Runnable() {
+    m_isRunning.set(true);
+    m_eventLoop = FaceEventLoop.getInstance();
+    m_eventLoop.post(new Runnable() {
       @Override
       public void run()
       {
@@ -109,8 +105,17 @@ class PingClient {
   }
 
   public void stop() {
-    m_isRunning.set(false);
-    // thread will be killed shorty, but don't wait to so we not going to block UI
+    if (!m_isRunning.getAndSet(false)) {
+      return;
+    }
+    // terminate on the event loop, so we not going to block UI
+    m_eventLoop.post(new Runnable() {
+      @Override
+      public void run()
+      {
+        terminate();
+      }
+    });
   }
 
   /////////////////////////////////////////////////////////////////////////
@@ -176,51 +181,24 @@ class PingClient {
 
   private void initiate() {
     G.Log("INITIATE ping");
-    m_isRunning.set(true);
     m_pingSeq = Math.abs(new Random().nextLong());
 
-    m_face = new Face();
     requestNextPing(0);
-    processEvents();
   }
 
-  private void processEvents() {
-    try {
-      if (m_isRunning.get()) {
-        m_face.processEvents();
-        m_handler.postDelayed(new Runnable() {
-          @Override
-          public void run()
-          {
-            processEvents();
-          }
-        }, 100);
-      }
-      else {
-        terminate();
-      }
-    }
-    catch (IOException e) {
-      G.Log("Face error: " + e.getMessage());
-    }
-    catch (EncodingException e) {
-      G.Log("Encoding error: " + e.getMessage());
+  private void terminate() {
+    G.Log("TERMINATE ping, " + m_pingPrefix);
+    if (m_pendingInterestId != -1) {
+      m_eventLoop.removePendingInterest(m_pendingInterestId);
+      m_pendingInterestId = -1;
     }
-  }
 
-  private void terminate() {
-    G.Log("TERMINATE ping, " + m_face.hashCode());
     calculateStatistics();
     notifyPingFinish();
-
-    m_face.shutdown();
-    m_face = null;
-    m_isRunning.set(false);
-    m_thread.quit();
   }
 
   private void requestNextPing(long delay) {
-    m_handler.postDelayed(new Runnable() {
+    m_eventLoop.postDelayed(new Runnable() {
       @Override
       public void run()
       {
@@ -231,8 +209,8 @@ class PingClient {
 
   private void newPing()
   {
-    if (m_face == null) {
-      G.Log("Requested new ping, but face is not available");
+    if (!m_isRunning.get()) {
+      G.Log("Requested new ping, but ping is stopped");
       return;
     }
     Name name = new Name(m_pingPrefix + "/ping/" + m_pingSeq++);
@@ -241,11 +219,12 @@ class PingClient {
 
     final long startTime = System.nanoTime();
     try {
-      m_face.expressInterest(interest,
+      m_pendingInterestId = m_eventLoop.expressInterest(interest,
                              new OnData() {
                                @Override
                                public void onData(Interest interest, Data data)
                                {
+                                 m_pendingInterestId = -1;
                                  double elapsedTime = (System.nanoTime() - startTime) / 1000000.0;
                                  ++m_pingStats.dataCount;
                                  m_pingStats.timeSum += elapsedTime;
@@ -264,6 +243,7 @@ class PingClient {
                                @Override
                                public void onTimeout(Interest interest)
                                {
+                                 m_pendingInterestId = -1;
                                  ++m_pingStats.timeoutCount;
 
                                  notifyPingTimeout(m_pingPrefix, m_pingSeq);
@@ -274,6 +254,7 @@ class PingClient {
                                @Override
                                public void onNetworkNack(Interest interest, NetworkNack networkNack)
                                {
+                                 m_pendingInterestId = -1;
                                  ++m_pingStats.nackCount;
 
                                  notifyPingNack(m_pingPrefix, m_pingSeq, networkNack.getReason());
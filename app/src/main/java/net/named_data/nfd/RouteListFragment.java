@@ -22,9 +22,12 @@ package net.named_data.nfd;
 import android.content.Context;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.Nullable;
 import android.support.v4.app.ListFragment;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Pair;
 import android.util.SparseArray;
 import android.view.LayoutInflater;
@@ -34,6 +37,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
+import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
@@ -53,9 +57,12 @@ import net.named_data.jndn_xx.util.FaceUri;
 import net.named_data.nfd.utils.G;
 import net.named_data.nfd.utils.NfdcHelper;
 import net.named_data.nfd.utils.PermanentFaceUriAndRouteManager;
+import net.named_data.nfd.utils.RibIndex;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class RouteListFragment extends ListFragment implements RouteCreateDialogFragment.OnRouteCreateRequested {
 
@@ -105,6 +112,26 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
     // Get progress bar spinner view
     m_reloadingListProgressBar = (ProgressBar) v.findViewById(R.id.route_list_reloading_list_progress_bar);
 
+    m_routeCountView = (TextView) v.findViewById(R.id.route_list_count);
+    m_prefixFilterView = (EditText) v.findViewById(R.id.route_list_prefix_filter);
+    m_faceFilterView = (EditText) v.findViewById(R.id.route_list_face_filter);
+    TextWatcher filterWatcher = new TextWatcher() {
+      @Override
+      public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+      }
+
+      @Override
+      public void onTextChanged(CharSequence s, int start, int before, int count) {
+      }
+
+      @Override
+      public void afterTextChanged(Editable s) {
+        showRouteIndex(false);
+      }
+    };
+    m_prefixFilterView.addTextChangedListener(filterWatcher);
+    m_faceFilterView.addTextChangedListener(filterWatcher);
+
     getListView().setLongClickable(true);
     getListView().setOnItemLongClickListener(new OnItemLongClickListener() {
       public boolean onItemLongClick(AdapterView<?> parent, View v, int position, long id) {
@@ -149,6 +176,7 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
   public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
     super.onCreateOptionsMenu(menu, inflater);
     inflater.inflate(R.menu.menu_route_list, menu);
+    menu.findItem(R.id.route_list_auto_refresh).setChecked(m_isAutoRefreshEnabled);
   }
 
   @Override
@@ -157,6 +185,15 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
       case R.id.route_list_refresh:
         retrieveRouteList();
         return true;
+      case R.id.route_list_auto_refresh:
+        m_isAutoRefreshEnabled = !item.isChecked();
+        item.setChecked(m_isAutoRefreshEnabled);
+        if (m_isAutoRefreshEnabled) {
+          scheduleAutoRefresh();
+        } else {
+          m_handler.removeCallbacks(m_autoRefreshRunnable);
+        }
+        return true;
       case R.id.route_list_add:
         RouteCreateDialogFragment dialog = RouteCreateDialogFragment.newInstance();
         dialog.setTargetFragment(RouteListFragment.this, 0);
@@ -178,6 +215,7 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
   onPause() {
     super.onPause();
     stopRouteListInfoRetrievalTask();
+    m_handler.removeCallbacks(m_autoRefreshRunnable);
 
     if (m_routeCreateAsyncTask != null) {
       m_routeCreateAsyncTask.cancel(false);
@@ -269,20 +307,87 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
   /////////////////////////////////////////////////////////////////////////
 
   /**
-   * Updates the underlying adapter with the given list of RibEntry.
+   * Updates the underlying adapter with a new snapshot of the RIB, unless it holds the
+   * same routes as the current one.
    *
    * Note: This method should only be called from the UI thread.
    *
-   * @param list Update ListView with the given List&lt;RibEntry&gt;
+   * @param index Index over the new snapshot, or null if unavailable
    */
   private void
-  updateRouteList(List<RibEntry> list) {
-    if (list == null) {
+  updateRouteList(RibIndex index) {
+    if (index == null) {
       m_routeListInfoUnavailableView.setVisibility(View.VISIBLE);
       return;
     }
 
-    ((RouteListAdapter) getListAdapter()).updateList(list);
+    m_routeListInfoUnavailableView.setVisibility(View.GONE);
+    if (index.isSameAs(m_ribIndex)) {
+      return;
+    }
+    m_ribIndex = index;
+    showRouteIndex(true);
+  }
+
+  /**
+   * Show the routes of the current snapshot that match the prefix and face filters.
+   *
+   * @param isKeepingPosition Whether to keep the first visible route in place, when the
+   *                          snapshot changed rather than the filters
+   */
+  private void
+  showRouteIndex(boolean isKeepingPosition) {
+    if (m_ribIndex == null) {
+      return;
+    }
+
+    String prefixFilter = m_prefixFilterView.getText().toString().trim();
+    Name prefix = new Name(prefixFilter.isEmpty() ? "/" : prefixFilter);
+    int faceId = -1;
+    try {
+      faceId = Integer.parseInt(m_faceFilterView.getText().toString().trim());
+    } catch (NumberFormatException e) {
+      // any face
+    }
+
+    ListView listView = getListView();
+    RibIndex.Query query = m_ribIndex.query(prefix, faceId);
+    m_routeCountView.setText(getString(R.string.route_list_count, query.size(), m_ribIndex.size()));
+    m_routeCountView.setVisibility(View.VISIBLE);
+
+    // when only routes changed, rebind the changed rows in place
+    if (isKeepingPosition && m_routeListAdapter.updateQuery(query, listView)) {
+      return;
+    }
+
+    Name anchorName = null;
+    int anchorTop = 0;
+    int anchorPosition = listView.getFirstVisiblePosition() - listView.getHeaderViewsCount();
+    if (isKeepingPosition && anchorPosition >= 0 &&
+        anchorPosition < m_routeListAdapter.getCount() && listView.getChildCount() > 0) {
+      anchorName = m_routeListAdapter.getItem(anchorPosition).getName();
+      anchorTop = listView.getChildAt(0).getTop();
+    }
+
+    m_routeListAdapter.setQuery(query);
+
+    if (anchorName != null) {
+      int position = query.indexOf(anchorName);
+      if (position >= 0) {
+        listView.setSelectionFromTop(position + listView.getHeaderViewsCount(), anchorTop);
+      }
+    }
+  }
+
+  /**
+   * Retrieve the route list again after AUTO_REFRESH_INTERVAL_MS, if auto refresh is on.
+   */
+  private void
+  scheduleAutoRefresh() {
+    m_handler.removeCallbacks(m_autoRefreshRunnable);
+    if (m_isAutoRefreshEnabled && isResumed()) {
+      m_handler.postDelayed(m_autoRefreshRunnable, AUTO_REFRESH_INTERVAL_MS);
+    }
   }
 
   /**
@@ -304,7 +409,15 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
    */
   private void
   startRouteListInfoRetrievalTask() {
-    m_routeListAsyncTask = new RouteListAsyncTask();
+    startRouteListInfoRetrievalTask(false);
+  }
+
+  /**
+   * @param isAutoRefresh Whether to retrieve the list without showing progress
+   */
+  private void
+  startRouteListInfoRetrievalTask(boolean isAutoRefresh) {
+    m_routeListAsyncTask = new RouteListAsyncTask(isAutoRefresh);
     m_routeListAsyncTask.execute();
   }
 
@@ -321,6 +434,10 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
 
   /////////////////////////////////////////////////////////////////////////
 
+  /**
+   * Adapter over a query of the RIB index, which decodes the entries a page at a time
+   * as they are displayed, and keeps only the last few pages.
+   */
   private static class RouteListAdapter extends BaseAdapter {
 
     RouteListAdapter(Context context) {
@@ -328,21 +445,61 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
     }
 
     void
-    updateList(List<RibEntry> ribEntries) {
-      m_ribEntries = ribEntries;
+    setQuery(RibIndex.Query query) {
+      m_query = query;
+      m_pages.clear();
       notifyDataSetChanged();
     }
 
+    /**
+     * Switch to a query over a newer snapshot, keeping the rows in place, if it lists the
+     * same prefixes as the current query: only the decoded pages and the visible rows
+     * whose routes changed are dropped and bound again.
+     *
+     * @return false if the prefixes differ, in which case nothing was changed
+     */
+    boolean
+    updateQuery(RibIndex.Query query, ListView listView) {
+      List<Integer> changedPositions = query.getChangedPositions(m_query);
+      if (changedPositions == null) {
+        return false;
+      }
+
+      m_query = query;
+      int firstVisible = listView.getFirstVisiblePosition();
+      int lastVisible = firstVisible + listView.getChildCount() - 1;
+      for (int position : changedPositions) {
+        m_pages.remove(position / PAGE_SIZE);
+      }
+      for (int position : changedPositions) {
+        int listPosition = position + listView.getHeaderViewsCount();
+        if (listPosition >= firstVisible && listPosition <= lastVisible) {
+          getView(position, listView.getChildAt(listPosition - firstVisible), listView);
+        }
+      }
+      return true;
+    }
+
     @Override
     public int getCount() {
-      return (m_ribEntries == null) ? 0 : m_ribEntries.size();
+      return (m_query == null) ? 0 : m_query.size();
     }
 
     @Override
     public RibEntry
     getItem(int i) {
-      assert m_ribEntries != null;
-      return m_ribEntries.get(i);
+      assert m_query != null;
+      int pageNumber = i / PAGE_SIZE;
+      RibEntry[] page = m_pages.get(pageNumber);
+      if (page == null) {
+        int start = pageNumber * PAGE_SIZE;
+        page = new RibEntry[Math.min(PAGE_SIZE, m_query.size() - start)];
+        for (int j = 0; j < page.length; j++) {
+          page[j] = m_query.getIndex().get(m_query.getOrdinal(start + j));
+        }
+        m_pages.put(pageNumber, page);
+      }
+      return page[i % PAGE_SIZE];
     }
 
     @Override
@@ -388,31 +545,50 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
       private TextView m_faceList;
     }
 
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES = 4;
+
     private final LayoutInflater m_layoutInflater;
-    private List<RibEntry> m_ribEntries;
+    private RibIndex.Query m_query;
+
+    /** Decoded pages, least recently used first */
+    private final Map<Integer, RibEntry[]> m_pages =
+      new LinkedHashMap<Integer, RibEntry[]>(MAX_PAGES + 1, 0.75f, true) {
+        @Override
+        protected boolean
+        removeEldestEntry(Map.Entry<Integer, RibEntry[]> eldest) {
+          return size() > MAX_PAGES;
+        }
+      };
   }
 
-  private class RouteListAsyncTask extends AsyncTask<Void, Void, Pair<List<RibEntry>, Exception>> {
+  private class RouteListAsyncTask extends AsyncTask<Void, Void, Pair<RibIndex, Exception>> {
+    RouteListAsyncTask(boolean isAutoRefresh) {
+      m_isAutoRefresh = isAutoRefresh;
+    }
+
     @Override
     protected void
     onPreExecute() {
       // Display progress bar
-      m_reloadingListProgressBar.setVisibility(View.VISIBLE);
+      if (!m_isAutoRefresh) {
+        m_reloadingListProgressBar.setVisibility(View.VISIBLE);
+      }
     }
 
     @Override
-    protected Pair<List<RibEntry>, Exception>
+    protected Pair<RibIndex, Exception>
     doInBackground(Void... params) {
       NfdcHelper nfdcHelper = new NfdcHelper();
       Exception returnException = null;
-      List<RibEntry> routes = null;
+      RibIndex index = null;
       try {
-        routes = nfdcHelper.ribList();
+        index = RibIndex.decode(nfdcHelper.ribListDataset().buf());
       } catch (Exception e) {
         returnException = e;
       }
       nfdcHelper.shutdown();
-      return new Pair<>(routes, returnException);
+      return new Pair<>(index, returnException);
     }
 
     @Override
@@ -422,18 +598,21 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
     }
 
     @Override
-    protected void onPostExecute(Pair<List<RibEntry>, Exception> result) {
+    protected void onPostExecute(Pair<RibIndex, Exception> result) {
       // Remove progress bar
       m_reloadingListProgressBar.setVisibility(View.GONE);
 
-      if (result.second != null) {
+      if (result.second != null && !m_isAutoRefresh) {
         Toast.makeText(getActivity(),
             "Error communicating with NFD (" + result.second.getMessage() + ")",
             Toast.LENGTH_LONG).show();
       }
 
       updateRouteList(result.first);
+      scheduleAutoRefresh();
     }
+
+    private final boolean m_isAutoRefresh;
   }
 
   private class RouteCreateAsyncTask extends AsyncTask<Void, Void, String> {
@@ -459,7 +638,6 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
                   NfdcHelper.formatFaceUri(m_faceUri)
               );
         }
-        nfdcHelper.shutdown();
         return "OK";
       } catch (FaceUri.CanonizeError e) {
         return "Error creating face (" + e.getMessage() + ")";
@@ -574,4 +752,26 @@ public class RouteListFragment extends ListFragment implements RouteCreateDialog
   private RouteRemoveAsyncTask m_routeRemoveAsyncTask;
 
   private RouteListAdapter m_routeListAdapter;
+
+  /** Index over the latest snapshot of the RIB */
+  private RibIndex m_ribIndex;
+
+  private TextView m_routeCountView;
+  private EditText m_prefixFilterView;
+  private EditText m_faceFilterView;
+
+  private final Handler m_handler = new Handler();
+
+  /** Flag that marks that the route list is retrieved periodically while visible */
+  private boolean m_isAutoRefreshEnabled = false;
+
+  private final Runnable m_autoRefreshRunnable = new Runnable() {
+    @Override
+    public void run() {
+      stopRouteListInfoRetrievalTask();
+      startRouteListInfoRetrievalTask(true);
+    }
+  };
+
+  private static final long AUTO_REFRESH_INTERVAL_MS = 5000;
 }
@@ -19,6 +19,7 @@ import android.widget.Toast;
 
 import net.named_data.nfd.wifidirect.model.Peer;
 import net.named_data.nfd.wifidirect.utils.NDNController;
+import net.named_data.nfd.wifidirect.utils.ProbeScheduler;
 import net.named_data.nfd.wifidirect.utils.WDBroadcastReceiver;
 
 import java.util.ArrayList;
@@ -115,6 +116,12 @@ public class WiFiDirectFragment extends Fragment {
                 } else {
                     String peerInfo = "FaceId: " + selectedPeer.getFaceId() + " - Recent Timeouts: " +
                             selectedPeer.getNumProbeTimeouts();
+                    ProbeScheduler.Stats stats = NDNController.getInstance().getProbeScheduler()
+                            .getStats((String)parent.getItemAtPosition(position));
+                    if (stats != null) {
+                        peerInfo += " - Probe RTT: " + stats.srtt + "ms - Probe interval: " +
+                                stats.interval + "ms";
+                    }
                     Toast.makeText(getActivity(), peerInfo, Toast.LENGTH_LONG).show();
                 }
             }
@@ -145,6 +152,14 @@ public class WiFiDirectFragment extends Fragment {
         startUiUpdateLoop();
     }
 
+    /**
+     * @return whether the user has turned NDN over WiFi Direct on
+     */
+    public static boolean isWifiDirectEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(PREF_WIFIDIRECT_STATUS, false);
+    }
+
     private void startNDNOverWifiDirect() {
         // this is set so that NDNController has context to start appropriate services
         NDNController.getInstance().setWifiDirectContext(getActivity());
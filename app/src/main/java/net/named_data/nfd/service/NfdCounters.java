@@ -0,0 +1,149 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.service;
+
+/**
+ * View over a snapshot of the counters and table sizes of the NFD running in this
+ * process, i.e., in NfdService's process.
+ *
+ * The snapshot is copied straight from NFD's tables by {@link NfdService#getNfdCounters},
+ * instead of being requested, signed, encoded and decoded through NFD's management
+ * protocol, and lands in an array allocated once: {@link #update()} allocates nothing,
+ * unless NFD has more faces than ever before.
+ *
+ * The array holds the forwarder-wide counters in HEADER_SIZE slots, followed by a record
+ * of FACE_RECORD_SIZE slots per face; the layout must match nfd-wrapper.cpp.
+ *
+ * A view is not thread-safe; use it from one thread.
+ */
+public class NfdCounters {
+
+  /**
+   * @param expectedNFaces Number of faces to make room for; more are made room for as
+   *                       NFD gets them.  If 0, only the forwarder-wide counters are copied.
+   */
+  public NfdCounters(int expectedNFaces) {
+    m_hasFaces = expectedNFaces > 0;
+    m_counters = new long[HEADER_SIZE + Math.max(expectedNFaces, 0) * FACE_RECORD_SIZE];
+  }
+
+  /**
+   * Take a new snapshot of the counters.
+   *
+   * @return false if NFD is not running, in which case the previous snapshot is kept
+   */
+  public boolean
+  update() {
+    int nFaces = NfdService.getNfdCounters(m_counters);
+    if (nFaces < 0) {
+      return false;
+    }
+
+    if (m_hasFaces && HEADER_SIZE + nFaces * FACE_RECORD_SIZE > m_counters.length) {
+      // some faces did not fit: make room for them, and a few more, and read again
+      m_counters = new long[HEADER_SIZE + (nFaces + nFaces / 2) * FACE_RECORD_SIZE];
+      nFaces = NfdService.getNfdCounters(m_counters);
+      if (nFaces < 0) {
+        return false;
+      }
+    }
+    m_nFaces = Math.min(nFaces, (m_counters.length - HEADER_SIZE) / FACE_RECORD_SIZE);
+    return true;
+  }
+
+  /** @return time NFD started, in milliseconds since the epoch */
+  public long getStartTimestamp() { return m_counters[START_TIMESTAMP]; }
+
+  /** @return time of the snapshot, in milliseconds since the epoch */
+  public long getCurrentTimestamp() { return m_counters[CURRENT_TIMESTAMP]; }
+
+  public long getNNameTreeEntries() { return m_counters[N_NAME_TREE_ENTRIES]; }
+  public long getNFibEntries() { return m_counters[N_FIB_ENTRIES]; }
+  public long getNPitEntries() { return m_counters[N_PIT_ENTRIES]; }
+  public long getNMeasurementsEntries() { return m_counters[N_MEASUREMENTS_ENTRIES]; }
+  public long getNCsEntries() { return m_counters[N_CS_ENTRIES]; }
+  public long getCsCapacity() { return m_counters[CS_CAPACITY]; }
+  public long getNInInterests() { return m_counters[N_IN_INTERESTS]; }
+  public long getNOutInterests() { return m_counters[N_OUT_INTERESTS]; }
+  public long getNInData() { return m_counters[N_IN_DATA]; }
+  public long getNOutData() { return m_counters[N_OUT_DATA]; }
+  public long getNInNacks() { return m_counters[N_IN_NACKS]; }
+  public long getNOutNacks() { return m_counters[N_OUT_NACKS]; }
+
+  /** @return number of faces in the snapshot, see the getFace* methods */
+  public int getNFaces() { return m_nFaces; }
+
+  public long getFaceId(int i) { return getFaceCounter(i, FACE_ID); }
+  public long getFaceNInInterests(int i) { return getFaceCounter(i, FACE_N_IN_INTERESTS); }
+  public long getFaceNOutInterests(int i) { return getFaceCounter(i, FACE_N_OUT_INTERESTS); }
+  public long getFaceNInData(int i) { return getFaceCounter(i, FACE_N_IN_DATA); }
+  public long getFaceNOutData(int i) { return getFaceCounter(i, FACE_N_OUT_DATA); }
+  public long getFaceNInNacks(int i) { return getFaceCounter(i, FACE_N_IN_NACKS); }
+  public long getFaceNOutNacks(int i) { return getFaceCounter(i, FACE_N_OUT_NACKS); }
+  public long getFaceNInBytes(int i) { return getFaceCounter(i, FACE_N_IN_BYTES); }
+  public long getFaceNOutBytes(int i) { return getFaceCounter(i, FACE_N_OUT_BYTES); }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private long
+  getFaceCounter(int i, int counter) {
+    if (i < 0 || i >= m_nFaces) {
+      throw new IndexOutOfBoundsException("Face " + i + " of " + m_nFaces);
+    }
+    return m_counters[HEADER_SIZE + i * FACE_RECORD_SIZE + counter];
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Forwarder-wide counters
+  private static final int START_TIMESTAMP = 0;
+  private static final int CURRENT_TIMESTAMP = 1;
+  private static final int N_NAME_TREE_ENTRIES = 2;
+  private static final int N_FIB_ENTRIES = 3;
+  private static final int N_PIT_ENTRIES = 4;
+  private static final int N_MEASUREMENTS_ENTRIES = 5;
+  private static final int N_CS_ENTRIES = 6;
+  private static final int CS_CAPACITY = 7;
+  private static final int N_IN_INTERESTS = 8;
+  private static final int N_OUT_INTERESTS = 9;
+  private static final int N_IN_DATA = 10;
+  private static final int N_OUT_DATA = 11;
+  private static final int N_IN_NACKS = 12;
+  private static final int N_OUT_NACKS = 13;
+  private static final int HEADER_SIZE = 16;
+
+  // Counters of a face, relative to its record
+  private static final int FACE_ID = 0;
+  private static final int FACE_N_IN_INTERESTS = 1;
+  private static final int FACE_N_OUT_INTERESTS = 2;
+  private static final int FACE_N_IN_DATA = 3;
+  private static final int FACE_N_OUT_DATA = 4;
+  private static final int FACE_N_IN_NACKS = 5;
+  private static final int FACE_N_OUT_NACKS = 6;
+  private static final int FACE_N_IN_BYTES = 7;
+  private static final int FACE_N_OUT_BYTES = 8;
+  private static final int FACE_RECORD_SIZE = 10;
+
+  private final boolean m_hasFaces;
+
+  private long[] m_counters;
+
+  private int m_nFaces = 0;
+}
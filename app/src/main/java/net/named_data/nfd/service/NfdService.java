@@ -23,17 +23,23 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.AsyncTask;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
+import android.os.SystemClock;
 
-import net.named_data.jndn.Name;
+import net.named_data.nfd.LogcatSettingsManager;
+import net.named_data.nfd.NfdSettingsManager;
 import net.named_data.nfd.utils.G;
+import net.named_data.nfd.utils.NfdLogReader;
 import net.named_data.nfd.utils.NfdcHelper;
+import net.named_data.nfd.utils.PermanentFaceRestorer;
 import net.named_data.nfd.utils.PermanentFaceUriAndRouteManager;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -79,7 +85,15 @@ public class NfdService extends Service {
    * Native API for starting the NFD.
    *
    * @param params NFD parameters.  Must include 'homePath' with absolute path of the home directory
-   *               for the service (ContextWrapper.getFilesDir().getAbsolutePath())
+   *               for the service (ContextWrapper.getFilesDir().getAbsolutePath()).  May include
+   *               'logPath' with absolute path of the file that NFD log records are written to
+   *               for {@link net.named_data.nfd.utils.NfdLogReader}, and 'log.&lt;module&gt;'
+   *               entries with the initial NFD log level of modules (see setNfdLogLevels).
+   *               May also include 'config.&lt;section&gt;' entries with a section in INFO
+   *               format that replaces the built-in one, e.g. 'config.tables' (see
+   *               {@link NfdSettingsManager#getConfigParams()}), and 'csSnapshotPath' with
+   *               absolute path of the file that the Content Store is loaded from on start and
+   *               saved to on stop (see saveNfdCsSnapshot)
    */
   public native static void
   startNfd(Map<String, String> params);
@@ -90,6 +104,43 @@ public class NfdService extends Service {
   public native static void
   stopNfd();
 
+  /**
+   * Native API for applying configuration changes to the running NFD, without dropping
+   * its faces and tables.  What NFD only reads at startup, notably the face system
+   * channels, keeps its settings until NFD restarts.
+   *
+   * @param params 'log.&lt;module&gt;' and 'config.&lt;section&gt;' entries as for
+   *               startNfd, which replace those given before
+   */
+  public native static void
+  reloadNfdConfig(Map<String, String> params);
+
+  /**
+   * Native API for saving the Content Store to the 'csSnapshotPath' file given to
+   * startNfd, in the background.  NFD also saves it when it stops.
+   */
+  public native static void
+  saveNfdCsSnapshot();
+
+  /**
+   * Native API for copying the forwarder-wide and per-face counters of the NFD running
+   * in this process, without going through its management protocol.  Prefer
+   * {@link NfdCounters}, which interprets them.
+   *
+   * @param counters Array to copy the counters to, laid out as described in NfdCounters;
+   *                 as many face records as fit are copied
+   * @return number of faces in NFD, which may exceed the records that fit, or -1 if NFD is
+   *         not running or did not answer in time
+   */
+  public native static int
+  getNfdCounters(long[] counters);
+
+  /**
+   * @return version of the native NFD
+   */
+  public native static String
+  getNfdVersion();
+
   /**
    * Native API for getting NFD status
    * @return if NFD is running return true; otherwise false.
@@ -100,6 +151,25 @@ public class NfdService extends Service {
   public native static List<String>
   getNfdLogModules();
 
+  /**
+   * Native API for setting the log levels of NFD modules at runtime.
+   *
+   * @param levels Map of module to NFD log level (e.g. "WARN").  May include
+   *               'default_level' for the modules that are not listed, which are
+   *               otherwise reset to the default level (WARN).
+   */
+  public native static void
+  setNfdLogLevels(Map<String, String> levels);
+
+  /**
+   * Native API for setting the log level of a single NFD module at runtime.
+   *
+   * @param module NFD module, as returned by getNfdLogModules()
+   * @param level NFD log level, e.g. "DEBUG"
+   */
+  public native static void
+  setNfdLogLevel(String module, String level);
+
   /** Message to start NFD Service */
   public static final int START_NFD_SERVICE = 1;
 
@@ -112,6 +182,31 @@ public class NfdService extends Service {
   /** Message to indicate that NFD Service is not running */
   public static final int NFD_SERVICE_STOPPED = 4;
 
+  /** Message to set NFD log levels; data maps module names to NFD log levels */
+  public static final int SET_NFD_LOG_LEVELS = 5;
+
+  /** Message to apply the current NFD settings to the running NFD */
+  public static final int RELOAD_NFD_CONFIG = 6;
+
+  /** Message to start receiving NFD_STATUS_UPDATE messages at the replyTo messenger */
+  public static final int SUBSCRIBE_NFD_STATUS = 7;
+
+  /** Message to stop receiving NFD_STATUS_UPDATE messages at the replyTo messenger */
+  public static final int UNSUBSCRIBE_NFD_STATUS = 8;
+
+  /** Message with the NFD forwarder status; see {@link NfdStatusStreamer} for its data */
+  public static final int NFD_STATUS_UPDATE = 9;
+
+  /** Message to set the log level of a single NFD module, leaving the others as they are;
+   *  data holds EXTRA_LOG_MODULE and EXTRA_LOG_LEVEL */
+  public static final int SET_NFD_LOG_LEVEL = 10;
+
+  /** NFD module in SET_NFD_LOG_LEVEL data */
+  public static final String EXTRA_LOG_MODULE = "module";
+
+  /** NFD log level in SET_NFD_LOG_LEVEL data, e.g. "DEBUG" */
+  public static final String EXTRA_LOG_LEVEL = "level";
+
   /** debug tag */
   public static final String TAG = NfdService.class.getName();
 
@@ -120,6 +215,7 @@ public class NfdService extends Service {
   public void onCreate() {
     G.Log(TAG, "NFDService::onCreate()");
     m_nfdServiceMessenger = new Messenger(new NfdServiceMessageHandler());
+    m_statusStreamer = new NfdStatusStreamer();
   }
 
   @Override
@@ -149,12 +245,30 @@ public class NfdService extends Service {
     return m_nfdServiceMessenger.getBinder();
   }
 
+  /**
+   * Save the Content Store while memory runs low, as the system may then kill the
+   * service without calling onDestroy().
+   */
+  @Override
+  public void
+  onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    long now = SystemClock.elapsedRealtime();
+    if (m_isNfdStarted && level >= TRIM_MEMORY_RUNNING_LOW &&
+        now - m_lastCsSnapshotTime >= CS_SNAPSHOT_MIN_INTERVAL_MS) {
+      m_lastCsSnapshotTime = now;
+      G.Log(TAG, "onTrimMemory(" + level + "): saving Content Store snapshot");
+      saveNfdCsSnapshot();
+    }
+  }
+
   @Override
   public void
   onDestroy() {
     G.Log("NFDService::onDestroy()");
 
     serviceStopNfd();
+    m_statusStreamer.shutdown();
     m_nfdServiceMessenger = null;
   }
 
@@ -170,17 +284,18 @@ public class NfdService extends Service {
       m_isNfdStarted = true;
       HashMap<String, String> params = new HashMap<>();
       params.put("homePath", getFilesDir().getAbsolutePath());
+      params.put("logPath", NfdLogReader.getLogFile(this).getAbsolutePath());
+      params.put("csSnapshotPath", new File(getFilesDir(), CS_SNAPSHOT_FILE_NAME).getAbsolutePath());
+      params.putAll(getConfigParams());
       Set<Map.Entry<String,String>> e = params.entrySet();
 
       startNfd(params);
 
-      // Example how to retrieve all available NFD log modules
-      List<String> modules = getNfdLogModules();
-      for (String module : modules) {
-        G.Log(module);
-      }
+      // let the log viewer know which tags it can read from NFD's log ring file
+      NfdLogReader.saveModules(this, getNfdLogModules());
+      m_statusStreamer.start();
 
-      // TODO: Reload NFD and NRD in memory structures (if any)
+      // NFD loads the Content Store snapshot as it starts
 
       // Keep Service alive; In event when service is started
       // from a Handler's message through binding with the service.
@@ -191,12 +306,25 @@ public class NfdService extends Service {
     }
   }
 
+  /**
+   * @return NFD log levels and configuration sections from the app settings, as
+   *         startNfd and reloadNfdConfig parameters
+   */
+  private HashMap<String, String>
+  getConfigParams() {
+    HashMap<String, String> params = new HashMap<>();
+    for (Map.Entry<String, String> level : LogcatSettingsManager.readNfdLogLevels(this).entrySet()) {
+      params.put("log." + level.getKey(), level.getValue());
+    }
+    params.putAll(new NfdSettingsManager(this).getConfigParams());
+    return params;
+  }
+
   private void createPermanentFaceUriAndRoute() {
     final long checkInterval = 1000;
     if (isNfdRunning()) {
       G.Log(TAG, "createPermanentFaceUriAndRoute: NFD is running, start executing task.");
-      new FaceCreateAsyncTask(getApplicationContext()).execute();
-      new RouteCreateAsyncTask(getApplicationContext()).execute();
+      new RestoreAsyncTask(getApplicationContext()).execute();
     } else {
       G.Log(TAG, "createPermanentFaceUriAndRoute: NFD is not started yet, delay " + String.valueOf(checkInterval) + " ms.");
       m_handler.postDelayed(new Runnable() {
@@ -217,8 +345,13 @@ public class NfdService extends Service {
     if (m_isNfdStarted) {
       m_isNfdStarted = false;
 
-      // TODO: Save NFD and NRD in memory data structures.
+      // no more counters are read from NFD while it stops
+      m_statusStreamer.stop();
+
+      // NFD saves the Content Store snapshot as it stops; routes are restored from
+      // PermanentFaceUriAndRouteManager, as face IDs do not survive a restart
       stopNfd();
+      NfdcHelper.clearFacePool();
       PermanentFaceUriAndRouteManager.clearFaceIds(getApplicationContext());
       stopSelf();
       G.Log(TAG, "serviceStopNfd()");
@@ -227,63 +360,22 @@ public class NfdService extends Service {
 
 
   /**
-   * Create all permanent faces in the background
+   * Restore all permanent faces and routes in the background
    */
-  private static class FaceCreateAsyncTask extends AsyncTask<Void, Void, String> {
+  private static class RestoreAsyncTask extends AsyncTask<Void, Void, Void> {
     Context context;
 
-    FaceCreateAsyncTask(Context ctx) {
+    RestoreAsyncTask(Context ctx) {
       this.context = ctx;
     }
 
     @Override
-    protected String
+    protected Void
     doInBackground(Void... params) {
-      NfdcHelper nfdcHelper = new NfdcHelper();
       try {
-        G.Log(TAG, "Try to create permanent face");
-        Set<String> permanentFace = PermanentFaceUriAndRouteManager.getPermanentFaceUris(this.context);
-        G.Log(TAG, "Permanent face list has " + permanentFace.size() + " item(s)");
-        for (String one : permanentFace) {
-          int faceId = nfdcHelper.faceCreate(one);
-          PermanentFaceUriAndRouteManager.addPermanentFaceId(this.context, faceId);
-          G.Log(TAG, "Create permanent face " + one);
-        }
+        new PermanentFaceRestorer(this.context).restore();
       } catch (Exception e) {
-        G.Log(TAG, "Error in FaceCreateAsyncTask: " + e.getMessage());
-      } finally {
-        nfdcHelper.shutdown();
-      }
-      return null;
-    }
-  }
-
-  /**
-   * Create all permanent routes in the background
-   */
-  private static class RouteCreateAsyncTask extends AsyncTask<Void, Void, String> {
-    Context context;
-    RouteCreateAsyncTask(Context ctx) {
-      this.context = ctx;
-    }
-
-    @Override
-    protected String
-    doInBackground(Void... params) {
-      NfdcHelper nfdcHelper = new NfdcHelper();
-      try {
-        G.Log(TAG, "Try to create permanent route");
-        Set<String[]> prefixAndFacePairs = PermanentFaceUriAndRouteManager.getPermanentRoutes(this.context);
-        G.Log(TAG, "Permanent face list has " + prefixAndFacePairs.size() + " item(s)");
-        for (String[] prefixAndFaceUri : prefixAndFacePairs) {
-          int faceId = nfdcHelper.faceCreate(prefixAndFaceUri[1]);
-          nfdcHelper.ribRegisterPrefix(new Name(prefixAndFaceUri[0]), faceId, 10, true, false);
-          G.Log(TAG, "Create permanent route" + prefixAndFaceUri[0] + " - " + prefixAndFaceUri[1]);
-        }
-      } catch (Exception e) {
-        G.Log(TAG, "Error in RouteCreateAsyncTask: " + e.getMessage());
-      } finally {
-        nfdcHelper.shutdown();
+        G.Log(TAG, "Error in RestoreAsyncTask: " + e.getMessage());
       }
       return null;
     }
@@ -307,6 +399,36 @@ public class NfdService extends Service {
         replyToClient(message, NfdService.NFD_SERVICE_STOPPED);
         break;
 
+      case NfdService.SET_NFD_LOG_LEVELS:
+        HashMap<String, String> levels = new HashMap<>();
+        Bundle data = message.getData();
+        for (String module : data.keySet()) {
+          levels.put(module, data.getString(module));
+        }
+        setNfdLogLevels(levels);
+        break;
+
+      case NfdService.SET_NFD_LOG_LEVEL:
+        setNfdLogLevel(message.getData().getString(EXTRA_LOG_MODULE),
+                       message.getData().getString(EXTRA_LOG_LEVEL));
+        break;
+
+      case NfdService.RELOAD_NFD_CONFIG:
+        reloadNfdConfig(getConfigParams());
+        break;
+
+      case NfdService.SUBSCRIBE_NFD_STATUS:
+        if (message.replyTo != null) {
+          m_statusStreamer.subscribe(message.replyTo);
+        }
+        break;
+
+      case NfdService.UNSUBSCRIBE_NFD_STATUS:
+        if (message.replyTo != null) {
+          m_statusStreamer.unsubscribe(message.replyTo);
+        }
+        break;
+
       default:
         super.handleMessage(message);
         break;
@@ -326,9 +448,20 @@ public class NfdService extends Service {
   /** Messenger to handle messages that are passed to the NfdService */
   private Messenger m_nfdServiceMessenger = null;
 
+  /** Streamer of the forwarder status to subscribed clients */
+  private NfdStatusStreamer m_statusStreamer = null;
+
   /** Flag that denotes if the NFD has been started */
   private boolean m_isNfdStarted = false;
 
   /** Handler to deal with timeout behaviors */
   private Handler m_handler = new Handler();
+
+  /** Time of the last Content Store snapshot requested on low memory */
+  private long m_lastCsSnapshotTime = 0;
+
+  private static final String CS_SNAPSHOT_FILE_NAME = "nfd-cs.snapshot";
+
+  /** Minimum interval between Content Store snapshots requested on low memory */
+  private static final long CS_SNAPSHOT_MIN_INTERVAL_MS = 60 * 1000;
 }
@@ -0,0 +1,73 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.service;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+
+import net.named_data.nfd.utils.G;
+
+/**
+ * One-off messages to NfdService from the UI, e.g. to apply changed settings to the
+ * running NFD.
+ *
+ * This is a separate class, rather than a static method of NfdService, so that callers
+ * in the UI process do not load NFD's native libraries.
+ */
+public class NfdServiceMessages {
+
+  /**
+   * Send a message to NfdService if it is running; otherwise drop it, as NFD reads the
+   * settings when it starts.  Binds to the service only for as long as it takes to send
+   * the message.
+   *
+   * @param context Context to bind from.
+   * @param message Message to send.
+   */
+  public static void sendIfRunning(Context context, final Message message) {
+    final Context appContext = context.getApplicationContext();
+    // No BIND_AUTO_CREATE: only talk to an already running NfdService
+    appContext.bindService(new Intent(appContext, NfdService.class), new ServiceConnection() {
+      @Override
+      public void onServiceConnected(ComponentName name, IBinder service) {
+        try {
+          new Messenger(service).send(message);
+        } catch (RemoteException e) {
+          G.Log("NfdServiceMessages: cannot send message " + message.what + ": " + e);
+        }
+        appContext.unbindService(this);
+      }
+
+      @Override
+      public void onServiceDisconnected(ComponentName name) {
+        // Nothing to do here
+      }
+    }, 0);
+  }
+
+  private NfdServiceMessages() {
+  }
+}
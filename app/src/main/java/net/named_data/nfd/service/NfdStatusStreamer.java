@@ -0,0 +1,315 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.service;
+
+import android.os.Bundle;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+
+import net.named_data.nfd.utils.G;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streamer of the NFD forwarder status to the clients of NfdService.
+ *
+ * While NFD is started and at least one client is subscribed, the counters of NFD are
+ * sampled once per interval on a single background thread, whatever the number of
+ * clients, and pushed to every client as a {@link NfdService#NFD_STATUS_UPDATE} message.
+ * Its data holds the counters and, from the second sample on, their rates per second.
+ *
+ * The counters are copied from the NFD running in this process (see {@link NfdCounters}),
+ * so sampling does not go through NFD's management protocol.
+ *
+ * Subscriptions and sampling all run on the streamer's thread, so no state is shared.
+ */
+public class NfdStatusStreamer {
+
+  NfdStatusStreamer() {
+    m_executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "NfdStatusStreamer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Start pushing status updates to a client; it gets the latest update right away.
+   */
+  void
+  subscribe(final Messenger client) {
+    m_executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (m_clients.contains(client)) {
+          return;
+        }
+        m_clients.add(client);
+        G.Log(TAG, "subscribe(): " + m_clients.size() + " client(s)");
+
+        if (m_lastUpdate != null) {
+          push(client, m_lastUpdate);
+        }
+        if (m_isNfdStarted && m_nextSample == null) {
+          m_nextSample = m_executor.schedule(m_sampleRunnable, 0, TimeUnit.MILLISECONDS);
+        }
+      }
+    });
+  }
+
+  /**
+   * Stop pushing status updates to a client; sampling stops with the last client.
+   */
+  void
+  unsubscribe(final Messenger client) {
+    m_executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        removeClient(client);
+      }
+    });
+  }
+
+  /**
+   * Start sampling, for the subscribed clients and those to come, once NFD started.
+   */
+  void
+  start() {
+    m_executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        m_isNfdStarted = true;
+        if (!m_clients.isEmpty() && m_nextSample == null) {
+          m_nextSample = m_executor.schedule(m_sampleRunnable, 0, TimeUnit.MILLISECONDS);
+        }
+      }
+    });
+  }
+
+  /**
+   * Stop sampling when NFD stops, keeping the subscriptions until it starts again, and
+   * forget the previous sample, so that no rate is computed across NFD runs.
+   *
+   * Sampling runs on the streamer's thread, so no sample is taken once this ran there.
+   */
+  void
+  stop() {
+    m_executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        m_isNfdStarted = false;
+        if (m_nextSample != null) {
+          m_nextSample.cancel(false);
+          m_nextSample = null;
+        }
+        m_hasPrevious = false;
+        m_lastUpdate = null;
+      }
+    });
+  }
+
+  void
+  shutdown() {
+    m_executor.shutdownNow();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private void
+  sample() {
+    m_nextSample = null;
+    if (m_clients.isEmpty() || !m_isNfdStarted) {
+      return;
+    }
+
+    // the two snapshots take turns, so that sampling allocates no counters
+    NfdCounters status = m_previous;
+    m_previous = m_current;
+    m_current = status;
+
+    boolean isSampled = status.update();
+    if (isSampled) {
+      Bundle update = makeUpdate(status, m_hasPrevious ? m_previous : null);
+      m_hasPrevious = true;
+      m_lastUpdate = update;
+      for (Messenger client : new ArrayList<>(m_clients)) {
+        push(client, update);
+      }
+    }
+    else {
+      G.Log(TAG, "NFD is not running");
+      m_hasPrevious = false;
+    }
+
+    if (!m_clients.isEmpty() && m_isNfdStarted) {
+      m_nextSample = m_executor.schedule(m_sampleRunnable,
+                                         isSampled ? SAMPLE_INTERVAL_MS : RETRY_INTERVAL_MS,
+                                         TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * @param previous Counters the rates are computed against, or null
+   */
+  private Bundle
+  makeUpdate(NfdCounters status, NfdCounters previous) {
+    if (m_version == null) {
+      m_version = NfdService.getNfdVersion();
+    }
+
+    Bundle update = new Bundle();
+    update.putString(VERSION, m_version);
+    update.putLong(UPTIME_MS, status.getCurrentTimestamp() - status.getStartTimestamp());
+    update.putLong(N_NAME_TREE_ENTRIES, status.getNNameTreeEntries());
+    update.putLong(N_FIB_ENTRIES, status.getNFibEntries());
+    update.putLong(N_PIT_ENTRIES, status.getNPitEntries());
+    update.putLong(N_MEASUREMENTS_ENTRIES, status.getNMeasurementsEntries());
+    update.putLong(N_CS_ENTRIES, status.getNCsEntries());
+    update.putLong(N_IN_INTERESTS, status.getNInInterests());
+    update.putLong(N_OUT_INTERESTS, status.getNOutInterests());
+    update.putLong(N_IN_DATA, status.getNInData());
+    update.putLong(N_OUT_DATA, status.getNOutData());
+    update.putLong(N_IN_NACKS, status.getNInNacks());
+    update.putLong(N_OUT_NACKS, status.getNOutNacks());
+
+    // Rates use NFD's own timestamps, so that the delay of sampling does not skew them;
+    // a different start timestamp means NFD restarted and its counters started over
+    if (previous == null || previous.getStartTimestamp() != status.getStartTimestamp()) {
+      return update;
+    }
+    long intervalMs = status.getCurrentTimestamp() - previous.getCurrentTimestamp();
+    if (intervalMs <= 0) {
+      return update;
+    }
+    double seconds = intervalMs / 1000.0;
+
+    update.putDouble(IN_INTERESTS_RATE,
+                     (status.getNInInterests() - previous.getNInInterests()) / seconds);
+    update.putDouble(OUT_INTERESTS_RATE,
+                     (status.getNOutInterests() - previous.getNOutInterests()) / seconds);
+    update.putDouble(IN_DATA_RATE, (status.getNInData() - previous.getNInData()) / seconds);
+    update.putDouble(OUT_DATA_RATE, (status.getNOutData() - previous.getNOutData()) / seconds);
+    update.putDouble(IN_NACKS_RATE, (status.getNInNacks() - previous.getNInNacks()) / seconds);
+    update.putDouble(OUT_NACKS_RATE, (status.getNOutNacks() - previous.getNOutNacks()) / seconds);
+    update.putDouble(PIT_GROWTH_RATE,
+                     (status.getNPitEntries() - previous.getNPitEntries()) / seconds);
+    update.putDouble(CS_GROWTH_RATE,
+                     (status.getNCsEntries() - previous.getNCsEntries()) / seconds);
+    return update;
+  }
+
+  private void
+  push(Messenger client, Bundle update) {
+    Message message = Message.obtain(null, NfdService.NFD_STATUS_UPDATE);
+    message.setData(update);
+    try {
+      client.send(message);
+    }
+    catch (RemoteException e) {
+      // The client went away without unsubscribing
+      removeClient(client);
+    }
+  }
+
+  private void
+  removeClient(Messenger client) {
+    if (m_clients.remove(client)) {
+      G.Log(TAG, "unsubscribe(): " + m_clients.size() + " client(s)");
+    }
+    if (m_clients.isEmpty() && m_nextSample != null) {
+      m_nextSample.cancel(false);
+      m_nextSample = null;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /** NFD version, String */
+  public static final String VERSION = "version";
+
+  /** Time since NFD started, in milliseconds */
+  public static final String UPTIME_MS = "uptimeMs";
+
+  // Counters, long
+  public static final String N_NAME_TREE_ENTRIES = "nNameTreeEntries";
+  public static final String N_FIB_ENTRIES = "nFibEntries";
+  public static final String N_PIT_ENTRIES = "nPitEntries";
+  public static final String N_MEASUREMENTS_ENTRIES = "nMeasurementsEntries";
+  public static final String N_CS_ENTRIES = "nCsEntries";
+  public static final String N_IN_INTERESTS = "nInInterests";
+  public static final String N_OUT_INTERESTS = "nOutInterests";
+  public static final String N_IN_DATA = "nInData";
+  public static final String N_OUT_DATA = "nOutData";
+  public static final String N_IN_NACKS = "nInNacks";
+  public static final String N_OUT_NACKS = "nOutNacks";
+
+  // Rates per second, double; absent in the first update after NFD (re)starts
+  public static final String IN_INTERESTS_RATE = "inInterestsRate";
+  public static final String OUT_INTERESTS_RATE = "outInterestsRate";
+  public static final String IN_DATA_RATE = "inDataRate";
+  public static final String OUT_DATA_RATE = "outDataRate";
+  public static final String IN_NACKS_RATE = "inNacksRate";
+  public static final String OUT_NACKS_RATE = "outNacksRate";
+  public static final String PIT_GROWTH_RATE = "pitGrowthRate";
+  public static final String CS_GROWTH_RATE = "csGrowthRate";
+
+  private static final String TAG = NfdStatusStreamer.class.getName();
+
+  private static final long SAMPLE_INTERVAL_MS = 1000;
+
+  /** Interval before the next attempt when NFD is not running, e.g. while it starts */
+  private static final long RETRY_INTERVAL_MS = 500;
+
+  private final ScheduledExecutorService m_executor;
+
+  private final Runnable m_sampleRunnable = new Runnable() {
+    @Override
+    public void run() {
+      sample();
+    }
+  };
+
+  /** Subscribed clients; accessed on the streamer's thread only */
+  private final List<Messenger> m_clients = new ArrayList<>();
+
+  private ScheduledFuture<?> m_nextSample = null;
+
+  /** Whether NfdService started NFD, so that it can be sampled */
+  private boolean m_isNfdStarted = false;
+
+  /** Latest counters and the previous ones, which rates are computed against */
+  private NfdCounters m_current = new NfdCounters(0);
+  private NfdCounters m_previous = new NfdCounters(0);
+  private boolean m_hasPrevious = false;
+
+  private String m_version = null;
+
+  private Bundle m_lastUpdate = null;
+}
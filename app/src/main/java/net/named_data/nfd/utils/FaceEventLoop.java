@@ -0,0 +1,677 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.ForwardingFlags;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.NetworkNack;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.OnNetworkNack;
+import net.named_data.jndn.OnRegisterFailed;
+import net.named_data.jndn.OnRegisterSuccess;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.SecurityException;
+import net.named_data.jndn.transport.TcpTransport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single dispatcher thread that owns a localhost Face shared by the application.
+ *
+ * All registered prefixes and outgoing Interests of the application are multiplexed over
+ * this Face, and all of their callbacks are invoked on the dispatcher thread.  The Face
+ * must only be used from the dispatcher thread: work from other threads is submitted
+ * with post() or postDelayed(), which wake the dispatcher immediately.
+ *
+ * The Face runs on a {@link SelectableTcpTransport}, so the dispatcher does not poll:
+ * between tasks it blocks on the Face's socket until a packet arrives, a task is posted
+ * or due, or an outstanding Interest or prefix registration times out.  When nothing is
+ * scheduled or outstanding, it blocks until a packet arrives or a task is posted.
+ *
+ * jndn never connects a Face again once its connection failed (e.g. NFD was not running
+ * yet, or restarted).  When sending or receiving on the Face fails, the dispatcher
+ * replaces it with a new Face, with an increasing delay while NFD stays unreachable.
+ * Prefixes registered with registerPrefix() are registered again on the new Face, the
+ * OnReconnected listeners are notified, and then the Interests that were outstanding on
+ * the old Face time out.
+ */
+public class FaceEventLoop
+{
+  /**
+   * Notified on the dispatcher thread after the Face has been replaced, e.g. to
+   * subscribe again to a stream that NFD restarted
+   */
+  public interface OnReconnected
+  {
+    void
+    onReconnected();
+  }
+
+  /**
+   * @return the application-wide event loop, started on first use
+   */
+  public static synchronized FaceEventLoop
+  getInstance()
+  {
+    if (s_instance == null) {
+      try {
+        s_instance = new FaceEventLoop(new TcpTransport.ConnectionInfo("localhost"), "FaceEventLoop");
+      }
+      catch (IOException e) {
+        throw new IllegalStateException("Unable to create the event loop's transport", e);
+      }
+      s_instance.start();
+    }
+    return s_instance;
+  }
+
+  /**
+   * Create a dispatcher whose Face connects to the forwarder at connectionInfo
+   */
+  public FaceEventLoop(TcpTransport.ConnectionInfo connectionInfo, String threadName)
+    throws IOException
+  {
+    m_transport = new SelectableTcpTransport();
+    m_connectionInfo = connectionInfo;
+    m_face = new Face(m_transport, connectionInfo);
+    m_thread = new Thread(new Runnable() {
+      @Override
+      public void run()
+      {
+        loop();
+      }
+    }, threadName);
+    m_thread.setDaemon(true);
+  }
+
+  public void
+  start()
+  {
+    m_isRunning = true;
+    m_thread.start();
+  }
+
+  /**
+   * Stop the dispatcher thread and shut down the Face.  Pending tasks are dropped.  If this
+   * is the application-wide event loop, the next getInstance() starts a new one.
+   */
+  public void
+  stop()
+  {
+    synchronized (FaceEventLoop.class) {
+      if (s_instance == this) {
+        s_instance = null;
+      }
+    }
+
+    synchronized (m_lock) {
+      m_isRunning = false;
+      m_tasks.clear();
+    }
+    m_transport.wakeup();
+  }
+
+  /**
+   * @return the underlying Face; may only be used from the dispatcher thread, and is
+   *         replaced when its connection fails, so it must not be kept across tasks
+   */
+  public Face
+  getFace()
+  {
+    return m_face;
+  }
+
+  /**
+   * Set the command signing info of the Face, and of the Faces that replace it.  Must be
+   * called on the dispatcher thread.
+   */
+  public void
+  setCommandSigningInfo(KeyChain keyChain, Name certificateName)
+  {
+    checkLoopThread();
+    m_keyChain = keyChain;
+    m_certificateName = certificateName;
+    m_face.setCommandSigningInfo(keyChain, certificateName);
+  }
+
+  /**
+   * Add a listener to be notified whenever the Face has been replaced.  May be called
+   * from any thread.
+   */
+  public void
+  addOnReconnected(OnReconnected onReconnected)
+  {
+    m_onReconnected.add(onReconnected);
+  }
+
+  public void
+  removeOnReconnected(OnReconnected onReconnected)
+  {
+    m_onReconnected.remove(onReconnected);
+  }
+
+  public boolean
+  isLoopThread()
+  {
+    return Thread.currentThread() == m_thread;
+  }
+
+  /**
+   * Run task on the dispatcher thread as soon as possible
+   */
+  public void
+  post(Runnable task)
+  {
+    postDelayed(task, 0);
+  }
+
+  /**
+   * Run task on the dispatcher thread after at least delayMs milliseconds
+   */
+  public void
+  postDelayed(Runnable task, long delayMs)
+  {
+    synchronized (m_lock) {
+      m_tasks.add(new Task(task, System.currentTimeMillis() + delayMs, m_taskSequence++));
+    }
+    m_transport.wakeup();
+  }
+
+  /**
+   * Express an Interest on the shared Face.  Must be called on the dispatcher thread.
+   *
+   * @return the pending Interest id, for use with removePendingInterest()
+   */
+  public long
+  expressInterest(Interest interest, final OnData onData, final OnTimeout onTimeout,
+                  final OnNetworkNack onNetworkNack) throws IOException
+  {
+    checkLoopThread();
+    final long[] id = new long[1];
+    try {
+      id[0] = expressOnFace(interest, onData, onTimeout, onNetworkNack, id);
+    }
+    catch (IOException e) {
+      onFaceError(e);
+      throw e;
+    }
+    double lifetime = interest.getInterestLifetimeMilliseconds();
+    m_timeouts.put(id[0], System.currentTimeMillis() +
+                          (lifetime >= 0 ? (long)lifetime : DEFAULT_INTEREST_LIFETIME_MS));
+    m_pendingInterests.put(id[0], new PendingInterest(interest, onTimeout));
+    return id[0];
+  }
+
+  public long
+  expressInterest(Interest interest, OnData onData, OnTimeout onTimeout) throws IOException
+  {
+    return expressInterest(interest, onData, onTimeout, null);
+  }
+
+  /**
+   * Cancel an Interest expressed with expressInterest(), without invoking its callbacks.
+   * Must be called on the dispatcher thread.
+   */
+  public void
+  removePendingInterest(long pendingInterestId)
+  {
+    checkLoopThread();
+    m_face.removePendingInterest(pendingInterestId);
+    onInterestSatisfied(pendingInterestId);
+  }
+
+  /**
+   * Register a prefix on the shared Face, and on the Faces that replace it until the
+   * prefix is removed with removeRegisteredPrefix() or a registration fails.  Must be
+   * called on the dispatcher thread, after setCommandSigningInfo().
+   *
+   * onRegisterSuccess is called on every successful registration, and onRegisterFailed
+   * once the prefix is no longer registered.  When the Face cannot reach NFD, the prefix
+   * is registered once the Face has been replaced.
+   *
+   * @return the registration id, for use with removeRegisteredPrefix(); the id passed to
+   *         onRegisterSuccess
+   */
+  public long
+  registerPrefix(Name prefix, OnInterestCallback onInterest, OnRegisterFailed onRegisterFailed,
+                 OnRegisterSuccess onRegisterSuccess, ForwardingFlags flags)
+    throws SecurityException
+  {
+    checkLoopThread();
+    Registration registration = new Registration(++m_lastRegistrationId, prefix, onInterest,
+                                                 onRegisterFailed, onRegisterSuccess, flags);
+    m_registrations.put(registration.id, registration);
+    try {
+      sendRegistration(registration);
+    }
+    catch (SecurityException e) {
+      m_registrations.remove(registration.id);
+      throw e;
+    }
+    return registration.id;
+  }
+
+  /**
+   * Stop handling a prefix registered with registerPrefix(), without invoking its
+   * callbacks.  Must be called on the dispatcher thread.
+   */
+  public void
+  removeRegisteredPrefix(long registrationId)
+  {
+    checkLoopThread();
+    Registration registration = m_registrations.remove(registrationId);
+    if (registration != null) {
+      m_timeouts.remove(registration);
+      m_face.removeRegisteredPrefix(registration.registeredPrefixId);
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private void
+  checkLoopThread()
+  {
+    if (!isLoopThread()) {
+      throw new IllegalStateException("Face may only be used from the FaceEventLoop thread");
+    }
+  }
+
+  private long
+  expressOnFace(Interest interest, final OnData onData, final OnTimeout onTimeout,
+                final OnNetworkNack onNetworkNack, final long[] id) throws IOException
+  {
+    return m_face.expressInterest(interest,
+      new OnData() {
+        @Override
+        public void onData(Interest interest, Data data)
+        {
+          onInterestSatisfied(id[0]);
+          m_reconnectDelay = MIN_RECONNECT_DELAY_MS;
+          onData.onData(interest, data);
+        }
+      },
+      new OnTimeout() {
+        @Override
+        public void onTimeout(Interest interest)
+        {
+          onInterestSatisfied(id[0]);
+          if (onTimeout != null) {
+            onTimeout.onTimeout(interest);
+          }
+        }
+      },
+      new OnNetworkNack() {
+        @Override
+        public void onNetworkNack(Interest interest, NetworkNack networkNack)
+        {
+          onInterestSatisfied(id[0]);
+          if (onNetworkNack != null) {
+            onNetworkNack.onNetworkNack(interest, networkNack);
+          }
+          else if (onTimeout != null) {
+            // treat the Nack like a timeout when the caller has no Nack handler
+            onTimeout.onTimeout(interest);
+          }
+        }
+      });
+  }
+
+  /**
+   * Register the prefix on the current Face
+   *
+   * @return false if the Face failed to send the command, in which case it is replaced and
+   *         the prefix registered again later
+   */
+  private boolean
+  sendRegistration(final Registration registration) throws SecurityException
+  {
+    try {
+      registration.registeredPrefixId = m_face.registerPrefix(registration.prefix,
+        registration.onInterest,
+        new OnRegisterFailed() {
+          @Override
+          public void onRegisterFailed(Name prefix)
+          {
+            m_timeouts.remove(registration);
+            if (m_registrations.remove(registration.id) != null &&
+                registration.onRegisterFailed != null) {
+              registration.onRegisterFailed.onRegisterFailed(prefix);
+            }
+          }
+        },
+        new OnRegisterSuccess() {
+          @Override
+          public void onRegisterSuccess(Name prefix, long registeredPrefixId)
+          {
+            m_timeouts.remove(registration);
+            m_reconnectDelay = MIN_RECONNECT_DELAY_MS;
+            if (registration.onRegisterSuccess != null) {
+              registration.onRegisterSuccess.onRegisterSuccess(prefix, registration.id);
+            }
+          }
+        },
+        registration.flags);
+    }
+    catch (IOException e) {
+      onFaceError(e);
+      return false;
+    }
+    // the registration command is expressed by jndn, so its timeout is tracked here
+    m_timeouts.put(registration, System.currentTimeMillis() + REGISTER_TIMEOUT_MS);
+    return true;
+  }
+
+  /**
+   * Schedule the replacement of the Face, unless already scheduled
+   */
+  private void
+  onFaceError(IOException e)
+  {
+    if (m_reconnectTime != Long.MAX_VALUE) {
+      return;
+    }
+
+    G.Log(TAG, "Face error (" + e.getMessage() + "), reconnecting in " + m_reconnectDelay + " ms");
+    m_reconnectTime = System.currentTimeMillis() + m_reconnectDelay;
+    m_reconnectDelay = Math.min(m_reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+  }
+
+  /**
+   * Replace the Face, whose connection failed, with a new one that connects on first use
+   */
+  private void
+  reconnect()
+  {
+    m_reconnectTime = Long.MAX_VALUE;
+    m_face.shutdown();
+    m_face = new Face(m_transport, m_connectionInfo);
+    if (m_keyChain != null) {
+      m_face.setCommandSigningInfo(m_keyChain, m_certificateName);
+    }
+
+    // nothing outstanding on the old Face will be answered
+    m_timeouts.clear();
+    List<PendingInterest> lostInterests = new ArrayList<>(m_pendingInterests.values());
+    m_pendingInterests.clear();
+
+    for (Registration registration : new ArrayList<>(m_registrations.values())) {
+      try {
+        if (!sendRegistration(registration)) {
+          // still unreachable, the next Face registers the remaining prefixes
+          break;
+        }
+      }
+      catch (SecurityException e) {
+        G.Log(TAG, "Unable to register " + registration.prefix.toUri() + " again: " + e);
+        m_registrations.remove(registration.id);
+      }
+    }
+
+    try {
+      for (OnReconnected onReconnected : m_onReconnected) {
+        onReconnected.onReconnected();
+      }
+      for (PendingInterest pendingInterest : lostInterests) {
+        if (pendingInterest.onTimeout != null) {
+          pendingInterest.onTimeout.onTimeout(pendingInterest.interest);
+        }
+      }
+    }
+    catch (RuntimeException e) {
+      G.Log(TAG, "Uncaught exception in reconnection callback: " + e);
+    }
+  }
+
+  private void
+  onInterestSatisfied(long pendingInterestId)
+  {
+    m_timeouts.remove(pendingInterestId);
+    m_pendingInterests.remove(pendingInterestId);
+  }
+
+  /**
+   * @return the earliest time at which an outstanding Interest or registration times out,
+   *         or Long.MAX_VALUE if nothing is outstanding
+   */
+  private long
+  getNextTimeout()
+  {
+    long next = Long.MAX_VALUE;
+    for (long timeout : m_timeouts.values()) {
+      next = Math.min(next, timeout);
+    }
+    return next;
+  }
+
+  /**
+   * Forget timeouts that have passed: the Face has had the chance to report them, and
+   * must not keep the dispatcher from blocking if it did not.
+   */
+  private void
+  dropPassedTimeouts(long now)
+  {
+    Iterator<Map.Entry<Object, Long>> it = m_timeouts.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Object, Long> entry = it.next();
+      if (entry.getValue() < now) {
+        it.remove();
+        m_pendingInterests.remove(entry.getKey());
+      }
+    }
+  }
+
+  private void
+  loop()
+  {
+    while (true) {
+      Task task;
+      long waitUntil;
+      synchronized (m_lock) {
+        if (!m_isRunning) {
+          break;
+        }
+
+        if (m_reconnectTime <= System.currentTimeMillis()) {
+          reconnect();
+        }
+
+        task = m_tasks.peek();
+        if (task != null && task.dueTime <= System.currentTimeMillis()) {
+          m_tasks.poll();
+          waitUntil = 0;
+        }
+        else {
+          waitUntil = (task == null) ? Long.MAX_VALUE : task.dueTime;
+          task = null;
+        }
+      }
+
+      if (task != null) {
+        try {
+          task.runnable.run();
+        }
+        catch (RuntimeException e) {
+          G.Log(TAG, "Uncaught exception in task: " + e);
+        }
+      }
+      else {
+        // a task posted meanwhile has called wakeup(), so this returns at once
+        waitUntil = Math.min(waitUntil, Math.min(getNextTimeout(), m_reconnectTime));
+        long timeout = (waitUntil == Long.MAX_VALUE) ?
+                       Long.MAX_VALUE : Math.max(waitUntil - System.currentTimeMillis(), 1);
+        try {
+          m_transport.waitForEvents(timeout);
+        }
+        catch (IOException e) {
+          G.Log(TAG, "Selector error: " + e.getMessage());
+        }
+      }
+
+      long now = System.currentTimeMillis();
+      try {
+        m_face.processEvents();
+      }
+      catch (IOException e) {
+        onFaceError(e);
+      }
+      catch (EncodingException e) {
+        G.Log(TAG, "Encoding error: " + e.getMessage());
+      }
+      dropPassedTimeouts(now);
+    }
+
+    m_face.shutdown();
+    try {
+      m_transport.release();
+    }
+    catch (IOException e) {
+      G.Log(TAG, "Unable to release transport: " + e.getMessage());
+    }
+    G.Log(TAG, "Stopped " + m_thread.getName());
+  }
+
+  private static class PendingInterest
+  {
+    PendingInterest(Interest interest, OnTimeout onTimeout)
+    {
+      this.interest = interest;
+      this.onTimeout = onTimeout;
+    }
+
+    final Interest interest;
+    final OnTimeout onTimeout;
+  }
+
+  private static class Registration
+  {
+    Registration(long id, Name prefix, OnInterestCallback onInterest,
+                 OnRegisterFailed onRegisterFailed, OnRegisterSuccess onRegisterSuccess,
+                 ForwardingFlags flags)
+    {
+      this.id = id;
+      this.prefix = prefix;
+      this.onInterest = onInterest;
+      this.onRegisterFailed = onRegisterFailed;
+      this.onRegisterSuccess = onRegisterSuccess;
+      this.flags = flags;
+    }
+
+    final long id;
+    final Name prefix;
+    final OnInterestCallback onInterest;
+    final OnRegisterFailed onRegisterFailed;
+    final OnRegisterSuccess onRegisterSuccess;
+    final ForwardingFlags flags;
+
+    /** Id of the registration on the current Face */
+    long registeredPrefixId = -1;
+  }
+
+  private static class Task implements Comparable<Task>
+  {
+    Task(Runnable runnable, long dueTime, long sequence)
+    {
+      this.runnable = runnable;
+      this.dueTime = dueTime;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int
+    compareTo(Task other)
+    {
+      if (dueTime != other.dueTime) {
+        return dueTime < other.dueTime ? -1 : 1;
+      }
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+
+    final Runnable runnable;
+    final long dueTime;
+    final long sequence;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = "FaceEventLoop";
+
+  /** Lifetime jndn gives Interests that do not set one */
+  private static final long DEFAULT_INTEREST_LIFETIME_MS = 4000;
+
+  /** Upper bound of the lifetime of jndn's prefix registration commands */
+  private static final long REGISTER_TIMEOUT_MS = 4000;
+
+  /** Delay before replacing a failed Face, doubled while NFD stays unreachable */
+  private static final long MIN_RECONNECT_DELAY_MS = 100;
+  private static final long MAX_RECONNECT_DELAY_MS = 30000;
+
+  private static FaceEventLoop s_instance;
+
+  /** Shared by the successive Faces: shutting a Face down only closes the socket */
+  private final SelectableTcpTransport m_transport;
+  private final TcpTransport.ConnectionInfo m_connectionInfo;
+  private final Thread m_thread;
+  private final Object m_lock = new Object();
+
+  /** Scheduled tasks, guarded by m_lock */
+  private final PriorityQueue<Task> m_tasks = new PriorityQueue<>();
+  private long m_taskSequence = 0;
+  private boolean m_isRunning = false;
+
+  /**
+   * Time at which each outstanding Interest (by pending Interest id) or prefix registration
+   * times out.  Accessed only on the dispatcher thread
+   */
+  private final Map<Object, Long> m_timeouts = new HashMap<>();
+
+  // The state below is accessed only on the dispatcher thread, except m_face, which is
+  // created by the constructor, and m_onReconnected
+
+  private Face m_face;
+  private KeyChain m_keyChain = null;
+  private Name m_certificateName = null;
+
+  /** Outstanding Interests, which time out when the Face is replaced */
+  private final Map<Long, PendingInterest> m_pendingInterests = new HashMap<>();
+
+  /** Live prefix registrations by registration id, made again on a new Face */
+  private final Map<Long, Registration> m_registrations = new LinkedHashMap<>();
+  private long m_lastRegistrationId = 0;
+
+  /** Time at which to replace the Face, Long.MAX_VALUE while it is usable */
+  private long m_reconnectTime = Long.MAX_VALUE;
+  private long m_reconnectDelay = MIN_RECONNECT_DELAY_MS;
+
+  private final List<OnReconnected> m_onReconnected = new CopyOnWriteArrayList<>();
+}
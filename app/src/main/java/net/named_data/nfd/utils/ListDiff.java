@@ -0,0 +1,193 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two snapshots of a list whose items are identified by a key, e.g.
+ * faces by face ID or RIB entries by prefix, in time linear in the size of the lists.
+ *
+ * Rows whose key is only in the new list are inserted, those whose key is only in the
+ * old list are removed, and those in both whose displayed content differs are changed.
+ * A list view can then leave unchanged rows alone and skip the update altogether when
+ * nothing changed.
+ *
+ * @param <K> Key of the items; must implement equals() and hashCode()
+ * @param <T> Item
+ */
+public class ListDiff<K, T>
+{
+  public interface ItemCallback<K, T>
+  {
+    K
+    getKey(T item);
+
+    /**
+     * @return whether the two items, which have the same key, are displayed the same
+     */
+    boolean
+    isSameContent(T oldItem, T newItem);
+  }
+
+  /**
+   * Compute the difference between two snapshots.  Neither list may be modified
+   * afterwards, as the diff refers to them.
+   *
+   * @param oldList Previous snapshot, or null if there was none
+   */
+  public static <K, T> ListDiff<K, T>
+  compute(List<T> oldList, List<T> newList, ItemCallback<K, T> callback)
+  {
+    if (oldList == null) {
+      oldList = Collections.emptyList();
+    }
+
+    Map<K, Integer> oldPositions = new HashMap<>(oldList.size() * 2);
+    for (int i = 0; i < oldList.size(); i++) {
+      oldPositions.put(callback.getKey(oldList.get(i)), i);
+    }
+
+    List<Integer> inserted = new ArrayList<>();
+    List<Integer> changed = new ArrayList<>();
+    boolean[] isKept = new boolean[oldList.size()];
+    boolean isReordered = false;
+    int lastOldPosition = -1;
+    for (int i = 0; i < newList.size(); i++) {
+      T newItem = newList.get(i);
+      Integer oldPosition = oldPositions.get(callback.getKey(newItem));
+      if (oldPosition == null) {
+        inserted.add(i);
+        continue;
+      }
+
+      isKept[oldPosition] = true;
+      if (oldPosition < lastOldPosition) {
+        isReordered = true;
+      }
+      lastOldPosition = oldPosition;
+      if (!callback.isSameContent(oldList.get(oldPosition), newItem)) {
+        changed.add(i);
+      }
+    }
+
+    List<Integer> removed = new ArrayList<>();
+    for (int i = 0; i < isKept.length; i++) {
+      if (!isKept[i]) {
+        removed.add(i);
+      }
+    }
+
+    return new ListDiff<>(oldList, newList, inserted, removed, changed, isReordered);
+  }
+
+  public List<T>
+  getOldList()
+  {
+    return m_oldList;
+  }
+
+  public List<T>
+  getNewList()
+  {
+    return m_newList;
+  }
+
+  /**
+   * @return positions in the new list of the inserted items, in ascending order
+   */
+  public List<Integer>
+  getInserted()
+  {
+    return m_inserted;
+  }
+
+  /**
+   * @return positions in the old list of the removed items, in ascending order
+   */
+  public List<Integer>
+  getRemoved()
+  {
+    return m_removed;
+  }
+
+  /**
+   * @return positions in the new list of the changed items, in ascending order
+   */
+  public List<Integer>
+  getChanged()
+  {
+    return m_changed;
+  }
+
+  /**
+   * @return whether rows were inserted, removed or moved, i.e., whether the position of
+   *         unchanged rows may differ between the two lists
+   */
+  public boolean
+  isStructural()
+  {
+    return !m_inserted.isEmpty() || !m_removed.isEmpty() || m_isReordered;
+  }
+
+  /**
+   * @return whether both lists are displayed the same
+   */
+  public boolean
+  isEmpty()
+  {
+    return !isStructural() && m_changed.isEmpty();
+  }
+
+  @Override
+  public String
+  toString()
+  {
+    return m_inserted.size() + " inserted, " + m_removed.size() + " removed, " +
+      m_changed.size() + " changed" + (m_isReordered ? ", reordered" : "");
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private
+  ListDiff(List<T> oldList, List<T> newList, List<Integer> inserted, List<Integer> removed,
+           List<Integer> changed, boolean isReordered)
+  {
+    m_oldList = oldList;
+    m_newList = newList;
+    m_inserted = inserted;
+    m_removed = removed;
+    m_changed = changed;
+    m_isReordered = isReordered;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final List<T> m_oldList;
+  private final List<T> m_newList;
+  private final List<Integer> m_inserted;
+  private final List<Integer> m_removed;
+  private final List<Integer> m_changed;
+  private final boolean m_isReordered;
+}
@@ -0,0 +1,129 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import android.os.Handler;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces lines added by a capture thread into batches handled on a Handler's thread,
+ * e.g. the UI thread, so that the handler sees one message per batch rather than one per
+ * line.
+ *
+ * A batch is flushed at most intervalMs after its first line, or as soon as maxLines
+ * lines are pending.  Once cancel() has run on the handler's thread, no flush runs any
+ * more, even one the capture thread posts afterwards; use a new instance for every
+ * capture session.
+ */
+public class LogFlushScheduler
+{
+  /**
+   * @param handler Handler on whose thread flush runs.
+   * @param flush Takes in the pending lines.
+   * @param intervalMs Maximum time between a line being added and flushed, in ms.
+   * @param maxLines Number of pending lines that triggers a flush before intervalMs elapses.
+   */
+  public LogFlushScheduler(Handler handler, Runnable flush, long intervalMs, int maxLines)
+  {
+    m_handler = handler;
+    m_flush = flush;
+    m_intervalMs = intervalMs;
+    m_maxLines = maxLines;
+  }
+
+  /**
+   * Capture thread: count newly added lines, and have them flushed in the next batch
+   *
+   * @param numLines Number of lines added.
+   */
+  public void
+  linesAdded(int numLines)
+  {
+    if (m_isCancelled) {
+      return;
+    }
+
+    int numPending = m_pendingLines.addAndGet(numLines);
+    if (m_flushPosted.compareAndSet(false, true)) {
+      m_handler.postDelayed(m_flushRunnable, m_intervalMs);
+    }
+    else if (numPending >= m_maxLines && m_urgentFlushPosted.compareAndSet(false, true)) {
+      m_handler.post(m_flushRunnable);
+    }
+  }
+
+  /**
+   * Handler's thread: drop pending flushes, and ignore lines added from now on
+   */
+  public void
+  cancel()
+  {
+    m_isCancelled = true;
+    m_handler.removeCallbacks(m_flushRunnable);
+  }
+
+  /**
+   * @return number of flushes run so far
+   */
+  public long
+  getFlushCount()
+  {
+    return m_flushCount;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /** Flags are cleared before flushing, so that lines added during the flush schedule
+   *  another batch */
+  private final Runnable m_flushRunnable = new Runnable() {
+    @Override
+    public void
+    run()
+    {
+      if (m_isCancelled) {
+        return; // posted by the capture thread after cancel()
+      }
+
+      m_flushPosted.set(false);
+      m_urgentFlushPosted.set(false);
+      m_pendingLines.set(0);
+      m_flushCount++;
+      m_flush.run();
+    }
+  };
+
+  private final Handler m_handler;
+  private final Runnable m_flush;
+  private final long m_intervalMs;
+  private final int m_maxLines;
+
+  private final AtomicBoolean m_flushPosted = new AtomicBoolean(false);
+  private final AtomicBoolean m_urgentFlushPosted = new AtomicBoolean(false);
+  private final AtomicInteger m_pendingLines = new AtomicInteger(0);
+
+  /** Set on the handler's thread, read on both */
+  private volatile boolean m_isCancelled = false;
+
+  /** Written on the handler's thread only */
+  private volatile long m_flushCount = 0;
+}
@@ -0,0 +1,156 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity, lock-free ring buffer of log lines, with a single producer (the
+ * thread reading the log) and a single consumer (the UI thread).
+ *
+ * The producer appends with offer().  The consumer calls refresh() to take in the lines
+ * published since the previous refresh, and then reads a stable view of the most
+ * recent lines (at most the capacity) with size() and get(), e.g. from a ListAdapter.
+ * Lines that fall out of the view are evicted in O(1) by moving the view's start.
+ *
+ * Storage is twice the capacity, so the producer can run up to one capacity's worth of
+ * lines ahead of the consumer's view.  Beyond that, offer() drops the line rather than
+ * overwriting lines the consumer may still display, and counts the drop.
+ */
+public class LogRingBuffer
+{
+  /**
+   * @param capacity maximum number of lines in the consumer's view
+   */
+  public LogRingBuffer(int capacity)
+  {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    int size = Integer.highestOneBit(2 * capacity - 1) << 1;
+    m_capacity = capacity;
+    m_mask = size - 1;
+    m_lines = new AtomicReferenceArray<>(size);
+  }
+
+  public int
+  getCapacity()
+  {
+    return m_capacity;
+  }
+
+  /**
+   * Producer: append a line
+   *
+   * @return false if the line was dropped because the consumer is too far behind
+   */
+  public boolean
+  offer(String line)
+  {
+    long tail = m_tail.get();
+    if (tail - m_consumerStart.get() >= m_lines.length()) {
+      m_droppedCount.incrementAndGet();
+      return false;
+    }
+
+    m_lines.lazySet((int) (tail & m_mask), line);
+    m_tail.lazySet(tail + 1); // publishes the line
+    return true;
+  }
+
+  /**
+   * @return number of lines dropped by offer() so far
+   */
+  public long
+  getDroppedCount()
+  {
+    return m_droppedCount.get();
+  }
+
+  /**
+   * Consumer: take in lines published since the last refresh, evicting the oldest
+   * lines of the view beyond the capacity
+   *
+   * @return number of lines taken in
+   */
+  public int
+  refresh()
+  {
+    long end = m_tail.get();
+    int numNewLines = (int) (end - m_viewEnd);
+
+    m_viewEnd = end;
+    m_viewStart = Math.max(m_viewStart, end - m_capacity);
+    m_consumerStart.set(m_viewStart); // releases evicted slots to the producer
+    return numNewLines;
+  }
+
+  /**
+   * Consumer: discard all lines published so far
+   */
+  public void
+  clear()
+  {
+    refresh();
+    m_viewStart = m_viewEnd;
+    m_consumerStart.set(m_viewStart);
+  }
+
+  /**
+   * Consumer: number of lines in the view, as of the last refresh
+   */
+  public int
+  size()
+  {
+    return (int) (m_viewEnd - m_viewStart);
+  }
+
+  /**
+   * Consumer: line at position in the view, 0 being the oldest
+   */
+  public String
+  get(int position)
+  {
+    if (position < 0 || position >= size()) {
+      throw new IndexOutOfBoundsException("position " + position + ", size " + size());
+    }
+    return m_lines.get((int) ((m_viewStart + position) & m_mask));
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private final int m_capacity;
+  private final int m_mask;
+  private final AtomicReferenceArray<String> m_lines;
+
+  /** Sequence number of the next line to be published; written by the producer only */
+  private final AtomicLong m_tail = new AtomicLong();
+
+  /** Start of the consumer's view; slots before it may be reused by the producer */
+  private final AtomicLong m_consumerStart = new AtomicLong();
+
+  private final AtomicLong m_droppedCount = new AtomicLong();
+
+  /** Consumer's view [m_viewStart, m_viewEnd), accessed by the consumer only */
+  private long m_viewStart = 0;
+  private long m_viewEnd = 0;
+}
@@ -0,0 +1,399 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import android.content.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reader of the NFD log records that the native NFD (in the NfdService process) writes
+ * to a memory-mapped ring file, see nfd-android/log-sink.hpp for the file layout.
+ *
+ * Records are read straight from the shared mapping: there is no logcat process to
+ * spawn, no text output to parse, and modules are filtered natively before anything is
+ * written.  The filter is set by the reader through the same mapping.
+ *
+ * A reader is not thread-safe; use it from one thread.
+ */
+public class NfdLogReader
+{
+  /**
+   * Structured NFD log record
+   */
+  public static class Record
+  {
+    Record(long sequence, long timestamp, int priority, String module, String message)
+    {
+      this.sequence = sequence;
+      this.timestamp = timestamp;
+      this.priority = priority;
+      this.module = module;
+      this.message = message;
+    }
+
+    /**
+     * @return logcat priority letter of the record, e.g. 'D'
+     */
+    public char
+    getPriorityLetter()
+    {
+      return priority >= 0 && priority < PRIORITY_LETTERS.length() ?
+        PRIORITY_LETTERS.charAt(priority) : '?';
+    }
+
+    /**
+     * Format the record as logcat's 'time' output format does.
+     */
+    @Override
+    public String
+    toString()
+    {
+      return s_dateFormat.get().format(new Date(timestamp)) + " " + getPriorityLetter() + "/" +
+        module + ": " + message;
+    }
+
+    public final long sequence;
+    public final long timestamp;
+    public final int priority;
+    public final String module;
+    public final String message;
+
+    private static final String PRIORITY_LETTERS = "??VDIWEFS";
+    private static final ThreadLocal<SimpleDateFormat> s_dateFormat =
+      new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat
+        initialValue()
+        {
+          return new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        }
+      };
+  }
+
+  /**
+   * @return the ring file that NFD writes its log records to
+   */
+  public static File
+  getLogFile(Context context)
+  {
+    return new File(context.getFilesDir(), LOG_FILE_NAME);
+  }
+
+  /**
+   * Record the modules of the running NFD, so that the UI process knows which log tags
+   * the ring file covers.  Called by NfdService once NFD has started.
+   *
+   * @param modules NFD log modules, as returned by NfdService.getNfdLogModules()
+   */
+  public static void
+  saveModules(Context context, List<String> modules)
+  {
+    File file = new File(context.getFilesDir(), MODULES_FILE_NAME);
+    File tmpFile = new File(context.getFilesDir(), MODULES_FILE_NAME + ".tmp");
+    try {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), UTF8);
+      try {
+        for (String module : modules) {
+          writer.write(module);
+          writer.write('\n');
+        }
+      }
+      finally {
+        writer.close();
+      }
+      if (!tmpFile.renameTo(file)) {
+        throw new IOException("cannot rename " + tmpFile);
+      }
+    }
+    catch (IOException e) {
+      G.Log("NfdLogReader: cannot save NFD log modules: " + e);
+    }
+  }
+
+  /**
+   * @return the modules recorded by saveModules(), or an empty set if NFD has not
+   *         recorded them yet
+   */
+  public static Set<String>
+  loadModules(Context context)
+  {
+    Set<String> modules = new HashSet<>();
+    File file = new File(context.getFilesDir(), MODULES_FILE_NAME);
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+      try {
+        String module;
+        while ((module = reader.readLine()) != null) {
+          if (!module.isEmpty()) {
+            modules.add(module);
+          }
+        }
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (FileNotFoundException e) {
+      // NFD has not run since it started recording them
+    }
+    catch (IOException e) {
+      G.Log("NfdLogReader: cannot load NFD log modules: " + e);
+      modules.clear();
+    }
+    return modules;
+  }
+
+  /**
+   * Map the ring file.  Reading starts with the oldest record still in the ring.
+   *
+   * @throws IOException if the file does not exist (NFD has never run) or is invalid
+   */
+  public NfdLogReader(File file) throws IOException
+  {
+    if (!file.exists()) {
+      throw new IOException("NFD log file does not exist: " + file);
+    }
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      m_map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+    }
+    finally {
+      raf.close();
+    }
+    m_map.order(ByteOrder.nativeOrder());
+
+    if (m_map.capacity() < HEADER_PAGE_SIZE || m_map.getInt(MAGIC_OFFSET) != MAGIC ||
+        m_map.getInt(VERSION_OFFSET) != VERSION) {
+      throw new IOException("Invalid NFD log file: " + file);
+    }
+    m_capacity = m_map.getInt(CAPACITY_OFFSET);
+    if (Integer.bitCount(m_capacity) != 1 || m_map.capacity() < HEADER_PAGE_SIZE + m_capacity) {
+      throw new IOException("Invalid NFD log file capacity: " + m_capacity);
+    }
+    m_mask = m_capacity - 1;
+    m_session = m_map.getInt(SESSION_OFFSET);
+    m_position = m_map.getInt(OLDEST_OFFSET);
+  }
+
+  /**
+   * Set the modules whose records NFD writes, and their minimum priority.
+   *
+   * @param tags Logcat-style filter, e.g. "Forwarder:D FaceTable:I *:S"; modules
+   *             that are not listed are not written.
+   */
+  public void
+  setFilter(String tags)
+  {
+    byte[] text = tags.getBytes(UTF8);
+    int length = Math.min(text.length, FILTER_SIZE);
+
+    // odd generation while updating, so that NFD never picks up a partial filter
+    int generation = m_map.getInt(FILTER_GENERATION_OFFSET);
+    if ((generation & 1) != 0) {
+      generation++; // a previous reader died while updating
+    }
+    m_map.putInt(FILTER_GENERATION_OFFSET, generation + 1);
+    fence();
+    m_map.putInt(FILTER_LENGTH_OFFSET, length);
+    for (int i = 0; i < length; i++) {
+      m_map.put(FILTER_OFFSET + i, text[i]);
+    }
+    fence();
+    m_map.putInt(FILTER_GENERATION_OFFSET, generation + 2);
+  }
+
+  /**
+   * Read the records written since the last call.
+   *
+   * @param records List to append the records to
+   * @return number of records read
+   */
+  public int
+  read(List<Record> records)
+  {
+    int session = m_map.getInt(SESSION_OFFSET);
+    if (session != m_session) {
+      // NFD restarted: sequence numbers start over, positions carry on
+      m_session = session;
+      m_nextSequence = -1;
+    }
+
+    int committed = m_map.getInt(COMMITTED_OFFSET);
+    fence();
+    int oldest = m_map.getInt(OLDEST_OFFSET);
+    if (m_position - oldest < 0 || committed - m_position < 0) {
+      m_position = oldest;
+    }
+
+    m_pending.clear();
+    m_pendingPositions.clear();
+    int position = m_position;
+    while (committed - position > 0) {
+      int length = m_map.getInt(ringIndex(position));
+      if (length < RECORD_HEADER_SIZE || length > m_capacity || (length & 7) != 0) {
+        break; // overwritten while being read; caught below
+      }
+      int moduleLength = m_map.getShort(ringIndex(position + 4)) & 0xffff;
+      int priority = m_map.get(ringIndex(position + 6));
+      int messageLength = m_map.getInt(ringIndex(position + 8));
+      if (moduleLength + messageLength > length - RECORD_HEADER_SIZE || messageLength < 0) {
+        break;
+      }
+      long sequence = m_map.getLong(ringIndex(position + 16));
+      long timestamp = m_map.getLong(ringIndex(position + 24));
+      String module = readString(position + RECORD_HEADER_SIZE, moduleLength);
+      String message = readString(position + RECORD_HEADER_SIZE + moduleLength, messageLength);
+
+      m_pending.add(new Record(sequence, timestamp, priority, module, message));
+      m_pendingPositions.add(position);
+      position += length;
+    }
+
+    // anything that starts before oldest may have been overwritten while we read it
+    fence();
+    oldest = m_map.getInt(OLDEST_OFFSET);
+    int numRead = 0;
+    for (int i = 0; i < m_pending.size(); i++) {
+      if (m_pendingPositions.get(i) - oldest < 0) {
+        continue;
+      }
+
+      Record record = m_pending.get(i);
+      if (m_nextSequence >= 0 && record.sequence > m_nextSequence) {
+        m_droppedCount += record.sequence - m_nextSequence;
+      }
+      m_nextSequence = record.sequence + 1;
+      records.add(record);
+      numRead++;
+    }
+    m_pending.clear();
+    m_pendingPositions.clear();
+
+    m_position = committed;
+    return numRead;
+  }
+
+  /**
+   * @return number of records that were overwritten before they could be read
+   */
+  public long
+  getDroppedCount()
+  {
+    return m_droppedCount;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private int
+  ringIndex(int position)
+  {
+    return HEADER_PAGE_SIZE + (position & m_mask);
+  }
+
+  private String
+  readString(int position, int length)
+  {
+    if (m_bytes.length < length) {
+      m_bytes = new byte[Math.max(length, 2 * m_bytes.length)];
+    }
+    for (int i = 0; i < length; i++) {
+      m_bytes[i] = m_map.get(ringIndex(position + i));
+    }
+    return new String(m_bytes, 0, length, UTF8);
+  }
+
+  /**
+   * Order accesses to the mapping with those of NFD: Java 7 has no explicit fences,
+   * but a volatile access orders the plain accesses around it.
+   */
+  private static void
+  fence()
+  {
+    s_fence++;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final String LOG_FILE_NAME = "nfd-log.ring";
+  private static final String MODULES_FILE_NAME = "nfd-log-modules.txt";
+
+  // must match nfd-android/log-sink.hpp
+  private static final int MAGIC = 0x4e4c4f47;
+  private static final int VERSION = 1;
+  private static final int HEADER_PAGE_SIZE = 4096;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int CAPACITY_OFFSET = 8;
+  private static final int SESSION_OFFSET = 12;
+  private static final int OLDEST_OFFSET = 16;
+  private static final int COMMITTED_OFFSET = 20;
+  private static final int FILTER_GENERATION_OFFSET = 24;
+  private static final int FILTER_LENGTH_OFFSET = 28;
+  private static final int FILTER_OFFSET = 32;
+  private static final int FILTER_SIZE = HEADER_PAGE_SIZE - FILTER_OFFSET;
+  private static final int RECORD_HEADER_SIZE = 32;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static volatile int s_fence;
+
+  private final MappedByteBuffer m_map;
+  private final int m_capacity;
+  private final int m_mask;
+
+  /** Session of the native sink, incremented every time NFD starts */
+  private int m_session;
+
+  /** Position of the next record to read */
+  private int m_position;
+
+  /** Sequence number of the next record to read, or -1 if unknown */
+  private long m_nextSequence = -1;
+
+  private long m_droppedCount = 0;
+
+  /** Records read but not yet validated, and their positions */
+  private final List<Record> m_pending = new ArrayList<>();
+  private final List<Integer> m_pendingPositions = new ArrayList<>();
+
+  private byte[] m_bytes = new byte[256];
+}
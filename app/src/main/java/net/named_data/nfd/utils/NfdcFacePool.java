@@ -0,0 +1,283 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.NetworkNack;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnNetworkNack;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.SecurityException;
+import net.named_data.jndn.transport.TcpTransport;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounded pool of localhost management Faces used by {@link NfdcHelper}.
+ *
+ * Each pooled Face is already configured with command signing info and, once used,
+ * keeps its connection to the local NFD open, so repeated management commands
+ * (e.g. status polling) do not pay connection and setup cost every time.
+ *
+ * A Face is owned exclusively by one caller between acquire() and release().  Faces
+ * whose connection failed are dropped instead of being returned to the pool, and
+ * Faces that stayed idle longer than the idle timeout are evicted on the next
+ * pool access.
+ *
+ * The pool is per process, and NFD may restart in NfdService's process without this
+ * one knowing, which leaves idle Faces connected to nothing.  So a Face that stayed
+ * idle for more than VALIDATE_AFTER_MS is checked with a short status Interest before
+ * it is handed out, rather than failing the caller's command.
+ *
+ * Pooled Faces run on a {@link SelectableTcpTransport}, so that their owner waits on the
+ * socket for NFD's answer, rather than polling processEvents() with sleeps.
+ */
+class NfdcFacePool
+{
+  /**
+   * Face on a SelectableTcpTransport, whose owner can wait for packets from NFD
+   */
+  static class ManagementFace extends Face
+  {
+    ManagementFace(SelectableTcpTransport transport, TcpTransport.ConnectionInfo connectionInfo)
+    {
+      super(transport, connectionInfo);
+      m_transport = transport;
+    }
+
+    /**
+     * Block until a packet from NFD is available or timeoutMs elapses, see
+     * SelectableTcpTransport.waitForEvents()
+     */
+    void
+    waitForEvents(long timeoutMs) throws IOException
+    {
+      m_transport.waitForEvents(timeoutMs);
+    }
+
+    /**
+     * Shut down the Face and release the transport's selector
+     */
+    @Override
+    public void
+    shutdown()
+    {
+      super.shutdown();
+      try {
+        m_transport.release();
+      }
+      catch (IOException e) {
+        G.Log("NfdcFacePool: unable to release transport (" + e.getMessage() + ")");
+      }
+    }
+
+    private final SelectableTcpTransport m_transport;
+  }
+
+  /**
+   * @param connectionInfo Forwarder that the Faces connect to
+   */
+  NfdcFacePool(KeyChain keyChain, int maxIdleFaces, long idleTimeoutMs,
+               TcpTransport.ConnectionInfo connectionInfo)
+  {
+    m_keyChain = keyChain;
+    m_connectionInfo = connectionInfo;
+    m_maxIdleFaces = maxIdleFaces;
+    m_idleTimeoutMs = idleTimeoutMs;
+  }
+
+  /**
+   * Get an exclusive Face to the local NFD, reusing an idle one if available
+   */
+  ManagementFace
+  acquire()
+  {
+    PooledFace pooled;
+    while ((pooled = pollIdle()) != null) {
+      // validated outside the pool lock, as it waits for NFD
+      if (System.currentTimeMillis() - pooled.releaseTime <= VALIDATE_AFTER_MS ||
+          isConnected(pooled.face)) {
+        return pooled.face;
+      }
+      G.Log("NfdcFacePool: dropping idle Face whose connection to NFD is gone");
+      pooled.face.shutdown();
+    }
+    return createFace();
+  }
+
+  /**
+   * Return a Face obtained from acquire()
+   *
+   * @param face Face to return
+   * @param isHealthy false if the connection of this Face failed; such Faces are
+   *                  closed instead of being reused
+   */
+  synchronized void
+  release(ManagementFace face, boolean isHealthy)
+  {
+    long now = System.currentTimeMillis();
+    evictExpired(now);
+
+    if (!isHealthy || m_idleFaces.size() >= m_maxIdleFaces) {
+      face.shutdown();
+      return;
+    }
+    m_idleFaces.addFirst(new PooledFace(face, now));
+  }
+
+  /**
+   * Close all idle Faces, e.g., after the local NFD has been stopped
+   */
+  synchronized void
+  clear()
+  {
+    for (PooledFace pooled : m_idleFaces) {
+      pooled.face.shutdown();
+    }
+    m_idleFaces.clear();
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private synchronized PooledFace
+  pollIdle()
+  {
+    evictExpired(System.currentTimeMillis());
+    return m_idleFaces.pollFirst();
+  }
+
+  /**
+   * Check that NFD still answers on face: any Data or Nack will do
+   */
+  private static boolean
+  isConnected(ManagementFace face)
+  {
+    final int[] result = {PENDING};
+    Interest interest = new Interest(VALIDATION_NAME);
+    interest.setInterestLifetimeMilliseconds(VALIDATION_TIMEOUT_MS);
+    try {
+      face.expressInterest(interest,
+        new OnData() {
+          @Override
+          public void onData(Interest interest, Data data)
+          {
+            result[0] = CONNECTED;
+          }
+        },
+        new OnTimeout() {
+          @Override
+          public void onTimeout(Interest interest)
+          {
+            result[0] = DISCONNECTED;
+          }
+        },
+        new OnNetworkNack() {
+          @Override
+          public void onNetworkNack(Interest interest, NetworkNack networkNack)
+          {
+            result[0] = CONNECTED;
+          }
+        });
+
+      long deadline = System.currentTimeMillis() + VALIDATION_TIMEOUT_MS;
+      face.processEvents();
+      while (result[0] == PENDING) {
+        // the Face reports the timeout on the first processEvents() past the deadline
+        face.waitForEvents(Math.max(deadline - System.currentTimeMillis(), 1));
+        face.processEvents();
+      }
+    }
+    catch (IOException | EncodingException e) {
+      return false;
+    }
+    return result[0] == CONNECTED;
+  }
+
+  private ManagementFace
+  createFace()
+  {
+    ManagementFace face;
+    try {
+      face = new ManagementFace(new SelectableTcpTransport(), m_connectionInfo);
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("Unable to create a management Face's transport", e);
+    }
+    try {
+      face.setCommandSigningInfo(m_keyChain, m_keyChain.getDefaultCertificateName());
+    }
+    catch (SecurityException e) {
+      // shouldn't really happen
+      G.Log("NfdcFacePool: cannot set command signing info (" + e.getMessage() + ")");
+    }
+    return face;
+  }
+
+  /**
+   * Idle Faces are kept most-recently-used first, so expired ones are at the tail
+   */
+  private void
+  evictExpired(long now)
+  {
+    while (!m_idleFaces.isEmpty() &&
+           now - m_idleFaces.peekLast().releaseTime > m_idleTimeoutMs) {
+      m_idleFaces.pollLast().face.shutdown();
+    }
+  }
+
+  private static class PooledFace
+  {
+    PooledFace(ManagementFace face, long releaseTime)
+    {
+      this.face = face;
+      this.releaseTime = releaseTime;
+    }
+
+    final ManagementFace face;
+    final long releaseTime;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /** Idle Faces released more recently than this are handed out without a check */
+  private static final long VALIDATE_AFTER_MS = 2000;
+
+  private static final long VALIDATION_TIMEOUT_MS = 200;
+
+  /** Answered by NFD itself, whatever its routes */
+  private static final Name VALIDATION_NAME = new Name("/localhost/nfd/status/general");
+
+  private static final int PENDING = 0;
+  private static final int CONNECTED = 1;
+  private static final int DISCONNECTED = 2;
+
+  private final KeyChain m_keyChain;
+  private final TcpTransport.ConnectionInfo m_connectionInfo;
+  private final int m_maxIdleFaces;
+  private final long m_idleTimeoutMs;
+  private final Deque<PooledFace> m_idleFaces = new ArrayDeque<>();
+}
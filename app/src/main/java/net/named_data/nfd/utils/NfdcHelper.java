@@ -31,18 +31,22 @@ import com.intel.jndn.management.types.RibEntry;
 import com.intel.jndn.management.types.Route;
 
 import net.named_data.jndn.ControlParameters;
-import net.named_data.jndn.Face;
 import net.named_data.jndn.ForwardingFlags;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.security.*;
 import net.named_data.jndn.security.SecurityException;
 import net.named_data.jndn.security.identity.IdentityManager;
 import net.named_data.jndn.security.identity.MemoryIdentityStorage;
 import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
 import net.named_data.jndn.security.policy.SelfVerifyPolicyManager;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.SegmentFetcher;
 import net.named_data.jndn_xx.util.FaceUri;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -54,20 +58,28 @@ public class NfdcHelper
 {
   public NfdcHelper()
   {
-    m_face = new Face("localhost");
-    try {
-      m_face.setCommandSigningInfo(s_keyChain, s_keyChain.getDefaultCertificateName());
-    }
-    catch (SecurityException e) {
-      // shouldn't really happen
-      /// @todo add logging
-    }
+    m_face = s_facePool.acquire();
   }
 
+  /**
+   * Return the underlying Face to the shared pool.  Safe to call more than once.
+   */
   public void
   shutdown()
   {
-    m_face.shutdown();
+    if (m_face != null) {
+      s_facePool.release(m_face, m_isFaceHealthy);
+      m_face = null;
+    }
+  }
+
+  /**
+   * Close all pooled management Faces, e.g., when the local NFD is stopped
+   */
+  public static void
+  clearFacePool()
+  {
+    s_facePool.clear();
   }
 
   /**
@@ -76,7 +88,13 @@ public class NfdcHelper
   public ForwarderStatus
   generalStatus() throws Exception
   {
-    return Nfdc.getForwarderStatus(m_face);
+    try {
+      return Nfdc.getForwarderStatus(m_face);
+    }
+    catch (Exception e) {
+      onCommandFailed(e);
+      throw e;
+    }
   }
 
   /**
@@ -92,12 +110,18 @@ public class NfdcHelper
     ForwardingFlags flags = new ForwardingFlags();
     flags.setChildInherit(isChildInherit);
     flags.setCapture(isCapture);
-    Nfdc.register(m_face,
-                  new ControlParameters()
-                    .setName(prefix)
-                    .setFaceId(faceId)
-                    .setCost(cost)
-                    .setForwardingFlags(flags));
+    try {
+      Nfdc.register(m_face,
+                    new ControlParameters()
+                      .setName(prefix)
+                      .setFaceId(faceId)
+                      .setCost(cost)
+                      .setForwardingFlags(flags));
+    }
+    catch (Exception e) {
+      onCommandFailed(e);
+      throw e;
+    }
   }
 
   /**
@@ -105,10 +129,16 @@ public class NfdcHelper
    */
   public void
   ribUnregisterPrefix(Name prefix, int faceId) throws ManagementException {
-    Nfdc.unregister(m_face,
-                    new ControlParameters()
-                      .setName(prefix)
-                      .setFaceId(faceId));
+    try {
+      Nfdc.unregister(m_face,
+                      new ControlParameters()
+                        .setName(prefix)
+                        .setFaceId(faceId));
+    }
+    catch (ManagementException e) {
+      onCommandFailed(e);
+      throw e;
+    }
   }
 
   /**
@@ -116,7 +146,29 @@ public class NfdcHelper
    */
   public List<RibEntry>
   ribList() throws ManagementException {
-    return Nfdc.getRouteList(m_face);
+    try {
+      return Nfdc.getRouteList(m_face);
+    }
+    catch (ManagementException e) {
+      onCommandFailed(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Fetch the RIB dataset without decoding it, e.g., for RibIndex.decode()
+   *
+   * @return content of all segments of the rib/list dataset, i.e., the RibEntry TLVs
+   */
+  public Blob
+  ribListDataset() throws ManagementException {
+    try {
+      return fetchDataset(RIB_LIST_DATASET);
+    }
+    catch (ManagementException e) {
+      onCommandFailed(e);
+      throw e;
+    }
   }
 
   public SparseArray<Set<Name>>
@@ -145,7 +197,14 @@ public class NfdcHelper
   public int
   faceCreate(String faceUri) throws ManagementException, FaceUri.Error, FaceUri.CanonizeError
   {
-    return Nfdc.createFace(m_face, formatFaceUri(faceUri));
+    String canonicalFaceUri = formatFaceUri(faceUri);
+    try {
+      return Nfdc.createFace(m_face, canonicalFaceUri);
+    }
+    catch (ManagementException e) {
+      onCommandFailed(e);
+      throw e;
+    }
   }
 
   /**
@@ -154,7 +213,13 @@ public class NfdcHelper
   public void
   faceDestroy(int faceId) throws Exception
   {
-    Nfdc.destroyFace(m_face, faceId);
+    try {
+      Nfdc.destroyFace(m_face, faceId);
+    }
+    catch (Exception e) {
+      onCommandFailed(e);
+      throw e;
+    }
   }
 
   /**
@@ -163,9 +228,18 @@ public class NfdcHelper
   public List<FaceStatus>
   faceList(Context context) throws ManagementException
   {
-    List<FaceStatus> result = Nfdc.getFaceList(m_face);
+    List<FaceStatus> result;
+    try {
+      result = Nfdc.getFaceList(m_face);
+    }
+    catch (ManagementException e) {
+      onCommandFailed(e);
+      throw e;
+    }
+    PermanentFaceUriAndRouteManager.FaceIds permanentFaceIds =
+      PermanentFaceUriAndRouteManager.getPermanentFaceIds(context);
     for(FaceStatus one : result) {
-      if(PermanentFaceUriAndRouteManager.isPermanentFace(context, one.getFaceId())) {
+      if(permanentFaceIds.contains(one.getFaceId())) {
         one.setFacePersistency(FacePersistency.PERMANENT);
       }
     }
@@ -217,6 +291,63 @@ public class NfdcHelper
 
   /////////////////////////////////////////////////////////////////////////////
 
+  /**
+   * Fetch all segments of a status dataset, processing the Face's events until done
+   */
+  private Blob
+  fetchDataset(Name name) throws ManagementException
+  {
+    final Blob[] content = { null };
+    final String[] error = { null };
+    SegmentFetcher.fetch(m_face, new Interest(name), SegmentFetcher.DontVerifySegment,
+      new SegmentFetcher.OnComplete() {
+        @Override
+        public void
+        onComplete(Blob result)
+        {
+          content[0] = result;
+        }
+      },
+      new SegmentFetcher.OnError() {
+        @Override
+        public void
+        onError(SegmentFetcher.ErrorCode errorCode, String message)
+        {
+          error[0] = errorCode + ": " + message;
+        }
+      });
+
+    try {
+      m_face.processEvents();
+      while (content[0] == null && error[0] == null) {
+        // returns as soon as a segment arrives; Interest timeouts are only reported by
+        // processEvents(), so the wait is bounded
+        m_face.waitForEvents(MAX_EVENT_WAIT_MS);
+        m_face.processEvents();
+      }
+    }
+    catch (IOException | EncodingException e) {
+      throw new ManagementException("Failed to fetch " + name.toUri(), e);
+    }
+
+    if (error[0] != null) {
+      throw new ManagementException("Failed to fetch " + name.toUri() + " (" + error[0] + ")");
+    }
+    return content[0];
+  }
+
+  /**
+   * Only a failure of the connection makes the Face unusable: a command that NFD
+   * rejected, e.g. with 409, leaves it healthy
+   */
+  private void
+  onCommandFailed(Exception e)
+  {
+    if (e instanceof IOException || e.getCause() instanceof IOException) {
+      m_isFaceHealthy = false;
+    }
+  }
+
   private static KeyChain
   configureKeyChain() {
     final MemoryIdentityStorage identityStorage = new MemoryIdentityStorage();
@@ -246,5 +377,24 @@ public class NfdcHelper
   /////////////////////////////////////////////////////////////////////////////
 
   final static KeyChain s_keyChain = configureKeyChain();
-  private Face m_face;
+
+  /** Maximum number of idle management Faces kept open */
+  private static final int MAX_IDLE_FACES = 4;
+
+  /** Idle management Faces older than this are closed */
+  private static final long FACE_IDLE_TIMEOUT_MS = 60000;
+
+  private static final Name RIB_LIST_DATASET = new Name("/localhost/nfd/rib/list");
+
+  /** Longest wait for a packet from NFD before checking for Interest timeouts */
+  private static final long MAX_EVENT_WAIT_MS = 100;
+
+  private static final NfdcFacePool s_facePool =
+    new NfdcFacePool(s_keyChain, MAX_IDLE_FACES, FACE_IDLE_TIMEOUT_MS,
+                     new TcpTransport.ConnectionInfo("localhost"));
+
+  private NfdcFacePool.ManagementFace m_face;
+
+  /** Cleared when the connection fails, so that the Face is not returned to the pool */
+  private boolean m_isFaceHealthy = true;
 }
@@ -0,0 +1,304 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SQLite store of the permanent face URIs, face IDs and routes of
+ * {@link PermanentFaceUriAndRouteManager}.
+ *
+ * Every record is a row keyed by its content, so that a change writes only what changed,
+ * and a route is found by prefix through the primary key of the routes table.  The meta
+ * table holds the generation of the records, which every transaction that changes them
+ * updates, so that other processes can tell that their cached records are stale.
+ *
+ * On creation, the records are migrated from the "permanent" preferences, where they
+ * used to be stored as string sets; the preferences are cleared once the new database
+ * is committed.
+ */
+class PermanentFaceDatabase extends SQLiteOpenHelper {
+
+  static final String TABLE_FACE_URIS = "face_uris";
+  static final String TABLE_FACE_IDS = "face_ids";
+  static final String TABLE_ROUTES = "routes";
+  static final String COLUMN_FACE_URI = "face_uri";
+  static final String COLUMN_FACE_ID = "face_id";
+  static final String COLUMN_PREFIX = "prefix";
+
+  /**
+   * Change of rows, written along with others in one transaction
+   */
+  interface Change {
+    void apply(SQLiteDatabase db);
+  }
+
+  PermanentFaceDatabase(Context context) {
+    super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    m_context = context.getApplicationContext();
+  }
+
+  @Override
+  public void onCreate(SQLiteDatabase db) {
+    db.execSQL("CREATE TABLE " + TABLE_FACE_URIS + " (" +
+                 COLUMN_FACE_URI + " TEXT PRIMARY KEY)");
+    db.execSQL("CREATE TABLE " + TABLE_FACE_IDS + " (" +
+                 COLUMN_FACE_ID + " INTEGER PRIMARY KEY)");
+    db.execSQL("CREATE TABLE " + TABLE_ROUTES + " (" +
+                 COLUMN_PREFIX + " TEXT NOT NULL, " +
+                 COLUMN_FACE_URI + " TEXT NOT NULL, " +
+                 "PRIMARY KEY (" + COLUMN_PREFIX + ", " + COLUMN_FACE_URI + "))");
+    db.execSQL("CREATE TABLE " + TABLE_META + " (" +
+                 COLUMN_KEY + " TEXT PRIMARY KEY, " +
+                 COLUMN_VALUE + " INTEGER NOT NULL)");
+
+    m_hasMigratedPreferences = migrateFromPreferences(db);
+  }
+
+  @Override
+  public void onOpen(SQLiteDatabase db) {
+    // onCreate() runs in a transaction that is only committed before onOpen(), so the
+    // preferences are only cleared once the migrated records are stored for good
+    if (m_hasMigratedPreferences) {
+      m_hasMigratedPreferences = false;
+      clearPreferences();
+    }
+  }
+
+  @Override
+  public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    // Only one version so far
+  }
+
+  /**
+   * @return generation of the records, 0 if they were never changed
+   */
+  static long getGeneration(SQLiteDatabase db) {
+    Cursor cursor = db.query(TABLE_META, new String[] {COLUMN_VALUE}, COLUMN_KEY + " = ?",
+                             new String[] {KEY_GENERATION}, null, null, null);
+    try {
+      return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  static void setGeneration(SQLiteDatabase db, long generation) {
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_KEY, KEY_GENERATION);
+    values.put(COLUMN_VALUE, generation);
+    db.insertWithOnConflict(TABLE_META, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+  }
+
+  /**
+   * Apply changes and store newGeneration, in one transaction
+   *
+   * @param expectedGeneration generation the caller last read or stored
+   * @return false if the stored generation was not expectedGeneration, i.e., another
+   *         process changed the records in between, so the caller's copy of them is stale
+   * @throws android.database.SQLException if the changes cannot be stored
+   */
+  static boolean writeChanges(SQLiteDatabase db, Collection<Change> changes,
+                              long expectedGeneration, long newGeneration) {
+    db.beginTransaction();
+    try {
+      // read in the (exclusive) transaction, so that no other write can come in between
+      boolean isUnchangedElsewhere = getGeneration(db) == expectedGeneration;
+      for (Change change : changes) {
+        change.apply(db);
+      }
+      setGeneration(db, newGeneration);
+      db.setTransactionSuccessful();
+      return isUnchangedElsewhere;
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  static void insertFaceUri(SQLiteDatabase db, String faceUri) {
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_FACE_URI, faceUri);
+    db.insertWithOnConflict(TABLE_FACE_URIS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+  }
+
+  static void deleteFaceUri(SQLiteDatabase db, String faceUri) {
+    db.delete(TABLE_FACE_URIS, COLUMN_FACE_URI + " = ?", new String[] {faceUri});
+  }
+
+  static void insertFaceId(SQLiteDatabase db, int faceId) {
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_FACE_ID, faceId);
+    db.insertWithOnConflict(TABLE_FACE_IDS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+  }
+
+  static void deleteFaceId(SQLiteDatabase db, int faceId) {
+    db.delete(TABLE_FACE_IDS, COLUMN_FACE_ID + " = ?", new String[] {Integer.toString(faceId)});
+  }
+
+  static void deleteAllFaceIds(SQLiteDatabase db) {
+    db.delete(TABLE_FACE_IDS, null, null);
+  }
+
+  static void insertRoute(SQLiteDatabase db, String prefix, String faceUri) {
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_PREFIX, prefix);
+    values.put(COLUMN_FACE_URI, faceUri);
+    db.insertWithOnConflict(TABLE_ROUTES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+  }
+
+  static void deleteRoute(SQLiteDatabase db, String prefix, String faceUri) {
+    db.delete(TABLE_ROUTES, COLUMN_PREFIX + " = ? AND " + COLUMN_FACE_URI + " = ?",
+              new String[] {prefix, faceUri});
+  }
+
+  static Set<String> queryFaceUris(SQLiteDatabase db) {
+    Set<String> faceUris = new HashSet<>();
+    Cursor cursor = db.query(TABLE_FACE_URIS, new String[] {COLUMN_FACE_URI},
+                             null, null, null, null, null);
+    try {
+      while (cursor.moveToNext()) {
+        faceUris.add(cursor.getString(0));
+      }
+    } finally {
+      cursor.close();
+    }
+    return faceUris;
+  }
+
+  /**
+   * @return face IDs, sorted
+   */
+  static int[] queryFaceIds(SQLiteDatabase db) {
+    Cursor cursor = db.query(TABLE_FACE_IDS, new String[] {COLUMN_FACE_ID},
+                             null, null, null, null, COLUMN_FACE_ID);
+    try {
+      int[] faceIds = new int[cursor.getCount()];
+      for (int i = 0; cursor.moveToNext(); i++) {
+        faceIds[i] = cursor.getInt(0);
+      }
+      return faceIds;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * @return prefix => face URIs
+   */
+  static Map<String, Set<String>> queryRoutes(SQLiteDatabase db) {
+    Map<String, Set<String>> routes = new HashMap<>();
+    Cursor cursor = db.query(TABLE_ROUTES, new String[] {COLUMN_PREFIX, COLUMN_FACE_URI},
+                             null, null, null, null, null);
+    try {
+      while (cursor.moveToNext()) {
+        Set<String> faceUris = routes.get(cursor.getString(0));
+        if (faceUris == null) {
+          faceUris = new HashSet<>();
+          routes.put(cursor.getString(0), faceUris);
+        }
+        faceUris.add(cursor.getString(1));
+      }
+    } finally {
+      cursor.close();
+    }
+    return routes;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Copy the records from the preferences that used to store them
+   *
+   * @return whether the preferences are to be cleared once the records are committed
+   */
+  @SuppressWarnings("deprecation")
+  private boolean migrateFromPreferences(SQLiteDatabase db) {
+    SharedPreferences setting =
+      m_context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_MULTI_PROCESS);
+
+    int nRecords = 0;
+    for (String faceUri : setting.getStringSet(LEGACY_PERMANENT_FACEURI, new HashSet<String>())) {
+      insertFaceUri(db, faceUri);
+      nRecords++;
+    }
+    for (String faceId : setting.getStringSet(LEGACY_PERMANENT_FACEID, new HashSet<String>())) {
+      try {
+        insertFaceId(db, Integer.parseInt(faceId));
+        nRecords++;
+      } catch (NumberFormatException e) {
+        G.Log(TAG, "Not migrating invalid permanent face ID " + faceId);
+      }
+    }
+    for (String route : setting.getStringSet(LEGACY_PERMANENT_ROUTE, new HashSet<String>())) {
+      String[] prefixAndFaceUri = route.split(LEGACY_PREFIX_FACEURI_DELIMITER);
+      if (prefixAndFaceUri.length != 2) {
+        G.Log(TAG, "Not migrating invalid permanent route " + route);
+        continue;
+      }
+      insertRoute(db, prefixAndFaceUri[0], prefixAndFaceUri[1]);
+      nRecords++;
+    }
+
+    if (nRecords > 0) {
+      G.Log(TAG, "Migrated " + nRecords + " permanent record(s) from preferences");
+      setGeneration(db, 1);
+    }
+    return !setting.getAll().isEmpty();
+  }
+
+  @SuppressWarnings("deprecation")
+  private void clearPreferences() {
+    m_context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_MULTI_PROCESS)
+      .edit().clear().commit();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = "Permanent Database";
+
+  private static final String DATABASE_NAME = "permanent.db";
+  private static final int DATABASE_VERSION = 1;
+
+  private static final String TABLE_META = "meta";
+  private static final String COLUMN_KEY = "key";
+  private static final String COLUMN_VALUE = "value";
+  private static final String KEY_GENERATION = "generation";
+
+  // Preferences the records used to be stored in
+  private static final String LEGACY_PREFS_NAME = "permanent";
+  private static final String LEGACY_PERMANENT_FACEURI = "permanentFaceUri";
+  private static final String LEGACY_PERMANENT_ROUTE = "permanentRoute";
+  private static final String LEGACY_PERMANENT_FACEID = "permanentFaceId";
+  private static final String LEGACY_PREFIX_FACEURI_DELIMITER = "\t";
+
+  private final Context m_context;
+  private boolean m_hasMigratedPreferences = false;
+}
@@ -0,0 +1,390 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.intel.jndn.management.types.FaceStatus;
+
+import net.named_data.jndn.Name;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Restores the permanent faces and routes of {@link PermanentFaceUriAndRouteManager} after
+ * the local NFD has started.
+ *
+ * Face URIs of permanent faces and of permanent routes are canonized and deduplicated,
+ * faces that NFD already has are reused, and the remaining faces are created with up to
+ * MAX_PARALLELISM commands in flight.  Routes are then all submitted at once and
+ * registered with the same parallelism.  A failed face or route is logged and skipped,
+ * so that it does not hold up the others; routes of a face that could not be created
+ * are skipped as well.
+ *
+ * Restoring is idempotent: restoring twice creates no duplicate faces, and registering
+ * a route again only refreshes it.
+ */
+public class PermanentFaceRestorer
+{
+  /**
+   * Outcome of {@link #restore()}
+   */
+  public static class Result
+  {
+    public int nFaces;
+    public int nFacesRestored;
+    public int nRoutes;
+    public int nRoutesRestored;
+
+    /** Time from the start of restore() until all faces and routes were processed */
+    public long timeToReadyMs;
+
+    @Override
+    public String
+    toString()
+    {
+      return "restored " + nFacesRestored + "/" + nFaces + " faces and " +
+        nRoutesRestored + "/" + nRoutes + " routes in " + timeToReadyMs + " ms";
+    }
+  }
+
+  /**
+   * Management commands the restorer sends to NFD; lets benchmarks stand in for NFD
+   */
+  interface Commands
+  {
+    /**
+     * @return face ID by remote URI, for all faces of NFD
+     */
+    Map<String, Integer>
+    listFaces() throws Exception;
+
+    /**
+     * @return ID of the created face
+     */
+    int
+    createFace(String canonicalFaceUri) throws Exception;
+
+    void
+    registerRoute(Name prefix, int faceId) throws Exception;
+  }
+
+  public PermanentFaceRestorer(Context context)
+  {
+    this(context.getApplicationContext(), new NfdcCommands(context.getApplicationContext()));
+  }
+
+  /**
+   * Restorer that sends its commands through commands; only restore(Collection,
+   * Collection, List) can be used, as there is no Context for the stored records
+   */
+  PermanentFaceRestorer(Commands commands)
+  {
+    this(null, commands);
+  }
+
+  private PermanentFaceRestorer(Context context, Commands commands)
+  {
+    m_context = context;
+    m_commands = commands;
+  }
+
+  /**
+   * Restore the permanent faces and routes; blocks until done, so call it in the
+   * background.
+   *
+   * @throws Exception if NFD cannot be reached at all
+   */
+  public Result
+  restore() throws Exception
+  {
+    long startTime = SystemClock.elapsedRealtime();
+
+    List<Integer> permanentFaceIds = new ArrayList<>();
+    Result result = restore(PermanentFaceUriAndRouteManager.getPermanentFaceUris(m_context),
+                            PermanentFaceUriAndRouteManager.getPermanentRoutes(m_context),
+                            permanentFaceIds);
+    PermanentFaceUriAndRouteManager.addPermanentFaceIds(m_context, permanentFaceIds);
+
+    result.timeToReadyMs = SystemClock.elapsedRealtime() - startTime;
+    G.Log(TAG, "Permanent faces and routes: " + result);
+    return result;
+  }
+
+  /**
+   * Restore the given permanent faces and routes, without reading or updating the stored
+   * records
+   *
+   * @param permanentFaceIds receives the IDs of the permanent faces that exist or were
+   *                         created
+   * @return outcome, without timeToReadyMs
+   */
+  Result
+  restore(Collection<String> permanentFaceUris, Collection<String[]> permanentRoutes,
+          List<Integer> permanentFaceIds) throws Exception
+  {
+    Result result = new Result();
+
+    Set<String> faceUris = new HashSet<>(permanentFaceUris);
+    for (String[] prefixAndFaceUri : permanentRoutes) {
+      faceUris.add(prefixAndFaceUri[1]);
+    }
+
+    Map<String, Integer> existingFaces = listFaces();
+
+    ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLELISM);
+    try {
+      // face URI as stored => face ID
+      Map<String, Integer> faceIds = createFaces(executor, faceUris, existingFaces);
+
+      for (String faceUri : permanentFaceUris) {
+        if (faceIds.containsKey(faceUri)) {
+          permanentFaceIds.add(faceIds.get(faceUri));
+        }
+      }
+      result.nFaces = permanentFaceUris.size();
+      result.nFacesRestored = permanentFaceIds.size();
+
+      result.nRoutes = permanentRoutes.size();
+      result.nRoutesRestored = registerRoutes(executor, permanentRoutes, faceIds);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    return result;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * @return existing faces by remote URI; NFD may take a moment to accept management
+   *         commands after it started, so the listing is retried
+   */
+  private Map<String, Integer>
+  listFaces() throws Exception
+  {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return m_commands.listFaces();
+      }
+      catch (Exception e) {
+        if (attempt >= MAX_LIST_ATTEMPTS) {
+          throw e;
+        }
+        G.Log(TAG, "Cannot list faces yet (" + e.getMessage() + "), retrying");
+        Thread.sleep(LIST_RETRY_INTERVAL_MS);
+      }
+    }
+  }
+
+  /**
+   * @return face URI => face ID, for the face URIs whose face exists or was created
+   */
+  private Map<String, Integer>
+  createFaces(ExecutorService executor, Collection<String> faceUris,
+              Map<String, Integer> existingFaces) throws InterruptedException
+  {
+    // several stored URIs may canonize to the same face
+    Map<String, List<String>> faceUrisByCanonicalUri = new HashMap<>();
+    for (String faceUri : faceUris) {
+      try {
+        String canonicalUri = NfdcHelper.formatFaceUri(faceUri);
+        if (!faceUrisByCanonicalUri.containsKey(canonicalUri)) {
+          faceUrisByCanonicalUri.put(canonicalUri, new ArrayList<String>());
+        }
+        faceUrisByCanonicalUri.get(canonicalUri).add(faceUri);
+      }
+      catch (Exception e) {
+        G.Log(TAG, "Skipping invalid permanent face URI " + faceUri + ": " + e.getMessage());
+      }
+    }
+
+    Map<String, Integer> faceIds = new HashMap<>();
+    List<String> canonicalUrisToCreate = new ArrayList<>();
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : faceUrisByCanonicalUri.entrySet()) {
+      final String canonicalUri = entry.getKey();
+      Integer existingFaceId = existingFaces.get(canonicalUri);
+      if (existingFaceId != null) {
+        for (String faceUri : entry.getValue()) {
+          faceIds.put(faceUri, existingFaceId);
+        }
+        continue;
+      }
+
+      canonicalUrisToCreate.add(canonicalUri);
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer
+        call() throws Exception
+        {
+          return m_commands.createFace(canonicalUri);
+        }
+      });
+    }
+
+    List<Future<Integer>> futures = executor.invokeAll(tasks);
+    for (int i = 0; i < futures.size(); i++) {
+      String canonicalUri = canonicalUrisToCreate.get(i);
+      try {
+        int faceId = futures.get(i).get();
+        for (String faceUri : faceUrisByCanonicalUri.get(canonicalUri)) {
+          faceIds.put(faceUri, faceId);
+        }
+      }
+      catch (ExecutionException e) {
+        G.Log(TAG, "Cannot create permanent face " + canonicalUri + ": " +
+          e.getCause().getMessage());
+      }
+    }
+    return faceIds;
+  }
+
+  /**
+   * @return number of routes registered
+   */
+  private int
+  registerRoutes(ExecutorService executor, Collection<String[]> routes,
+                 Map<String, Integer> faceIds) throws InterruptedException
+  {
+    List<String[]> routesToRegister = new ArrayList<>();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (String[] prefixAndFaceUri : routes) {
+      final Name prefix = new Name(prefixAndFaceUri[0]);
+      final Integer faceId = faceIds.get(prefixAndFaceUri[1]);
+      if (faceId == null) {
+        G.Log(TAG, "Skipping permanent route " + prefix + ": no face " + prefixAndFaceUri[1]);
+        continue;
+      }
+
+      routesToRegister.add(prefixAndFaceUri);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void
+        call() throws Exception
+        {
+          m_commands.registerRoute(prefix, faceId);
+          return null;
+        }
+      });
+    }
+
+    int nRegistered = 0;
+    List<Future<Void>> futures = executor.invokeAll(tasks);
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        futures.get(i).get();
+        nRegistered++;
+      }
+      catch (ExecutionException e) {
+        String[] prefixAndFaceUri = routesToRegister.get(i);
+        G.Log(TAG, "Cannot register permanent route " + prefixAndFaceUri[0] + " - " +
+          prefixAndFaceUri[1] + ": " + e.getCause().getMessage());
+      }
+    }
+    return nRegistered;
+  }
+
+  /**
+   * Commands sent to the local NFD through pooled NfdcHelper Faces
+   */
+  private static class NfdcCommands implements Commands
+  {
+    NfdcCommands(Context context)
+    {
+      m_context = context;
+    }
+
+    @Override
+    public Map<String, Integer>
+    listFaces() throws Exception
+    {
+      NfdcHelper nfdcHelper = new NfdcHelper();
+      try {
+        Map<String, Integer> faceIds = new HashMap<>();
+        for (FaceStatus face : nfdcHelper.faceList(m_context)) {
+          faceIds.put(face.getRemoteUri(), face.getFaceId());
+        }
+        return faceIds;
+      }
+      finally {
+        nfdcHelper.shutdown();
+      }
+    }
+
+    @Override
+    public int
+    createFace(String canonicalFaceUri) throws Exception
+    {
+      NfdcHelper nfdcHelper = new NfdcHelper();
+      try {
+        return nfdcHelper.faceCreate(canonicalFaceUri);
+      }
+      finally {
+        nfdcHelper.shutdown();
+      }
+    }
+
+    @Override
+    public void
+    registerRoute(Name prefix, int faceId) throws Exception
+    {
+      NfdcHelper nfdcHelper = new NfdcHelper();
+      try {
+        nfdcHelper.ribRegisterPrefix(prefix, faceId, ROUTE_COST, true, false);
+      }
+      finally {
+        nfdcHelper.shutdown();
+      }
+    }
+
+    private final Context m_context;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = PermanentFaceRestorer.class.getName();
+
+  /**
+   * Management commands in flight at a time; as many as NfdcHelper keeps idle Faces,
+   * so that every command reuses an open connection
+   */
+  private static final int MAX_PARALLELISM = 4;
+
+  private static final int MAX_LIST_ATTEMPTS = 5;
+  private static final long LIST_RETRY_INTERVAL_MS = 500;
+
+  private static final int ROUTE_COST = 10;
+
+  private final Context m_context;
+  private final Commands m_commands;
+}
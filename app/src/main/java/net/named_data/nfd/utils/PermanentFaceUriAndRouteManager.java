@@ -20,148 +20,460 @@
 package net.named_data.nfd.utils;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The manager to record and delete permanent faceUris and routes
+ *
+ * Records are kept in memory as an immutable snapshot that is loaded once, indexed (a
+ * sorted int array of face IDs, a prefix to face URIs multimap of routes) and replaced
+ * atomically on every change.  Changes are stored in {@link PermanentFaceDatabase} in
+ * the background: the row changes queued while a write is pending are written together
+ * in one transaction.
+ *
+ * The UI and NfdService processes both change the records.  Every transaction stores a
+ * new random generation number with the records; a reader compares it with its
+ * snapshot's and reloads the snapshot when another process changed them.
  */
 public class PermanentFaceUriAndRouteManager {
   private static final String TAG = "Permanent Manager";
-  private static final String PREFS_NAME = "permanent";
-  private static final String PERMANENT_FACEURI = "permanentFaceUri";
-  private static final String PERMANENT_ROUTE = "permanentRoute";
-  private static final String PERMANENT_FACEID = "permanentFaceId";
-  private static final String PREFIX_FACEURI_DELIMITER = "\t";
   // We need to cache permanent face IDs in order to display whether a face is permanent face or not.
 
-  @SuppressWarnings("deprecation")
-  public static void addPermanentFaceId(Context context, int faceId) {
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    Set<String> permanentFace = setting.getStringSet(PERMANENT_FACEID, new HashSet<String>());
-    Set<String> newPermanentFace = new HashSet<>(permanentFace);
+  /**
+   * Listener for changes of the permanent records, by this process or another one.  It is
+   * called on the thread that changed or reloaded the records, without any lock held;
+   * changes by another process are noticed on the next read of the records.
+   */
+  public interface OnChangeListener {
+    void onPermanentFaceUriAndRouteChanged();
+  }
+
+  /**
+   * Set of permanent face IDs, for looking up many faces at once
+   */
+  public static final class FaceIds {
+    private FaceIds(int[] sortedFaceIds) {
+      m_sortedFaceIds = sortedFaceIds;
+    }
 
-    if (newPermanentFace.add(Integer.toString(faceId))) {
-      SharedPreferences.Editor editor = setting.edit();
-      editor.putStringSet(PERMANENT_FACEID, newPermanentFace);
-      editor.commit();
+    public boolean contains(int faceId) {
+      return Arrays.binarySearch(m_sortedFaceIds, faceId) >= 0;
     }
+
+    public int size() {
+      return m_sortedFaceIds.length;
+    }
+
+    private final int[] m_sortedFaceIds;
+  }
+
+  public static void addOnChangeListener(OnChangeListener listener) {
+    s_listeners.add(listener);
+  }
+
+  public static void removeOnChangeListener(OnChangeListener listener) {
+    s_listeners.remove(listener);
+  }
+
+  public static void addPermanentFaceId(Context context, int faceId) {
+    addPermanentFaceIds(context, Collections.singleton(faceId));
   }
 
-  @SuppressWarnings("deprecation")
-  public static void deletePermanentFaceId(Context context, int faceId) {
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    Set<String> permanentFace = setting.getStringSet(PERMANENT_FACEID, new HashSet<String>());
-    Set<String> newPermanentFace = new HashSet<>(permanentFace);
+  /**
+   * Record several permanent face IDs in a single update
+   */
+  public static void addPermanentFaceIds(Context context, Collection<Integer> faceIds) {
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      Snapshot snapshot = getSnapshot(context);
+      Set<Integer> newFaceIds = snapshot.getFaceIdSet();
+      final List<Integer> addedFaceIds = new ArrayList<>();
+      for (int faceId : faceIds) {
+        if (newFaceIds.add(faceId)) {
+          addedFaceIds.add(faceId);
+        }
+      }
+      if (!addedFaceIds.isEmpty()) {
+        update(context, new Snapshot(snapshot.faceUris, toSortedArray(newFaceIds), snapshot.routes),
+               new PermanentFaceDatabase.Change() {
+                 @Override
+                 public void apply(SQLiteDatabase db) {
+                   for (int faceId : addedFaceIds) {
+                     PermanentFaceDatabase.insertFaceId(db, faceId);
+                   }
+                 }
+               });
+      }
+    }
+    notifyListenersOfChanges();
+  }
 
-    if (newPermanentFace.remove(Integer.toString(faceId))) {
-      SharedPreferences.Editor editor = setting.edit();
-      editor.putStringSet(PERMANENT_FACEID, newPermanentFace);
-      editor.commit();
+  public static void deletePermanentFaceId(Context context, final int faceId) {
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      Snapshot snapshot = getSnapshot(context);
+      Set<Integer> newFaceIds = snapshot.getFaceIdSet();
+      if (newFaceIds.remove(faceId)) {
+        update(context, new Snapshot(snapshot.faceUris, toSortedArray(newFaceIds), snapshot.routes),
+               new PermanentFaceDatabase.Change() {
+                 @Override
+                 public void apply(SQLiteDatabase db) {
+                   PermanentFaceDatabase.deleteFaceId(db, faceId);
+                 }
+               });
+      }
     }
+    notifyListenersOfChanges();
   }
 
-  @SuppressWarnings("deprecation")
   static boolean isPermanentFace(Context context, int faceId) {
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    Set<String> permanentFace = setting.getStringSet(PERMANENT_FACEID, new HashSet<String>());
+    return getPermanentFaceIds(context).contains(faceId);
+  }
 
-    return permanentFace.contains(Integer.toString(faceId));
+  /**
+   * @return the permanent face IDs at once, instead of calling isPermanentFace per face
+   */
+  public static FaceIds getPermanentFaceIds(Context context) {
+    return new FaceIds(getSnapshot(context).faceIds);
   }
 
-  @SuppressWarnings("deprecation")
   public static void clearFaceIds(Context context) {
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-
-    SharedPreferences.Editor editor = setting.edit();
-    editor.putStringSet(PERMANENT_FACEID, new HashSet<String>());
-    editor.commit();
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      Snapshot snapshot = getSnapshot(context);
+      if (snapshot.faceIds.length > 0) {
+        update(context, new Snapshot(snapshot.faceUris, new int[0], snapshot.routes),
+               new PermanentFaceDatabase.Change() {
+                 @Override
+                 public void apply(SQLiteDatabase db) {
+                   PermanentFaceDatabase.deleteAllFaceIds(db);
+                 }
+               });
+      }
+    }
+    notifyListenersOfChanges();
   }
 
-  @SuppressWarnings("deprecation")
   public static Set<String> getPermanentFaceUris(Context context){
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    return setting.getStringSet(PERMANENT_FACEURI, new HashSet<String>());
+    return getSnapshot(context).faceUris;
   }
 
-  @SuppressWarnings("deprecation")
   public static Set<String[]> getPermanentRoutes(Context context){
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    Set<String> permanentRoutes = setting.getStringSet(PERMANENT_ROUTE, new HashSet<String>());
     Set<String[]> prefixAndFacePairs = new HashSet<>();
-    for (String oneRecord : permanentRoutes){
-      String[] prefixAndFaceUri = oneRecord.split(PREFIX_FACEURI_DELIMITER);
-      prefixAndFacePairs.add(prefixAndFaceUri);
+    for (Map.Entry<String, Set<String>> route : getSnapshot(context).routes.entrySet()) {
+      for (String faceUri : route.getValue()) {
+        prefixAndFacePairs.add(new String[] {route.getKey(), faceUri});
+      }
     }
     return prefixAndFacePairs;
   }
 
-  @SuppressWarnings("deprecation")
-  public static void addPermanentFaceUri(Context context, String faceUri) {
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    Set<String> permanentFace = setting.getStringSet(PERMANENT_FACEURI, new HashSet<String>());
-    Set<String> newPermanentFace = new HashSet<>(permanentFace);
+  public static void addPermanentFaceUri(Context context, final String faceUri) {
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      Snapshot snapshot = getSnapshot(context);
+      G.Log(TAG, "Try to record permanent face");
+      G.Log(TAG, "Permanent face list has " + snapshot.faceUris.size() + " item(s)");
+      Set<String> newFaceUris = new HashSet<>(snapshot.faceUris);
+      if (newFaceUris.add(faceUri)) {
+        update(context, new Snapshot(newFaceUris, snapshot.faceIds, snapshot.routes),
+               new PermanentFaceDatabase.Change() {
+                 @Override
+                 public void apply(SQLiteDatabase db) {
+                   PermanentFaceDatabase.insertFaceUri(db, faceUri);
+                 }
+               });
+      }
+    }
+    notifyListenersOfChanges();
+  }
+
+  public static void addPermanentRoute(Context context, final String prefix, final String faceUri) {
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      Snapshot snapshot = getSnapshot(context);
+      G.Log(TAG, "Try to record permanent route");
+      Set<String> faceUris = new HashSet<>(getRouteFaceUris(snapshot, prefix));
+      if (faceUris.add(faceUri)) {
+        Map<String, Set<String>> newRoutes = new HashMap<>(snapshot.routes);
+        newRoutes.put(prefix, Collections.unmodifiableSet(faceUris));
+        update(context, new Snapshot(snapshot.faceUris, snapshot.faceIds, newRoutes),
+               new PermanentFaceDatabase.Change() {
+                 @Override
+                 public void apply(SQLiteDatabase db) {
+                   PermanentFaceDatabase.insertRoute(db, prefix, faceUri);
+                 }
+               });
+        G.Log(TAG, "Record permanent route " + faceUri);
+      }
+    }
+    notifyListenersOfChanges();
+  }
+
+  public static void deletePermanentFaceUri(Context context, final String faceUri) {
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      Snapshot snapshot = getSnapshot(context);
+      G.Log(TAG, "Try to delete permanent face");
+      G.Log(TAG, "Permanent face list has " + snapshot.faceUris.size() + " item(s)");
+      Set<String> newFaceUris = new HashSet<>(snapshot.faceUris);
+      if (newFaceUris.remove(faceUri)) {
+        update(context, new Snapshot(newFaceUris, snapshot.faceIds, snapshot.routes),
+               new PermanentFaceDatabase.Change() {
+                 @Override
+                 public void apply(SQLiteDatabase db) {
+                   PermanentFaceDatabase.deleteFaceUri(db, faceUri);
+                 }
+               });
+        G.Log(TAG, "Delete permanent face " + faceUri);
+      } else {
+        G.Log(TAG, faceUri + " is not a permanent face");
+      }
+    }
+    notifyListenersOfChanges();
+  }
+
+  public static void deletePermanentRoute(Context context, final String prefix,
+                                          final String faceUri) {
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      Snapshot snapshot = getSnapshot(context);
+      G.Log(TAG, "Try to delete permanent route");
+      Set<String> faceUris = new HashSet<>(getRouteFaceUris(snapshot, prefix));
+      if (faceUris.remove(faceUri)) {
+        Map<String, Set<String>> newRoutes = new HashMap<>(snapshot.routes);
+        if (faceUris.isEmpty()) {
+          newRoutes.remove(prefix);
+        } else {
+          newRoutes.put(prefix, Collections.unmodifiableSet(faceUris));
+        }
+        update(context, new Snapshot(snapshot.faceUris, snapshot.faceIds, newRoutes),
+               new PermanentFaceDatabase.Change() {
+                 @Override
+                 public void apply(SQLiteDatabase db) {
+                   PermanentFaceDatabase.deleteRoute(db, prefix, faceUri);
+                 }
+               });
+        G.Log(TAG, "Delete permanent route " + prefix + " " + faceUri);
+      } else {
+        G.Log(TAG, prefix + " " + faceUri + " is not a permanent route");
+      }
+    }
+    notifyListenersOfChanges();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Immutable permanent records
+   */
+  private static final class Snapshot {
+    Snapshot(Set<String> faceUris, int[] faceIds, Map<String, Set<String>> routes) {
+      this.faceUris = Collections.unmodifiableSet(faceUris);
+      this.faceIds = faceIds;
+      this.routes = Collections.unmodifiableMap(routes);
+    }
+
+    Set<Integer> getFaceIdSet() {
+      Set<Integer> faceIdSet = new HashSet<>();
+      for (int faceId : faceIds) {
+        faceIdSet.add(faceId);
+      }
+      return faceIdSet;
+    }
+
+    /** Generation of the preferences this snapshot was loaded from or written to */
+    long generation;
+
+    final Set<String> faceUris;
+
+    /** Sorted */
+    final int[] faceIds;
+
+    /** Prefix => face URIs, sets are unmodifiable */
+    final Map<String, Set<String>> routes;
+  }
+
+  private static Set<String> getRouteFaceUris(Snapshot snapshot, String prefix) {
+    Set<String> faceUris = snapshot.routes.get(prefix);
+    return faceUris != null ? faceUris : Collections.<String>emptySet();
+  }
+
+  private static synchronized SQLiteDatabase getDatabase(Context context) {
+    if (s_database == null) {
+      s_database = new PermanentFaceDatabase(context);
+    }
+    return s_database.getWritableDatabase();
+  }
+
+  /**
+   * @return current snapshot, reloaded if another process changed the records
+   */
+  private static Snapshot getSnapshot(Context context) {
+    Snapshot snapshot = s_snapshot;
+    if (snapshot != null && s_nUnwrittenChanges > 0) {
+      return snapshot; // our pending changes win anyway
+    }
+
+    SQLiteDatabase db = getDatabase(context);
+    long generation = PermanentFaceDatabase.getGeneration(db);
+    if (snapshot != null && !s_isReloadNeeded && snapshot.generation == generation) {
+      return snapshot;
+    }
+
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      snapshot = s_snapshot;
+      if (snapshot != null && (s_nUnwrittenChanges > 0 ||
+                               (!s_isReloadNeeded && snapshot.generation == generation))) {
+        return snapshot;
+      }
 
-    G.Log(TAG, "Try to record permanent face");
-    G.Log(TAG, "Permanent face list has " + permanentFace.size() + " item(s)");
-    if (newPermanentFace.add(faceUri)) {
-      SharedPreferences.Editor editor = setting.edit();
-      editor.putStringSet(PERMANENT_FACEURI, newPermanentFace);
-      editor.commit();
+      boolean isChangedElsewhere = snapshot != null;
+      db.beginTransaction(); // for a consistent read
+      try {
+        Map<String, Set<String>> routes = PermanentFaceDatabase.queryRoutes(db);
+        for (Map.Entry<String, Set<String>> route : routes.entrySet()) {
+          route.setValue(Collections.unmodifiableSet(route.getValue()));
+        }
+        snapshot = new Snapshot(PermanentFaceDatabase.queryFaceUris(db),
+                                PermanentFaceDatabase.queryFaceIds(db), routes);
+        snapshot.generation = PermanentFaceDatabase.getGeneration(db);
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+      s_snapshot = snapshot;
+      s_storedGeneration = snapshot.generation;
+      s_isReloadNeeded = false;
+      if (isChangedElsewhere) {
+        s_hasUnnotifiedChanges = true;
+      }
     }
+    if (!Thread.holdsLock(PermanentFaceUriAndRouteManager.class)) {
+      notifyListenersOfChanges(); // otherwise the changing method does, once unlocked
+    }
+    return snapshot;
   }
 
-  @SuppressWarnings("deprecation")
-  public static void addPermanentRoute(Context context, String prefix, String faceUri) {
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    Set<String> permanentRoute = setting.getStringSet(PERMANENT_ROUTE, new HashSet<String>());
-    Set<String> newPermanentRoute = new HashSet<>(permanentRoute);
+  /**
+   * Replace the snapshot and queue its database change; call with the class locked
+   */
+  private static void update(Context context, Snapshot snapshot, PermanentFaceDatabase.Change change) {
+    snapshot.generation = s_random.nextLong();
+    s_snapshot = snapshot;
 
-    G.Log(TAG, "Try to record permanent route");
-    G.Log(TAG, "Permanent route list has " + permanentRoute.size() + " item(s)");
-    if (newPermanentRoute.add(prefix + PREFIX_FACEURI_DELIMITER + faceUri)) {
-      SharedPreferences.Editor editor = setting.edit();
-      editor.putStringSet(PERMANENT_ROUTE, newPermanentRoute);
-      editor.commit();
-      G.Log(TAG, "Record permanent route " + faceUri);
+    s_pendingChanges.add(change);
+    s_nUnwrittenChanges++;
+    if (!s_isWriteScheduled) {
+      s_isWriteScheduled = true;
+      final Context applicationContext = context.getApplicationContext();
+      s_writeExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          writePendingChanges(applicationContext);
+        }
+      });
     }
+
+    s_hasUnnotifiedChanges = true;
   }
 
-  @SuppressWarnings("deprecation")
-  public static void deletePermanentFaceUri(Context context, String faceUri) {
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    Set<String> permanentFace = setting.getStringSet(PERMANENT_FACEURI, new HashSet<String>());
-    Set<String> newPermanentFace = new HashSet<>(permanentFace);
+  /**
+   * Write all queued changes in one transaction
+   */
+  private static void writePendingChanges(Context context) {
+    List<PermanentFaceDatabase.Change> changes;
+    long generation;
+    long expectedGeneration;
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      changes = s_pendingChanges;
+      s_pendingChanges = new ArrayList<>();
+      s_isWriteScheduled = false;
+      generation = s_snapshot.generation;
+      expectedGeneration = s_storedGeneration;
+    }
 
-    G.Log(TAG, "Try to delete permanent face");
-    G.Log(TAG, "Permanent face list has " + permanentFace.size() + " item(s)");
-    if (newPermanentFace.remove(faceUri)) {
-      SharedPreferences.Editor editor = setting.edit();
-      editor.putStringSet(PERMANENT_FACEURI, newPermanentFace);
-      editor.commit();
-      G.Log(TAG, "Delete permanent face " + faceUri);
-    } else {
-      G.Log(TAG, faceUri + " is not a permanent face");
+    boolean isChangedElsewhere = false;
+    boolean isWritten = false;
+    try {
+      isChangedElsewhere = !PermanentFaceDatabase.writeChanges(getDatabase(context), changes,
+                                                               expectedGeneration, generation);
+      isWritten = true;
+    } catch (SQLException e) {
+      G.Log(TAG, "Cannot store " + changes.size() + " permanent record change(s): " +
+        e.getMessage());
+    } finally {
+      synchronized (PermanentFaceUriAndRouteManager.class) {
+        s_nUnwrittenChanges -= changes.size();
+        if (isWritten) {
+          s_storedGeneration = generation;
+        }
+        if (isChangedElsewhere) {
+          // our snapshot misses the other process' changes, while the database now has our
+          // generation; reload once all our changes are written
+          G.Log(TAG, "Permanent records were changed by another process, reloading");
+          s_isReloadNeeded = true;
+        }
+      }
     }
   }
 
-  @SuppressWarnings("deprecation")
-  public static void deletePermanentRoute(Context context, String prefix, String faceUri) {
-    SharedPreferences setting = context.getSharedPreferences(PREFS_NAME, Context.MODE_MULTI_PROCESS);
-    Set<String> permanentRoute = setting.getStringSet(PERMANENT_ROUTE, new HashSet<String>());
-    Set<String> newPermanentRoute = new HashSet<>(permanentRoute);
+  /**
+   * Notify the listeners of the changes made since the last notification; call without
+   * the class locked, so that a listener can neither deadlock nor stall other changes
+   */
+  private static void notifyListenersOfChanges() {
+    synchronized (PermanentFaceUriAndRouteManager.class) {
+      if (!s_hasUnnotifiedChanges) {
+        return;
+      }
+      s_hasUnnotifiedChanges = false;
+    }
+    for (OnChangeListener listener : s_listeners) {
+      listener.onPermanentFaceUriAndRouteChanged();
+    }
+  }
 
-    G.Log(TAG, "Try to delete permanent route");
-    G.Log(TAG, "Permanent route list has " + permanentRoute.size() + " item(s)");
-    if (newPermanentRoute.remove(prefix + PREFIX_FACEURI_DELIMITER + faceUri)) {
-      SharedPreferences.Editor editor = setting.edit();
-      editor.putStringSet(PERMANENT_ROUTE, newPermanentRoute);
-      editor.commit();
-      G.Log(TAG, "Delete permanent route " + prefix + " " + faceUri);
-    } else {
-      G.Log(TAG, prefix + " " + faceUri + " is not a permanent route");
+  private static int[] toSortedArray(Collection<Integer> values) {
+    int[] array = new int[values.size()];
+    int i = 0;
+    for (int value : values) {
+      array[i++] = value;
     }
+    Arrays.sort(array);
+    return array;
   }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static PermanentFaceDatabase s_database;
+  private static volatile Snapshot s_snapshot;
+  private static final Random s_random = new Random();
+
+  /** Changes not yet handed to the writer, guarded by the class lock */
+  private static List<PermanentFaceDatabase.Change> s_pendingChanges = new ArrayList<>();
+  private static boolean s_isWriteScheduled = false;
+
+  /** Changes not yet written to the database */
+  private static volatile int s_nUnwrittenChanges = 0;
+
+  /** Generation last loaded from or stored to the database, guarded by the class lock */
+  private static long s_storedGeneration = 0;
+
+  /** Whether the snapshot is to be reloaded even if its generation is the stored one */
+  private static volatile boolean s_isReloadNeeded = false;
+
+  private static final ExecutorService s_writeExecutor = Executors.newSingleThreadExecutor();
+  private static final List<OnChangeListener> s_listeners = new CopyOnWriteArrayList<>();
+
+  /** Whether the listeners are yet to hear of a change, guarded by the class lock */
+  private static boolean s_hasUnnotifiedChanges = false;
 }
@@ -0,0 +1,552 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.intel.jndn.management.types.RibEntry;
+
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compact, immutable index over a snapshot of the RIB, for browsing RIBs of tens of
+ * thousands of entries by prefix and by face.
+ *
+ * Entries are kept as their TLV encoding, in the array the RIB dataset was received
+ * in, rather than as RibEntry objects; {@link #get(int)} decodes an entry when it is
+ * displayed.  Ordinals follow the NDN canonical order of the entries' prefixes.  In that order, the entries under any prefix are
+ * contiguous, as the leaves of a prefix trie's subtree are, so a prefix lookup is a
+ * binary search over the encoded names, with no trie nodes to allocate.  For each face,
+ * the index keeps the sorted ordinals of the entries with a route to it.
+ *
+ * The index is immutable and may be used from any thread.
+ */
+public class RibIndex
+{
+  /**
+   * Entries under a prefix, optionally with a route to a given face, as a list of
+   * ordinals in the index
+   */
+  public class Query
+  {
+    private
+    Query(int start, int end, int[] faceOrdinals)
+    {
+      m_faceOrdinals = faceOrdinals;
+      if (faceOrdinals == null) {
+        m_start = start;
+        m_end = end;
+      }
+      else {
+        m_start = lowerBound(faceOrdinals, start);
+        m_end = lowerBound(faceOrdinals, end);
+      }
+    }
+
+    public RibIndex
+    getIndex()
+    {
+      return RibIndex.this;
+    }
+
+    public int
+    size()
+    {
+      return m_end - m_start;
+    }
+
+    /**
+     * @return ordinal in the index of the i-th entry of the query, see RibIndex.get()
+     */
+    public int
+    getOrdinal(int i)
+    {
+      if (i < 0 || i >= size()) {
+        throw new IndexOutOfBoundsException("Entry " + i + " of " + size());
+      }
+      return m_faceOrdinals == null ? m_start + i : m_faceOrdinals[m_start + i];
+    }
+
+    /**
+     * @return position in the query of the entry for prefix, or -1 if there is none
+     */
+    public int
+    indexOf(Name prefix)
+    {
+      int ordinal = RibIndex.this.indexOf(prefix);
+      if (ordinal < 0) {
+        return -1;
+      }
+      if (m_faceOrdinals == null) {
+        return ordinal >= m_start && ordinal < m_end ? ordinal - m_start : -1;
+      }
+      int i = Arrays.binarySearch(m_faceOrdinals, m_start, m_end, ordinal);
+      return i >= 0 ? i - m_start : -1;
+    }
+
+    /**
+     * Compare with a query over another snapshot, e.g., with the same filters before a
+     * refresh, without decoding any entry
+     *
+     * @return positions of the entries whose routes differ from other's, or null if the
+     *         queries do not list the same prefixes in the same order
+     */
+    public List<Integer>
+    getChangedPositions(Query other)
+    {
+      if (other == null || other.size() != size()) {
+        return null;
+      }
+      List<Integer> changedPositions = new ArrayList<>();
+      for (int i = 0; i < size(); i++) {
+        int ordinal = getOrdinal(i);
+        int otherOrdinal = other.getOrdinal(i);
+        if (!isSameName(ordinal, other.getIndex(), otherOrdinal)) {
+          return null;
+        }
+        if (!isSameEntry(ordinal, other.getIndex(), otherOrdinal)) {
+          changedPositions.add(i);
+        }
+      }
+      return changedPositions;
+    }
+
+    private final int[] m_faceOrdinals;
+    private final int m_start;
+    private final int m_end;
+  }
+
+  /**
+   * Index a snapshot of the RIB, as fetched by NfdcHelper.ribListDataset(), i.e., the
+   * RibEntry TLVs of the rib/list dataset.  No entry is decoded: the index only locates
+   * the names and the Face IDs of the routes in the encoding.  Once indexed, the dataset
+   * is no longer referenced.
+   *
+   * @throws EncodingException if the dataset is malformed
+   */
+  public static RibIndex
+  decode(ByteBuffer dataset) throws EncodingException
+  {
+    byte[] arena = new byte[dataset.remaining()];
+    dataset.duplicate().get(arena);
+    TlvDecoder decoder = new TlvDecoder(ByteBuffer.wrap(arena));
+
+    int n = 0;
+    int[] entryOffsets = new int[INITIAL_CAPACITY];
+    int[] entryLengths = new int[INITIAL_CAPACITY];
+    int[] nameOffsets = new int[INITIAL_CAPACITY];
+    int[] nameLengths = new int[INITIAL_CAPACITY];
+    int[][] faceIds = new int[INITIAL_CAPACITY][];
+    int[] routeFaceIds = new int[INITIAL_CAPACITY];
+    while (decoder.getOffset() < arena.length) {
+      int entryOffset = decoder.getOffset();
+      int type = decoder.readVarNumber();
+      int entryEnd = readLength(decoder, arena.length);
+      if (type != TLV_RIB_ENTRY) {
+        decoder.seek(entryEnd);
+        continue;
+      }
+
+      if (n == entryOffsets.length) {
+        int capacity = n * 2;
+        entryOffsets = Arrays.copyOf(entryOffsets, capacity);
+        entryLengths = Arrays.copyOf(entryLengths, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        faceIds = Arrays.copyOf(faceIds, capacity);
+      }
+      entryOffsets[n] = entryOffset;
+      entryLengths[n] = entryEnd - entryOffset;
+
+      if (decoder.readVarNumber() != Tlv.Name) {
+        throw new EncodingException("RIB entry " + n + " does not start with a Name");
+      }
+      int nameEnd = readLength(decoder, entryEnd);
+      nameOffsets[n] = decoder.getOffset();
+      nameLengths[n] = nameEnd - decoder.getOffset();
+      decoder.seek(nameEnd);
+
+      int nRoutes = 0;
+      while (decoder.getOffset() < entryEnd) {
+        int elementType = decoder.readVarNumber();
+        int elementEnd = readLength(decoder, entryEnd);
+        if (elementType == TLV_ROUTE) {
+          if (nRoutes == routeFaceIds.length) {
+            routeFaceIds = Arrays.copyOf(routeFaceIds, nRoutes * 2);
+          }
+          routeFaceIds[nRoutes++] = (int)decoder.readNonNegativeIntegerTlv(Tlv.ControlParameters_FaceId);
+          if (decoder.getOffset() > elementEnd) {
+            throw new EncodingException("Route " + nRoutes + " of RIB entry " + n + " is truncated");
+          }
+        }
+        decoder.seek(elementEnd);
+      }
+      faceIds[n] = Arrays.copyOf(routeFaceIds, nRoutes);
+      n++;
+    }
+    return new RibIndex(arena, n, entryOffsets, entryLengths, nameOffsets, nameLengths, faceIds);
+  }
+
+  /**
+   * @return number of entries
+   */
+  public int
+  size()
+  {
+    return m_nameOffsets.length;
+  }
+
+  /**
+   * Decode the entry at an ordinal, e.g., for display; ordinals follow the canonical
+   * order of the prefixes.
+   */
+  public RibEntry
+  get(int ordinal)
+  {
+    RibEntry entry = new RibEntry();
+    try {
+      entry.wireDecode(ByteBuffer.wrap(m_arena, m_entryOffsets[ordinal], m_entryLengths[ordinal]));
+    }
+    catch (EncodingException e) {
+      // only the names and Face IDs were checked when indexing
+      throw new IllegalStateException("Cannot decode RIB entry " + ordinal, e);
+    }
+    return entry;
+  }
+
+  /**
+   * @param prefix Prefix that the entries are under (including the entry for prefix
+   *               itself); "/" for all entries
+   * @param faceId Face that the entries have a route to, or -1 for any face
+   */
+  public Query
+  query(Name prefix, int faceId)
+  {
+    int[] faceOrdinals = null;
+    if (faceId >= 0) {
+      faceOrdinals = m_faceOrdinals.get(faceId, EMPTY_ORDINALS);
+    }
+
+    byte[] key = encodeNameValue(prefix);
+    int start = lowerBound(key);
+    // names under the prefix follow it: find the first that is neither before nor under it
+    int low = start;
+    int high = size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (startsWith(middle, key)) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return new Query(start, low, faceOrdinals);
+  }
+
+  /**
+   * @return ordinal of the entry for prefix, or -1 if there is none
+   */
+  public int
+  indexOf(Name prefix)
+  {
+    byte[] key = encodeNameValue(prefix);
+    int ordinal = lowerBound(key);
+    if (ordinal < size() && compareName(ordinal, key) == 0) {
+      return ordinal;
+    }
+    return -1;
+  }
+
+  /**
+   * @return whether both indexes hold the same entries
+   */
+  public boolean
+  isSameAs(RibIndex other)
+  {
+    if (other == null || other.size() != size()) {
+      return false;
+    }
+    for (int ordinal = 0; ordinal < size(); ordinal++) {
+      if (!isSameEntry(ordinal, other, ordinal)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * @param arena RIB dataset
+   * @param n Number of entries in the dataset
+   * @param entryOffsets Offset in the arena of the TLV encoding of each entry
+   * @param entryLengths Length of the TLV encoding of each entry
+   * @param nameOffsets Offset in the arena of the encoded components of each entry's name
+   * @param nameLengths Length of the encoded components of each entry's name
+   * @param faceIds Face IDs of the routes of each entry
+   */
+  private
+  RibIndex(final byte[] arena, int n, final int[] entryOffsets, int[] entryLengths,
+           final int[] nameOffsets, final int[] nameLengths, int[][] faceIds)
+  {
+    // sort by name; byte order of the TLV-encoded components is NDN canonical order
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int
+      compare(Integer a, Integer b)
+      {
+        return compareBytes(arena, nameOffsets[a], nameLengths[a],
+                            arena, nameOffsets[b], nameLengths[b]);
+      }
+    });
+
+    m_arena = arena;
+    m_entryOffsets = new int[n];
+    m_entryLengths = new int[n];
+    m_nameOffsets = new int[n];
+    m_nameLengths = new int[n];
+    SparseIntArray nFaceEntries = new SparseIntArray();
+    for (int ordinal = 0; ordinal < n; ordinal++) {
+      int i = order[ordinal];
+      m_entryOffsets[ordinal] = entryOffsets[i];
+      m_entryLengths[ordinal] = entryLengths[i];
+      m_nameOffsets[ordinal] = nameOffsets[i];
+      m_nameLengths[ordinal] = nameLengths[i];
+
+      faceIds[i] = distinct(faceIds[i]);
+      for (int faceId : faceIds[i]) {
+        nFaceEntries.put(faceId, nFaceEntries.get(faceId) + 1);
+      }
+    }
+
+    m_faceOrdinals = new SparseArray<>(nFaceEntries.size());
+    SparseIntArray nFilled = new SparseIntArray(nFaceEntries.size());
+    for (int j = 0; j < nFaceEntries.size(); j++) {
+      m_faceOrdinals.put(nFaceEntries.keyAt(j), new int[nFaceEntries.valueAt(j)]);
+    }
+    for (int ordinal = 0; ordinal < n; ordinal++) {
+      for (int faceId : faceIds[order[ordinal]]) {
+        int filled = nFilled.get(faceId);
+        m_faceOrdinals.get(faceId)[filled] = ordinal;
+        nFilled.put(faceId, filled + 1);
+      }
+    }
+  }
+
+  /**
+   * Read the length of a TLV whose type was just read
+   *
+   * @param end End of the enclosing element
+   * @return end of the TLV's value
+   */
+  private static int
+  readLength(TlvDecoder decoder, int end) throws EncodingException
+  {
+    int length = decoder.readVarNumber();
+    if (length < 0 || length > end - decoder.getOffset()) {
+      throw new EncodingException("TLV length exceeds the enclosing element");
+    }
+    return decoder.getOffset() + length;
+  }
+
+  private boolean
+  isSameName(int ordinal, RibIndex other, int otherOrdinal)
+  {
+    return compareBytes(m_arena, m_nameOffsets[ordinal], m_nameLengths[ordinal],
+                        other.m_arena, other.m_nameOffsets[otherOrdinal],
+                        other.m_nameLengths[otherOrdinal]) == 0;
+  }
+
+  private boolean
+  isSameEntry(int ordinal, RibIndex other, int otherOrdinal)
+  {
+    return compareBytes(m_arena, m_entryOffsets[ordinal], m_entryLengths[ordinal],
+                        other.m_arena, other.m_entryOffsets[otherOrdinal],
+                        other.m_entryLengths[otherOrdinal]) == 0;
+  }
+
+  /**
+   * @return faceIds without repetitions, as an entry may have several routes to a face
+   */
+  private static int[]
+  distinct(int[] faceIds)
+  {
+    if (faceIds.length < 2) {
+      return faceIds;
+    }
+    int[] sorted = faceIds.clone();
+    Arrays.sort(sorted);
+    int n = 1;
+    for (int i = 1; i < sorted.length; i++) {
+      if (sorted[i] != sorted[n - 1]) {
+        sorted[n++] = sorted[i];
+      }
+    }
+    return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+  }
+
+  /**
+   * @return first ordinal whose name is not before key
+   */
+  private int
+  lowerBound(byte[] key)
+  {
+    int low = 0;
+    int high = size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compareName(middle, key) < 0) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return first position in the sorted array whose value is not below value
+   */
+  private static int
+  lowerBound(int[] sorted, int value)
+  {
+    int i = Arrays.binarySearch(sorted, value);
+    if (i >= 0) {
+      return i;
+    }
+    return -(i + 1);
+  }
+
+  /**
+   * @return whether the name at ordinal is before key or has key as a prefix
+   */
+  private boolean
+  startsWith(int ordinal, byte[] key)
+  {
+    int length = m_nameLengths[ordinal];
+    if (length >= key.length) {
+      return compareBytes(m_arena, m_nameOffsets[ordinal], key.length, key, 0, key.length) <= 0;
+    }
+    return compareName(ordinal, key) < 0;
+  }
+
+  private int
+  compareName(int ordinal, byte[] key)
+  {
+    return compareBytes(m_arena, m_nameOffsets[ordinal], m_nameLengths[ordinal],
+                        key, 0, key.length);
+  }
+
+  /**
+   * Compare unsigned bytes lexicographically; a prefix comes first.
+   */
+  private static int
+  compareBytes(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength)
+  {
+    int length = Math.min(aLength, bLength);
+    for (int i = 0; i < length; i++) {
+      int difference = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return aLength - bLength;
+  }
+
+  /**
+   * @return the encoded components of prefix, i.e., the value of its Name TLV
+   */
+  private static byte[]
+  encodeNameValue(Name prefix)
+  {
+    byte[] wire = prefix.wireEncode().getImmutableArray();
+    int[] position = { 0 };
+    readVarNumber(wire, position); // type
+    readVarNumber(wire, position); // length
+    return Arrays.copyOfRange(wire, position[0], wire.length);
+  }
+
+  /**
+   * Read an NDN-TLV variable-length number at position[0], and advance it.
+   */
+  private static long
+  readVarNumber(byte[] wire, int[] position)
+  {
+    int first = wire[position[0]++] & 0xff;
+    int nBytes;
+    if (first < 253) {
+      return first;
+    }
+    else if (first == 253) {
+      nBytes = 2;
+    }
+    else if (first == 254) {
+      nBytes = 4;
+    }
+    else {
+      nBytes = 8;
+    }
+
+    long value = 0;
+    for (int i = 0; i < nBytes; i++) {
+      value = (value << 8) | (wire[position[0]++] & 0xff);
+    }
+    return value;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int[] EMPTY_ORDINALS = new int[0];
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final int TLV_RIB_ENTRY = 0x80;
+  private static final int TLV_ROUTE = 0x81;
+
+  /** The RIB dataset, i.e., the TLV encodings of the entries */
+  private final byte[] m_arena;
+
+  /** Offset and length in the arena of each entry */
+  private final int[] m_entryOffsets;
+  private final int[] m_entryLengths;
+
+  /** Offset and length in the arena of the encoded components of each entry's name */
+  private final int[] m_nameOffsets;
+  private final int[] m_nameLengths;
+
+  /** Face ID to the sorted ordinals of the entries with a route to the face */
+  private final SparseArray<int[]> m_faceOrdinals;
+}
@@ -0,0 +1,198 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.transport.Transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * TCP transport whose socket can be waited on, for Faces that are driven by a single
+ * thread calling processEvents().
+ *
+ * jndn's TcpTransport keeps its channel to itself, so its owner can only poll it.  With
+ * this transport, the owning thread instead calls waitForEvents() between two calls to
+ * processEvents(): it returns as soon as data arrives from NFD, another thread calls
+ * wakeup(), or the given timeout (e.g. the next Interest timeout) expires.
+ *
+ * Usage: new Face(transport, new TcpTransport.ConnectionInfo("localhost")).  connect()
+ * and waitForEvents() must be called from the same thread, i.e. the Face's thread.
+ */
+public class SelectableTcpTransport extends Transport
+{
+  public SelectableTcpTransport() throws IOException
+  {
+    m_selector = Selector.open();
+  }
+
+  @Override
+  public boolean
+  isLocal(ConnectionInfo connectionInfo) throws IOException
+  {
+    return TcpTransport.getIsLocal(((TcpTransport.ConnectionInfo)connectionInfo).getHost());
+  }
+
+  @Override
+  public boolean
+  isAsync()
+  {
+    return false;
+  }
+
+  @Override
+  public void
+  connect(ConnectionInfo connectionInfo, ElementListener elementListener,
+          Runnable onConnected) throws IOException
+  {
+    close();
+
+    TcpTransport.ConnectionInfo tcpInfo = (TcpTransport.ConnectionInfo)connectionInfo;
+    m_channel = SocketChannel.open(new InetSocketAddress(tcpInfo.getHost(), tcpInfo.getPort()));
+    m_channel.configureBlocking(false);
+    m_channel.register(m_selector, SelectionKey.OP_READ);
+    m_elementReader = new ElementReader(elementListener);
+
+    if (onConnected != null) {
+      onConnected.run();
+    }
+  }
+
+  @Override
+  public void
+  send(ByteBuffer data) throws IOException
+  {
+    if (m_channel == null) {
+      throw new IOException("Cannot send because the socket is not open.  Use connect.");
+    }
+
+    int savePosition = data.position();
+    try {
+      while (data.hasRemaining()) {
+        m_channel.write(data);
+      }
+    }
+    finally {
+      data.position(savePosition);
+    }
+  }
+
+  /**
+   * Read and dispatch everything that is available on the socket, without blocking.
+   *
+   * @throws IOException when NFD closed the connection, in which case the transport is
+   *         closed and later sends fail
+   */
+  @Override
+  public void
+  processEvents() throws IOException, EncodingException
+  {
+    if (!getIsConnected()) {
+      return;
+    }
+
+    while (true) {
+      m_inputBuffer.limit(m_inputBuffer.capacity());
+      m_inputBuffer.position(0);
+      int bytesRead = m_channel.read(m_inputBuffer);
+      if (bytesRead < 0) {
+        close();
+        throw new IOException("Connection closed by NFD");
+      }
+      if (bytesRead == 0) {
+        return;
+      }
+
+      m_inputBuffer.flip();
+      m_elementReader.onReceivedData(m_inputBuffer);
+    }
+  }
+
+  @Override
+  public boolean
+  getIsConnected()
+  {
+    return m_channel != null && m_channel.isConnected();
+  }
+
+  @Override
+  public void
+  close() throws IOException
+  {
+    if (m_channel != null) {
+      // closing the channel also cancels its key on the selector
+      m_channel.close();
+      m_channel = null;
+    }
+  }
+
+  /**
+   * Block until data is available on the socket, wakeup() is called, or timeoutMs
+   * milliseconds elapse.  Does not block if timeoutMs is not positive; Long.MAX_VALUE
+   * waits without a time limit.
+   */
+  public void
+  waitForEvents(long timeoutMs) throws IOException
+  {
+    if (timeoutMs > 0) {
+      m_selector.select(timeoutMs);
+    }
+    else {
+      m_selector.selectNow();
+    }
+    m_selector.selectedKeys().clear();
+  }
+
+  /**
+   * Make the current or next waitForEvents() return immediately.  May be called from any
+   * thread.
+   */
+  public void
+  wakeup()
+  {
+    m_selector.wakeup();
+  }
+
+  /**
+   * Close the socket and release the selector; the transport cannot be used afterwards.
+   */
+  public void
+  release() throws IOException
+  {
+    close();
+    m_selector.close();
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private final Selector m_selector;
+  private final ByteBuffer m_inputBuffer = ByteBuffer.allocate(8000);
+  private SocketChannel m_channel;
+  private ElementReader m_elementReader;
+}
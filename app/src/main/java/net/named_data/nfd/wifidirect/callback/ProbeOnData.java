@@ -3,22 +3,28 @@ package net.named_data.nfd.wifidirect.callback;
 import android.util.Log;
 
 import com.intel.jndn.management.Nfdc;
-import com.intel.jndn.management.types.FibEntry;
-import com.intel.jndn.management.types.NextHopRecord;
 
 import net.named_data.jndn.Data;
 import net.named_data.jndn.Face;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.Name;
+import net.named_data.jndn.util.Blob;
+import net.named_data.nfd.wifidirect.model.Peer;
+import net.named_data.nfd.wifidirect.model.ProbeResponse;
+import net.named_data.nfd.wifidirect.utils.FibSnapshotCache;
 import net.named_data.nfd.wifidirect.utils.NDNController;
 
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Set;
 
 /**
  * Handle OnData events for outgoing probe interests.
  *
+ * Handling a response may fetch the FIB and unregister prefixes with blocking management
+ * commands on the controller's localhost face, so it must run on the management lane
+ * (see NDNController.executeManagementJob()), never on the event loop.
+ *
  * Created by allengong on 11/12/16.
  */
 public class ProbeOnData implements NDNCallbackOnData {
@@ -26,84 +32,112 @@ public class ProbeOnData implements NDNCallbackOnData {
     private static final String TAG = "ProbeOnData";
     private NDNController mController = NDNController.getInstance();
     private Face mFace = mController.getLocalHostFace();
+    private FibSnapshotCache mFibSnapshotCache = mController.getFibSnapshotCache();
 
     @Override
     public void doJob(Interest interest, Data data) {
-        // interest name = /localhop/wifidirect/<toIp>/<fromIp>/probe%timestamp
+        doJob(interest, data.getContent());
+    }
+
+    /**
+     * Handles a complete probe response, reassembled from all of its segments.
+     * @param interest the probe interest (i.e. without segment number)
+     * @param content the encoded ProbeResponse
+     * @return true if the response changed the prefixes registered towards the peer
+     * (or requires fetching its full advertisement), false otherwise
+     */
+    public boolean doJob(Interest interest, Blob content) {
+        // interest name = /localhop/wifidirect/<toIp>/<fromIp>/probe/<knownVersion>/<timestamp>
         Log.d(TAG, "Got data for interest: " + interest.getName().toString());
 
         String[] nameArr = interest.getName().toString().split("/");
-        String peerIp = nameArr[nameArr.length-3];
-        int peerFaceId = mController.getFaceIdForPeer(peerIp);
-
-        // parse the data, update controller prefix map
-        /**
-         * Data is in form:
-         * {numPrefixes}\n
-         * prefix1\n
-         * prefix2\n
-         * ...
-         */
-        String[] responseArr = data.getContent().toString().split("\n");
+        String peerIp = nameArr[3];
+        Peer peer = mController.getPeerByIp(peerIp);
 
         // validation
-        if (peerFaceId == -1) {
+        if (peer == null) {
             Log.e(TAG, "Undocumented peer.");
-            return;
-        }
-
-        int numPrefixes = Integer.parseInt(responseArr[0]);
-        HashSet<String> prefixesInResp = new HashSet<>(numPrefixes);
-        for (int i = 1; i <= numPrefixes; i++) {
-            prefixesInResp.add(responseArr[i]);
+            return false;
         }
+        int peerFaceId = peer.getFaceId();
 
-        // enumerate FIB entries, and collect the set of data prefixes towards this peer
-        HashSet<String> prefixesRegisteredForPeer = new HashSet<>();
         try {
-            List<FibEntry> fibEntries = Nfdc.getFibList(mFace);
-            for (FibEntry fibEntry : fibEntries) {
-                //if (fibEntry.getPrefix().toString().startsWith(NDNController.DATA_PREFIX)) {
-                String fibEntryPrefix = fibEntry.getPrefix().toString();
-                if (!fibEntryPrefix.startsWith("/localhop") && !fibEntryPrefix.startsWith("/localhost")) {
-                    List<NextHopRecord> nextHopRecords = fibEntry.getNextHopRecords();
-                    for (NextHopRecord nextHopRecord : nextHopRecords) {
-                        if (nextHopRecord.getFaceId() == peerFaceId) {
-                            prefixesRegisteredForPeer.add(fibEntryPrefix);
-                        }
+            ProbeResponse response = ProbeResponse.wireDecode(content);
+            Log.d(TAG, "Probe response from " + peerIp + ": " + response);
+
+            HashSet<String> toRegister = new HashSet<>();
+            HashSet<String> toUnregister = new HashSet<>();
+
+            mController.markPeerProbed(peerIp);
+
+            switch (response.getKind()) {
+                case ProbeResponse.KIND_NOT_MODIFIED:
+                    return false;
+
+                case ProbeResponse.KIND_DELTA:
+                    if (response.getBaseVersion() != peer.getProbeVersion()) {
+                        // delta against a version we no longer hold, ask for everything next time
+                        Log.d(TAG, "Stale delta from " + peerIp + ", resetting known version.");
+                        peer.setProbeVersion(ProbeResponse.NO_VERSION);
+                        return true;
                     }
-                }
-            }
 
-            // iterate through prefixes found in response,
-            // removing any already registered prefixes for this peer
-            // any prefix remaining in prefixesRegisteredForPeer after this
-            // is no longer advertised by peer
-            Iterator<String> it = prefixesInResp.iterator();
-            while (it.hasNext()) {
-                String prefix = it.next();
-                if (prefixesRegisteredForPeer.contains(prefix)) {
-                    it.remove();
-                    prefixesRegisteredForPeer.remove(prefix);
-                }
+                    Set<String> advertised = peer.getAdvertisedPrefixes();
+                    advertised.addAll(response.getAdded());
+                    advertised.removeAll(response.getRemoved());
+                    toRegister.addAll(response.getAdded());
+
+                    // only unregister what actually goes through this peer's face
+                    Set<String> registeredForPeer = mFibSnapshotCache.get().getDataPrefixesForFace(peerFaceId);
+                    for (String prefix : response.getRemoved()) {
+                        if (registeredForPeer.contains(prefix)) {
+                            toUnregister.add(prefix);
+                        }
+                    }
+                    break;
+
+                default:
+                    // full advertisement: diff against the data prefixes registered towards
+                    // this peer in the (cached) FIB. Anything registered but no longer
+                    // advertised by the peer is removed.
+                    peer.setAdvertisedPrefixes(new HashSet<>(response.getAdded()));
+                    toRegister.addAll(response.getAdded());
+                    toUnregister.addAll(mFibSnapshotCache.get().getDataPrefixesForFace(peerFaceId));
+
+                    Iterator<String> it = toRegister.iterator();
+                    while (it.hasNext()) {
+                        if (toUnregister.remove(it.next())) {
+                            it.remove();
+                        }
+                    }
+                    break;
             }
+            peer.setProbeVersion(response.getVersion());
 
             // register new prefixes in response
-            if (prefixesInResp.size() > 0) {
-                Log.d(TAG, prefixesInResp.size() + " new prefixes to add.");
-                mController.ribRegisterPrefix(peerFaceId, prefixesInResp.toArray(new String[0]));
+            if (toRegister.size() > 0) {
+                Log.d(TAG, toRegister.size() + " new prefixes to add.");
+                mController.ribRegisterPrefix(peerFaceId, toRegister.toArray(new String[0]));
             } else {
                 Log.d(TAG, "No new prefixes to register.");
             }
 
             // unregister all prefixes that no longer are supported via this face
-            for (String toRemovePrefix : prefixesRegisteredForPeer) {
-                Log.d(TAG, "Removing from FIB: " + toRemovePrefix + " " + peerFaceId);
-                Nfdc.unregister(mFace, new Name(toRemovePrefix), peerFaceId);
+            try {
+                for (String toRemovePrefix : toUnregister) {
+                    Log.d(TAG, "Removing from FIB: " + toRemovePrefix + " " + peerFaceId);
+                    Nfdc.unregister(mFace, new Name(toRemovePrefix), peerFaceId);
+                }
+            } finally {
+                if (!toUnregister.isEmpty()) {
+                    mFibSnapshotCache.invalidate();
+                }
             }
 
+            return !toRegister.isEmpty() || !toUnregister.isEmpty();
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return false;
     }
 }
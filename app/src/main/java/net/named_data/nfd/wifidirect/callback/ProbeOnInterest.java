@@ -2,49 +2,75 @@ package net.named_data.nfd.wifidirect.callback;
 
 import android.util.Log;
 
-import com.intel.jndn.management.Nfdc;
-import com.intel.jndn.management.enums.FaceScope;
-import com.intel.jndn.management.types.FaceStatus;
-import com.intel.jndn.management.types.FibEntry;
-import com.intel.jndn.management.types.NextHopRecord;
-
 import net.named_data.jndn.Data;
 import net.named_data.jndn.Face;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.InterestFilter;
 import net.named_data.jndn.Name;
-import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.nfd.utils.FaceEventLoop;
+import net.named_data.nfd.wifidirect.model.ProbeResponse;
+import net.named_data.nfd.wifidirect.utils.FibSnapshotCache;
 import net.named_data.nfd.wifidirect.utils.NDNController;
 
-import java.util.HashSet;
+import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Handle OnInterest events for incoming probe interests.
  *
+ * Runs on the event loop thread, which must not block: the probe is answered right away
+ * from the cached FIB snapshot when it is fresh, otherwise the snapshot is fetched on the
+ * management lane and the answer is put back on the event loop.
+ *
  * Created by allengong on 11/12/16.
  */
 public class ProbeOnInterest implements NDNCallBackOnInterest {
 
     private static final String TAG = "ProbeOnInterest";
+    private static final int PROBE_NAME_SIZE = 7;   // number of components, without segment
 
     private NDNController mController = NDNController.getInstance();
-    private Face mFace = mController.getLocalHostFace(); // localhost face for communicating with NFD
-
 
     @Override
-    public void doJob(Name prefix, Interest interest, Face face, long interestFilterId, InterestFilter filter) {
+    public void doJob(Name prefix, Interest interest, final Face face, long interestFilterId, InterestFilter filter) {
         Log.d(TAG, "Got an interest for: " + interest.getName().toString());
 
-        // /localhop/wifidirect/192.168.49.x/192.168.49.y/probe?mustBeFresh=1
-        String[] prefixArr = interest.getName().toString().split("/");
+        // /localhop/wifidirect/192.168.49.x/192.168.49.y/probe/<knownVersion>/<timestamp>[/<segment>]
+        Name probeName = interest.getName();
+        long segment = 0;
+        try {
+            if (probeName.size() == PROBE_NAME_SIZE + 1) {
+                segment = probeName.get(-1).toSegment();
+                probeName = probeName.getPrefix(-1);
+            }
+        } catch (EncodingException e) {
+            probeName = null;
+        }
 
         // validate
-        if (prefixArr.length != 6) {
+        if (probeName == null || probeName.size() != PROBE_NAME_SIZE) {
             Log.e(TAG, "Error with this interest, skipping...");
+            return;
         }
 
-        final String peerIp = prefixArr[prefixArr.length - 2];
+        // the response to this probe was already segmented (a later segment is requested,
+        // or the probe was retransmitted), so answer from the segments
+        List<Data> segments = mController.getProbeSegmentCache().get(probeName);
+        if (segments != null || segment > 0) {
+            putSegment(face, segments, segment);
+            return;
+        }
+
+        final String peerIp = probeName.get(3).toEscapedString();
+        long version;
+        try {
+            version = Long.parseLong(probeName.get(5).toEscapedString());
+        } catch (NumberFormatException e) {
+            version = ProbeResponse.NO_VERSION;
+        }
+        final long knownVersion = version;
 
         // if not logged (a face created for this probing peer), should then create a face (mainly for GO)
         if (mController.getFaceIdForPeer(peerIp) == -1) {
@@ -62,70 +88,78 @@ public class ProbeOnInterest implements NDNCallBackOnInterest {
         }
 
         // enumerate RIB, look for all /ndn/wifidirect/* data prefixes, return to user as described in slides
-        try {
-            // set of prefixes to return to interest sender
-            HashSet<String> prefixesToReturn = new HashSet<>();
-            String response = "";
-            int num = 0;
-
-            // consult NFD to get all entries in FIB
-            List<FibEntry> fibEntries = Nfdc.getFibList(mFace);
+        FibSnapshotCache.Snapshot snapshot = mController.getFibSnapshotCache().peek();
+        if (snapshot != null) {
+            respond(face, probeName, peerIp, knownVersion, snapshot);
+            return;
+        }
 
-            if (mController.getIsGroupOwner()) {
-                // if GO, return all data prefixes
-                for (FibEntry fibEntry : fibEntries) {
-                    //if (fibEntry.getPrefix().toString().startsWith(NDNController.DATA_PREFIX)) {
-                    if (!fibEntry.getPrefix().toString().startsWith("/localhop") &&
-                            !fibEntry.getPrefix().toString().startsWith("/localhost")) {
-                        prefixesToReturn.add(fibEntry.getPrefix().toString());
-                        num++;
-                    }
+        // the snapshot must be fetched first, which blocks
+        final Name finalProbeName = probeName;
+        final FaceEventLoop eventLoop = mController.getEventLoop();
+        mController.executeManagementJob("probeAdvertisement", new Runnable() {
+            @Override
+            public void run() {
+                final FibSnapshotCache.Snapshot snapshot;
+                try {
+                    snapshot = mController.getFibSnapshotCache().get();
+                } catch (Exception e) {
+                    Log.e(TAG, "Unable to fetch the FIB to answer " + peerIp + ": " + e.getMessage());
+                    return;
                 }
-            } else {
-                // enumerate local faces
-                List<FaceStatus> faceStatuses = Nfdc.getFaceList(mFace);
-                HashSet<Integer> localFaceIds = new HashSet<>();
-                for (FaceStatus faceStatus : faceStatuses) {
-                    if (faceStatus.getFaceScope().toInteger() == FaceScope.LOCAL.toInteger()) {
-                        localFaceIds.add(faceStatus.getFaceId());
-                    }
-                }
-                faceStatuses = null;    // gc
-
-                // return only those prefixes that are handled locally
-                for (FibEntry fibEntry : fibEntries) {
-                    //if (fibEntry.getPrefix().toString().startsWith(NDNController.DATA_PREFIX)) {
-                    if (!fibEntry.getPrefix().toString().startsWith("/localhop") &&
-                            !fibEntry.getPrefix().toString().startsWith("/localhost")) {
-                        // added constraint that the prefix must be be served from this device (e.g.
-                        // by an upper layer application)
-                        List<NextHopRecord> nextHopRecords = fibEntry.getNextHopRecords();
-                        for (NextHopRecord nextHopRecord : nextHopRecords) {
-                            if (localFaceIds.contains(nextHopRecord.getFaceId())) {
-                                prefixesToReturn.add(fibEntry.getPrefix().toString());
-                                num++;
-                                break;
-                            }
+                eventLoop.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (eventLoop.getFace() != face) {
+                            // the event loop reconnected to NFD meanwhile, which forgot the interest
+                            Log.d(TAG, "Not answering " + peerIp + ", the face reconnected");
+                            return;
                         }
+                        respond(face, finalProbeName, peerIp, knownVersion, snapshot);
                     }
-                }
+                });
             }
+        });
+    }
 
-            Data data = new Data();
-            data.setName(new Name(interest.getName().toUri()));
-
-            // format payload, for now ignore hopcount as it is not clear whether
-            // it is useful
-            for (String pre : prefixesToReturn) {
-                response += ("\n" + pre);
+    // runs on the event loop thread
+    private void respond(Face face, Name probeName, String peerIp, long knownVersion,
+                         FibSnapshotCache.Snapshot snapshot) {
+        try {
+            Set<String> prefixesToAdvertise;
+            if (mController.getIsGroupOwner()) {
+                // if GO, return all data prefixes
+                prefixesToAdvertise = snapshot.getDataPrefixes();
+            } else {
+                // return only those prefixes that are handled locally, i.e. that must be
+                // served from this device (e.g. by an upper layer application)
+                prefixesToAdvertise = snapshot.getLocallyServedDataPrefixes();
             }
 
-            Blob payload = new Blob(num + response); // num + ("\nprefix1\nprefix2...")
-            data.setContent(payload);
+            // only send what changed since the version the prober knows, for now ignore
+            // hopcount as it is not clear whether it is useful
+            ProbeResponse response = mController.getProbeAdvertiser().respond(prefixesToAdvertise, knownVersion);
+            Log.d(TAG, "Responding to " + peerIp + " with " + response);
 
-            face.putData(data);
+            // large responses do not fit a single packet, so segment them; the first
+            // segment answers this interest, the prober fetches the rest
+            List<Data> segments = mController.getProbeSegmentCache().put(probeName, response.wireEncode());
+            putSegment(face, segments, 0);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    private void putSegment(Face face, List<Data> segments, long segment) {
+        if (segments == null || segment >= segments.size()) {
+            Log.e(TAG, "No segment " + segment + " for this probe, skipping...");
+            return;
+        }
+
+        try {
+            face.putData(segments.get((int) segment));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 }
@@ -1,5 +1,9 @@
 package net.named_data.nfd.wifidirect.model;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Represents a WifiDirect Peer.
  *
@@ -7,11 +11,27 @@ package net.named_data.nfd.wifidirect.model;
  */
 public class Peer {
 
+    /**
+     * Lifecycle of a peer. A peer discovered over WiFi Direct (known by MAC address)
+     * goes DISCOVERED -> CONNECTING, and a peer we have a Face to (known by IP address)
+     * goes FACE_UP -> PROBED. Either ends in REMOVED, which is final.
+     */
+    public enum State {
+        DISCOVERED,
+        CONNECTING,
+        FACE_UP,
+        PROBED,
+        REMOVED
+    }
+
     // members
     private String deviceAddress;   // device address
     private String name;            // user-friendly device name
-    private int faceId;
+    private volatile int faceId;    // re-pointed by PeerRegistry while other threads read it
     private int numProbeTimeouts = 0;   // number of timeouts while probing prefixes from this peer
+    private volatile long probeVersion = ProbeResponse.NO_VERSION;  // version of this peer's advertisement we know
+    private Set<String> advertisedPrefixes = new HashSet<>();       // prefixes advertised by this peer, as of probeVersion
+    private final AtomicReference<State> state = new AtomicReference<>(State.DISCOVERED);
 
     public Peer() {}
 
@@ -54,6 +74,42 @@ public class Peer {
         this.numProbeTimeouts = numProbeTimeouts;
     }
 
+    public long getProbeVersion() {
+        return probeVersion;
+    }
+
+    public void setProbeVersion(long probeVersion) {
+        this.probeVersion = probeVersion;
+    }
+
+    public Set<String> getAdvertisedPrefixes() {
+        return advertisedPrefixes;
+    }
+
+    public void setAdvertisedPrefixes(Set<String> advertisedPrefixes) {
+        this.advertisedPrefixes = advertisedPrefixes;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Atomically moves this peer from expected to newState.
+     * @return true if the peer was in expected state, false otherwise (no change)
+     */
+    public boolean compareAndSetState(State expected, State newState) {
+        return state.compareAndSet(expected, newState);
+    }
+
+    /**
+     * Unconditionally moves this peer to newState.
+     * @return the previous state
+     */
+    public State getAndSetState(State newState) {
+        return state.getAndSet(newState);
+    }
+
     @Override
     public String toString() {
         return "Peer{" +
@@ -61,6 +117,8 @@ public class Peer {
                 ", name='" + name + '\'' +
                 ", faceId=" + faceId +
                 ", numProbeTimeouts=" + numProbeTimeouts +
+                ", probeVersion=" + probeVersion +
+                ", state=" + state.get() +
                 '}';
     }
 }
@@ -0,0 +1,181 @@
+package net.named_data.nfd.wifidirect.model;
+
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+import net.named_data.jndn.util.Blob;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Content of a probe response, i.e. the data prefixes advertised by a peer.
+ *
+ * Advertisements are versioned by the responder. A probe carries the version the prober
+ * already knows, so the responder can answer with only what changed since then:
+ *
+ *   FULL          the complete list of advertised prefixes (in added)
+ *   DELTA         prefixes added and removed since baseVersion
+ *   NOT_MODIFIED  nothing changed since the prober's version
+ *
+ * Wire format (TLV types from the application-specific range):
+ *
+ *   ProbeResponse ::= PROBE-RESPONSE-TYPE TLV-LENGTH
+ *                       Version
+ *                       Kind
+ *                       BaseVersion?       ; DELTA only
+ *                       AddedPrefix*
+ *                       RemovedPrefix*     ; DELTA only
+ *
+ * where Version, Kind and BaseVersion are non-negative integers, and prefixes are
+ * UTF-8 name URIs.
+ */
+public class ProbeResponse {
+
+    public static final int KIND_FULL = 0;
+    public static final int KIND_DELTA = 1;
+    public static final int KIND_NOT_MODIFIED = 2;
+
+    /** Version to put in a probe when nothing is known about the peer's advertisement */
+    public static final long NO_VERSION = 0;
+
+    private static final int TLV_PROBE_RESPONSE = 128;
+    private static final int TLV_VERSION = 129;
+    private static final int TLV_KIND = 130;
+    private static final int TLV_BASE_VERSION = 131;
+    private static final int TLV_ADDED_PREFIX = 132;
+    private static final int TLV_REMOVED_PREFIX = 133;
+
+    private final int kind;
+    private final long version;
+    private final long baseVersion;
+    private final List<String> added;
+    private final List<String> removed;
+
+    private ProbeResponse(int kind, long version, long baseVersion,
+                          List<String> added, List<String> removed) {
+        this.kind = kind;
+        this.version = version;
+        this.baseVersion = baseVersion;
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    public static ProbeResponse full(long version, Collection<String> prefixes) {
+        return new ProbeResponse(KIND_FULL, version, NO_VERSION,
+                new ArrayList<>(prefixes), new ArrayList<String>());
+    }
+
+    public static ProbeResponse delta(long version, long baseVersion,
+                                      Collection<String> added, Collection<String> removed) {
+        return new ProbeResponse(KIND_DELTA, version, baseVersion,
+                new ArrayList<>(added), new ArrayList<>(removed));
+    }
+
+    public static ProbeResponse notModified(long version) {
+        return new ProbeResponse(KIND_NOT_MODIFIED, version, NO_VERSION,
+                new ArrayList<String>(), new ArrayList<String>());
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the version a DELTA response applies to
+     */
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * @return all advertised prefixes for FULL, newly advertised prefixes for DELTA
+     */
+    public List<String> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return prefixes no longer advertised, for DELTA
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public Blob wireEncode() {
+        TlvEncoder encoder = new TlvEncoder(256);
+        int saveLength = encoder.getLength();
+
+        // TlvEncoder writes backwards, so encode the fields in reverse order
+        for (int i = removed.size() - 1; i >= 0; i--) {
+            encoder.writeBlobTlv(TLV_REMOVED_PREFIX, new Blob(removed.get(i)).buf());
+        }
+        for (int i = added.size() - 1; i >= 0; i--) {
+            encoder.writeBlobTlv(TLV_ADDED_PREFIX, new Blob(added.get(i)).buf());
+        }
+        if (kind == KIND_DELTA) {
+            encoder.writeNonNegativeIntegerTlv(TLV_BASE_VERSION, baseVersion);
+        }
+        encoder.writeNonNegativeIntegerTlv(TLV_KIND, kind);
+        encoder.writeNonNegativeIntegerTlv(TLV_VERSION, version);
+        encoder.writeTypeAndLength(TLV_PROBE_RESPONSE, encoder.getLength() - saveLength);
+
+        return new Blob(encoder.getOutput(), false);
+    }
+
+    /**
+     * @param input encoded ProbeResponse, e.g. the content of a probe Data packet
+     * @return the decoded response
+     * @throws EncodingException if input is not a well-formed ProbeResponse
+     */
+    public static ProbeResponse wireDecode(Blob input) throws EncodingException {
+        TlvDecoder decoder = new TlvDecoder(input.buf());
+        int endOffset = decoder.readNestedTlvsStart(TLV_PROBE_RESPONSE);
+
+        long version = decoder.readNonNegativeIntegerTlv(TLV_VERSION);
+        int kind = (int) decoder.readNonNegativeIntegerTlv(TLV_KIND);
+        if (kind != KIND_FULL && kind != KIND_DELTA && kind != KIND_NOT_MODIFIED) {
+            throw new EncodingException("Unknown probe response kind: " + kind);
+        }
+
+        long baseVersion = NO_VERSION;
+        if (kind == KIND_DELTA) {
+            baseVersion = decoder.readNonNegativeIntegerTlv(TLV_BASE_VERSION);
+        }
+
+        ArrayList<String> added = new ArrayList<>();
+        while (decoder.peekType(TLV_ADDED_PREFIX, endOffset)) {
+            added.add(readPrefix(decoder, TLV_ADDED_PREFIX));
+        }
+        ArrayList<String> removed = new ArrayList<>();
+        while (decoder.peekType(TLV_REMOVED_PREFIX, endOffset)) {
+            removed.add(readPrefix(decoder, TLV_REMOVED_PREFIX));
+        }
+
+        decoder.finishNestedTlvs(endOffset);
+        return new ProbeResponse(kind, version, baseVersion, added, removed);
+    }
+
+    private static String readPrefix(TlvDecoder decoder, int type) throws EncodingException {
+        ByteBuffer value = decoder.readBlobTlv(type);
+        return new Blob(value, true).toString();
+    }
+
+    @Override
+    public String toString() {
+        return "ProbeResponse{" +
+                "kind=" + kind +
+                ", version=" + version +
+                ", baseVersion=" + baseVersion +
+                ", added=" + added.size() +
+                ", removed=" + removed.size() +
+                '}';
+    }
+}
@@ -1,6 +1,7 @@
 package net.named_data.nfd.wifidirect.runnable;
 
 import android.util.Log;
+import android.util.SparseBooleanArray;
 
 import com.intel.jndn.management.ManagementException;
 import com.intel.jndn.management.Nfdc;
@@ -8,14 +9,15 @@ import com.intel.jndn.management.types.FaceStatus;
 
 import net.named_data.nfd.wifidirect.utils.NDNController;
 
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 
 /**
  * Checks for the consistency between NDNController's view of
  * the logged peers and the NFD's. Specifically, this is carried
  * out by comparing views on active Faces.
+ * Faces are normally followed as they change, through
+ * FaceEventSubscriber; this full comparison is the fallback for
+ * notifications that were missed.
  * Created by allengong on 12/21/16.
  */
 public class FaceConsistencyRunnable implements Runnable {
@@ -32,21 +34,21 @@ public class FaceConsistencyRunnable implements Runnable {
             List<FaceStatus> faceStatuses =
                     Nfdc.getFaceList(NDNController.getInstance().getLocalHostFace());
 
-            // put face ids in an easy to access manner
-            HashSet<Integer> nfdActiveFaceIds = new HashSet<>(faceStatuses.size());
+            // put face ids in an easy to access manner (NFD lists faces by ascending id,
+            // so these are appended)
+            SparseBooleanArray nfdActiveFaceIds = new SparseBooleanArray(faceStatuses.size());
             for (FaceStatus faceStatus : faceStatuses) {
-                nfdActiveFaceIds.add(faceStatus.getFaceId());
+                nfdActiveFaceIds.put(faceStatus.getFaceId(), true);
             }
 
-            // iterate through keyset of peersMap
-            Iterator<String> iterator = NDNController.getInstance().getIpsOfLoggedPeers().iterator();
-            while(iterator.hasNext()) {
-                int peerFaceId = NDNController.getInstance().getFaceIdForPeer(iterator.next());
-                if ((peerFaceId != -1) && (!nfdActiveFaceIds.contains(peerFaceId))) {
+            // iterate through a snapshot of the Face ids of logged peers
+            NDNController controller = NDNController.getInstance();
+            for (int peerFaceId : controller.getFaceIdsOfLoggedPeers()) {
+                if (!nfdActiveFaceIds.get(peerFaceId)) {
 
                     // then this face should be un-logged (NFD does not report this face as existing)
                     Log.d(TAG, "Removing inconsistent mapping to Face: " + peerFaceId);
-                    iterator.remove();
+                    controller.unlogPeerByFaceId(peerFaceId);
                 }
             }
 
@@ -3,22 +3,22 @@ package net.named_data.nfd.wifidirect.runnable;
 import android.util.Log;
 
 import com.intel.jndn.management.ManagementException;
-import com.intel.jndn.management.Nfdc;
-import com.intel.jndn.management.types.FibEntry;
 
-import net.named_data.jndn.Data;
-import net.named_data.jndn.Face;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.Name;
-import net.named_data.jndn.OnData;
-import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.util.Blob;
+import net.named_data.nfd.utils.FaceEventLoop;
 import net.named_data.nfd.wifidirect.callback.ProbeOnData;
 import net.named_data.nfd.wifidirect.model.Peer;
+import net.named_data.nfd.wifidirect.model.ProbeResponse;
+import net.named_data.nfd.wifidirect.utils.FibSnapshotCache;
 import net.named_data.nfd.wifidirect.utils.NDNController;
+import net.named_data.nfd.wifidirect.utils.ProbeScheduler;
+import net.named_data.nfd.wifidirect.utils.SegmentedFetcher;
 import net.named_data.nfd.wifidirect.utils.WDBroadcastReceiver;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.HashSet;
 
 /**
  * Probes network for data prefixes, as specified in protocol.
@@ -26,9 +26,14 @@ import java.util.List;
  */
 public class ProbeRunnable implements Runnable {
     private static final String TAG = "ProbeRunnable";
-    private final int MAX_TIMEOUTS_ALLOWED = 5;
 
-    private Face mFace = NDNController.getInstance().getLocalHostFace();
+    // consecutive timeouts; unresponsive peers are re-probed quickly (see ProbeScheduler),
+    // so this takes a few seconds rather than a few probe periods
+    private final int MAX_TIMEOUTS_ALLOWED = 3;
+
+    private FibSnapshotCache mFibSnapshotCache = NDNController.getInstance().getFibSnapshotCache();
+    private FaceEventLoop mEventLoop = NDNController.getInstance().getEventLoop();
+    private ProbeScheduler mProbeScheduler = NDNController.getInstance().getProbeScheduler();
 
     @Override
     public void run() {
@@ -36,57 +41,118 @@ public class ProbeRunnable implements Runnable {
             if (WDBroadcastReceiver.myAddress == null) {
                 Log.d(TAG, "Skip this iteration due to null WD ip.");
             } else {
-                // enumerate FIB entries
-                List<FibEntry> fibEntries = Nfdc.getFibList(mFace);
-
-                // look only for the ones related to /localhop/wifidirect/xxx
-                for (FibEntry entry : fibEntries) {
-                    String prefix = entry.getPrefix().toString();
-                    final String[] prefixArr = prefix.split("/");
-                    if (prefix.startsWith(NDNController.PROBE_PREFIX) && !prefixArr[prefixArr.length - 1].equals(WDBroadcastReceiver.myAddress)) {
-                        Log.d(TAG, "Someone else's localhop prefix found!");
-                        Log.d(TAG, entry.getPrefix().toString());
-
-                        // send interest to this peer
-                        Interest interest = new Interest(new Name(prefix + "/" + WDBroadcastReceiver.myAddress + "/probe?" + System.currentTimeMillis()));
-                        interest.setMustBeFresh(true);
-                        Log.d(TAG, "Sending interest: " + interest.getName().toString());
-                        mFace.expressInterest(interest, new OnData() {
-                            @Override
-                            public void onData(Interest interest, Data data) {
-                                (new ProbeOnData()).doJob(interest, data);
-                                Peer peer = NDNController.getInstance().getPeerByIp(prefixArr[prefixArr.length - 1]);
-                                peer.setNumProbeTimeouts(0);    // peer responded, so reset timeout counter
-                            }
-                        }, new OnTimeout() {
-                            @Override
-                            public void onTimeout(Interest interest) {
-                                Peer peer = NDNController.getInstance().getPeerByIp(prefixArr[prefixArr.length - 1]);
-                                if (peer == null) {
-                                    Log.d(TAG, "No peer information available to track timeout.");
-                                    return;
-                                }
-
-                                Log.d(TAG, "Timeout for interest: " + interest.getName().toString() +
-                                        " Attempts: " + (peer.getNumProbeTimeouts() + 1));
-
-                                if (peer.getNumProbeTimeouts() + 1 >= MAX_TIMEOUTS_ALLOWED) {
-                                    // declare peer as disconnected from group
-                                    NDNController.getInstance().removePeer(prefixArr[prefixArr.length - 1]);
-                                } else {
-                                    peer.setNumProbeTimeouts(peer.getNumProbeTimeouts() + 1);
-                                }
-                            }
-                        });
+                long now = System.currentTimeMillis();
+
+                // every probed peer has a face, and so is logged; only fetch the FIB (and face)
+                // datasets when one of them is due, rather than every time the snapshot expires
+                if (!mProbeScheduler.hasDuePeer(NDNController.getInstance().getIpsOfLoggedPeers(), now)) {
+                    return;
+                }
+                HashSet<String> peerIps = new HashSet<>();
+
+                // look only for the /localhop/wifidirect/xxx entries of the (cached) FIB
+                FibSnapshotCache.Snapshot snapshot = mFibSnapshotCache.get();
+                for (String prefix : snapshot.getProbePrefixes()) {
+                    String[] prefixArr = prefix.split("/");
+                    final String peerIp = prefixArr[prefixArr.length - 1];
+                    if (peerIp.equals(WDBroadcastReceiver.myAddress)) {
+                        continue;
                     }
+                    peerIps.add(peerIp);
+
+                    // each peer is probed at its own pace
+                    if (!mProbeScheduler.shouldProbe(peerIp, now)) {
+                        continue;
+                    }
+                    Log.d(TAG, "Probing peer: " + prefix);
+
+                    // include the version of this peer's advertisement we already know, so
+                    // that the peer only needs to send what changed since then
+                    Peer peer = NDNController.getInstance().getPeerByIp(peerIp);
+                    long knownVersion = (peer == null) ? ProbeResponse.NO_VERSION : peer.getProbeVersion();
+
+                    // send interest to this peer, via the event loop
+                    // /localhop/wifidirect/<toIp>/<fromIp>/probe/<knownVersion>/<timestamp>
+                    final Interest interest = new Interest(new Name(prefix + "/" + WDBroadcastReceiver.myAddress +
+                            "/probe/" + knownVersion + "/" + now));
+                    interest.setMustBeFresh(true);
+                    interest.setInterestLifetimeMilliseconds(mProbeScheduler.getProbeTimeout(peerIp));
+                    mEventLoop.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            sendProbe(interest, peerIp);
+                        }
+                    });
                 }
+
+                // forget the schedule of peers that left
+                mProbeScheduler.retainPeers(peerIps);
             }
         } catch (ManagementException me) {
             Log.e(TAG, "Something went wrong with acquiring the FibList.");
             me.printStackTrace();
+        }
+    }
+
+    // runs on the event loop thread
+    private void sendProbe(Interest interest, final String peerIp) {
+        try {
+            Log.d(TAG, "Sending interest: " + interest.getName().toString());
+
+            // the response may be segmented, fetch all of its segments
+            new SegmentedFetcher(mEventLoop, interest, new SegmentedFetcher.OnComplete() {
+                @Override
+                public void onComplete(final Interest interest, final Blob content) {
+                    // handling the response may fetch the FIB and unregister prefixes, which
+                    // blocks, so it is done on the management lane rather than on the event loop
+                    final long receiveTime = System.currentTimeMillis();
+                    NDNController.getInstance().executeManagementJob("probeResponse", new Runnable() {
+                        @Override
+                        public void run() {
+                            boolean changed = (new ProbeOnData()).doJob(interest, content);
+                            mProbeScheduler.onResponse(peerIp, receiveTime, changed);
+
+                            Peer peer = NDNController.getInstance().getPeerByIp(peerIp);
+                            if (peer != null) {
+                                peer.setNumProbeTimeouts(0);    // peer responded, so reset timeout counter
+                            }
+                        }
+                    });
+                }
+            }, new SegmentedFetcher.OnError() {
+                @Override
+                public void onError(Interest interest, boolean firstSegment, String reason) {
+                    if (!firstSegment) {
+                        // the peer is reachable, but we did not get its whole response; this
+                        // is not held against it, the next probe fetches it again
+                        Log.d(TAG, "Incomplete response for interest: " + interest.getName().toString() +
+                                " (" + reason + ")");
+                        mProbeScheduler.onIncomplete(peerIp, System.currentTimeMillis());
+                        return;
+                    }
+                    mProbeScheduler.onTimeout(peerIp, System.currentTimeMillis());
+
+                    Peer peer = NDNController.getInstance().getPeerByIp(peerIp);
+                    if (peer == null) {
+                        Log.d(TAG, "No peer information available to track timeout.");
+                        return;
+                    }
+
+                    Log.d(TAG, "Timeout for interest: " + interest.getName().toString() +
+                            " Attempts: " + (peer.getNumProbeTimeouts() + 1));
+
+                    if (peer.getNumProbeTimeouts() + 1 >= MAX_TIMEOUTS_ALLOWED) {
+                        // declare peer as disconnected from group
+                        NDNController.getInstance().removePeer(peerIp);
+                    } else {
+                        peer.setNumProbeTimeouts(peer.getNumProbeTimeouts() + 1);
+                    }
+                }
+            }).start();
         } catch (IOException ioe) {
             Log.e(TAG, "Something went wrong with sending a probe interest.");
             ioe.printStackTrace();
+            mProbeScheduler.onIncomplete(peerIp, System.currentTimeMillis());
         }
     }
 }
@@ -23,6 +23,7 @@ public class FaceDestroyTask extends AsyncTask<Integer, Void, Void> {
             Log.d(TAG, "-------- Inside face destroy task --------");
             // attempt to destroy Face Id, specified as the first and only parameter
             Nfdc.destroyFace(NDNController.getInstance().getLocalHostFace(), params[0]);
+            NDNController.getInstance().getFibSnapshotCache().invalidate(); // next hops via this face are gone
             Log.d(TAG, "Successfully destroyed Face with Face id: " + params[0]);
         } catch (ManagementException me) {
             Log.e(TAG, me.getMessage());
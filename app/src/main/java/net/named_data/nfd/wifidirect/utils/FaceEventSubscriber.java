@@ -0,0 +1,283 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.NetworkNack;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnNetworkNack;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
+import net.named_data.jndn.util.Blob;
+import net.named_data.nfd.utils.FaceEventLoop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Subscribes to NFD's face event notification stream (/localhost/nfd/faces/events)
+ * on the FaceEventLoop, so that face creation and destruction are known as they happen
+ * instead of on the next full face list fetch.
+ *
+ * The stream is a sequence of Data packets named /localhost/nfd/faces/events/<seq>.
+ * The first Interest asks for the latest notification (rightmost child); each following
+ * Interest asks for the next sequence number and stays pending until NFD publishes it,
+ * and is simply expressed again when it times out, as no face changed meanwhile.
+ * When the stream is lost (Nack, NFD unreachable), the subscriber starts over from the
+ * latest notification with an increasing delay, and reports that notifications may
+ * have been missed, so that the listener can reconcile with a full face list. The same
+ * happens when the event loop reconnects to NFD, which may have restarted its stream.
+ *
+ * All methods, except start() and stop(), and all listener calls run on the event loop thread.
+ */
+public class FaceEventSubscriber {
+
+    public interface Listener {
+        /**
+         * Called when a face is created, except for on-demand faces, which NFD creates for
+         * connections initiated by the remote side (e.g. tcp4://<peer>:<ephemeral port>)
+         * and are never the face we created to a peer.
+         */
+        void onFaceCreated(int faceId, String remoteUri);
+
+        void onFaceDestroyed(int faceId);
+
+        /**
+         * Called when the subscription (re)starts, or notifications were skipped, i.e.,
+         * whenever events may have been missed.
+         */
+        void onNotificationsMissed();
+    }
+
+    public static final Name FACE_EVENTS_PREFIX = new Name("/localhost/nfd/faces/events");
+
+    private static final String TAG = "FaceEventSubscriber";
+    private static final long INTEREST_LIFETIME = 60000;   // in ms, a pending Interest per notification
+    private static final long MIN_RETRY_DELAY = 1000;      // in ms, after a Nack or an error
+    private static final long MAX_RETRY_DELAY = 30000;     // in ms
+
+    // FaceEventNotification TLV types, see NFD management protocol
+    private static final int TLV_FACE_EVENT_NOTIFICATION = 0xC0;
+    private static final int TLV_FACE_EVENT_KIND = 0xC1;
+    private static final int TLV_FACE_ID = 0x69;
+    private static final int TLV_URI = 0x72;
+    private static final int TLV_FACE_PERSISTENCY = 0x85;
+
+    private static final int KIND_CREATED = 1;
+    private static final int KIND_DESTROYED = 2;
+
+    private static final int PERSISTENCY_ON_DEMAND = 1;
+
+    private final FaceEventLoop mEventLoop;
+    private final Listener listener;
+
+    private boolean isRunning = false;
+    private long pendingInterestId = -1;
+    private long nextSequence = -1;             // -1 until the first notification is received
+    private boolean isSequenceMarked = true;    // whether NFD names notifications with sequence number markers
+    private boolean hasMissed = true;           // whether the listener is yet to be told of missed notifications
+    private long retryDelay = MIN_RETRY_DELAY;
+
+    private final FaceEventLoop.OnReconnected onReconnected = new FaceEventLoop.OnReconnected() {
+        @Override
+        public void onReconnected() {
+            if (!isRunning) {
+                return;
+            }
+            // the pending Interest, if any, times out next, and then asks for the latest
+            Log.d(TAG, "Event loop reconnected, subscribing again");
+            nextSequence = -1;
+            hasMissed = true;
+            retryDelay = MIN_RETRY_DELAY;
+        }
+    };
+
+    public FaceEventSubscriber(FaceEventLoop eventLoop, Listener listener) {
+        this.mEventLoop = eventLoop;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts following the notification stream. May be called from any thread.
+     */
+    public void start() {
+        mEventLoop.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isRunning) {
+                    return;
+                }
+                isRunning = true;
+                hasMissed = true;
+                mEventLoop.addOnReconnected(onReconnected);
+                retryDelay = MIN_RETRY_DELAY;
+                Log.d(TAG, "Subscribing to " + FACE_EVENTS_PREFIX.toUri());
+                expressLatest();
+            }
+        });
+    }
+
+    /**
+     * Stops following the notification stream. May be called from any thread.
+     */
+    public void stop() {
+        mEventLoop.post(new Runnable() {
+            @Override
+            public void run() {
+                isRunning = false;
+                mEventLoop.removeOnReconnected(onReconnected);
+                if (pendingInterestId != -1) {
+                    mEventLoop.removePendingInterest(pendingInterestId);
+                    pendingInterestId = -1;
+                }
+                Log.d(TAG, "Unsubscribed from " + FACE_EVENTS_PREFIX.toUri());
+            }
+        });
+    }
+
+    /* helpers, on the event loop thread */
+
+    /**
+     * Starts over from the latest notification; anything before it is unknown.
+     */
+    private void expressLatest() {
+        nextSequence = -1;
+
+        Interest interest = new Interest(FACE_EVENTS_PREFIX);
+        interest.setChildSelector(1);
+        interest.setMustBeFresh(true);
+        if (expressInterest(interest) && hasMissed) {
+            // the Interest is pending, so any later event will reach us
+            hasMissed = false;
+            listener.onNotificationsMissed();
+        }
+    }
+
+    private void expressNext() {
+        Name name = new Name(FACE_EVENTS_PREFIX);
+        if (isSequenceMarked) {
+            name.appendSequenceNumber(nextSequence);
+        } else {
+            name.append(Name.Component.fromNumber(nextSequence));
+        }
+        expressInterest(new Interest(name));
+    }
+
+    /**
+     * @return false if the Interest could not be expressed, in which case a retry is scheduled
+     */
+    private boolean expressInterest(Interest interest) {
+        interest.setInterestLifetimeMilliseconds(INTEREST_LIFETIME);
+        try {
+            pendingInterestId = mEventLoop.expressInterest(interest, new OnData() {
+                @Override
+                public void onData(Interest interest, Data data) {
+                    pendingInterestId = -1;
+                    if (isRunning) {
+                        onNotification(data);
+                    }
+                }
+            }, new OnTimeout() {
+                @Override
+                public void onTimeout(Interest interest) {
+                    pendingInterestId = -1;
+                    if (!isRunning) {
+                        return;
+                    }
+                    if (nextSequence == -1) {
+                        expressLatest();
+                    } else {
+                        expressNext();
+                    }
+                }
+            }, new OnNetworkNack() {
+                @Override
+                public void onNetworkNack(Interest interest, NetworkNack networkNack) {
+                    pendingInterestId = -1;
+                    if (isRunning) {
+                        onStreamLost("Nack " + networkNack.getReason());
+                    }
+                }
+            });
+            return true;
+        } catch (IOException e) {
+            pendingInterestId = -1;
+            onStreamLost(e.getMessage());
+            return false;
+        }
+    }
+
+    private void onNotification(Data data) {
+        Name.Component last = data.getName().get(-1);
+        long sequence;
+        try {
+            sequence = last.toSequenceNumber();
+            isSequenceMarked = true;
+        } catch (EncodingException e) {
+            sequence = last.toNumber();
+            isSequenceMarked = false;
+        }
+
+        if (nextSequence != -1 && sequence != nextSequence) {
+            Log.d(TAG, "Expected notification " + nextSequence + ", got " + sequence);
+            listener.onNotificationsMissed();
+        }
+        nextSequence = sequence + 1;
+        retryDelay = MIN_RETRY_DELAY;
+
+        try {
+            dispatch(data.getContent());
+        } catch (EncodingException e) {
+            Log.e(TAG, "Unable to decode face event notification " + sequence + ": " + e.getMessage());
+        }
+
+        expressNext();
+    }
+
+    private void dispatch(Blob content) throws EncodingException {
+        TlvDecoder decoder = new TlvDecoder(content.buf());
+        int endOffset = decoder.readNestedTlvsStart(TLV_FACE_EVENT_NOTIFICATION);
+        int kind = (int) decoder.readNonNegativeIntegerTlv(TLV_FACE_EVENT_KIND);
+        int faceId = (int) decoder.readNonNegativeIntegerTlv(TLV_FACE_ID);
+        ByteBuffer uri = decoder.readBlobTlv(TLV_URI);
+        // LocalUri and FaceScope come before FacePersistency, LinkType and flags after it
+        int persistency = -1;
+        while (decoder.getOffset() < endOffset) {
+            if (decoder.peekType(TLV_FACE_PERSISTENCY, endOffset)) {
+                persistency = (int) decoder.readNonNegativeIntegerTlv(TLV_FACE_PERSISTENCY);
+                break;
+            }
+            decoder.readVarNumber();
+            int length = decoder.readVarNumber();
+            decoder.seek(decoder.getOffset() + length);
+        }
+        decoder.seek(endOffset);
+
+        if (kind == KIND_CREATED) {
+            if (persistency == PERSISTENCY_ON_DEMAND) {
+                Log.d(TAG, "Ignoring on-demand face " + faceId);
+                return;
+            }
+            listener.onFaceCreated(faceId, new Blob(uri, true).toString());
+        } else if (kind == KIND_DESTROYED) {
+            listener.onFaceDestroyed(faceId);
+        }
+    }
+
+    private void onStreamLost(String reason) {
+        Log.d(TAG, "Face event stream lost (" + reason + "), subscribing again in " + retryDelay + "ms");
+        hasMissed = true;
+        mEventLoop.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (isRunning && pendingInterestId == -1) {
+                    expressLatest();
+                }
+            }
+        }, retryDelay);
+        retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+    }
+}
@@ -0,0 +1,194 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import com.intel.jndn.management.ManagementException;
+import com.intel.jndn.management.Nfdc;
+import com.intel.jndn.management.enums.FaceScope;
+import com.intel.jndn.management.types.FaceStatus;
+import com.intel.jndn.management.types.FibEntry;
+import com.intel.jndn.management.types.NextHopRecord;
+
+import net.named_data.jndn.Face;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches an indexed snapshot of NFD's FIB (and of which faces are local), so that
+ * probe handling does not fetch and scan the whole FIB for every probe sent or received.
+ *
+ * A snapshot is reused until it is older than the configured TTL, or until invalidate()
+ * is called, which NDNController does whenever it changes the FIB itself (prefix
+ * registration/unregistration, face destruction).
+ */
+public class FibSnapshotCache {
+
+    private static final String TAG = "FibSnapshotCache";
+
+    private final Face mFace;
+    private volatile long ttl;              // in ms
+    private volatile Snapshot snapshot = null;  // written under this
+
+    /**
+     * @param face localhost face used for the management dataset requests
+     * @param ttl maximum age of a snapshot, in ms
+     */
+    public FibSnapshotCache(Face face, long ttl) {
+        this.mFace = face;
+        this.ttl = ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Drops the current snapshot, so the next call to get() fetches a fresh one.
+     */
+    public synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Returns the current snapshot, fetching a new one from NFD if the current one
+     * is missing or expired.
+     * @return an immutable FIB snapshot
+     * @throws ManagementException if the FIB or face list could not be retrieved
+     */
+    public synchronized Snapshot get() throws ManagementException {
+        long now = System.currentTimeMillis();
+        if (snapshot == null || now - snapshot.fetchTime > ttl) {
+            List<FibEntry> fibEntries = Nfdc.getFibList(mFace);
+            List<FaceStatus> faceStatuses = Nfdc.getFaceList(mFace);
+            snapshot = new Snapshot(fibEntries, faceStatuses, now);
+            Log.d(TAG, "Fetched FIB snapshot with " + fibEntries.size() + " entries");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the current snapshot if it has not expired, without fetching a new one and
+     * without waiting for a fetch in progress, for threads that must not block (e.g. the
+     * event loop).
+     * @return an immutable FIB snapshot, or null if get() would have to fetch one
+     */
+    public Snapshot peek() {
+        Snapshot current = snapshot;
+        if (current == null || System.currentTimeMillis() - current.fetchTime > ttl) {
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * Immutable, indexed view of the FIB at a point in time.
+     */
+    public static class Snapshot {
+
+        private final long fetchTime;
+        private final List<String> probePrefixes;               // /localhop/wifidirect/<ip> entries
+        private final Map<String, Set<Integer>> nextHopsByDataPrefix;
+        private final Map<Integer, Set<String>> dataPrefixesByFace;
+        private final Set<String> locallyServedDataPrefixes;   // reachable via a local-scope face
+
+        Snapshot(List<FibEntry> fibEntries, List<FaceStatus> faceStatuses, long fetchTime) {
+            this.fetchTime = fetchTime;
+
+            HashSet<Integer> localFaceIds = new HashSet<>();
+            for (FaceStatus faceStatus : faceStatuses) {
+                if (faceStatus.getFaceScope().toInteger() == FaceScope.LOCAL.toInteger()) {
+                    localFaceIds.add(faceStatus.getFaceId());
+                }
+            }
+
+            ArrayList<String> probes = new ArrayList<>();
+            HashMap<String, Set<Integer>> nextHops = new HashMap<>(fibEntries.size());
+            HashMap<Integer, Set<String>> byFace = new HashMap<>();
+            HashSet<String> locallyServed = new HashSet<>();
+
+            for (FibEntry fibEntry : fibEntries) {
+                String prefix = fibEntry.getPrefix().toString();
+                if (prefix.startsWith(NDNController.PROBE_PREFIX)) {
+                    probes.add(prefix);
+                    continue;
+                }
+                if (prefix.startsWith("/localhop") || prefix.startsWith("/localhost")) {
+                    continue;
+                }
+
+                HashSet<Integer> faceIds = new HashSet<>();
+                for (NextHopRecord nextHopRecord : fibEntry.getNextHopRecords()) {
+                    int faceId = nextHopRecord.getFaceId();
+                    faceIds.add(faceId);
+
+                    Set<String> prefixes = byFace.get(faceId);
+                    if (prefixes == null) {
+                        prefixes = new HashSet<>();
+                        byFace.put(faceId, prefixes);
+                    }
+                    prefixes.add(prefix);
+
+                    if (localFaceIds.contains(faceId)) {
+                        locallyServed.add(prefix);
+                    }
+                }
+                nextHops.put(prefix, Collections.unmodifiableSet(faceIds));
+            }
+
+            for (Map.Entry<Integer, Set<String>> entry : byFace.entrySet()) {
+                entry.setValue(Collections.unmodifiableSet(entry.getValue()));
+            }
+
+            this.probePrefixes = Collections.unmodifiableList(probes);
+            this.nextHopsByDataPrefix = Collections.unmodifiableMap(nextHops);
+            this.dataPrefixesByFace = Collections.unmodifiableMap(byFace);
+            this.locallyServedDataPrefixes = Collections.unmodifiableSet(locallyServed);
+        }
+
+        /**
+         * @return all /localhop/wifidirect/... prefixes in the FIB
+         */
+        public List<String> getProbePrefixes() {
+            return probePrefixes;
+        }
+
+        /**
+         * @return all data prefixes, i.e. prefixes outside /localhop and /localhost
+         */
+        public Set<String> getDataPrefixes() {
+            return nextHopsByDataPrefix.keySet();
+        }
+
+        /**
+         * @return data prefixes that have at least one local-scope next hop (e.g. an app on
+         * this device)
+         */
+        public Set<String> getLocallyServedDataPrefixes() {
+            return locallyServedDataPrefixes;
+        }
+
+        /**
+         * @param faceId Face id of the next hop
+         * @return data prefixes with a next hop towards faceId, possibly empty
+         */
+        public Set<String> getDataPrefixesForFace(int faceId) {
+            Set<String> prefixes = dataPrefixesByFace.get(faceId);
+            return prefixes == null ? Collections.<String>emptySet() : prefixes;
+        }
+
+        /**
+         * @param prefix a data prefix
+         * @return Face ids of the next hops of prefix, possibly empty
+         */
+        public Set<Integer> getNextHops(String prefix) {
+            Set<Integer> faceIds = nextHopsByDataPrefix.get(prefix);
+            return faceIds == null ? Collections.<Integer>emptySet() : faceIds;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs NDNController's background jobs on separate lanes, each backed by its own
+ * thread, so that a slow job (e.g. a blocking management command) only delays jobs
+ * of the same lane.
+ *
+ * Periodic jobs run at a fixed rate. If a run overruns its period, the runs that were
+ * missed in the meantime are skipped instead of being executed back to back. Each job
+ * also has a deadline: runs taking longer are reported (they cannot safely be
+ * aborted, as management commands block in jndn).
+ *
+ * Per-job metrics (runs, skips, deadline misses, queue delay, execution time) are
+ * available through getMetrics().
+ *
+ * Runs are skipped based on the executor's own schedule, and times are measured with a
+ * monotonic clock: steps of the wall clock (e.g. a network time update) neither skip
+ * nor delay jobs.
+ */
+public class JobScheduler {
+
+    /**
+     * Source of the time used for metrics and deadlines, in ms.
+     */
+    interface Clock {
+        long now();
+    }
+
+    private static final Clock MONOTONIC_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            // the time base of ScheduledThreadPoolExecutor
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        }
+    };
+
+    public enum Lane {
+        DISCOVERY,      // WiFi Direct peer discovery
+        PROBING,        // prefix probing
+        MANAGEMENT,     // NFD management I/O, e.g. Face consistency checks
+        CLEANUP         // tear down
+    }
+
+    /**
+     * Immutable snapshot of the metrics of one job.
+     */
+    public static class Metrics {
+        public final long runs;
+        public final long skippedRuns;          // runs skipped because of an overrun
+        public final long deadlineMisses;
+        public final long maxQueueDelay;        // in ms, between the scheduled and the actual start
+        public final long avgQueueDelay;        // in ms
+        public final long maxExecutionTime;     // in ms
+        public final long avgExecutionTime;     // in ms
+
+        Metrics(JobStats stats) {
+            this.runs = stats.runs;
+            this.skippedRuns = stats.skippedRuns;
+            this.deadlineMisses = stats.deadlineMisses;
+            this.maxQueueDelay = stats.maxQueueDelay;
+            this.avgQueueDelay = stats.runs == 0 ? 0 : stats.totalQueueDelay / stats.runs;
+            this.maxExecutionTime = stats.maxExecutionTime;
+            this.avgExecutionTime = stats.runs == 0 ? 0 : stats.totalExecutionTime / stats.runs;
+        }
+
+        @Override
+        public String toString() {
+            return "runs=" + runs + ", skipped=" + skippedRuns + ", deadlineMisses=" + deadlineMisses +
+                    ", queueDelay(avg/max)=" + avgQueueDelay + "/" + maxQueueDelay + "ms" +
+                    ", execution(avg/max)=" + avgExecutionTime + "/" + maxExecutionTime + "ms";
+        }
+    }
+
+    private static final String TAG = "JobScheduler";
+
+    private final Clock clock;
+    private final EnumMap<Lane, ScheduledThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+    private final ConcurrentHashMap<String, JobStats> stats = new ConcurrentHashMap<>();
+
+    public JobScheduler() {
+        this(MONOTONIC_CLOCK);
+    }
+
+    /**
+     * @param clock time source for metrics and deadlines
+     */
+    JobScheduler(Clock clock) {
+        this.clock = clock;
+        for (final Lane lane : Lane.values()) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "NDNController-" + lane.name().toLowerCase());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            executors.put(lane, executor);
+        }
+    }
+
+    /**
+     * Runs job periodically on the given lane.
+     * @param lane lane to run the job on
+     * @param name name of the job, used for metrics and logging
+     * @param job the job
+     * @param initialDelay delay before the first run, in ms
+     * @param period time between the starts of successive runs, in ms
+     * @param deadline maximum expected execution time of a run, in ms
+     * @return Future that can be used to cancel the job
+     */
+    public Future schedulePeriodic(Lane lane, String name, Runnable job, long initialDelay,
+                                   long period, long deadline) {
+        PeriodicJob periodicJob = new PeriodicJob(name, job, period, deadline);
+        periodicJob.future = executors.get(lane).scheduleAtFixedRate(periodicJob,
+                initialDelay, period, TimeUnit.MILLISECONDS);
+        return periodicJob.future;
+    }
+
+    /**
+     * Runs job once, as soon as possible, on the given lane.
+     * @param lane lane to run the job on
+     * @param name name of the job, used for metrics and logging
+     * @param job the job
+     * @param deadline maximum expected execution time, in ms
+     * @return Future that can be used to cancel the job, or null if the lane was shut down
+     * (e.g. a callback handing work over while the controller is being torn down)
+     */
+    public Future execute(Lane lane, String name, final Runnable job, final long deadline) {
+        final JobStats jobStats = getStats(name);
+        final long submitTime = clock.now();
+        try {
+            return executors.get(lane).submit(new Runnable() {
+                @Override
+                public void run() {
+                    runMeasured(jobStats, job, Math.max(0, clock.now() - submitTime), deadline);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Dropped job " + name + ", lane " + lane + " is shut down");
+            return null;
+        }
+    }
+
+    /**
+     * Returns an Executor that runs each command once on the given lane, e.g. for
+     * AsyncTask.executeOnExecutor(), so that the task's background work is serialized
+     * with the other jobs of the lane.
+     * @param lane lane to run the commands on
+     * @param name name of the commands, used for metrics and logging
+     * @param deadline maximum expected execution time of a command, in ms
+     * @return the Executor
+     */
+    public Executor executorFor(final Lane lane, final String name, final long deadline) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                JobScheduler.this.execute(lane, name, command, deadline);
+            }
+        };
+    }
+
+    /**
+     * @return immutable snapshot of { job name : metrics }
+     */
+    public Map<String, Metrics> getMetrics() {
+        HashMap<String, Metrics> metrics = new HashMap<>();
+        for (Map.Entry<String, JobStats> entry : stats.entrySet()) {
+            synchronized (entry.getValue()) {
+                metrics.put(entry.getKey(), new Metrics(entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Stops all lanes after their running job, dropping periodic and pending jobs.
+     */
+    public void shutdown() {
+        for (ScheduledThreadPoolExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops the given lanes after their running job, dropping periodic and pending jobs,
+     * and waits until their running jobs have finished.
+     * @param timeout maximum time to wait, in ms
+     * @param lanes lanes to stop
+     * @return true if all of the lanes finished within timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean shutdownAndAwait(long timeout, Lane... lanes) throws InterruptedException {
+        for (Lane lane : lanes) {
+            executors.get(lane).shutdown();
+        }
+        long end = clock.now() + timeout;
+        for (Lane lane : lanes) {
+            long remaining = Math.max(0, end - clock.now());
+            if (!executors.get(lane).awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private JobStats getStats(String name) {
+        JobStats jobStats = stats.get(name);
+        if (jobStats == null) {
+            JobStats newStats = new JobStats(name);
+            jobStats = stats.putIfAbsent(name, newStats);
+            if (jobStats == null) {
+                jobStats = newStats;
+            }
+        }
+        return jobStats;
+    }
+
+    private void runMeasured(JobStats jobStats, Runnable job, long queueDelay, long deadline) {
+        long startTime = clock.now();
+        try {
+            job.run();
+        } catch (RuntimeException e) {
+            // an exception would silently cancel a periodic job, so log it and carry on
+            Log.e(TAG, "Job " + jobStats.name + " failed: " + e.getMessage());
+        }
+        long executionTime = Math.max(0, clock.now() - startTime);
+
+        boolean missedDeadline = executionTime > deadline;
+        if (missedDeadline) {
+            Log.w(TAG, "Job " + jobStats.name + " took " + executionTime + "ms, deadline is " + deadline + "ms");
+        }
+        jobStats.recordRun(queueDelay, executionTime, missedDeadline);
+    }
+
+    private class PeriodicJob implements Runnable {
+        private final JobStats jobStats;
+        private final Runnable job;
+        private final long period;
+        private final long deadline;
+        volatile ScheduledFuture<?> future = null;  // set once scheduled
+
+        PeriodicJob(String name, Runnable job, long period, long deadline) {
+            this.jobStats = getStats(name);
+            this.job = job;
+            this.period = period;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            // while a run is executing, the executor's delay is the time since it was due
+            // (its next time is only set once the run returns)
+            ScheduledFuture<?> scheduled = future;
+            long lateness = scheduled == null ? 0 : Math.max(0, -scheduled.getDelay(TimeUnit.MILLISECONDS));
+
+            // a full period late means a previous run overran, and the executor is now
+            // catching up on missed runs; skip those
+            if (lateness >= period) {
+                jobStats.recordSkip();
+                return;
+            }
+            runMeasured(jobStats, job, lateness, deadline);
+        }
+    }
+
+    private static class JobStats {
+        final String name;
+        long runs = 0;
+        long skippedRuns = 0;
+        long deadlineMisses = 0;
+        long totalQueueDelay = 0;
+        long maxQueueDelay = 0;
+        long totalExecutionTime = 0;
+        long maxExecutionTime = 0;
+
+        JobStats(String name) {
+            this.name = name;
+        }
+
+        synchronized void recordRun(long queueDelay, long executionTime, boolean missedDeadline) {
+            runs++;
+            totalQueueDelay += queueDelay;
+            maxQueueDelay = Math.max(maxQueueDelay, queueDelay);
+            totalExecutionTime += executionTime;
+            maxExecutionTime = Math.max(maxExecutionTime, executionTime);
+            if (missedDeadline) {
+                deadlineMisses++;
+            }
+        }
+
+        synchronized void recordSkip() {
+            skippedRuns++;
+        }
+    }
+}
@@ -19,9 +19,11 @@ import net.named_data.jndn.security.SecurityException;
 import net.named_data.jndn.security.identity.IdentityManager;
 import net.named_data.jndn.security.identity.MemoryIdentityStorage;
 import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
+import net.named_data.nfd.utils.FaceEventLoop;
 import net.named_data.nfd.wifidirect.callback.GenericCallback;
 import net.named_data.nfd.wifidirect.callback.ProbeOnInterest;
 import net.named_data.nfd.wifidirect.model.Peer;
+import net.named_data.nfd.wifidirect.model.ProbeResponse;
 import net.named_data.nfd.wifidirect.runnable.DiscoverPeersRunnable;
 import net.named_data.nfd.wifidirect.runnable.FaceConsistencyRunnable;
 import net.named_data.nfd.wifidirect.runnable.ProbeRunnable;
@@ -29,14 +31,10 @@ import net.named_data.nfd.wifidirect.service.WDBroadcastReceiverService;
 import net.named_data.nfd.wifidirect.task.FaceCreateTask;
 import net.named_data.nfd.wifidirect.task.FaceDestroyTask;
 import net.named_data.nfd.wifidirect.task.RegisterPrefixTask;
-import net.named_data.nfd.wifidirect.task.RibRegisterPrefixTask;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
  * New streamlined NDNOverWifiDirect controller. This class acts as the
@@ -55,9 +53,20 @@ public class NDNController {
 
     private static final String TAG = "NDNController";
     private static final int DISCOVER_PEERS_DELAY = 30000;  // in ms
-    private static final int PROBE_DELAY = 12000;           // in ms
-    private static final int FACE_CONSISTENCY_CHECK_DELAY = DISCOVER_PEERS_DELAY + PROBE_DELAY + 100;
+    private static final int PROBE_TICK = 500;              // in ms, how often ProbeScheduler is consulted
+    // face changes are followed through NFD's face event notifications (see FaceEventSubscriber),
+    // so the full face list is only compared now and then, in case a notification was lost
+    private static final int FACE_CONSISTENCY_CHECK_DELAY = 300000;
+
+    // expected maximum execution time of background jobs, in ms, see JobScheduler
+    private static final int DISCOVER_PEERS_DEADLINE = 1000;
+    private static final int PROBE_DEADLINE = 2000;
+    private static final int FACE_CONSISTENCY_CHECK_DEADLINE = 5000;
+    private static final int MANAGEMENT_DEADLINE = 2000;   // face creation/destruction, probe handling
+    private static final int CLEAN_UP_DEADLINE = 20000;    // includes waiting for the other lanes
+    private static final int LANE_STOP_TIMEOUT = 8000;      // in ms, enough for a face consistency check
     private static final int MAX_PEERS = 5;
+    private static final int FIB_SNAPSHOT_TTL = 5000;       // in ms
 
     // Singleton
     private static NDNController mController = null;
@@ -73,21 +82,34 @@ public class NDNController {
     private Future discoverPeersFuture = null;
     private Future probeFuture = null;
     private Future faceConsistencyFuture = null;
-    private ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+    private JobScheduler jobScheduler;
+    private RibRegistrationPipeline ribRegistrationPipeline;
+    private FibSnapshotCache fibSnapshotCache;
+    private final ProbeAdvertiser probeAdvertiser = new ProbeAdvertiser();
+    private final ProbeSegmentCache probeSegmentCache = new ProbeSegmentCache();
+    private final ProbeScheduler probeScheduler = new ProbeScheduler();
+    private RegisterPrefixTask ownLocalhopTask = null;
+    private FaceEventSubscriber faceEventSubscriber;
 
     // Useful flags
     private boolean hasRegisteredOwnLocalhop = false;
     private boolean isGroupOwner;    // set in broadcast receiver, used primarily in ProbeOnInterest
 
     // we have some redundancy here in data, but difficult to avoid given WiFi Direct API
-    // exposes only MAC addresses at the connect stage
+    // exposes only MAC addresses at the connect stage; the registry indexes peers both by
+    // MAC (contains MAC and device name) and by IP (contains at least Face id info)
     // TODO Perhaps consulting ARP table could resolve this?
-    private HashMap<String, Peer> connectedPeers;                   // { deviceAddress(MAC) : PeerInstance, ... }, contains MAC and device name
-    private HashMap<String, Peer> peersMap;                         // { peerIp : PeerInstance }, contains at least Face id info
+    private final PeerRegistry peerRegistry = new PeerRegistry(MAX_PEERS);
 
-    // single Face instance at localhost, not to be used outside of this class
+    // single Face instance at localhost for management commands, not to be used outside of this class
     private final Face mFace = new Face("localhost");
 
+    // localhost Face used only by fibSnapshotCache for FIB and face dataset requests
+    private final Face fibSnapshotFace = new Face("localhost");
+
+    // shared event loop, whose face carries our registered prefixes and outgoing probe interests
+    private final FaceEventLoop mEventLoop = FaceEventLoop.getInstance();
+
     /**
      * Private constructor to prevent outside instantiation.
      */
@@ -108,10 +130,71 @@ public class NDNController {
             Log.e(TAG, "Unable to set command signing info for localhost face.");
         }
 
-        connectedPeers = new HashMap<>(MAX_PEERS);
-        peersMap = new HashMap<>(MAX_PEERS);
-        scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1); // need at least one thread
+        // prefix registration on the event loop's face needs signing info as well
+        final KeyChain keyChain = mKeyChain;
+        mEventLoop.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mEventLoop.setCommandSigningInfo(keyChain, keyChain.getDefaultCertificateName());
+                } catch (SecurityException e) {
+                    Log.e(TAG, "Unable to set command signing info for event loop face.");
+                }
+            }
+        });
+
+        jobScheduler = new JobScheduler();  // one lane (thread) per kind of background job
+
+        // prefix registrations towards peers are pipelined on their own localhost face
+        ribRegistrationPipeline = new RibRegistrationPipeline(mKeyChain);
+
+        // FIB snapshot shared by the probing logic; our own registrations change the FIB,
+        // so drop the snapshot whenever a batch of them completes
+        // the snapshot is fetched from the probing lane, so give it its own face, independent
+        // of management commands issued on mFace from other threads
+        fibSnapshotCache = new FibSnapshotCache(fibSnapshotFace, FIB_SNAPSHOT_TTL);
+        ribRegistrationPipeline.setOnBatchComplete(new RibRegistrationPipeline.OnBatchComplete() {
+            @Override
+            public void onBatchComplete(int faceId, int numRegistered, int numFailed) {
+                fibSnapshotCache.invalidate();
+
+                if (numFailed > 0) {
+                    // have the next probe fetch the peer's full advertisement, so that
+                    // the failed prefixes are registered again
+                    Peer peer = peerRegistry.getByFaceId(faceId);
+                    if (peer != null) {
+                        peer.setProbeVersion(ProbeResponse.NO_VERSION);
+                    }
+                }
+            }
+        });
+        ribRegistrationPipeline.start();
+
+        // keep the registry in line with NFD's faces as they are created and destroyed
+        faceEventSubscriber = new FaceEventSubscriber(mEventLoop, new FaceEventSubscriber.Listener() {
+            @Override
+            public void onFaceCreated(int faceId, String remoteUri) {
+                String peerIp = getHost(remoteUri);
+                Peer peer = peerIp == null ? null : peerRegistry.getByIp(peerIp);
+                if (peer != null && peer.getFaceId() != faceId) {
+                    Log.d(TAG, "Face " + faceId + " replaces Face " + peer.getFaceId() + " to " + peerIp);
+                    peerRegistry.setFaceId(peerIp, faceId);
+                }
+            }
+
+            @Override
+            public void onFaceDestroyed(int faceId) {
+                String peerIp = unlogPeerByFaceId(faceId);
+                if (peerIp != null) {
+                    Log.d(TAG, "Face " + faceId + " to " + peerIp + " was destroyed, unlogged peer");
+                }
+            }
 
+            @Override
+            public void onNotificationsMissed() {
+                checkFaceConsistency();
+            }
+        });
     }
 
     /**
@@ -132,24 +215,32 @@ public class NDNController {
      * @return true if addition was successful, false otherwise (max peers number reached).
      */
     public boolean logConnectedPeer(Peer peer) {
-        if (connectedPeers.size() < MAX_PEERS) {
-            if (!connectedPeers.containsKey(peer.getDeviceAddress())) {
-                connectedPeers.put(peer.getDeviceAddress(), peer);
-            }
-            return true;
-        } else {
-            return false;
-        }
+        return peerRegistry.addDevice(peer);
+    }
+
+    /**
+     * Records that a connection to the given (logged) peer is being attempted.
+     * @param deviceAddress MAC address of peer
+     */
+    public void markPeerConnecting(String deviceAddress) {
+        peerRegistry.markConnecting(deviceAddress);
+    }
+
+    /**
+     * Stops tracking the WiFi Direct peer with the given MAC address.
+     * @param deviceAddress MAC address of peer
+     */
+    public void removeConnectedPeer(String deviceAddress) {
+        peerRegistry.removeDevice(deviceAddress);
     }
 
     /**
      * Returns the MAC addresses of all currently connected peers.
-     * @return Set of MAC addresses backed by the underlying mapping
-     * of connected peers. Thus, be advised that changes to the returned
-     * set will be reflected in the map.
+     * @return an immutable snapshot of the MAC addresses; use removeConnectedPeer()
+     * to stop tracking a peer.
      */
     public Set<String> getConnectedPeers() {
-        return connectedPeers.keySet();
+        return peerRegistry.getDeviceAddresses();
     }
 
     /**
@@ -158,7 +249,7 @@ public class NDNController {
      * @return Peer instance containing information of this peer.
      */
     public Peer getPeerByDeviceAddress(String deviceAddress) {
-        return connectedPeers.get(deviceAddress);
+        return peerRegistry.getByDeviceAddress(deviceAddress);
     }
 
     /**
@@ -168,12 +259,15 @@ public class NDNController {
      * @return true if new peer was added to the map, else false
      */
     public boolean logPeer(String peerIp, Peer peer) {
-        if (peersMap.containsKey(peerIp)) {
-            return false;
-        }
+        return peerRegistry.addFacePeer(peerIp, peer);
+    }
 
-        peersMap.put(peerIp, peer);
-        return true;
+    /**
+     * Records that the given peer answered a probe.
+     * @param peerIp The peer's WD IP address
+     */
+    public void markPeerProbed(String peerIp) {
+        peerRegistry.markProbed(peerIp);
     }
 
     /**
@@ -182,11 +276,8 @@ public class NDNController {
      * @return the Face id of the peer or -1 if no mapping exists.
      */
     public int getFaceIdForPeer(String peerIp) {
-        if (peersMap.containsKey(peerIp)) {
-            return peersMap.get(peerIp).getFaceId();
-        }
-
-        return -1;
+        Peer peer = peerRegistry.getByIp(peerIp);
+        return peer == null ? -1 : peer.getFaceId();
     }
 
     /**
@@ -197,18 +288,17 @@ public class NDNController {
      * if none.
      */
     public Peer getPeerByIp(String ip) {
-        return peersMap.get(ip);
+        return peerRegistry.getByIp(ip);
     }
 
     /**
      * Similar to getConnectedPeers, except this returns the IP addresses
      * of the currently logged peers.
-     * @return A set backed by the underlying map of logged peers. Thus,
-     * be advised that changes to the returned set will be reflected in
-     * the underlying map.
+     * @return an immutable snapshot of the IP addresses; use removePeer() or
+     * unlogPeer() to stop tracking a peer.
      */
     public Set<String> getIpsOfLoggedPeers() {
-        return peersMap.keySet();
+        return peerRegistry.getIps();
     }
 
     /**
@@ -217,9 +307,51 @@ public class NDNController {
      * @param ip WiFi Direct IP address of peer
      */
     public void removePeer(String ip) {
+        Peer peer = peerRegistry.removeFacePeer(ip);
+        if (peer == null) {
+            return;     // already removed
+        }
+
         FaceDestroyTask task = new FaceDestroyTask();
-        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, peersMap.get(ip).getFaceId());
-        peersMap.remove(ip);
+        task.executeOnExecutor(jobScheduler.executorFor(JobScheduler.Lane.MANAGEMENT, "destroyFace",
+                MANAGEMENT_DEADLINE), peer.getFaceId());
+    }
+
+    /**
+     * Removes mapping to the logged peer only, e.g. when NFD no longer has its Face.
+     * @param ip WiFi Direct IP address of peer
+     */
+    public void unlogPeer(String ip) {
+        peerRegistry.removeFacePeer(ip);
+    }
+
+    /**
+     * Removes mapping to the logged peer with the given Face only, e.g. when NFD no longer has it.
+     * @param faceId Face id of the peer
+     * @return the WiFi Direct IP address of the unlogged peer, or null if no peer has that Face
+     */
+    public String unlogPeerByFaceId(int faceId) {
+        return peerRegistry.removeFacePeerByFaceId(faceId);
+    }
+
+    /**
+     * Returns the Face ids of the currently logged peers.
+     * @return a snapshot of the Face ids, in ascending order
+     */
+    public int[] getFaceIdsOfLoggedPeers() {
+        return peerRegistry.getFaceIds();
+    }
+
+    /**
+     * Registers a listener notified of every peer state change (see Peer.State).
+     * @param listener the listener, called on the thread making the change
+     */
+    public void addPeerListener(PeerRegistry.Listener listener) {
+        peerRegistry.addListener(listener);
+    }
+
+    public void removePeerListener(PeerRegistry.Listener listener) {
+        peerRegistry.removeListener(listener);
     }
 
     /**
@@ -276,7 +408,7 @@ public class NDNController {
         }
 
         try {
-            if (!peersMap.containsKey(peerIp)) {
+            if (peerRegistry.getByIp(peerIp) == null) {
                 // need to create a new face for this peer
                 FaceCreateTask task = new FaceCreateTask(peerIp, new String[0]);
 
@@ -284,7 +416,8 @@ public class NDNController {
                     task.setCallback(callback);
                 }
 
-                task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, uriPrefix+peerIp);
+                task.executeOnExecutor(jobScheduler.executorFor(JobScheduler.Lane.MANAGEMENT, "createFace",
+                        MANAGEMENT_DEADLINE), uriPrefix+peerIp);
             } else {
                 Log.d(TAG, "Face to " + peerIp + " already exists. Skipping createFace()");
             }
@@ -295,31 +428,68 @@ public class NDNController {
 
     /**
      * Registers the array of prefixes with the given Face, denoted by
-     * its face id.
+     * its face id. Registration is asynchronous: prefixes are queued to the
+     * RibRegistrationPipeline, which batches them per face.
      * @param faceId The Face Id to register the prefixes to.
      * @param prefixes array of prefixes to register.
      */
     public void ribRegisterPrefix(int faceId, String[] prefixes) {
         Log.d(TAG, "ribRegisterPrefix called with: " + faceId + " and " + prefixes.length + " prefixes");
 
-        HashSet<Integer> faceIds = new HashSet<>(peersMap.size());
-        for (Peer p : peersMap.values()) {
-            faceIds.add(p.getFaceId());
+        if (peerRegistry.hasFaceId(faceId)) {
+            ribRegistrationPipeline.enqueue(faceId, prefixes);
         }
+    }
 
-        if (faceIds.contains(faceId)) {
-            try {
-                for (String prefix : prefixes) {
-                    Log.d(TAG, "actually creating the task and running it now: " + prefix);
-                    RibRegisterPrefixTask task = new RibRegisterPrefixTask(prefix, faceId,
-                            0, true, false);
-                    task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR); // no blocking of other async tasks
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                return;
-            }
-        }
+    /**
+     * Returns the pipeline used by ribRegisterPrefix(), e.g. to observe batch completion.
+     * @return the RibRegistrationPipeline instance
+     */
+    public RibRegistrationPipeline getRibRegistrationPipeline() {
+        return ribRegistrationPipeline;
+    }
+
+    /**
+     * Returns the cached FIB snapshot used when probing. Callers that change the FIB
+     * through the localhost face should invalidate() it afterwards.
+     * @return the FibSnapshotCache instance
+     */
+    public FibSnapshotCache getFibSnapshotCache() {
+        return fibSnapshotCache;
+    }
+
+    /**
+     * Returns the versioned record of the prefixes this device advertises in probe responses.
+     * @return the ProbeAdvertiser instance
+     */
+    public ProbeAdvertiser getProbeAdvertiser() {
+        return probeAdvertiser;
+    }
+
+    /**
+     * Returns the segments of recent probe responses, which probers fetch after the first one.
+     * @return the ProbeSegmentCache instance
+     */
+    public ProbeSegmentCache getProbeSegmentCache() {
+        return probeSegmentCache;
+    }
+
+    /**
+     * Returns the scheduler deciding when each peer is probed, which also holds
+     * per-peer probe metrics (RTT, timeouts, interval).
+     * @return the ProbeScheduler instance
+     */
+    public ProbeScheduler getProbeScheduler() {
+        return probeScheduler;
+    }
+
+    /**
+     * Returns metrics (runs, skipped runs, deadline misses, queue delay and execution time)
+     * of the controller's background jobs.
+     * @return immutable snapshot of { job name : metrics }
+     */
+    public Map<String, JobScheduler.Metrics> getJobMetrics() {
+        return jobScheduler.getMetrics();
     }
 
     /**
@@ -329,7 +499,8 @@ public class NDNController {
     public void startDiscoveringPeers() {
         if (discoverPeersFuture == null) {
             Log.d(TAG, "Start discovering peers every " + DISCOVER_PEERS_DELAY + "ms");
-            discoverPeersFuture = scheduledThreadPoolExecutor.scheduleWithFixedDelay(new DiscoverPeersRunnable(), 100, DISCOVER_PEERS_DELAY, TimeUnit.MILLISECONDS);
+            discoverPeersFuture = jobScheduler.schedulePeriodic(JobScheduler.Lane.DISCOVERY, "discoverPeers",
+                    new DiscoverPeersRunnable(), 100, DISCOVER_PEERS_DELAY, DISCOVER_PEERS_DEADLINE);
         } else {
             Log.d(TAG, "Discovering peers already running!");
         }
@@ -351,8 +522,9 @@ public class NDNController {
      */
     public void startProbing() {
         if (probeFuture == null) {
-            Log.d(TAG, "Start probing for data prefixes every " + PROBE_DELAY + "ms");
-            probeFuture = scheduledThreadPoolExecutor.scheduleWithFixedDelay(new ProbeRunnable(), 200, PROBE_DELAY, TimeUnit.MILLISECONDS);
+            Log.d(TAG, "Start probing for data prefixes, checking for due peers every " + PROBE_TICK + "ms");
+            probeFuture = jobScheduler.schedulePeriodic(JobScheduler.Lane.PROBING, "probe",
+                    new ProbeRunnable(), 200, PROBE_TICK, PROBE_DEADLINE);
         } else {
             Log.d(TAG, "Probing task already running!");
         }
@@ -407,13 +579,33 @@ public class NDNController {
         if (faceConsistencyFuture == null) {
             Log.d(TAG, "Start checking consistency of logged Faces every " +
                     FACE_CONSISTENCY_CHECK_DELAY + "ms");
-            faceConsistencyFuture = scheduledThreadPoolExecutor.scheduleWithFixedDelay(new FaceConsistencyRunnable(),
-                                    300, FACE_CONSISTENCY_CHECK_DELAY, TimeUnit.MILLISECONDS);
+            faceConsistencyFuture = jobScheduler.schedulePeriodic(JobScheduler.Lane.MANAGEMENT, "faceConsistency",
+                    new FaceConsistencyRunnable(), 300, FACE_CONSISTENCY_CHECK_DELAY, FACE_CONSISTENCY_CHECK_DEADLINE);
         } else {
             Log.d(TAG, "Face consistency checker already running!");
         }
     }
 
+    /**
+     * Compares NFD's and NDNController's view of active faces once, as soon as possible.
+     */
+    public void checkFaceConsistency() {
+        jobScheduler.execute(JobScheduler.Lane.MANAGEMENT, "faceConsistency",
+                new FaceConsistencyRunnable(), FACE_CONSISTENCY_CHECK_DEADLINE);
+    }
+
+    /**
+     * Starts following NFD's face event notifications, to unlog peers as soon as their
+     * Face is destroyed.
+     */
+    public void startFaceEventSubscriber() {
+        faceEventSubscriber.start();
+    }
+
+    public void stopFaceEventSubscriber() {
+        faceEventSubscriber.stop();
+    }
+
     /**
      * Stops periodically checking for consistency between NFD and NDNController's view
      * of active faces.
@@ -435,6 +627,7 @@ public class NDNController {
         startDiscoveringPeers();
         startProbing();
         startBroadcastReceiverService();
+        startFaceEventSubscriber();
         startFaceConsistencyChecker();
     }
 
@@ -446,6 +639,7 @@ public class NDNController {
         stopDiscoveringPeers();
         stopProbing();
         stopBroadcastReceiverService();
+        stopFaceEventSubscriber();
         stopFaceConsistencyChecker();
     }
 
@@ -471,12 +665,16 @@ public class NDNController {
     public void registerOwnLocalhop() {
         if (!hasRegisteredOwnLocalhop) {
             // register /localhop/wifidirect/<this-device's-ip> to localhost
-            registerPrefix(mFace, PROBE_PREFIX + "/" + IPAddress.getLocalIPAddress(), new OnInterestCallback() {
+            if (ownLocalhopTask != null) {
+                ownLocalhopTask.unregister();
+            }
+            ownLocalhopTask = registerPrefix(PROBE_PREFIX + "/" + IPAddress.getLocalIPAddress(),
+                    new OnInterestCallback() {
                 @Override
                 public void onInterest(Name prefix, Interest interest, Face face, long interestFilterId, InterestFilter filter) {
                     (new ProbeOnInterest()).doJob(prefix, interest, face, interestFilterId, filter);
                 }
-            }, true, 100);  // process event every 100 ms
+            });
         }
     }
 
@@ -506,7 +704,9 @@ public class NDNController {
 
     /**
      * Returns a face to localhost, to avoid multiple creations of localhost
-     * faces.
+     * faces. This face is meant for (blocking) management commands only, and may only
+     * be used from jobs on the management lane (see executeManagementJob()); use
+     * getEventLoop() for registering prefixes and expressing interests.
      * @return the localhost Face instance.
      */
     public Face getLocalHostFace() {
@@ -514,19 +714,35 @@ public class NDNController {
     }
 
     /**
-     * Registers a prefix to be handled by a localhost face.
-     * @param face a localhost face
+     * Runs job on the management lane, the only thread that issues commands on
+     * getLocalHostFace(). Management commands block, so work on the event loop thread
+     * that needs them is handed over to this lane.
+     * @param name name of the job, used for metrics and logging
+     * @param job the job
+     */
+    public void executeManagementJob(String name, Runnable job) {
+        jobScheduler.execute(JobScheduler.Lane.MANAGEMENT, name, job, MANAGEMENT_DEADLINE);
+    }
+
+    /**
+     * Returns the event loop on which prefixes are registered and probe interests
+     * are expressed. All of their callbacks run on the event loop thread.
+     * @return the shared FaceEventLoop instance.
+     */
+    public FaceEventLoop getEventLoop() {
+        return mEventLoop;
+    }
+
+    /**
+     * Registers a prefix to be handled by the event loop's localhost face.
      * @param prefix the string prefix to register
-     * @param cb a callback to be called on interest receipt
-     * @param handleForever whether to handle this prefix forever (deprecated)
-     * @param repeatTimer the time interval between successive calls to processEvents
-     * @return the underlying AsyncTask object handling the prefix registration
+     * @param cb a callback to be called (on the event loop thread) on interest receipt
+     * @return the underlying task handling the prefix registration, which can be
+     * used to unregister the prefix
      */
-    public AsyncTask registerPrefix(Face face, String prefix, OnInterestCallback cb, boolean handleForever,
-                                    long repeatTimer) {
+    public RegisterPrefixTask registerPrefix(String prefix, OnInterestCallback cb) {
 
-        RegisterPrefixTask task  = new RegisterPrefixTask(face, prefix, cb, handleForever);
-        task.setProcessEventsTimer(repeatTimer);
+        RegisterPrefixTask task  = new RegisterPrefixTask(mEventLoop, prefix, cb);
         task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 
         return task;
@@ -556,34 +772,75 @@ public class NDNController {
         // Remove all faces created to peers, and shut down the localhost face we used
         // for communication with NFD. Lastly, null out the singleton used to reset rest
         // of accumulated state.
-        // Make use of our handy executor
+        // Make use of the scheduler's cleanup lane
         Runnable cleanUpRunnable = new Runnable() {
             @Override
             public void run() {
 
-                for (String peerIp : peersMap.keySet()) {
+                // stop the other lanes first, and wait for their running jobs: they use
+                // the faces, the pipeline and the singleton torn down below
+                try {
+                    if (!jobScheduler.shutdownAndAwait(LANE_STOP_TIMEOUT, JobScheduler.Lane.DISCOVERY,
+                            JobScheduler.Lane.PROBING, JobScheduler.Lane.MANAGEMENT)) {
+                        Log.w(TAG, "Jobs still running after " + LANE_STOP_TIMEOUT + "ms, tearing down anyway");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                for (Map.Entry<String, Peer> entry : peerRegistry.getFacePeers().entrySet()) {
                     try {
-                        Log.d(TAG, "Cleaning up face towards peer: " + peerIp);
-                        Nfdc.destroyFace(mFace, peersMap.get(peerIp).getFaceId());
+                        Log.d(TAG, "Cleaning up face towards peer: " + entry.getKey());
+                        Nfdc.destroyFace(mFace, entry.getValue().getFaceId());
                     } catch (ManagementException me) {
-                        Log.e(TAG, "Unable to destroy face to: " + peerIp);
+                        Log.e(TAG, "Unable to destroy face to: " + entry.getKey());
                     }
                 }
+                peerRegistry.clear();
+
+                // stop following face events and handling our /localhop prefix on the shared event loop
+                faceEventSubscriber.stop();
+                if (ownLocalhopTask != null) {
+                    ownLocalhopTask.unregister();
+                }
 
-                // shutdown the face
+                // shutdown the faces
+                ribRegistrationPipeline.stop();
                 mFace.shutdown();
+                fibSnapshotFace.shutdown();
 
                 // null out the singleton to remove rest of state
                 mController = null;
+
+                // stop the cleanup lane too; this job is the last one to run
+                jobScheduler.shutdown();
             }
         };
 
         // perform rest of clean up
-        scheduledThreadPoolExecutor.execute(cleanUpRunnable);
+        jobScheduler.execute(JobScheduler.Lane.CLEANUP, "cleanUp", cleanUpRunnable, CLEAN_UP_DEADLINE);
     }
 
     /** misc **/
 
+    /**
+     * @return the host part of a Face URI, e.g. 192.168.49.1 for tcp4://192.168.49.1:6363,
+     * or null if the URI has none
+     */
+    private static String getHost(String uri) {
+        int start = uri.indexOf("://");
+        if (start == -1) {
+            return null;
+        }
+        start += 3;
+        if (uri.startsWith("[", start)) {
+            int end = uri.indexOf(']', start);
+            return end == -1 ? null : uri.substring(start + 1, end);
+        }
+        int end = uri.indexOf(':', start);
+        return uri.substring(start, end == -1 ? uri.length() : end);
+    }
+
     private KeyChain buildTestKeyChain() throws SecurityException {
         MemoryIdentityStorage identityStorage = new MemoryIdentityStorage();
         MemoryPrivateKeyStorage privateKeyStorage = new MemoryPrivateKeyStorage();
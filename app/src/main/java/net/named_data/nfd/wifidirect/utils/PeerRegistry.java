@@ -0,0 +1,316 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import net.named_data.nfd.wifidirect.model.Peer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Thread-safe registry of the peers known to NDNController.
+ *
+ * Peers are indexed twice: by MAC address once discovered over WiFi Direct, and by
+ * WiFi Direct IP address once a Face towards them is up (the WiFi Direct API does not
+ * let us relate the two). Both indexes are ConcurrentHashMaps, so lookups never block
+ * and updates to different peers do not contend; every state change is an atomic
+ * transition on the Peer itself, so concurrent removals of the same peer only
+ * take effect (and notify listeners) once.
+ *
+ * Peers with a Face are also indexed by Face id, in a ConcurrentHashMap from Face id to
+ * IP address, so that looking a peer up by Face id (prefix registration, face events,
+ * consistency checks) is a hash lookup rather than a scan of the peers. (MAC addresses
+ * cannot be related to either, see above.) The IP and Face id indexes are only updated
+ * together, under faceIndexLock, so a concurrent add and remove of the same peer cannot
+ * leave one index pointing to a peer the other has dropped. Lookups by IP and by Face id
+ * do not take the lock and never block; a lookup racing with an update sees the peer
+ * either before or after it.
+ *
+ * Readers that iterate get immutable snapshots, which are safe to use from any thread.
+ */
+public class PeerRegistry {
+
+    /**
+     * Notified of every successful state transition, on the thread that made it.
+     */
+    public interface Listener {
+        void onPeerStateChanged(Peer peer, Peer.State oldState, Peer.State newState);
+    }
+
+    private static final String TAG = "PeerRegistry";
+
+    private final int maxDevices;
+    private final Object deviceCapacityLock = new Object();     // makes the capacity check-and-add atomic
+
+    private final ConcurrentHashMap<String, Peer> byDeviceAddress = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Peer> byIp = new ConcurrentHashMap<>();
+    private final Object faceIndexLock = new Object();      // serializes updates to byIp and ipByFaceId
+    private final ConcurrentHashMap<Integer, String> ipByFaceId = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param maxDevices maximum number of WiFi Direct peers tracked at a time
+     */
+    public PeerRegistry(int maxDevices) {
+        this.maxDevices = maxDevices;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /* WiFi Direct peers, by MAC address */
+
+    /**
+     * Tracks a newly discovered peer, unless maxDevices peers are already tracked.
+     * @param peer Peer with at least the device address set
+     * @return true if the peer is (now or already) tracked, false if the registry is full
+     */
+    public boolean addDevice(Peer peer) {
+        synchronized (deviceCapacityLock) {
+            if (byDeviceAddress.containsKey(peer.getDeviceAddress())) {
+                return true;
+            }
+            if (byDeviceAddress.size() >= maxDevices) {
+                return false;
+            }
+            peer.getAndSetState(Peer.State.DISCOVERED);
+            byDeviceAddress.put(peer.getDeviceAddress(), peer);
+        }
+        notifyListeners(peer, null, Peer.State.DISCOVERED);
+        return true;
+    }
+
+    /**
+     * Marks a discovered peer as being connected to.
+     * @return true if the peer was in DISCOVERED state
+     */
+    public boolean markConnecting(String deviceAddress) {
+        Peer peer = byDeviceAddress.get(deviceAddress);
+        return peer != null && transition(peer, Peer.State.DISCOVERED, Peer.State.CONNECTING);
+    }
+
+    /**
+     * @return the removed peer, or null if no peer was tracked for deviceAddress
+     */
+    public Peer removeDevice(String deviceAddress) {
+        Peer peer = byDeviceAddress.remove(deviceAddress);
+        if (peer != null) {
+            markRemoved(peer);
+        }
+        return peer;
+    }
+
+    public Peer getByDeviceAddress(String deviceAddress) {
+        return byDeviceAddress.get(deviceAddress);
+    }
+
+    /**
+     * @return immutable snapshot of the MAC addresses of tracked WiFi Direct peers
+     */
+    public Set<String> getDeviceAddresses() {
+        return Collections.unmodifiableSet(new HashSet<>(byDeviceAddress.keySet()));
+    }
+
+    /* Peers with a Face, by IP address */
+
+    /**
+     * Tracks a peer towards which a Face was created.
+     * @param ip WiFi Direct IP address of the peer
+     * @param peer Peer with at least the Face id set
+     * @return true if added, false if a peer was already tracked for ip
+     */
+    public boolean addFacePeer(String ip, Peer peer) {
+        synchronized (faceIndexLock) {
+            if (byIp.containsKey(ip)) {
+                return false;   // the tracked peer, and the given one, are left as they are
+            }
+            byIp.put(ip, peer);
+            ipByFaceId.put(peer.getFaceId(), ip);
+        }
+
+        // a concurrent removeFacePeer(ip) may already have removed it, which is final
+        Peer.State oldState;
+        do {
+            oldState = peer.getState();
+            if (oldState == Peer.State.REMOVED) {
+                return true;
+            }
+        } while (!peer.compareAndSetState(oldState, Peer.State.FACE_UP));
+        notifyListeners(peer, null, Peer.State.FACE_UP);
+        return true;
+    }
+
+    /**
+     * Marks a peer as having answered a probe.
+     * @return true if the peer went from FACE_UP to PROBED
+     */
+    public boolean markProbed(String ip) {
+        Peer peer = byIp.get(ip);
+        return peer != null && transition(peer, Peer.State.FACE_UP, Peer.State.PROBED);
+    }
+
+    /**
+     * @return the removed peer, or null if no peer was tracked for ip. Only one of
+     * concurrent callers for the same ip gets the peer.
+     */
+    public Peer removeFacePeer(String ip) {
+        Peer peer;
+        synchronized (faceIndexLock) {
+            peer = byIp.remove(ip);
+            if (peer == null) {
+                return null;
+            }
+            unindexFaceId(peer.getFaceId(), ip);
+        }
+        markRemoved(peer);
+        return peer;
+    }
+
+    /**
+     * Removes the peer whose Face has the given id, e.g. once NFD destroyed that Face.
+     * @return the IP address of the removed peer, or null if no peer has that Face
+     */
+    public String removeFacePeerByFaceId(int faceId) {
+        String ip;
+        Peer peer;
+        synchronized (faceIndexLock) {
+            ip = ipByFaceId.remove(faceId);
+            if (ip == null) {
+                return null;
+            }
+            peer = byIp.remove(ip);
+        }
+        if (peer != null) {
+            markRemoved(peer);
+        }
+        return ip;
+    }
+
+    /**
+     * Points a tracked peer to another Face, e.g. when NFD replaced its Face.
+     * @return true if a peer is tracked for ip
+     */
+    public boolean setFaceId(String ip, int faceId) {
+        synchronized (faceIndexLock) {
+            Peer peer = byIp.get(ip);
+            if (peer == null) {
+                return false;
+            }
+            unindexFaceId(peer.getFaceId(), ip);
+            peer.setFaceId(faceId);
+            ipByFaceId.put(faceId, ip);
+        }
+        return true;
+    }
+
+    /**
+     * @return the IP address of the peer whose Face has the given id, or null if none
+     */
+    public String getIpByFaceId(int faceId) {
+        return ipByFaceId.get(faceId);
+    }
+
+    /**
+     * @return the peer whose Face has the given id, or null if none
+     */
+    public Peer getByFaceId(int faceId) {
+        String ip = ipByFaceId.get(faceId);
+        if (ip == null) {
+            return null;
+        }
+        // the peer at ip may have been replaced since, by one with another Face
+        Peer peer = byIp.get(ip);
+        return peer != null && peer.getFaceId() == faceId ? peer : null;
+    }
+
+    public boolean hasFaceId(int faceId) {
+        return getIpByFaceId(faceId) != null;
+    }
+
+    /**
+     * @return snapshot of the Face ids of peers with a Face, in ascending order
+     */
+    public int[] getFaceIds() {
+        Integer[] keys = ipByFaceId.keySet().toArray(new Integer[0]);
+        int[] faceIds = new int[keys.length];
+        for (int i = 0; i < faceIds.length; i++) {
+            faceIds[i] = keys[i];
+        }
+        Arrays.sort(faceIds);
+        return faceIds;
+    }
+
+    public Peer getByIp(String ip) {
+        return byIp.get(ip);
+    }
+
+    /**
+     * @return immutable snapshot of the IP addresses of peers with a Face
+     */
+    public Set<String> getIps() {
+        return Collections.unmodifiableSet(new HashSet<>(byIp.keySet()));
+    }
+
+    /**
+     * @return immutable snapshot of { ip : peer } for peers with a Face
+     */
+    public Map<String, Peer> getFacePeers() {
+        return Collections.unmodifiableMap(new HashMap<>(byIp));
+    }
+
+    /**
+     * Forgets all peers, notifying listeners of their removal.
+     */
+    public void clear() {
+        for (String ip : byIp.keySet()) {
+            removeFacePeer(ip);
+        }
+        for (String deviceAddress : byDeviceAddress.keySet()) {
+            removeDevice(deviceAddress);
+        }
+    }
+
+    /* helpers */
+
+    private boolean transition(Peer peer, Peer.State from, Peer.State to) {
+        if (!peer.compareAndSetState(from, to)) {
+            return false;
+        }
+        notifyListeners(peer, from, to);
+        return true;
+    }
+
+    // call with faceIndexLock held
+    private void unindexFaceId(int faceId, String ip) {
+        // the Face id may already point to a newer peer at another address
+        ipByFaceId.remove(faceId, ip);
+    }
+
+    private void markRemoved(Peer peer) {
+        Peer.State oldState = peer.getAndSetState(Peer.State.REMOVED);
+        if (oldState != Peer.State.REMOVED) {
+            notifyListeners(peer, oldState, Peer.State.REMOVED);
+        }
+    }
+
+    private void notifyListeners(Peer peer, Peer.State oldState, Peer.State newState) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onPeerStateChanged(peer, oldState, newState);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Peer listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import net.named_data.nfd.wifidirect.model.ProbeResponse;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps track of the data prefixes this device advertises in probe responses, and
+ * of how they changed over the last MAX_HISTORY versions, so that probes can be
+ * answered with a delta (or "not modified") instead of the full prefix list.
+ *
+ * Versions start at the time of creation (in ms) and increase by one on every change,
+ * so a prober holding a version from before an app restart is never mistaken as
+ * up to date; it simply receives a full response.
+ */
+public class ProbeAdvertiser {
+
+    private static final int MAX_HISTORY = 32;  // number of deltas kept
+
+    private long version = System.currentTimeMillis();
+    private HashSet<String> prefixes = new HashSet<>();
+    private final ArrayDeque<Change> history = new ArrayDeque<>();     // oldest first
+
+    /**
+     * Records the currently advertised prefixes and builds the response for a prober
+     * that knows knownVersion.
+     * @param currentPrefixes prefixes this device advertises right now
+     * @param knownVersion version the prober last received, or ProbeResponse.NO_VERSION
+     * @return the smallest response that brings the prober up to date
+     */
+    public synchronized ProbeResponse respond(Set<String> currentPrefixes, long knownVersion) {
+        update(currentPrefixes);
+
+        if (knownVersion == version) {
+            return ProbeResponse.notModified(version);
+        }
+
+        // the oldest delta we have applies to version (version - history.size())
+        if (knownVersion >= version - history.size() && knownVersion < version) {
+            HashSet<String> added = new HashSet<>();
+            HashSet<String> removed = new HashSet<>();
+            for (Change change : history) {
+                if (change.version <= knownVersion) {
+                    continue;
+                }
+                for (String prefix : change.added) {
+                    if (!removed.remove(prefix)) {
+                        added.add(prefix);
+                    }
+                }
+                for (String prefix : change.removed) {
+                    if (!added.remove(prefix)) {
+                        removed.add(prefix);
+                    }
+                }
+            }
+
+            if (added.size() + removed.size() < prefixes.size()) {
+                return ProbeResponse.delta(version, knownVersion, added, removed);
+            }
+        }
+
+        return ProbeResponse.full(version, prefixes);
+    }
+
+    private void update(Set<String> currentPrefixes) {
+        if (currentPrefixes.equals(prefixes)) {
+            return;
+        }
+
+        HashSet<String> added = new HashSet<>(currentPrefixes);
+        added.removeAll(prefixes);
+        HashSet<String> removed = new HashSet<>(prefixes);
+        removed.removeAll(currentPrefixes);
+
+        prefixes = new HashSet<>(currentPrefixes);
+        version++;
+        history.addLast(new Change(version, added, removed));
+        if (history.size() > MAX_HISTORY) {
+            history.removeFirst();
+        }
+    }
+
+    private static class Change {
+        final long version;         // version resulting from this change
+        final Set<String> added;
+        final Set<String> removed;
+
+        Change(long version, Set<String> added, Set<String> removed) {
+            this.version = version;
+            this.added = added;
+            this.removed = removed;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides when each peer is probed next, and keeps per-peer probe metrics.
+ *
+ * Every peer has its own probe interval: it grows (up to MAX_INTERVAL) while the peer's
+ * advertisement stays the same, and shrinks (down to MIN_INTERVAL) when it changes.
+ * After a timeout the peer is re-probed after TIMEOUT_RETRY_INTERVAL, so that an
+ * unresponsive peer is detected within a few seconds rather than a few probe periods.
+ * All intervals are jittered by +/- JITTER, so peers that joined together do not keep
+ * probing the group owner in bursts.
+ *
+ * The probe timeout follows the measured round trip time, as for TCP (RFC 6298).
+ *
+ * Time is always passed in by the caller (in ms), which keeps the scheduling logic
+ * independent of the system clock.
+ */
+public class ProbeScheduler {
+
+    public static final long MIN_INTERVAL = 3000;           // in ms
+    public static final long INITIAL_INTERVAL = 6000;       // in ms
+    public static final long MAX_INTERVAL = 30000;          // in ms
+    public static final long TIMEOUT_RETRY_INTERVAL = 1000; // in ms
+    private static final double GROWTH_FACTOR = 1.5;        // applied to the interval while unchanged
+    private static final double JITTER = 0.2;               // fraction of the interval
+
+    private static final long MIN_PROBE_TIMEOUT = 1000;     // in ms
+    private static final long MAX_PROBE_TIMEOUT = 4000;     // in ms, the default interest lifetime
+    private static final long MAX_IN_FLIGHT_TIME = 60000;   // in ms, after which a probe is considered lost
+
+    /**
+     * Immutable snapshot of the probe metrics of one peer.
+     */
+    public static class Stats {
+        public final long interval;         // current probe interval, in ms
+        public final long srtt;             // smoothed round trip time, in ms, or -1 if unknown
+        public final long lastRtt;          // in ms, or -1 if unknown
+        public final int probesSent;
+        public final int responses;
+        public final int timeouts;
+        public final int changes;           // responses that changed the peer's prefixes
+
+        Stats(PeerState state) {
+            this.interval = state.interval;
+            this.srtt = state.srtt;
+            this.lastRtt = state.lastRtt;
+            this.probesSent = state.probesSent;
+            this.responses = state.responses;
+            this.timeouts = state.timeouts;
+            this.changes = state.changes;
+        }
+
+        @Override
+        public String toString() {
+            return "interval=" + interval + "ms, srtt=" + srtt + "ms, sent=" + probesSent +
+                    ", timeouts=" + timeouts + ", changes=" + changes;
+        }
+    }
+
+    private final Random random;
+    private final ConcurrentHashMap<String, PeerState> states = new ConcurrentHashMap<>();
+
+    public ProbeScheduler() {
+        this(new Random());
+    }
+
+    /**
+     * @param random source of jitter
+     */
+    public ProbeScheduler(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Returns whether peerIp is due for a probe, and if so, records the probe as sent.
+     * A peer seen for the first time is due immediately. A peer with a probe in flight
+     * is never due.
+     * @param peerIp WiFi Direct IP address of the peer
+     * @param now current time, in ms
+     * @return true if a probe should be sent to peerIp now
+     */
+    public boolean shouldProbe(String peerIp, long now) {
+        PeerState state = getState(peerIp, now);
+        synchronized (state) {
+            if (state.inFlight && now - state.sentTime > MAX_IN_FLIGHT_TIME) {
+                state.inFlight = false;     // the probe's outcome was never reported, e.g. a lost callback
+            }
+            if (state.inFlight || now < state.nextProbeTime) {
+                return false;
+            }
+
+            state.inFlight = true;
+            state.sentTime = now;
+            state.probesSent++;
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether any of peerIps is due for a probe, without recording anything.
+     * Lets the caller skip fetching the FIB when there is nobody to probe.
+     * @param peerIps WiFi Direct IP addresses of the known peers
+     * @param now current time, in ms
+     * @return true if shouldProbe() would return true for at least one of peerIps
+     */
+    public boolean hasDuePeer(Collection<String> peerIps, long now) {
+        for (String peerIp : peerIps) {
+            PeerState state = states.get(peerIp);
+            if (state == null) {
+                return true;
+            }
+            synchronized (state) {
+                boolean inFlight = state.inFlight && now - state.sentTime <= MAX_IN_FLIGHT_TIME;
+                if (!inFlight && now >= state.nextProbeTime) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return lifetime to give a probe interest towards peerIp, in ms
+     */
+    public long getProbeTimeout(String peerIp) {
+        PeerState state = states.get(peerIp);
+        if (state == null) {
+            return MAX_PROBE_TIMEOUT;
+        }
+        synchronized (state) {
+            if (state.srtt < 0) {
+                return MAX_PROBE_TIMEOUT;
+            }
+            long rto = state.srtt + 4 * state.rttVar;
+            return Math.max(MIN_PROBE_TIMEOUT, Math.min(MAX_PROBE_TIMEOUT, rto));
+        }
+    }
+
+    /**
+     * Records a probe response.
+     * @param peerIp WiFi Direct IP address of the peer
+     * @param now current time, in ms
+     * @param changed whether the response changed the prefixes we have for the peer
+     */
+    public void onResponse(String peerIp, long now, boolean changed) {
+        PeerState state = getState(peerIp, now);
+        synchronized (state) {
+            if (state.inFlight) {
+                long rtt = now - state.sentTime;
+                state.lastRtt = rtt;
+                if (state.srtt < 0) {
+                    state.srtt = rtt;
+                    state.rttVar = rtt / 2;
+                } else {
+                    state.rttVar = (3 * state.rttVar + Math.abs(state.srtt - rtt)) / 4;
+                    state.srtt = (7 * state.srtt + rtt) / 8;
+                }
+            }
+
+            state.responses++;
+            if (changed) {
+                state.changes++;
+                state.interval = Math.max(MIN_INTERVAL, state.interval / 2);
+            } else {
+                state.interval = Math.min(MAX_INTERVAL, (long) (state.interval * GROWTH_FACTOR));
+            }
+            scheduleNext(state, now, state.interval);
+        }
+    }
+
+    /**
+     * Records a probe that got no response; the peer is re-probed soon.
+     * @param peerIp WiFi Direct IP address of the peer
+     * @param now current time, in ms
+     */
+    public void onTimeout(String peerIp, long now) {
+        PeerState state = getState(peerIp, now);
+        synchronized (state) {
+            state.timeouts++;
+            state.interval = MIN_INTERVAL;
+            scheduleNext(state, now, TIMEOUT_RETRY_INTERVAL);
+        }
+    }
+
+    /**
+     * Records a probe whose response could only partially be fetched; the peer
+     * is re-probed after the minimum interval.
+     */
+    public void onIncomplete(String peerIp, long now) {
+        PeerState state = getState(peerIp, now);
+        synchronized (state) {
+            scheduleNext(state, now, MIN_INTERVAL);
+        }
+    }
+
+    /**
+     * Forgets all peers but the given ones.
+     * @param peerIps IP addresses of the peers still probed
+     */
+    public void retainPeers(Set<String> peerIps) {
+        states.keySet().retainAll(peerIps);
+    }
+
+    /**
+     * @return metrics of peerIp, or null if it was never probed
+     */
+    public Stats getStats(String peerIp) {
+        PeerState state = states.get(peerIp);
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            return new Stats(state);
+        }
+    }
+
+    /**
+     * @return immutable snapshot of { peerIp : metrics }
+     */
+    public Map<String, Stats> getAllStats() {
+        HashMap<String, Stats> stats = new HashMap<>();
+        for (Map.Entry<String, PeerState> entry : states.entrySet()) {
+            synchronized (entry.getValue()) {
+                stats.put(entry.getKey(), new Stats(entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private PeerState getState(String peerIp, long now) {
+        PeerState state = states.get(peerIp);
+        if (state == null) {
+            PeerState newState = new PeerState(now);
+            state = states.putIfAbsent(peerIp, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+        return state;
+    }
+
+    // call with state locked
+    private void scheduleNext(PeerState state, long now, long interval) {
+        double jitter;
+        synchronized (random) {
+            jitter = (random.nextDouble() * 2 - 1) * JITTER;
+        }
+        state.inFlight = false;
+        state.nextProbeTime = now + (long) (interval * (1 + jitter));
+    }
+
+    private static class PeerState {
+        long interval = INITIAL_INTERVAL;
+        long nextProbeTime;
+        boolean inFlight = false;
+        long sentTime = 0;
+        long srtt = -1;
+        long rttVar = 0;
+        long lastRtt = -1;
+        int probesSent = 0;
+        int responses = 0;
+        int timeouts = 0;
+        int changes = 0;
+
+        PeerState(long now) {
+            this.nextProbeTime = now;
+        }
+    }
+}
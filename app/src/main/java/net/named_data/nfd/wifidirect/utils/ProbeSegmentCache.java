@@ -0,0 +1,85 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.util.Blob;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Splits probe responses into segments and keeps them around for a short while, so
+ * that the prober can fetch the remaining segments after the first one.
+ *
+ * Segments are named <probe interest name>/<segment number> (standard segment
+ * marker naming), and carry the last segment number as their FinalBlockId.
+ */
+public class ProbeSegmentCache {
+
+    public static final int SEGMENT_SIZE = 6000;    // payload bytes per segment, leaving room for name and signature
+    private static final long ENTRY_LIFETIME = 10000; // in ms, longer than a prober needs to fetch all segments
+
+    // { probe interest name : segments }, in insertion order so that expired entries come first
+    private final LinkedHashMap<Name, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Segments content as the response to the probe named probeName, and remembers the
+     * segments for later segment interests.
+     * @param probeName name of the probe interest, without segment number
+     * @param content the encoded probe response
+     * @return the segments, with at least one (possibly empty) segment
+     */
+    public synchronized List<Data> put(Name probeName, Blob content) {
+        evictExpired(System.currentTimeMillis());
+
+        ByteBuffer buffer = content.buf();
+        int numSegments = Math.max(1, (buffer.remaining() + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        Name.Component finalBlockId = new Name().appendSegment(numSegments - 1).get(0);
+
+        ArrayList<Data> segments = new ArrayList<>(numSegments);
+        for (int i = 0; i < numSegments; i++) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(buffer.position() + i * SEGMENT_SIZE);
+            slice.limit(Math.min(buffer.limit(), slice.position() + SEGMENT_SIZE));
+
+            Data data = new Data(new Name(probeName).appendSegment(i));
+            data.getMetaInfo().setFinalBlockId(finalBlockId);
+            data.setContent(new Blob(slice, false));
+            segments.add(data);
+        }
+
+        entries.put(probeName, new Entry(segments, System.currentTimeMillis() + ENTRY_LIFETIME));
+        return segments;
+    }
+
+    /**
+     * @param probeName name of the probe interest, without segment number
+     * @return all segments of the response to probeName, or null if unknown or expired
+     */
+    public synchronized List<Data> get(Name probeName) {
+        evictExpired(System.currentTimeMillis());
+
+        Entry entry = entries.get(probeName);
+        return entry == null ? null : entry.segments;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && it.next().expiry <= now) {
+            it.remove();
+        }
+    }
+
+    private static class Entry {
+        final List<Data> segments;
+        final long expiry;
+
+        Entry(List<Data> segments, long expiry) {
+            this.segments = segments;
+            this.expiry = expiry;
+        }
+    }
+}
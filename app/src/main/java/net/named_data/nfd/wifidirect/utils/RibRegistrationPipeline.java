@@ -0,0 +1,392 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import net.named_data.jndn.ControlParameters;
+import net.named_data.jndn.ControlResponse;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.ForwardingFlags;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.SecurityException;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.nfd.utils.SelectableTcpTransport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Registers prefixes towards peer Faces in batches. Registrations requested for the
+ * same Face are coalesced while a previous batch is in progress, and each batch is sent
+ * to NFD as rib/register commands pipelined on a single localhost Face, with at most
+ * MAX_IN_FLIGHT commands outstanding. Registrations that timed out, failed on the
+ * connection or got a 5xx answer are retried with exponential backoff, up to
+ * MAX_ATTEMPTS times; any other answer (e.g. 403, or 410 when the face is gone) is final.
+ *
+ * All Face operations (and thus all callbacks) happen on the pipeline's worker thread.
+ * Between two rounds of sends the worker blocks on the Face's socket, until a response
+ * arrives, the next command times out, the next retry is due, or stop() is called.
+ *
+ * Each start() creates a worker with its own Face, which stop() shuts down. When the
+ * connection to NFD fails (e.g. NFD restarted), the worker replaces its Face, which
+ * connects again on the next command, and retries the commands that were in flight.
+ */
+public class RibRegistrationPipeline {
+
+    /**
+     * Notified on the worker thread once every prefix of a batch has either been
+     * registered or has failed for good.
+     */
+    public interface OnBatchComplete {
+        void onBatchComplete(int faceId, int numRegistered, int numFailed);
+    }
+
+    private static final String TAG = "RibRegPipeline";
+    private static final Name RIB_REGISTER_COMMAND = new Name("/localhost/nfd/rib/register");
+    private static final int STATUS_OK = 200;
+    private static final int MIN_SERVER_ERROR = 500;    // 5xx answers may succeed on retry
+
+    private static final int MAX_IN_FLIGHT = 16;            // max outstanding commands per batch
+    private static final int MAX_ATTEMPTS = 5;              // per prefix
+    private static final long BASE_RETRY_DELAY = 250;       // in ms, doubled on every retry
+    private static final long COMMAND_TIMEOUT = 2000;       // in ms
+
+    private final KeyChain keyChain;
+    private final TcpTransport.ConnectionInfo connectionInfo;
+    private final Object lock = new Object();
+
+    // { faceId : prefixes waiting for the next batch }, guarded by lock
+    private final LinkedHashMap<Integer, LinkedHashSet<String>> pending = new LinkedHashMap<>();
+
+    private volatile OnBatchComplete onBatchComplete = null;
+    private Worker worker = null;
+
+    /**
+     * @param keyChain KeyChain whose default certificate signs the commands.
+     */
+    public RibRegistrationPipeline(KeyChain keyChain) {
+        this(keyChain, new TcpTransport.ConnectionInfo("localhost"));
+    }
+
+    /**
+     * Same as above, towards the forwarder at connectionInfo instead of the local NFD.
+     */
+    RibRegistrationPipeline(KeyChain keyChain, TcpTransport.ConnectionInfo connectionInfo) {
+        this.keyChain = keyChain;
+        this.connectionInfo = connectionInfo;
+    }
+
+    public void setOnBatchComplete(OnBatchComplete callback) {
+        this.onBatchComplete = callback;
+    }
+
+    /**
+     * Starts a worker thread with a new localhost Face, if not already started.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+
+        try {
+            worker = new Worker();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create rib registration transport", e);
+        }
+        Thread thread = new Thread(worker, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the worker thread after its current batch, drops pending registrations
+     * and shuts down the worker's Face. The pipeline may be started again.
+     */
+    public synchronized void stop() {
+        if (worker == null) {
+            return;
+        }
+
+        worker.running = false;
+        synchronized (lock) {
+            pending.clear();
+            lock.notifyAll();
+        }
+        worker.transport.wakeup();
+        worker = null;
+    }
+
+    /**
+     * Queues the given prefixes for registration towards faceId. Prefixes already
+     * pending for the same face are only registered once.
+     * @param faceId The Face id to register the prefixes to.
+     * @param prefixes array of prefixes to register.
+     */
+    public void enqueue(int faceId, String[] prefixes) {
+        if (prefixes.length == 0) {
+            return;
+        }
+
+        synchronized (lock) {
+            LinkedHashSet<String> forFace = pending.get(faceId);
+            if (forFace == null) {
+                forFace = new LinkedHashSet<>();
+                pending.put(faceId, forFace);
+            }
+            Collections.addAll(forFace, prefixes);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Worker thread state: all of it, but running, is only used on the worker thread.
+     */
+    private class Worker implements Runnable {
+        volatile boolean running = true;
+
+        // kept across Faces: a Face's shutdown only closes the transport's socket
+        final SelectableTcpTransport transport;
+        private Face mFace;
+
+        Worker() throws IOException {
+            transport = new SelectableTcpTransport();
+            mFace = createFace();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Map<Integer, LinkedHashSet<String>> batches;
+                synchronized (lock) {
+                    while (running && pending.isEmpty()) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            running = false;
+                        }
+                    }
+
+                    batches = new LinkedHashMap<>(pending);
+                    pending.clear();
+                }
+
+                for (Map.Entry<Integer, LinkedHashSet<String>> entry : batches.entrySet()) {
+                    if (!running) {
+                        break;
+                    }
+                    runBatch(entry.getKey(), entry.getValue());
+                }
+            }
+
+            mFace.shutdown();
+            try {
+                transport.release();
+            } catch (IOException e) {
+                Log.e(TAG, "Error releasing transport: " + e.getMessage());
+            }
+            Log.d(TAG, "Stopped.");
+        }
+
+        private Face createFace() {
+            Face face = new Face(transport, connectionInfo);
+            try {
+                face.setCommandSigningInfo(keyChain, keyChain.getDefaultCertificateName());
+            } catch (SecurityException e) {
+                Log.e(TAG, "Unable to set command signing info for rib registration face.");
+            }
+            return face;
+        }
+
+        /**
+         * Replaces the Face after its connection failed: jndn does not connect a Face
+         * again, nor report the commands that were in flight on it. The new Face connects
+         * on the next send, and the commands that were in flight are retried.
+         */
+        private void reconnect(Batch batch, String reason) {
+            Log.d(TAG, "Connection to NFD failed (" + reason + "), reconnecting");
+            mFace.shutdown();
+            mFace = createFace();
+
+            ArrayList<Registration> lost = new ArrayList<>(batch.inFlight);
+            batch.inFlight.clear();
+            for (Registration registration : lost) {
+                retryOrFail(batch, registration, "connection lost");
+            }
+        }
+
+        private void runBatch(int faceId, Set<String> prefixes) {
+            long startTime = System.currentTimeMillis();
+            Log.d(TAG, "Registering batch of " + prefixes.size() + " prefixes towards face " + faceId);
+
+            Batch batch = new Batch(faceId);
+            for (String prefix : prefixes) {
+                batch.ready.add(new Registration(prefix, batch.sequence++, startTime));
+            }
+
+            while (running && (!batch.ready.isEmpty() || !batch.inFlight.isEmpty())) {
+                long now = System.currentTimeMillis();
+                while (batch.inFlight.size() < MAX_IN_FLIGHT && !batch.ready.isEmpty() &&
+                        batch.ready.peek().notBefore <= now) {
+                    send(batch, batch.ready.poll());
+                }
+
+                try {
+                    // responses that already arrived make the wait return at once
+                    transport.waitForEvents(nextWakeup(batch) - System.currentTimeMillis());
+                    mFace.processEvents();
+                } catch (IOException e) {
+                    reconnect(batch, e.getMessage());
+                } catch (Exception e) {
+                    Log.e(TAG, "Error processing events: " + e.getMessage());
+                }
+            }
+
+            Log.d(TAG, "Batch towards face " + faceId + " done in " +
+                    (System.currentTimeMillis() - startTime) + "ms: " + batch.numRegistered +
+                    " registered, " + batch.numFailed + " failed");
+
+            OnBatchComplete callback = onBatchComplete;
+            if (callback != null) {
+                callback.onBatchComplete(faceId, batch.numRegistered, batch.numFailed);
+            }
+        }
+
+        private void send(final Batch batch, final Registration registration) {
+            ForwardingFlags flags = new ForwardingFlags();
+            flags.setChildInherit(true);
+            flags.setCapture(false);
+            ControlParameters parameters = new ControlParameters()
+                    .setName(new Name(registration.prefix))
+                    .setFaceId(batch.faceId)
+                    .setCost(0)
+                    .setForwardingFlags(flags);
+
+            Interest command = new Interest(new Name(RIB_REGISTER_COMMAND).append(parameters.wireEncode()));
+            command.setInterestLifetimeMilliseconds(COMMAND_TIMEOUT);
+
+            try {
+                mFace.makeCommandInterest(command);
+                mFace.expressInterest(command, new OnData() {
+                    @Override
+                    public void onData(Interest interest, Data data) {
+                        batch.inFlight.remove(registration);
+
+                        ControlResponse response = new ControlResponse();
+                        try {
+                            response.wireDecode(data.getContent());
+                        } catch (Exception e) {
+                            retryOrFail(batch, registration, "undecodable response");
+                            return;
+                        }
+
+                        int status = response.getStatusCode();
+                        String reason = status + " " + response.getStatusText();
+                        if (status == STATUS_OK) {
+                            batch.numRegistered++;
+                        } else if (status >= MIN_SERVER_ERROR) {
+                            retryOrFail(batch, registration, reason);
+                        } else {
+                            fail(batch, registration, reason);
+                        }
+                    }
+                }, new OnTimeout() {
+                    @Override
+                    public void onTimeout(Interest interest) {
+                        batch.inFlight.remove(registration);
+                        retryOrFail(batch, registration, "timeout");
+                    }
+                });
+                registration.deadline = System.currentTimeMillis() + COMMAND_TIMEOUT;
+                batch.inFlight.add(registration);
+            } catch (IOException e) {
+                // e.g. NFD is not accepting connections (yet)
+                reconnect(batch, e.getMessage());
+                retryOrFail(batch, registration, e.getMessage());
+            } catch (Exception e) {
+                retryOrFail(batch, registration, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the time at which the worker has something to do for the batch, even if no
+     *         response arrives: the earliest command timeout, or the next send when a
+     *         command slot is free
+     */
+    private static long nextWakeup(Batch batch) {
+        long wakeup = Long.MAX_VALUE;
+        for (Registration registration : batch.inFlight) {
+            wakeup = Math.min(wakeup, registration.deadline);
+        }
+        if (batch.inFlight.size() < MAX_IN_FLIGHT && !batch.ready.isEmpty()) {
+            wakeup = Math.min(wakeup, batch.ready.peek().notBefore);
+        }
+        // an expired deadline must still let the Face's timeout fire before retrying
+        return Math.max(wakeup, System.currentTimeMillis() + 1);
+    }
+
+    private static void retryOrFail(Batch batch, Registration registration, String reason) {
+        if (registration.attempt >= MAX_ATTEMPTS) {
+            fail(batch, registration, reason);
+            return;
+        }
+
+        long delay = BASE_RETRY_DELAY << (registration.attempt - 1);
+        Log.d(TAG, "Retrying " + registration.prefix + " in " + delay + "ms (" + reason + ")");
+        registration.attempt++;
+        registration.notBefore = System.currentTimeMillis() + delay;
+        registration.sequence = batch.sequence++;
+        batch.ready.add(registration);
+    }
+
+    private static void fail(Batch batch, Registration registration, String reason) {
+        Log.e(TAG, "Giving up registering " + registration.prefix + " (" + reason + ")");
+        batch.numFailed++;
+    }
+
+    private static class Batch {
+        final int faceId;
+        final PriorityQueue<Registration> ready = new PriorityQueue<>();
+        final Set<Registration> inFlight = new HashSet<>();
+        int numRegistered = 0;
+        int numFailed = 0;
+        long sequence = 0;
+
+        Batch(int faceId) {
+            this.faceId = faceId;
+        }
+    }
+
+    private static class Registration implements Comparable<Registration> {
+        final String prefix;
+        int attempt = 1;
+        long sequence;      // keeps FIFO order among registrations with the same notBefore
+        long notBefore;     // earliest time (ms) at which to (re)send
+        long deadline;      // time (ms) at which the outstanding command times out
+
+        Registration(String prefix, long sequence, long notBefore) {
+            this.prefix = prefix;
+            this.sequence = sequence;
+            this.notBefore = notBefore;
+        }
+
+        @Override
+        public int compareTo(Registration other) {
+            if (notBefore != other.notBefore) {
+                return notBefore < other.notBefore ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.Blob;
+import net.named_data.nfd.utils.FaceEventLoop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Fetches a segmented response on the FaceEventLoop: the base interest is expressed
+ * first, and once the first segment reveals the FinalBlockId, the remaining segments
+ * are requested with up to WINDOW_SIZE interests outstanding. Timed out segments are
+ * re-expressed up to MAX_RETRIES times.
+ *
+ * A response without FinalBlockId is treated as a single, unsegmented packet.
+ * All methods, and both callbacks, run on the event loop thread.
+ */
+public class SegmentedFetcher {
+
+    public interface OnComplete {
+        void onComplete(Interest baseInterest, Blob content);
+    }
+
+    public interface OnError {
+        /**
+         * @param baseInterest the interest given to the fetcher
+         * @param firstSegment true if not even the first segment was received
+         */
+        void onError(Interest baseInterest, boolean firstSegment, String reason);
+    }
+
+    private static final String TAG = "SegmentedFetcher";
+    private static final int WINDOW_SIZE = 8;       // max outstanding segment interests
+    private static final int MAX_RETRIES = 3;       // per segment
+    private static final int MAX_SEGMENTS = 4096;   // sanity bound on FinalBlockId
+
+    private final FaceEventLoop mEventLoop;
+    private final Interest baseInterest;
+    private final OnComplete onComplete;
+    private final OnError onError;
+
+    private Name segmentPrefix = null;  // name of the first segment, without segment number
+    private Blob[] segments = null;
+    private int[] retries = null;
+    private int nextSegment = 1;        // next segment to request for the first time
+    private int numInFlight = 0;
+    private int numReceived = 0;
+    private boolean done = false;
+
+    public SegmentedFetcher(FaceEventLoop eventLoop, Interest baseInterest,
+                            OnComplete onComplete, OnError onError) {
+        this.mEventLoop = eventLoop;
+        this.baseInterest = baseInterest;
+        this.onComplete = onComplete;
+        this.onError = onError;
+    }
+
+    /**
+     * Expresses the base interest. Must be called on the event loop thread.
+     */
+    public void start() throws IOException {
+        mEventLoop.expressInterest(baseInterest, new OnData() {
+            @Override
+            public void onData(Interest interest, Data data) {
+                onFirstSegment(data);
+            }
+        }, new OnTimeout() {
+            @Override
+            public void onTimeout(Interest interest) {
+                fail(true, "timeout");
+            }
+        });
+    }
+
+    private void onFirstSegment(Data data) {
+        Name.Component finalBlockId = data.getMetaInfo().getFinalBlockId();
+        if (finalBlockId.getValue().size() == 0) {
+            succeed(data.getContent());
+            return;
+        }
+
+        int finalSegment;
+        try {
+            segmentPrefix = data.getName().getPrefix(-1);
+            finalSegment = (int) finalBlockId.toSegment();
+            if (data.getName().get(-1).toSegment() != 0) {
+                fail(true, "first data is not segment 0");
+                return;
+            }
+        } catch (EncodingException e) {
+            fail(true, "bad segment naming");
+            return;
+        }
+        if (finalSegment < 0 || finalSegment >= MAX_SEGMENTS) {
+            fail(true, "too many segments: " + (finalSegment + 1));
+            return;
+        }
+
+        segments = new Blob[finalSegment + 1];
+        retries = new int[finalSegment + 1];
+        segments[0] = data.getContent();
+        numReceived = 1;
+
+        if (numReceived == segments.length) {
+            succeed(segments[0]);
+        } else {
+            Log.d(TAG, "Fetching " + segments.length + " segments of " + segmentPrefix.toUri());
+            fillWindow();
+        }
+    }
+
+    private void fillWindow() {
+        while (!done && numInFlight < WINDOW_SIZE && nextSegment < segments.length) {
+            expressSegment(nextSegment++);
+        }
+    }
+
+    private void expressSegment(final int segment) {
+        Interest interest = new Interest(new Name(segmentPrefix).appendSegment(segment));
+        interest.setInterestLifetimeMilliseconds(baseInterest.getInterestLifetimeMilliseconds());
+
+        try {
+            mEventLoop.expressInterest(interest, new OnData() {
+                @Override
+                public void onData(Interest interest, Data data) {
+                    numInFlight--;
+                    if (done) {
+                        return;
+                    }
+                    if (segments[segment] == null) {
+                        segments[segment] = data.getContent();
+                        numReceived++;
+                    }
+
+                    if (numReceived == segments.length) {
+                        succeed(assemble());
+                    } else {
+                        fillWindow();
+                    }
+                }
+            }, new OnTimeout() {
+                @Override
+                public void onTimeout(Interest interest) {
+                    numInFlight--;
+                    if (done) {
+                        return;
+                    }
+                    if (++retries[segment] > MAX_RETRIES) {
+                        fail(false, "segment " + segment + " timed out");
+                    } else {
+                        expressSegment(segment);
+                    }
+                }
+            });
+            numInFlight++;
+        } catch (IOException e) {
+            fail(false, e.getMessage());
+        }
+    }
+
+    private Blob assemble() {
+        int length = 0;
+        for (Blob segment : segments) {
+            length += segment.size();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (Blob segment : segments) {
+            if (segment.size() > 0) {
+                buffer.put(segment.buf().duplicate());
+            }
+        }
+        buffer.flip();
+        return new Blob(buffer, false);
+    }
+
+    private void succeed(Blob content) {
+        done = true;
+        onComplete.onComplete(baseInterest, content);
+    }
+
+    private void fail(boolean firstSegment, String reason) {
+        if (done) {
+            return;
+        }
+        done = true;
+        onError.onError(baseInterest, firstSegment, reason);
+    }
+}
@@ -16,7 +16,6 @@ import net.named_data.nfd.wifidirect.callback.GenericCallback;
 import net.named_data.nfd.wifidirect.model.Peer;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Set;
 
 /**
@@ -91,15 +90,12 @@ public class WDBroadcastReceiver extends BroadcastReceiver {
 
                         // iterate through currently connected peers, noting already connected
                         // peers and removing those that are no longer available
-                        Iterator<String> currPeersIterator = mController.getConnectedPeers().iterator();
-                        while (currPeersIterator.hasNext()) {
-                            String peerMacAddr = currPeersIterator.next();
+                        for (String peerMacAddr : mController.getConnectedPeers()) {
                             if (newPeers.containsKey(peerMacAddr)) {
                                 newPeers.remove(peerMacAddr);
                             } else {
                                 // this means the current peer is no longer available
-                                //mController.removeConnectedPeer(peerMacAddr);
-                                currPeersIterator.remove();
+                                mController.removeConnectedPeer(peerMacAddr);
                             }
                         }
 
@@ -117,6 +113,7 @@ public class WDBroadcastReceiver extends BroadcastReceiver {
                             if (!connectedPeers.contains(device.deviceAddress)) {
                                 if (mController.logConnectedPeer(peer)) {
                                     Log.d(TAG, "Connecting to " + peer.getDeviceAddress());
+                                    mController.markPeerConnecting(peer.getDeviceAddress());
                                     connect(device);
                                 } else {
                                     Log.d(TAG, "Maximum number of connected peers reached.");
@@ -248,7 +245,7 @@ public class WDBroadcastReceiver extends BroadcastReceiver {
             public void onFailure(int reason) {
                 // remove log of this device from connectedPeers, if it had
                 // been previously added
-                mController.getConnectedPeers().remove(config.deviceAddress);
+                mController.removeConnectedPeer(config.deviceAddress);
             }
         });
     }
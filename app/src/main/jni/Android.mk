@@ -5,6 +5,7 @@ include $(CLEAR_VARS)
 LOCAL_MODULE := nfd-wrapper
 LOCAL_SRC_FILES := nfd-wrapper.cpp
 LOCAL_SHARED_LIBRARIES := nfd-daemon ndn-cxx boost_system_shared boost_thread_shared
+LOCAL_CPPFLAGS := -I$(LOCAL_PATH)/NFD/daemon
 LOCAL_LDLIBS := -llog
 include $(BUILD_SHARED_LIBRARY)
 
@@ -0,0 +1,162 @@
+/* -*- Mode:C++; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ *
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ *
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "cs-snapshot.hpp"
+
+#include <boost/crc.hpp>
+
+#include <chrono>
+#include <cstdio>
+#include <fstream>
+#include <limits>
+#include <vector>
+
+namespace nfd {
+
+const uint32_t CsSnapshot::SNAPSHOT_MAGIC;
+const uint32_t CsSnapshot::SNAPSHOT_VERSION;
+const uint32_t CsSnapshot::NO_FRESHNESS;
+
+static const size_t RECORD_HEADER_SIZE = 3 * sizeof(uint32_t);
+
+static int64_t
+getWallClockMs()
+{
+  return std::chrono::duration_cast<std::chrono::milliseconds>(
+           std::chrono::system_clock::now().time_since_epoch()).count();
+}
+
+static uint32_t
+getChecksum(uint32_t freshness, const uint8_t* wire, size_t wireLength)
+{
+  boost::crc_32_type crc;
+  crc.process_bytes(&freshness, sizeof(freshness));
+  crc.process_bytes(wire, wireLength);
+  return crc.checksum();
+}
+
+template<typename T>
+static void
+writeValue(std::ostream& os, const T& value)
+{
+  os.write(reinterpret_cast<const char*>(&value), sizeof(value));
+}
+
+template<typename T>
+static bool
+readValue(std::istream& is, T& value)
+{
+  return static_cast<bool>(is.read(reinterpret_cast<char*>(&value), sizeof(value)));
+}
+
+size_t
+CsSnapshot::save(const Cs& cs, const std::string& path, size_t maxSize)
+{
+  static const Name LOCALHOST("/localhost");
+
+  std::string tmpPath = path + ".tmp";
+  std::ofstream os(tmpPath.c_str(), std::ios::binary | std::ios::trunc);
+  if (!os) {
+    throw std::runtime_error("Cannot open " + tmpPath);
+  }
+
+  writeValue(os, SNAPSHOT_MAGIC);
+  writeValue(os, SNAPSHOT_VERSION);
+  writeValue(os, getWallClockMs());
+
+  size_t size = 2 * sizeof(uint32_t) + sizeof(int64_t);
+  size_t nEntries = 0;
+  for (const cs::Entry& entry : cs) {
+    const Data& data = entry.getData();
+    if (entry.isUnsolicited() || LOCALHOST.isPrefixOf(data.getName())) {
+      continue;
+    }
+
+    // load() could only restore the full FreshnessPeriod, see the file format
+    if (data.getFreshnessPeriod() > time::milliseconds::zero()) {
+      continue;
+    }
+    uint32_t freshness = NO_FRESHNESS;
+
+    const Block& wire = data.wireEncode();
+    if (size + RECORD_HEADER_SIZE + wire.size() > maxSize) {
+      break;
+    }
+
+    writeValue(os, static_cast<uint32_t>(wire.size()));
+    writeValue(os, freshness);
+    writeValue(os, getChecksum(freshness, wire.wire(), wire.size()));
+    os.write(reinterpret_cast<const char*>(wire.wire()), wire.size());
+    size += RECORD_HEADER_SIZE + wire.size();
+    nEntries++;
+  }
+
+  os.close();
+  if (!os || std::rename(tmpPath.c_str(), path.c_str()) != 0) {
+    std::remove(tmpPath.c_str());
+    throw std::runtime_error("Cannot write " + path);
+  }
+  return nEntries;
+}
+
+size_t
+CsSnapshot::load(Cs& cs, const std::string& path)
+{
+  std::ifstream is(path.c_str(), std::ios::binary);
+
+  uint32_t magic = 0;
+  uint32_t version = 0;
+  int64_t saveTime = 0;
+  if (!readValue(is, magic) || !readValue(is, version) || !readValue(is, saveTime) ||
+      magic != SNAPSHOT_MAGIC || version != SNAPSHOT_VERSION) {
+    return 0;
+  }
+  size_t nEntries = 0;
+  std::vector<uint8_t> wire;
+  uint32_t wireLength;
+  uint32_t freshness;
+  uint32_t checksum;
+  while (readValue(is, wireLength) && readValue(is, freshness) && readValue(is, checksum)) {
+    if (wireLength > ndn::MAX_NDN_PACKET_SIZE) {
+      break;
+    }
+    wire.resize(wireLength);
+    if (!is.read(reinterpret_cast<char*>(wire.data()), wireLength) ||
+        getChecksum(freshness, wire.data(), wireLength) != checksum) {
+      break;
+    }
+
+    if (freshness != NO_FRESHNESS) {
+      continue; // Cs::insert() would make the Data fresh for its full FreshnessPeriod
+    }
+
+    try {
+      // the Content Store keeps a reference to the Data
+      auto data = make_shared<Data>(Block(wire.data(), wire.size()));
+      cs.insert(*data);
+      nEntries++;
+    }
+    catch (const std::exception&) {
+      break;
+    }
+  }
+  return nEntries;
+}
+
+} // namespace nfd
@@ -0,0 +1,83 @@
+/* -*- Mode:C++; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ *
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ *
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef NFD_ANDROID_CS_SNAPSHOT_HPP
+#define NFD_ANDROID_CS_SNAPSHOT_HPP
+
+#include "table/cs.hpp"
+
+namespace nfd {
+
+/** \brief snapshot of the Content Store in a file, so that the cache is warm after NFD
+ *         restarts
+ *
+ *  The file is written in native byte order as a header:
+ *
+ *      uint32 magic     SNAPSHOT_MAGIC
+ *      uint32 version   SNAPSHOT_VERSION
+ *      int64  saveTime  milliseconds since the epoch
+ *
+ *  followed by records appended one after the other:
+ *
+ *      uint32 wireLength
+ *      uint32 freshness  NO_FRESHNESS; reserved for the time the Data was still fresh for
+ *                        at saveTime
+ *      uint32 checksum   CRC-32 of freshness and wire
+ *      wire              Data TLV wire encoding
+ *
+ *  Only Data without a FreshnessPeriod are kept: Cs::insert() starts the freshness period
+ *  of every Data it inserts anew, and offers no way to give the entry its remaining
+ *  freshness instead, so a restored Data with a FreshnessPeriod would be fresh again for
+ *  all of it.  Data without one are never fresh, and are restored as they were.
+ *
+ *  Loading stops at the first truncated or corrupt record and keeps the ones before.
+ */
+class CsSnapshot
+{
+public:
+  static const uint32_t SNAPSHOT_MAGIC = 0x4e435353; // "NCSS"
+  static const uint32_t SNAPSHOT_VERSION = 1;
+  static const uint32_t NO_FRESHNESS = 0xffffffff;
+
+  /** \brief write the entries of \p cs to \p path, up to \p maxSize bytes
+   *
+   *  Unsolicited entries, /localhost entries and Data with a FreshnessPeriod are left
+   *  out.  The file is replaced atomically.
+   *
+   *  \return number of entries written
+   *  \throw std::runtime_error the file cannot be written
+   */
+  static size_t
+  save(const Cs& cs, const std::string& path, size_t maxSize);
+
+  /** \brief insert the entries saved in \p path into \p cs
+   *
+   *  Records with a freshness (which this version does not write) are left out, as the
+   *  Content Store would consider their Data fresh for their full FreshnessPeriod.  The
+   *  file is left as is.
+   *
+   *  \return number of entries inserted; 0 if the file does not exist or is invalid
+   */
+  static size_t
+  load(Cs& cs, const std::string& path);
+};
+
+} // namespace nfd
+
+#endif // NFD_ANDROID_CS_SNAPSHOT_HPP
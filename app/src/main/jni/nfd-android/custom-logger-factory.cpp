@@ -199,6 +199,18 @@ LoggerFactory::createLogger(const std::string& moduleName)
   return loggerIt.first->second;
 }
 
+void
+LoggerFactory::setModuleLevel(const std::string& moduleName, const std::string& level)
+{
+  LoggerMap::iterator loggerIt = m_loggers.find(moduleName);
+  if (loggerIt == m_loggers.end())
+    {
+      throw LoggerFactory::Error("Module \"" + moduleName + "\" not found");
+    }
+
+  loggerIt->second.setLogLevel(parseLevel(level));
+}
+
 std::list<std::string>
 LoggerFactory::getModules() const
 {
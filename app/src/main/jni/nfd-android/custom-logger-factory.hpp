@@ -59,6 +59,13 @@ public:
   std::list<std::string>
   getModules() const;
 
+  /** \brief set the log level of a single module at runtime
+   *  \param level level name (e.g. "WARN") or number
+   *  \throw Error the module does not exist or the level is invalid
+   */
+  void
+  setModuleLevel(const std::string& moduleName, const std::string& level);
+
   static Logger&
   create(const std::string& moduleName);
 
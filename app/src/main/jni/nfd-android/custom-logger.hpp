@@ -27,6 +27,7 @@
 #define NFD_ANDROID_CUSTOM_LOGGER_HPP
 
 #include "core/common.hpp"
+#include "log-sink.hpp"
 #include <android/log.h>
 
 namespace nfd {
@@ -123,8 +124,11 @@ do {                                                                    \
   if (g_logger.isEnabled(::nfd::LOG_##nfdLevel)) {                      \
     std::ostringstream os;                                              \
     os << expression;                                                   \
+    std::string message = os.str();                                     \
     __android_log_print(ANDROID_LOG_##androidLevel,                     \
-                        g_logger.getName().c_str(), "%s", os.str().c_str()); \
+                        g_logger.getName().c_str(), "%s", message.c_str()); \
+    ::nfd::LogSink::getInstance().write(ANDROID_LOG_##androidLevel,     \
+                                        g_logger.getName(), message);   \
   }                                                                     \
 } while (false)
 
@@ -0,0 +1,228 @@
+/* -*- Mode:C++; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ *
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ *
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "log-sink.hpp"
+
+#include <algorithm>
+#include <chrono>
+#include <cstring>
+#include <sstream>
+
+#include <android/log.h>
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <unistd.h>
+
+namespace nfd {
+
+const uint32_t LogSink::MAGIC;
+const uint32_t LogSink::VERSION;
+const size_t LogSink::HEADER_PAGE_SIZE;
+const size_t LogSink::FILTER_SIZE;
+const size_t LogSink::CAPACITY;
+const size_t LogSink::RECORD_HEADER_SIZE;
+const size_t LogSink::MAX_MODULE_LENGTH;
+const size_t LogSink::MAX_MESSAGE_LENGTH;
+
+// Header fields are shared with another process, so they are accessed with the
+// __atomic builtins, which work on plain (mapped) memory.
+
+LogSink&
+LogSink::getInstance()
+{
+  static LogSink globalLogSink;
+
+  return globalLogSink;
+}
+
+LogSink::LogSink()
+  : m_header(nullptr)
+  , m_ring(nullptr)
+  , m_mask(CAPACITY - 1)
+  , m_filterGeneration(0)
+  , m_nextSequence(0)
+{
+  static_assert(sizeof(Header) == HEADER_PAGE_SIZE, "Header must fill the header page");
+  static_assert((CAPACITY & (CAPACITY - 1)) == 0, "CAPACITY must be a power of 2");
+}
+
+bool
+LogSink::open(const std::string& path)
+{
+  std::lock_guard<std::mutex> lock(m_mutex);
+
+  if (m_header != nullptr) {
+    return true;
+  }
+
+  int fd = ::open(path.c_str(), O_RDWR | O_CREAT, 0600);
+  if (fd < 0) {
+    return false;
+  }
+
+  size_t size = HEADER_PAGE_SIZE + CAPACITY;
+  void* memory = MAP_FAILED;
+  if (::ftruncate(fd, size) == 0) {
+    memory = ::mmap(nullptr, size, PROT_READ | PROT_WRITE, MAP_SHARED, fd, 0);
+  }
+  ::close(fd);
+  if (memory == MAP_FAILED) {
+    return false;
+  }
+
+  Header* header = static_cast<Header*>(memory);
+  if (header->magic != MAGIC || header->version != VERSION || header->capacity != CAPACITY) {
+    std::memset(header, 0, sizeof(Header));
+    header->version = VERSION;
+    header->capacity = CAPACITY;
+    __atomic_store_n(&header->magic, MAGIC, __ATOMIC_RELEASE);
+  }
+
+  // Positions carry on from the previous session, so that a reader still holding on
+  // to them never mistakes old bytes for new records; old records are simply evicted.
+  uint32_t committed = __atomic_load_n(&header->committed, __ATOMIC_RELAXED);
+  __atomic_store_n(&header->oldest, committed, __ATOMIC_SEQ_CST);
+  __atomic_add_fetch(&header->session, 1, __ATOMIC_SEQ_CST);
+
+  m_header = header;
+  m_ring = static_cast<uint8_t*>(memory) + HEADER_PAGE_SIZE;
+  m_nextSequence = 0;
+  // force parsing the filter kept from the previous session
+  m_filterGeneration = __atomic_load_n(&header->filterGeneration, __ATOMIC_ACQUIRE) + 1;
+  return true;
+}
+
+void
+LogSink::updateFilter()
+{
+  uint32_t generation = __atomic_load_n(&m_header->filterGeneration, __ATOMIC_ACQUIRE);
+  if (generation == m_filterGeneration || (generation & 1) != 0) {
+    return;
+  }
+
+  size_t length = std::min<size_t>(__atomic_load_n(&m_header->filterLength, __ATOMIC_RELAXED),
+                                   FILTER_SIZE);
+  std::string text(m_header->filter, length);
+
+  // the reader may have started another update while we were copying
+  __atomic_thread_fence(__ATOMIC_ACQUIRE);
+  if (__atomic_load_n(&m_header->filterGeneration, __ATOMIC_RELAXED) != generation) {
+    return;
+  }
+
+  std::map<std::string, int> filter;
+  std::istringstream is(text);
+  std::string item;
+  while (is >> item) {
+    size_t separator = item.rfind(':');
+    if (separator == std::string::npos || separator + 2 != item.size()) {
+      continue;
+    }
+
+    int priority;
+    switch (item[separator + 1]) {
+    case 'V': priority = ANDROID_LOG_VERBOSE; break;
+    case 'D': priority = ANDROID_LOG_DEBUG; break;
+    case 'I': priority = ANDROID_LOG_INFO; break;
+    case 'W': priority = ANDROID_LOG_WARN; break;
+    case 'E': priority = ANDROID_LOG_ERROR; break;
+    case 'F': priority = ANDROID_LOG_FATAL; break;
+    default: continue; // silent or unknown
+    }
+    filter[item.substr(0, separator)] = priority;
+  }
+
+  m_filter.swap(filter);
+  m_filterGeneration = generation;
+}
+
+void
+LogSink::write(int priority, const std::string& module, const std::string& message)
+{
+  std::lock_guard<std::mutex> lock(m_mutex);
+
+  if (m_header == nullptr) {
+    return;
+  }
+
+  updateFilter();
+  auto filterIt = m_filter.find(module);
+  if (filterIt == m_filter.end() || priority < filterIt->second) {
+    return;
+  }
+
+  uint16_t moduleLength = static_cast<uint16_t>(std::min(module.size(), MAX_MODULE_LENGTH));
+  uint32_t messageLength = static_cast<uint32_t>(std::min(message.size(), MAX_MESSAGE_LENGTH));
+  uint32_t length = static_cast<uint32_t>(
+    (RECORD_HEADER_SIZE + moduleLength + messageLength + 7) & ~static_cast<size_t>(7));
+
+  uint32_t start = __atomic_load_n(&m_header->committed, __ATOMIC_RELAXED);
+  uint32_t end = start + length;
+
+  // Evict the records that are about to be overwritten, and let the reader know before
+  // touching their bytes
+  uint32_t oldest = __atomic_load_n(&m_header->oldest, __ATOMIC_RELAXED);
+  if (end - oldest > CAPACITY) {
+    while (end - oldest > CAPACITY) {
+      uint32_t oldLength;
+      std::memcpy(&oldLength, m_ring + (oldest & m_mask), sizeof(oldLength));
+      if (oldLength < RECORD_HEADER_SIZE || (oldLength & 7) != 0 || oldLength > start - oldest) {
+        // not a record written by us, e.g. a damaged file; a zero length would never
+        // advance, so give up on all the older records at once
+        oldest = start;
+        break;
+      }
+      oldest += oldLength;
+    }
+    __atomic_store_n(&m_header->oldest, oldest, __ATOMIC_SEQ_CST);
+    __atomic_thread_fence(__ATOMIC_SEQ_CST);
+  }
+
+  int64_t timestamp = std::chrono::duration_cast<std::chrono::milliseconds>(
+                        std::chrono::system_clock::now().time_since_epoch()).count();
+  uint64_t sequence = m_nextSequence++;
+  int8_t priorityByte = static_cast<int8_t>(priority);
+
+  uint8_t header[RECORD_HEADER_SIZE] = {0};
+  std::memcpy(header, &length, 4);
+  std::memcpy(header + 4, &moduleLength, 2);
+  std::memcpy(header + 6, &priorityByte, 1);
+  std::memcpy(header + 8, &messageLength, 4);
+  std::memcpy(header + 16, &sequence, 8);
+  std::memcpy(header + 24, &timestamp, 8);
+
+  copyIn(start, header, RECORD_HEADER_SIZE);
+  copyIn(start + RECORD_HEADER_SIZE, module.data(), moduleLength);
+  copyIn(start + RECORD_HEADER_SIZE + moduleLength, message.data(), messageLength);
+
+  __atomic_store_n(&m_header->committed, end, __ATOMIC_RELEASE);
+}
+
+void
+LogSink::copyIn(uint32_t position, const void* data, size_t length)
+{
+  const uint8_t* bytes = static_cast<const uint8_t*>(data);
+  size_t offset = position & m_mask;
+  size_t firstPart = std::min(length, CAPACITY - offset);
+
+  std::memcpy(m_ring + offset, bytes, firstPart);
+  std::memcpy(m_ring, bytes + firstPart, length - firstPart);
+}
+
+} // namespace nfd
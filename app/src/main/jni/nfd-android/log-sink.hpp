@@ -0,0 +1,140 @@
+/* -*- Mode:C++; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ *
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ *
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef NFD_ANDROID_LOG_SINK_HPP
+#define NFD_ANDROID_LOG_SINK_HPP
+
+#include <cstddef>
+#include <cstdint>
+#include <map>
+#include <mutex>
+#include <string>
+
+namespace nfd {
+
+/** \brief sink of NFD log records into a ring shared with the app's UI process
+ *
+ *  NfdService runs NFD in its own process, so records are written to a memory-mapped
+ *  file that the UI process maps as well (net.named_data.nfd.utils.NfdLogReader),
+ *  and reads without any copy through the kernel, process spawn or text parsing.
+ *
+ *  The file starts with a header page, in native byte order:
+ *
+ *      offset  0  uint32 magic             MAGIC
+ *      offset  4  uint32 version           VERSION
+ *      offset  8  uint32 capacity          size of the ring, a power of 2
+ *      offset 12  uint32 session           incremented every time the sink is opened
+ *      offset 16  uint32 oldest            position of the oldest intact record
+ *      offset 20  uint32 committed         position right after the last complete record
+ *      offset 24  uint32 filterGeneration  odd while the reader updates the filter
+ *      offset 28  uint32 filterLength
+ *      offset 32  filter text (FILTER_SIZE bytes at most), "Module:P Module:P ..." where
+ *                 P is a logcat priority letter (V, D, I, W, E, F or S)
+ *
+ *  followed by the ring.  Positions are byte offsets that wrap around at 2^32; a
+ *  position maps to ring offset (position & (capacity - 1)).  Each record is 8-byte
+ *  aligned and laid out as:
+ *
+ *      int32 length        total record length, including header and padding
+ *      int16 moduleLength  length of the UTF-8 module name
+ *      int8  priority      Android log priority (ANDROID_LOG_*)
+ *      int8  reserved
+ *      int32 messageLength length of the UTF-8 message
+ *      int32 reserved
+ *      int64 sequence      record number within the session, starting at 0
+ *      int64 timestamp     milliseconds since the epoch
+ *      module bytes, message bytes, padding
+ *
+ *  As records and the capacity are multiples of 8 bytes, each 8-byte word of the header
+ *  is contiguous in the ring; module and message bytes may wrap around its end.
+ *
+ *  Only records of the modules in the filter, at or above their priority, are written,
+ *  so that filtering costs neither the ring's space nor the reader's time.  Before the
+ *  reader sets a filter, nothing is written.
+ *
+ *  The reader reads committed, then the records from its last position up to it, and
+ *  then oldest: records that start before oldest may have been overwritten while being
+ *  read and must be discarded.
+ */
+class LogSink
+{
+public:
+  static const uint32_t MAGIC = 0x4e4c4f47; // "NLOG"
+  static const uint32_t VERSION = 1;
+  static const size_t HEADER_PAGE_SIZE = 4096;
+  static const size_t FILTER_SIZE = HEADER_PAGE_SIZE - 32;
+  static const size_t CAPACITY = 256 * 1024;
+
+  static const size_t RECORD_HEADER_SIZE = 32;
+  static const size_t MAX_MODULE_LENGTH = 255;
+  static const size_t MAX_MESSAGE_LENGTH = 4096;
+
+  static LogSink&
+  getInstance();
+
+  /** \brief maps the ring file at \p path, creating or resetting it as needed
+   *
+   *  The filter of an existing file is kept.  Until this succeeds, write() does nothing.
+   *  \return false if the file cannot be mapped
+   */
+  bool
+  open(const std::string& path);
+
+  void
+  write(int priority, const std::string& module, const std::string& message);
+
+private:
+  LogSink();
+
+  struct Header
+  {
+    uint32_t magic;
+    uint32_t version;
+    uint32_t capacity;
+    uint32_t session;
+    uint32_t oldest;
+    uint32_t committed;
+    uint32_t filterGeneration;
+    uint32_t filterLength;
+    char filter[FILTER_SIZE];
+  };
+
+  /** \brief picks up a filter update by the reader, if any
+   */
+  void
+  updateFilter();
+
+  void
+  copyIn(uint32_t position, const void* data, size_t length);
+
+private:
+  std::mutex m_mutex; // serializes writers
+
+  Header* m_header;
+  uint8_t* m_ring;
+  uint32_t m_mask;
+
+  uint32_t m_filterGeneration;
+  std::map<std::string, int> m_filter;
+  uint64_t m_nextSequence;
+};
+
+} // namespace nfd
+
+#endif // NFD_ANDROID_LOG_SINK_HPP
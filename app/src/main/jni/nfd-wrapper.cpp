@@ -20,16 +20,23 @@
 #include "nfd-wrapper.hpp"
 
 #include "daemon/nfd.hpp"
+#include "daemon/fw/forwarder.hpp"
 #include "rib/service.hpp"
 
 #include "core/global-io.hpp"
 #include "core/config-file.hpp"
 #include "core/logger.hpp"
 #include "core/privilege-helper.hpp"
+#include "core/version.hpp"
+
+#include "cs-snapshot.hpp"
+#include "log-sink.hpp"
 
 #include <stdlib.h>
 #include <boost/property_tree/info_parser.hpp>
 #include <boost/thread.hpp>
+#include <chrono>
+#include <condition_variable>
 #include <mutex>
 
 NFD_LOG_INIT("NfdWrapper");
@@ -48,114 +55,282 @@ resetGlobalScheduler();
 void
 resetGlobalIoService();
 
+// Nfd does not expose its forwarder, whose Content Store the snapshot needs.  Explicit
+// instantiations may name private members, which lets getForwarder() read Nfd::m_forwarder.
+
+template<typename Tag, typename Tag::type member>
+struct PrivateMemberAccess
+{
+  friend typename Tag::type
+  getPrivateMember(Tag)
+  {
+    return member;
+  }
+};
+
+struct NfdForwarderTag
+{
+  typedef unique_ptr<Forwarder> Nfd::*type;
+
+  friend type
+  getPrivateMember(NfdForwarderTag);
+};
+
+template struct PrivateMemberAccess<NfdForwarderTag, &Nfd::m_forwarder>;
+
+static Forwarder&
+getForwarder(Nfd& nfd)
+{
+  return *(nfd.*getPrivateMember(NfdForwarderTag()));
+}
+
+/** \brief maximum size of the Content Store snapshot file
+ */
+static const size_t CS_SNAPSHOT_MAX_SIZE = 16 * 1024 * 1024;
+
+/** \brief layout of the counters copied by getNfdCounters: the forwarder-wide counters
+ *         in COUNTER_HEADER_SIZE slots, followed by a record of FACE_COUNTER_RECORD_SIZE
+ *         slots per face
+ *
+ *  Must match net.named_data.nfd.service.NfdCounters.
+ */
+enum {
+  COUNTER_START_TIMESTAMP, // milliseconds since the epoch
+  COUNTER_CURRENT_TIMESTAMP,
+  COUNTER_N_NAME_TREE_ENTRIES,
+  COUNTER_N_FIB_ENTRIES,
+  COUNTER_N_PIT_ENTRIES,
+  COUNTER_N_MEASUREMENTS_ENTRIES,
+  COUNTER_N_CS_ENTRIES,
+  COUNTER_CS_CAPACITY,
+  COUNTER_N_IN_INTERESTS,
+  COUNTER_N_OUT_INTERESTS,
+  COUNTER_N_IN_DATA,
+  COUNTER_N_OUT_DATA,
+  COUNTER_N_IN_NACKS,
+  COUNTER_N_OUT_NACKS,
+  COUNTER_N_FACES, // all faces, including those without a record
+  COUNTER_HEADER_SIZE = 16
+};
+
+enum {
+  FACE_COUNTER_FACE_ID,
+  FACE_COUNTER_N_IN_INTERESTS,
+  FACE_COUNTER_N_OUT_INTERESTS,
+  FACE_COUNTER_N_IN_DATA,
+  FACE_COUNTER_N_OUT_DATA,
+  FACE_COUNTER_N_IN_NACKS,
+  FACE_COUNTER_N_OUT_NACKS,
+  FACE_COUNTER_N_IN_BYTES,
+  FACE_COUNTER_N_OUT_BYTES,
+  FACE_COUNTER_RECORD_SIZE = 10
+};
+
+/** \brief how long getNfdCounters waits for NFD's thread to copy the counters
+ */
+static const std::chrono::milliseconds COUNTERS_TIMEOUT(500);
+
+static uint64_t
+toUnixMilliseconds(const std::chrono::system_clock::time_point& timePoint)
+{
+  return std::chrono::duration_cast<std::chrono::milliseconds>(
+           timePoint.time_since_epoch()).count();
+}
+
+
+/** \brief NFD log level of modules that are not given one explicitly
+ *
+ *  Log messages are formatted whenever their module's level allows, so this is kept
+ *  low; modules of interest are raised through startNfd parameters or setNfdLogLevels.
+ */
+static const std::string DEFAULT_LOG_LEVEL = "WARN";
+
+/** \brief make a "log" configuration section out of { module : level }
+ *
+ *  \p levels may include "default_level"; otherwise DEFAULT_LOG_LEVEL is used.
+ */
+static ConfigSection
+makeLogSection(const std::map<std::string, std::string>& levels)
+{
+  ConfigSection section;
+  auto defaultLevel = levels.find("default_level");
+  section.put("default_level",
+              defaultLevel != levels.end() ? defaultLevel->second : DEFAULT_LOG_LEVEL);
+
+  for (const auto& level : levels) {
+    if (level.first != "default_level") {
+      // not put(), which would take dots in the module name as a path
+      section.push_back(ConfigSection::value_type(level.first, ConfigSection(level.second)));
+    }
+  }
+  return section;
+}
+
+/** \brief apply { module : level } to the loggers of all modules
+ *
+ *  Modules not in \p levels are reset to the default level, as when processing the
+ *  "log" section of the configuration.
+ */
+static void
+applyLogLevels(const std::map<std::string, std::string>& levels)
+{
+  try {
+    LoggerFactory::getInstance().onConfig(makeLogSection(levels), false, "");
+  }
+  catch (const LoggerFactory::Error& e) {
+    NFD_LOG_ERROR("Cannot apply log levels: " << e.what());
+  }
+}
+
+/** \brief make NFD's configuration
+ *  \param logLevels { module : NFD log level }, see makeLogSection
+ *  \param sections { section name : section in INFO format }, replacing the sections
+ *         of the built-in configuration, e.g. "tables" to size the Content Store
+ */
+static ConfigSection
+makeConfig(const std::map<std::string, std::string>& logLevels,
+           const std::map<std::string, std::string>& sections)
+{
+  std::string initialConfig =
+    "general\n"
+    "{\n"
+    "}\n"
+    "\n"
+    "log\n"
+    "{\n"
+    "}\n"
+    "tables\n"
+    "{\n"
+    "  cs_max_packets 100\n"
+    "\n"
+    "  strategy_choice\n"
+    "  {\n"
+    "    /               /localhost/nfd/strategy/best-route\n"
+    "    /localhost      /localhost/nfd/strategy/multicast\n"
+    "    /localhost/nfd  /localhost/nfd/strategy/best-route\n"
+    "    /ndn/broadcast  /localhost/nfd/strategy/multicast\n"
+    "    /ndn/multicast  /localhost/nfd/strategy/multicast\n"
+    "  }\n"
+    "}\n"
+    "\n"
+    "face_system\n"
+    "{\n"
+    "  tcp\n"
+    "  {\n"
+    "    listen yes\n"
+    "    port 6363\n"
+    "    enable_v4 yes\n"
+    "    enable_v6 yes\n"
+    "  }\n"
+    "\n"
+    "  udp\n"
+    "  {\n"
+    "    port 6363\n"
+    "    enable_v4 yes\n"
+    "    enable_v6 yes\n"
+    "    idle_timeout 600\n"
+    "    keep_alive_interval 25\n"
+    "    mcast no\n"
+    "  }\n"
+    "  websocket\n"
+    "  {\n"
+    "    listen yes\n"
+    "    port 9696\n"
+    "    enable_v4 yes\n"
+    "    enable_v6 yes\n"
+    "  }\n"
+    "}\n"
+    "\n"
+    "authorizations\n"
+    "{\n"
+    "  authorize\n"
+    "  {\n"
+    "    certfile any\n"
+    "    privileges\n"
+    "    {\n"
+    "      faces\n"
+    "      fib\n"
+    "      strategy-choice\n"
+    "    }\n"
+    "  }\n"
+    "}\n"
+    "\n"
+    "rib\n"
+    "{\n"
+    "  localhost_security\n"
+    "  {\n"
+    "    trust-anchor\n"
+    "    {\n"
+    "      type any\n"
+    "    }\n"
+    "  }\n"
+    "\n"
+    "  auto_prefix_propagate\n"
+    "  {\n"
+    "    cost 15\n"
+    "    timeout 10000\n"
+    "    refresh_interval 300\n"
+    "    base_retry_wait 50\n"
+    "    max_retry_wait 3600\n"
+    "  }\n"
+    "}\n"
+    "\n";
+
+  std::istringstream input(initialConfig);
+  ConfigSection config;
+  boost::property_tree::read_info(input, config);
+  config.put_child("log", makeLogSection(logLevels));
+
+  for (const auto& section : sections) {
+    std::istringstream sectionInput(section.second);
+    ConfigSection parsedSection;
+    try {
+      boost::property_tree::read_info(sectionInput, parsedSection);
+    }
+    catch (const boost::property_tree::info_parser::info_parser_error& e) {
+      NFD_LOG_ERROR("Invalid " << section.first << " section, using the built-in one: " <<
+                    e.what());
+      continue;
+    }
+    // section names have no dots, so the name is a valid path
+    config.put_child(section.first, parsedSection);
+  }
+  return config;
+}
 
 class Runner
 {
 public:
-  Runner()
+  /** \param configFile file that the configuration is written to, so that NFD can
+   *         reload it (see reload)
+   *  \param csSnapshotFile file that the Content Store is loaded from on start and saved
+   *         to on stop, or empty
+   *  \param logLevels, sections see makeConfig
+   */
+  Runner(const std::string& configFile,
+         const std::string& csSnapshotFile,
+         const std::map<std::string, std::string>& logLevels,
+         const std::map<std::string, std::string>& sections)
     : m_io(nullptr)
+    , m_configFile(configFile)
+    , m_csSnapshotFile(csSnapshotFile)
+    , m_config(makeConfig(logLevels, sections))
+    , m_startTimestamp(toUnixMilliseconds(std::chrono::system_clock::now()))
   {
-    std::string initialConfig =
-      "general\n"
-      "{\n"
-      "}\n"
-      "\n"
-      "log\n"
-      "{\n"
-      "  default_level ALL\n"
-      "  NameTree INFO\n"
-      "  BestRouteStrategy2 INFO\n"
-      "  InternalFace INFO\n"
-      "  Forwarder INFO\n"
-      "  ContentStore INFO\n"
-      "  DeadNonceList INFO\n"
-      "}\n"
-      "tables\n"
-      "{\n"
-      "  cs_max_packets 100\n"
-      "\n"
-      "  strategy_choice\n"
-      "  {\n"
-      "    /               /localhost/nfd/strategy/best-route\n"
-      "    /localhost      /localhost/nfd/strategy/multicast\n"
-      "    /localhost/nfd  /localhost/nfd/strategy/best-route\n"
-      "    /ndn/broadcast  /localhost/nfd/strategy/multicast\n"
-      "    /ndn/multicast  /localhost/nfd/strategy/multicast\n"
-      "  }\n"
-      "}\n"
-      "\n"
-      "face_system\n"
-      "{\n"
-      "  tcp\n"
-      "  {\n"
-      "    listen yes\n"
-      "    port 6363\n"
-      "    enable_v4 yes\n"
-      "    enable_v6 yes\n"
-      "  }\n"
-      "\n"
-      "  udp\n"
-      "  {\n"
-      "    port 6363\n"
-      "    enable_v4 yes\n"
-      "    enable_v6 yes\n"
-      "    idle_timeout 600\n"
-      "    keep_alive_interval 25\n"
-      "    mcast no\n"
-      "  }\n"
-      "  websocket\n"
-      "  {\n"
-      "    listen yes\n"
-      "    port 9696\n"
-      "    enable_v4 yes\n"
-      "    enable_v6 yes\n"
-      "  }\n"
-      "}\n"
-      "\n"
-      "authorizations\n"
-      "{\n"
-      "  authorize\n"
-      "  {\n"
-      "    certfile any\n"
-      "    privileges\n"
-      "    {\n"
-      "      faces\n"
-      "      fib\n"
-      "      strategy-choice\n"
-      "    }\n"
-      "  }\n"
-      "}\n"
-      "\n"
-      "rib\n"
-      "{\n"
-      "  localhost_security\n"
-      "  {\n"
-      "    trust-anchor\n"
-      "    {\n"
-      "      type any\n"
-      "    }\n"
-      "  }\n"
-      "\n"
-      "  auto_prefix_propagate\n"
-      "  {\n"
-      "    cost 15\n"
-      "    timeout 10000\n"
-      "    refresh_interval 300\n"
-      "    base_retry_wait 50\n"
-      "    max_retry_wait 3600\n"
-      "  }\n"
-      "}\n"
-      "\n";
-
-    std::istringstream input(initialConfig);
-    boost::property_tree::read_info(input, m_config);
+    writeConfig(m_config);
 
     std::unique_lock<std::mutex> lock(m_pointerMutex);
-    m_nfd.reset(new Nfd(m_config, m_keyChain));
+    m_nfd.reset(new Nfd(m_configFile, m_keyChain));
     m_nrd.reset(new rib::Service(m_config, m_keyChain));
 
     m_nfd->initialize();
     m_nrd->initialize();
+
+    if (!m_csSnapshotFile.empty()) {
+      // after initialize(), which sets the Content Store capacity
+      size_t nEntries = CsSnapshot::load(getForwarder(*m_nfd).getCs(), m_csSnapshotFile);
+      NFD_LOG_INFO("Loaded " << nEntries << " Content Store entries from the snapshot");
+    }
   }
 
   ~Runner()
@@ -176,18 +351,153 @@ public:
     m_io->reset();
   }
 
+  /** \brief run \p f on NFD's thread, if NFD is running
+   *  \return false if NFD is not running
+   */
+  bool
+  post(const std::function<void()>& f)
+  {
+    std::unique_lock<std::mutex> lock(m_pointerMutex);
+    if (m_io == nullptr) {
+      return false;
+    }
+
+    m_io->post(f);
+    return true;
+  }
+
+  /** \brief apply a new configuration to the running NFD, keeping its faces and tables
+   *
+   *  Must run on NFD's thread (see post).  What NFD only reads when it starts, notably
+   *  the channels of the face_system section and the rib section, keeps its current
+   *  settings until NFD restarts.  If NFD rejects the new configuration, the previous
+   *  one is restored.
+   *
+   *  \param logLevels, sections see makeConfig
+   */
+  void
+  reload(const std::map<std::string, std::string>& logLevels,
+         const std::map<std::string, std::string>& sections)
+  {
+    if (m_nfd == nullptr) {
+      return; // stopping
+    }
+
+    ConfigSection config = makeConfig(logLevels, sections);
+    try {
+      writeConfig(config);
+      m_nfd->reloadConfigFile();
+      m_config = config;
+      NFD_LOG_INFO("Reloaded NFD configuration");
+    }
+    catch (const std::exception& e) {
+      NFD_LOG_ERROR("Cannot reload NFD configuration, restoring the previous one: " <<
+                    e.what());
+      try {
+        writeConfig(m_config);
+        m_nfd->reloadConfigFile();
+      }
+      catch (const std::exception& restoreError) {
+        NFD_LOG_ERROR("Cannot restore NFD configuration: " << restoreError.what());
+      }
+    }
+  }
+
+  /** \brief save the Content Store to the snapshot file
+   *
+   *  Must run on NFD's thread (see post).
+   */
+  void
+  saveCsSnapshot()
+  {
+    if (m_nfd == nullptr || m_csSnapshotFile.empty()) {
+      return;
+    }
+
+    try {
+      size_t nEntries = CsSnapshot::save(getForwarder(*m_nfd).getCs(), m_csSnapshotFile,
+                                         CS_SNAPSHOT_MAX_SIZE);
+      NFD_LOG_INFO("Saved " << nEntries << " Content Store entries to the snapshot");
+    }
+    catch (const std::exception& e) {
+      NFD_LOG_ERROR("Cannot save Content Store snapshot: " << e.what());
+    }
+  }
+
+  /** \brief copy the forwarder-wide counters and those of up to \p maxFaces faces
+   *
+   *  Must run on NFD's thread (see post).  Leaves \p counters empty if NFD is stopping.
+   *  \sa COUNTER_HEADER_SIZE for the layout
+   */
+  void
+  readCounters(std::vector<uint64_t>& counters, size_t maxFaces)
+  {
+    if (m_nfd == nullptr) {
+      return;
+    }
+
+    Forwarder& forwarder = getForwarder(*m_nfd);
+    const ForwarderCounters& forwarderCounters = forwarder.getCounters();
+    const FaceTable& faceTable = forwarder.getFaceTable();
+    size_t nFaces = std::min(faceTable.size(), maxFaces);
+
+    counters.assign(COUNTER_HEADER_SIZE + nFaces * FACE_COUNTER_RECORD_SIZE, 0);
+    counters[COUNTER_START_TIMESTAMP] = m_startTimestamp;
+    counters[COUNTER_CURRENT_TIMESTAMP] = toUnixMilliseconds(std::chrono::system_clock::now());
+    counters[COUNTER_N_NAME_TREE_ENTRIES] = forwarder.getNameTree().size();
+    counters[COUNTER_N_FIB_ENTRIES] = forwarder.getFib().size();
+    counters[COUNTER_N_PIT_ENTRIES] = forwarder.getPit().size();
+    counters[COUNTER_N_MEASUREMENTS_ENTRIES] = forwarder.getMeasurements().size();
+    counters[COUNTER_N_CS_ENTRIES] = forwarder.getCs().size();
+    counters[COUNTER_CS_CAPACITY] = forwarder.getCs().getLimit();
+    counters[COUNTER_N_IN_INTERESTS] = forwarderCounters.nInInterests;
+    counters[COUNTER_N_OUT_INTERESTS] = forwarderCounters.nOutInterests;
+    counters[COUNTER_N_IN_DATA] = forwarderCounters.nInData;
+    counters[COUNTER_N_OUT_DATA] = forwarderCounters.nOutData;
+    counters[COUNTER_N_IN_NACKS] = forwarderCounters.nInNacks;
+    counters[COUNTER_N_OUT_NACKS] = forwarderCounters.nOutNacks;
+    counters[COUNTER_N_FACES] = faceTable.size();
+
+    size_t i = 0;
+    for (const Face& face : faceTable) {
+      if (i == nFaces) {
+        break;
+      }
+      uint64_t* record = &counters[COUNTER_HEADER_SIZE + i * FACE_COUNTER_RECORD_SIZE];
+      const face::FaceCounters& faceCounters = face.getCounters();
+      record[FACE_COUNTER_FACE_ID] = face.getId();
+      record[FACE_COUNTER_N_IN_INTERESTS] = faceCounters.nInInterests;
+      record[FACE_COUNTER_N_OUT_INTERESTS] = faceCounters.nOutInterests;
+      record[FACE_COUNTER_N_IN_DATA] = faceCounters.nInData;
+      record[FACE_COUNTER_N_OUT_DATA] = faceCounters.nOutData;
+      record[FACE_COUNTER_N_IN_NACKS] = faceCounters.nInNacks;
+      record[FACE_COUNTER_N_OUT_NACKS] = faceCounters.nOutNacks;
+      record[FACE_COUNTER_N_IN_BYTES] = faceCounters.nInBytes;
+      record[FACE_COUNTER_N_OUT_BYTES] = faceCounters.nOutBytes;
+      ++i;
+    }
+  }
+
   void
   stop()
   {
     std::unique_lock<std::mutex> lock(m_pointerMutex);
 
     m_io->post([this] {
+        saveCsSnapshot();
         m_io->stop();
         this->m_nrd.reset();
         this->m_nfd.reset();
       });
   }
 
+private:
+  void
+  writeConfig(const ConfigSection& config)
+  {
+    boost::property_tree::write_info(m_configFile, config);
+  }
+
 private:
   std::mutex m_pointerMutex;
   boost::asio::io_service* m_io;
@@ -195,13 +505,122 @@ private:
   unique_ptr<Nfd> m_nfd; // will use globalIoService
   unique_ptr<rib::Service> m_nrd; // will use globalIoService
 
-  nfd::ConfigSection m_config;
+  std::string m_configFile;
+  std::string m_csSnapshotFile;
+  nfd::ConfigSection m_config; // as last applied
+  uint64_t m_startTimestamp; // milliseconds since the epoch
 };
 
+/** \brief the running NFD, set and reset by NFD's thread
+ *
+ *  Other threads only use it with g_runnerMutex locked (see postToRunner), as NFD's
+ *  thread may reset it at any time.  Functions posted to NFD's thread can use it freely,
+ *  as it is only reset there, after the last of them ran.
+ */
 static unique_ptr<Runner> g_runner;
+static std::mutex g_runnerMutex;
 static boost::thread g_thread;
 static std::map<std::string, std::string> g_params;
 
+/** \brief prefix of startNfd parameters that give log levels, e.g. "log.Forwarder"
+ */
+static const std::string LOG_LEVEL_PARAM_PREFIX = "log.";
+
+/** \return whether NFD is running
+ */
+static bool
+isRunnerSet()
+{
+  std::lock_guard<std::mutex> lock(g_runnerMutex);
+  return g_runner != nullptr;
+}
+
+/** \brief run \p f on NFD's thread, if NFD is running
+ *  \return false if NFD is not running
+ */
+static bool
+postToRunner(const std::function<void()>& f)
+{
+  std::lock_guard<std::mutex> lock(g_runnerMutex);
+  return g_runner != nullptr && g_runner->post(f);
+}
+
+/** \brief prefix of startNfd parameters that give configuration sections,
+ *         e.g. "config.tables"
+ */
+static const std::string CONFIG_SECTION_PARAM_PREFIX = "config.";
+
+/** \return the startNfd parameters named \p prefix + key, as { key : value }
+ */
+static std::map<std::string, std::string>
+getPrefixedParams(const std::string& prefix)
+{
+  std::map<std::string, std::string> params;
+  for (const auto& param : g_params) {
+    if (param.first.compare(0, prefix.size(), prefix) == 0) {
+      params[param.first.substr(prefix.size())] = param.second;
+    }
+  }
+  return params;
+}
+
+/** \brief replace the startNfd parameters named \p prefix + key with those in \p params
+ */
+static void
+replacePrefixedParams(const std::string& prefix, const std::map<std::string, std::string>& params)
+{
+  for (auto it = g_params.begin(); it != g_params.end();) {
+    if (it->first.compare(0, prefix.size(), prefix) == 0) {
+      it = g_params.erase(it);
+    }
+    else {
+      ++it;
+    }
+  }
+  for (const auto& param : params) {
+    if (param.first.compare(0, prefix.size(), prefix) == 0) {
+      g_params[param.first] = param.second;
+    }
+  }
+}
+
+/** \brief make a Runner with the configuration sections from the app settings, or with
+ *         the built-in ones if NFD rejects them
+ *
+ *  The settings are checked before they are saved, but a section NFD does not accept,
+ *  e.g. naming a strategy this build lacks, would otherwise keep NFD from starting.
+ *  Must be called on NFD's thread, before the Runner starts.
+ *  \sa Runner::Runner for the parameters
+ */
+static Runner*
+makeRunner(const std::string& configFile,
+           const std::string& csSnapshotFile,
+           const std::map<std::string, std::string>& logLevels,
+           const std::map<std::string, std::string>& sections)
+{
+  if (!sections.empty()) {
+    try {
+      return new Runner(configFile, csSnapshotFile, logLevels, sections);
+    }
+    catch (const std::exception& e) {
+      NFD_LOG_ERROR("Cannot start NFD with the configuration from the app settings, "
+                    "using the built-in one: " << e.what());
+      // the failed attempt may have left timers and handlers behind
+      scheduler::resetGlobalScheduler();
+      resetGlobalIoService();
+    }
+  }
+  return new Runner(configFile, csSnapshotFile, logLevels, {});
+}
+
+/** \return file that the configuration of NFD is written to
+ */
+static std::string
+getConfigFile()
+{
+  return g_params["homePath"] + "/nfd.conf";
+}
+
 } // namespace nfd
 
 
@@ -249,21 +668,35 @@ getParams(JNIEnv* env, jobject jParams)
 JNIEXPORT void JNICALL
 Java_net_named_1data_nfd_service_NfdService_startNfd(JNIEnv* env, jclass, jobject jParams)
 {
-  if (nfd::g_runner.get() == nullptr) {
+  if (!nfd::isRunnerSet()) {
     nfd::g_params = getParams(env, jParams);
 
     // set/update HOME environment variable
     ::setenv("HOME", nfd::g_params["homePath"].c_str(), true);
     NFD_LOG_INFO("Use [" << nfd::g_params["homePath"] << "] as a security storage");
 
-    nfd::g_thread = boost::thread([] {
+    if (!nfd::g_params["logPath"].empty() &&
+        !nfd::LogSink::getInstance().open(nfd::g_params["logPath"])) {
+      NFD_LOG_WARN("Cannot open log sink [" << nfd::g_params["logPath"] << "]");
+    }
+
+    std::string configFile = nfd::getConfigFile();
+    std::string csSnapshotFile = nfd::g_params["csSnapshotPath"];
+    auto logLevels = nfd::getPrefixedParams(nfd::LOG_LEVEL_PARAM_PREFIX);
+    auto sections = nfd::getPrefixedParams(nfd::CONFIG_SECTION_PARAM_PREFIX);
+
+    nfd::g_thread = boost::thread([configFile, csSnapshotFile, logLevels, sections] {
         nfd::scheduler::resetGlobalScheduler();
         nfd::resetGlobalIoService();
 
         NFD_LOG_INFO("Starting NFD...");
         try {
-          nfd::g_runner.reset(new nfd::Runner());
-          nfd::g_runner->start();
+          nfd::Runner* runner = nfd::makeRunner(configFile, csSnapshotFile, logLevels, sections);
+          {
+            std::lock_guard<std::mutex> lock(nfd::g_runnerMutex);
+            nfd::g_runner.reset(runner);
+          }
+          runner->start();
         }
         catch (const std::exception& e) {
           NFD_LOG_FATAL(e.what());
@@ -275,7 +708,12 @@ Java_net_named_1data_nfd_service_NfdService_startNfd(JNIEnv* env, jclass, jobjec
           NFD_LOG_FATAL("Unknown fatal error");
         }
 
-        nfd::g_runner.reset();
+        std::unique_ptr<nfd::Runner> runner;
+        {
+          std::lock_guard<std::mutex> lock(nfd::g_runnerMutex);
+          runner = std::move(nfd::g_runner);
+        }
+        runner.reset(); // outside the lock, so that JNI calls are not held up meanwhile
         nfd::scheduler::resetGlobalScheduler();
         nfd::resetGlobalIoService();
         NFD_LOG_INFO("NFD stopped");
@@ -286,17 +724,94 @@ Java_net_named_1data_nfd_service_NfdService_startNfd(JNIEnv* env, jclass, jobjec
 JNIEXPORT void JNICALL
 Java_net_named_1data_nfd_service_NfdService_stopNfd(JNIEnv*, jclass)
 {
-  if (nfd::g_runner.get() != nullptr) {
+  std::lock_guard<std::mutex> lock(nfd::g_runnerMutex);
+  if (nfd::g_runner != nullptr) {
     NFD_LOG_INFO("Stopping NFD...");
     nfd::g_runner->stop();
     // do not block anything
   }
 }
 
+JNIEXPORT void JNICALL
+Java_net_named_1data_nfd_service_NfdService_reloadNfdConfig(JNIEnv* env, jclass, jobject jParams)
+{
+  std::map<std::string, std::string> params = getParams(env, jParams);
+
+  // a later start uses the new parameters as well
+  nfd::replacePrefixedParams(nfd::LOG_LEVEL_PARAM_PREFIX, params);
+  nfd::replacePrefixedParams(nfd::CONFIG_SECTION_PARAM_PREFIX, params);
+  auto logLevels = nfd::getPrefixedParams(nfd::LOG_LEVEL_PARAM_PREFIX);
+  auto sections = nfd::getPrefixedParams(nfd::CONFIG_SECTION_PARAM_PREFIX);
+
+  if (!nfd::postToRunner([logLevels, sections] {
+        nfd::g_runner->reload(logLevels, sections);
+      })) {
+    NFD_LOG_DEBUG("NFD is not running, configuration will apply on start");
+  }
+}
+
+JNIEXPORT void JNICALL
+Java_net_named_1data_nfd_service_NfdService_saveNfdCsSnapshot(JNIEnv*, jclass)
+{
+  if (!nfd::postToRunner([] { nfd::g_runner->saveCsSnapshot(); })) {
+    NFD_LOG_DEBUG("NFD is not running, no Content Store snapshot to save");
+  }
+}
+
+JNIEXPORT jint JNICALL
+Java_net_named_1data_nfd_service_NfdService_getNfdCounters(JNIEnv* env, jclass, jlongArray jCounters)
+{
+  jsize length = env->GetArrayLength(jCounters);
+  if (length < nfd::COUNTER_HEADER_SIZE) {
+    return -1;
+  }
+  size_t maxFaces = (length - nfd::COUNTER_HEADER_SIZE) / nfd::FACE_COUNTER_RECORD_SIZE;
+
+  // NFD's tables are only safe to walk on its own thread.  The request outlives this
+  // call if NFD does not get to it in time.
+  struct Request
+  {
+    std::mutex mutex;
+    std::condition_variable cv;
+    bool isDone = false;
+    std::vector<uint64_t> counters;
+  };
+  auto request = std::make_shared<Request>();
+
+  if (!nfd::postToRunner([request, maxFaces] {
+        std::vector<uint64_t> counters;
+        nfd::g_runner->readCounters(counters, maxFaces);
+
+        std::lock_guard<std::mutex> lock(request->mutex);
+        request->counters.swap(counters);
+        request->isDone = true;
+        request->cv.notify_one();
+      })) {
+    return -1;
+  }
+
+  std::unique_lock<std::mutex> lock(request->mutex);
+  if (!request->cv.wait_for(lock, nfd::COUNTERS_TIMEOUT, [&request] { return request->isDone; }) ||
+      request->counters.empty()) {
+    return -1;
+  }
+
+  static_assert(sizeof(jlong) == sizeof(uint64_t), "counters are copied as they are");
+  env->SetLongArrayRegion(jCounters, 0, request->counters.size(),
+                          reinterpret_cast<const jlong*>(request->counters.data()));
+  return static_cast<jint>(request->counters[nfd::COUNTER_N_FACES]);
+}
+
+JNIEXPORT jstring JNICALL
+Java_net_named_1data_nfd_service_NfdService_getNfdVersion(JNIEnv* env, jclass)
+{
+  return env->NewStringUTF(NFD_VERSION_BUILD_STRING);
+}
+
 JNIEXPORT jboolean JNICALL
 Java_net_named_1data_nfd_service_NfdService_isNfdRunning(JNIEnv*, jclass)
 {
-    return nfd::g_runner.get() != nullptr;
+    return nfd::isRunnerSet();
 }
 
 JNIEXPORT jobject JNICALL
@@ -315,3 +830,36 @@ Java_net_named_1data_nfd_service_NfdService_getNfdLogModules(JNIEnv* env, jclass
 
   return jModules;
 }
+
+JNIEXPORT void JNICALL
+Java_net_named_1data_nfd_service_NfdService_setNfdLogLevels(JNIEnv* env, jclass, jobject jLevels)
+{
+  std::map<std::string, std::string> levels = getParams(env, jLevels);
+
+  if (!nfd::postToRunner([levels] { nfd::applyLogLevels(levels); })) {
+    NFD_LOG_DEBUG("NFD is not running, log levels will apply on start");
+  }
+}
+
+JNIEXPORT void JNICALL
+Java_net_named_1data_nfd_service_NfdService_setNfdLogLevel(JNIEnv* env, jclass,
+                                                            jstring jModule, jstring jLevel)
+{
+  const char* cModule = env->GetStringUTFChars(jModule, nullptr);
+  const char* cLevel = env->GetStringUTFChars(jLevel, nullptr);
+  std::string module(cModule);
+  std::string level(cLevel);
+  env->ReleaseStringUTFChars(jModule, cModule);
+  env->ReleaseStringUTFChars(jLevel, cLevel);
+
+  if (!nfd::postToRunner([module, level] {
+        try {
+          nfd::LoggerFactory::getInstance().setModuleLevel(module, level);
+        }
+        catch (const nfd::LoggerFactory::Error& e) {
+          NFD_LOG_ERROR("Cannot set log level of " << module << ": " << e.what());
+        }
+      })) {
+    NFD_LOG_DEBUG("NFD is not running, cannot set log level of " << module);
+  }
+}
@@ -43,6 +43,38 @@ Java_net_named_1data_nfd_service_NfdService_startNfd(JNIEnv*, jclass, jobject);
 JNIEXPORT void JNICALL
 Java_net_named_1data_nfd_service_NfdService_stopNfd(JNIEnv*, jclass);
 
+/*
+ * Class:     net_named_data_nfd_service_NfdService
+ * Method:    reloadNfdConfig
+ * Signature: (Ljava/util/Map;)V
+ */
+JNIEXPORT void JNICALL
+Java_net_named_1data_nfd_service_NfdService_reloadNfdConfig(JNIEnv*, jclass, jobject);
+
+/*
+ * Class:     net_named_data_nfd_service_NfdService
+ * Method:    saveNfdCsSnapshot
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL
+Java_net_named_1data_nfd_service_NfdService_saveNfdCsSnapshot(JNIEnv*, jclass);
+
+/*
+ * Class:     net_named_data_nfd_service_NfdService
+ * Method:    getNfdCounters
+ * Signature: ([J)I
+ */
+JNIEXPORT jint JNICALL
+Java_net_named_1data_nfd_service_NfdService_getNfdCounters(JNIEnv*, jclass, jlongArray);
+
+/*
+ * Class:     net_named_data_nfd_service_NfdService
+ * Method:    getNfdVersion
+ * Signature: ()Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL
+Java_net_named_1data_nfd_service_NfdService_getNfdVersion(JNIEnv*, jclass);
+
 /*
  * Class:     net_named_data_nfd_service_NfdService
  * Method:    isNfdRunning
@@ -59,6 +91,22 @@ Java_net_named_1data_nfd_service_NfdService_isNfdRunning(JNIEnv*, jclass);
 JNIEXPORT jobject JNICALL
 Java_net_named_1data_nfd_service_NfdService_getNfdLogModules(JNIEnv*, jclass);
 
+/*
+ * Class:     net_named_data_nfd_service_NfdService
+ * Method:    setNfdLogLevels
+ * Signature: (Ljava/util/Map;)V
+ */
+JNIEXPORT void JNICALL
+Java_net_named_1data_nfd_service_NfdService_setNfdLogLevels(JNIEnv*, jclass, jobject);
+
+/*
+ * Class:     net_named_data_nfd_service_NfdService
+ * Method:    setNfdLogLevel
+ * Signature: (Ljava/lang/String;Ljava/lang/String;)V
+ */
+JNIEXPORT void JNICALL
+Java_net_named_1data_nfd_service_NfdService_setNfdLogLevel(JNIEnv*, jclass, jstring, jstring);
+
 #ifdef __cplusplus
 }
 #endif
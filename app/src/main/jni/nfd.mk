@@ -19,6 +19,8 @@ NFD_DAEMON_SRC_FILES := \
     core/scheduler.cpp \
     ../nfd-android/custom-logger.cpp \
     ../nfd-android/custom-logger-factory.cpp \
+    ../nfd-android/log-sink.cpp \
+    ../nfd-android/cs-snapshot.cpp \
     \
     daemon/face/channel.cpp \
     daemon/face/face-counters.cpp \
@@ -0,0 +1,159 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.Face;
+import net.named_data.jndn.ForwardingFlags;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.OnRegisterFailed;
+import net.named_data.jndn.OnRegisterSuccess;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.identity.IdentityManager;
+import net.named_data.jndn.security.identity.MemoryIdentityStorage;
+import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from an Interest arriving on the FaceEventLoop's connection to its
+ * OnInterest callback on the dispatcher thread.  Interests are sent by a FakeNfd, one at
+ * a time and IDLE_GAP_MS apart, so that the dispatcher is idle when each one arrives.
+ */
+public class FaceEventLoopBenchmark extends TestCase
+{
+  @Override
+  protected void
+  setUp() throws Exception
+  {
+    m_fakeNfd = new FakeNfd();
+    m_fakeNfd.start();
+    m_eventLoop = new FaceEventLoop(m_fakeNfd.getConnectionInfo(), "FaceEventLoopBenchmark");
+    m_eventLoop.start();
+  }
+
+  @Override
+  protected void
+  tearDown() throws Exception
+  {
+    m_eventLoop.stop();
+    m_fakeNfd.stop();
+  }
+
+  public void
+  testInterestToCallbackLatency() throws Exception
+  {
+    final BlockingQueue<Long> callbackTimes = new LinkedBlockingQueue<>();
+    final BlockingQueue<Boolean> registered = new LinkedBlockingQueue<>();
+    final KeyChain keyChain = createKeyChain();
+
+    m_eventLoop.post(new Runnable() {
+      @Override
+      public void run()
+      {
+        try {
+          m_eventLoop.setCommandSigningInfo(keyChain, keyChain.getDefaultCertificateName());
+          m_eventLoop.registerPrefix(PREFIX,
+            new OnInterestCallback() {
+              @Override
+              public void onInterest(Name prefix, Interest interest, Face face,
+                                     long interestFilterId, InterestFilter filter)
+              {
+                callbackTimes.offer(System.nanoTime());
+              }
+            },
+            new OnRegisterFailed() {
+              @Override
+              public void onRegisterFailed(Name prefix)
+              {
+                registered.offer(false);
+              }
+            },
+            new OnRegisterSuccess() {
+              @Override
+              public void onRegisterSuccess(Name prefix, long registeredPrefixId)
+              {
+                registered.offer(true);
+              }
+            },
+            new ForwardingFlags());
+        }
+        catch (Exception e) {
+          G.Log(TAG, "Unable to register " + PREFIX + ": " + e);
+          registered.offer(false);
+        }
+      }
+    });
+    assertEquals(Boolean.TRUE, registered.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    long[] latenciesUs = new long[N_INTERESTS];
+    for (int i = 0; i < N_INTERESTS; i++) {
+      Thread.sleep(IDLE_GAP_MS);
+
+      long sendTime = System.nanoTime();
+      m_fakeNfd.send(new Interest(new Name(PREFIX).appendSequenceNumber(i)).wireEncode());
+      Long callbackTime = callbackTimes.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      assertNotNull("no callback for Interest " + i, callbackTime);
+      latenciesUs[i] = (callbackTime - sendTime) / 1000;
+    }
+
+    Arrays.sort(latenciesUs);
+    G.Log(TAG, "Interest-to-callback latency over " + N_INTERESTS + " Interests: " +
+          "median " + latenciesUs[N_INTERESTS / 2] + " us, " +
+          "p90 " + latenciesUs[N_INTERESTS * 9 / 10] + " us, " +
+          "max " + latenciesUs[N_INTERESTS - 1] + " us");
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static KeyChain
+  createKeyChain() throws Exception
+  {
+    KeyChain keyChain = new KeyChain(new IdentityManager(new MemoryIdentityStorage(),
+                                                         new MemoryPrivateKeyStorage()));
+    Name identity = new Name("/test/identity");
+    keyChain.createIdentity(identity);
+    keyChain.getIdentityManager().setDefaultIdentity(identity);
+    return keyChain;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = FaceEventLoopBenchmark.class.getName();
+
+  private static final Name PREFIX = new Name("/bench/latency");
+  private static final int N_INTERESTS = 200;
+
+  /** Pause before each Interest, long enough for the dispatcher to go idle */
+  private static final long IDLE_GAP_MS = 20;
+
+  private static final long TIMEOUT_MS = 5000;
+
+  private FakeNfd m_fakeNfd;
+  private FaceEventLoop m_eventLoop;
+}
@@ -0,0 +1,271 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.ForwardingFlags;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.OnRegisterFailed;
+import net.named_data.jndn.OnRegisterSuccess;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.identity.IdentityManager;
+import net.named_data.jndn.security.identity.MemoryIdentityStorage;
+import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restarts a FakeNfd underneath a FaceEventLoop, and checks that the loop replaces its
+ * Face, registers its prefixes again and lets the Interests outstanding on the old Face
+ * time out.
+ */
+public class FaceEventLoopTest extends TestCase
+{
+  @Override
+  protected void
+  setUp() throws Exception
+  {
+    m_fakeNfd = new FakeNfd();
+    m_port = m_fakeNfd.getConnectionInfo().getPort();
+    m_fakeNfd.start();
+
+    m_eventLoop = new FaceEventLoop(m_fakeNfd.getConnectionInfo(), "FaceEventLoopTest");
+    m_eventLoop.addOnReconnected(new FaceEventLoop.OnReconnected() {
+      @Override
+      public void
+      onReconnected()
+      {
+        m_reconnections.offer(true);
+      }
+    });
+    m_eventLoop.start();
+
+    final KeyChain keyChain = createKeyChain();
+    final Name certificateName = keyChain.getDefaultCertificateName();
+    m_eventLoop.post(new Runnable() {
+      @Override
+      public void run()
+      {
+        m_eventLoop.setCommandSigningInfo(keyChain, certificateName);
+      }
+    });
+  }
+
+  @Override
+  protected void
+  tearDown() throws Exception
+  {
+    m_eventLoop.stop();
+    m_fakeNfd.stop();
+  }
+
+  public void
+  testRegistersPrefixAgainAfterNfdRestart() throws Exception
+  {
+    final BlockingQueue<Boolean> registered = new LinkedBlockingQueue<>();
+    m_eventLoop.post(new Runnable() {
+      @Override
+      public void run()
+      {
+        try {
+          m_eventLoop.registerPrefix(PREFIX,
+            new OnInterestCallback() {
+              @Override
+              public void onInterest(Name prefix, Interest interest, Face face,
+                                     long interestFilterId, InterestFilter filter)
+              {
+              }
+            },
+            new OnRegisterFailed() {
+              @Override
+              public void onRegisterFailed(Name prefix)
+              {
+                registered.offer(false);
+              }
+            },
+            new OnRegisterSuccess() {
+              @Override
+              public void onRegisterSuccess(Name prefix, long registeredPrefixId)
+              {
+                registered.offer(true);
+              }
+            },
+            new ForwardingFlags());
+        }
+        catch (Exception e) {
+          G.Log(TAG, "Unable to register " + PREFIX + ": " + e);
+          registered.offer(false);
+        }
+      }
+    });
+    assertEquals(Boolean.TRUE, registered.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    restartNfd();
+
+    assertEquals(Boolean.TRUE, m_reconnections.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertEquals(Boolean.TRUE, registered.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertTrue(isAnswered());
+  }
+
+  public void
+  testOutstandingInterestTimesOutOnRestart() throws Exception
+  {
+    assertTrue(isAnswered());
+
+    // FakeNfd only answers management commands
+    final BlockingQueue<Boolean> expressed = new LinkedBlockingQueue<>();
+    final BlockingQueue<Long> timeoutTimes = new LinkedBlockingQueue<>();
+    final Interest interest = new Interest(new Name("/test/unanswered"));
+    interest.setInterestLifetimeMilliseconds(UNANSWERED_LIFETIME_MS);
+    m_eventLoop.post(new Runnable() {
+      @Override
+      public void run()
+      {
+        try {
+          m_eventLoop.expressInterest(interest, null, new OnTimeout() {
+            @Override
+            public void onTimeout(Interest interest)
+            {
+              timeoutTimes.offer(System.nanoTime());
+            }
+          });
+          expressed.offer(true);
+        }
+        catch (Exception e) {
+          G.Log(TAG, "Unable to express " + interest.getName() + ": " + e);
+          expressed.offer(false);
+        }
+      }
+    });
+    assertEquals(Boolean.TRUE, expressed.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+    long restartTime = System.nanoTime();
+    restartNfd();
+
+    Long timeoutTime = timeoutTimes.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    assertNotNull("the outstanding Interest did not time out", timeoutTime);
+    assertTrue(timeoutTime - restartTime < TimeUnit.MILLISECONDS.toNanos(UNANSWERED_LIFETIME_MS));
+    assertTrue(isAnswered());
+  }
+
+  public void
+  testConnectsOnceNfdIsUp() throws Exception
+  {
+    // NFD is not running when the Face is first used
+    m_fakeNfd.stop();
+    assertFalse(isAnswered());
+
+    m_fakeNfd = new FakeNfd(m_port);
+    m_fakeNfd.start();
+
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    boolean isAnswered = false;
+    while (!isAnswered && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+      isAnswered = isAnswered();
+    }
+    assertTrue("no answer once NFD is up", isAnswered);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private void
+  restartNfd() throws Exception
+  {
+    m_fakeNfd.stop();
+    m_fakeNfd = new FakeNfd(m_port);
+    m_fakeNfd.start();
+  }
+
+  /**
+   * @return whether a management command expressed on the loop is answered
+   */
+  private boolean
+  isAnswered() throws Exception
+  {
+    final BlockingQueue<Boolean> answered = new LinkedBlockingQueue<>();
+    m_eventLoop.post(new Runnable() {
+      @Override
+      public void run()
+      {
+        Interest interest = new Interest(new Name("/localhost/nfd/status"));
+        interest.setInterestLifetimeMilliseconds(1000);
+        try {
+          m_eventLoop.expressInterest(interest,
+            new OnData() {
+              @Override
+              public void onData(Interest interest, Data data)
+              {
+                answered.offer(true);
+              }
+            },
+            new OnTimeout() {
+              @Override
+              public void onTimeout(Interest interest)
+              {
+                answered.offer(false);
+              }
+            });
+        }
+        catch (Exception e) {
+          answered.offer(false);
+        }
+      }
+    });
+    return Boolean.TRUE.equals(answered.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+  }
+
+  private static KeyChain
+  createKeyChain() throws Exception
+  {
+    KeyChain keyChain = new KeyChain(new IdentityManager(new MemoryIdentityStorage(),
+                                                         new MemoryPrivateKeyStorage()));
+    Name identity = new Name("/test/identity");
+    keyChain.createIdentity(identity);
+    keyChain.getIdentityManager().setDefaultIdentity(identity);
+    return keyChain;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = FaceEventLoopTest.class.getName();
+
+  private static final Name PREFIX = new Name("/test/prefix");
+
+  /** Lifetime of an Interest FakeNfd does not answer, well above the reconnection delay */
+  private static final long UNANSWERED_LIFETIME_MS = 4000;
+
+  private static final long TIMEOUT_MS = 5000;
+
+  private FakeNfd m_fakeNfd;
+  private int m_port;
+  private FaceEventLoop m_eventLoop;
+  private final BlockingQueue<Boolean> m_reconnections = new LinkedBlockingQueue<>();
+}
@@ -0,0 +1,225 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import net.named_data.jndn.ControlResponse;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal stand-in for NFD in benchmarks: accepts TCP connections on a loopback port,
+ * answers every management command (Interest under /localhost/nfd) with a ControlResponse
+ * (200 unless set otherwise), and lets the benchmark send packets to the connected clients.
+ */
+public class FakeNfd
+{
+  public FakeNfd() throws IOException
+  {
+    this(0);
+  }
+
+  /**
+   * @param port loopback port to listen on, e.g. the port of a stopped FakeNfd to
+   *             simulate an NFD restart; 0 for any free port
+   */
+  public FakeNfd(int port) throws IOException
+  {
+    m_serverSocket = new ServerSocket();
+    m_serverSocket.setReuseAddress(true);
+    m_serverSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 50);
+  }
+
+  /**
+   * @return connection info for a Face to this forwarder
+   */
+  public TcpTransport.ConnectionInfo
+  getConnectionInfo()
+  {
+    return new TcpTransport.ConnectionInfo("127.0.0.1", m_serverSocket.getLocalPort());
+  }
+
+  /**
+   * Set the status code of the responses to subsequent management commands
+   */
+  public void
+  setStatusCode(int statusCode)
+  {
+    m_statusCode = statusCode;
+  }
+
+  public void
+  start()
+  {
+    m_acceptor = new Thread(new Runnable() {
+      @Override
+      public void run()
+      {
+        while (m_isRunning) {
+          try {
+            final Socket socket = m_serverSocket.accept();
+            synchronized (m_clients) {
+              m_clients.add(socket);
+            }
+            Thread connection = new Thread(new Runnable() {
+              @Override
+              public void run()
+              {
+                serve(socket);
+              }
+            }, "FakeNfdConnection");
+            connection.setDaemon(true);
+            connection.start();
+          }
+          catch (IOException e) {
+            // closed by stop()
+          }
+        }
+      }
+    }, "FakeNfd");
+    m_acceptor.setDaemon(true);
+    m_acceptor.start();
+  }
+
+  public void
+  stop() throws IOException
+  {
+    m_isRunning = false;
+    m_serverSocket.close();
+    if (m_acceptor != null) {
+      // the port is only released once the blocked accept() returns
+      try {
+        m_acceptor.join();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (m_clients) {
+      for (Socket socket : m_clients) {
+        socket.close();
+      }
+      m_clients.clear();
+    }
+  }
+
+  /**
+   * Send an encoded packet to every connected client
+   */
+  public void
+  send(Blob wire) throws IOException
+  {
+    synchronized (m_clients) {
+      for (Socket socket : m_clients) {
+        write(socket, wire);
+      }
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private void
+  serve(final Socket socket)
+  {
+    try {
+      InputStream in = socket.getInputStream();
+      ElementReader reader = new ElementReader(new ElementListener() {
+        @Override
+        public void onReceivedElement(ByteBuffer element)
+        {
+          try {
+            Interest interest = new Interest();
+            interest.wireDecode(element);
+            if (!LOCALHOST_NFD.match(interest.getName())) {
+              return;
+            }
+
+            Data data = new Data(interest.getName());
+            data.setContent(new ControlResponse().setStatusCode(m_statusCode)
+                              .setStatusText(m_statusCode == 200 ? "OK" : "Error")
+                              .wireEncode());
+            write(socket, data.wireEncode());
+          }
+          catch (Exception e) {
+            // not an Interest, or the connection is gone
+          }
+        }
+      });
+
+      byte[] buffer = new byte[8192];
+      int length;
+      while ((length = in.read(buffer)) > 0) {
+        reader.onReceivedData(ByteBuffer.wrap(buffer, 0, length));
+      }
+    }
+    catch (Exception e) {
+      // connection closed by the client or by stop()
+    }
+    finally {
+      synchronized (m_clients) {
+        m_clients.remove(socket);
+      }
+      try {
+        socket.close();
+      }
+      catch (IOException e) {
+        // already closed
+      }
+    }
+  }
+
+  private static void
+  write(Socket socket, Blob wire) throws IOException
+  {
+    ByteBuffer buffer = wire.buf();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    OutputStream out = socket.getOutputStream();
+    synchronized (socket) {
+      out.write(bytes);
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final Name LOCALHOST_NFD = new Name("/localhost/nfd");
+
+  private final ServerSocket m_serverSocket;
+  private final List<Socket> m_clients = new ArrayList<>();
+  private Thread m_acceptor = null;
+  private volatile boolean m_isRunning = true;
+  private volatile int m_statusCode = 200;
+}
@@ -0,0 +1,263 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class ListDiffTest extends TestCase
+{
+  public void
+  testNoOldList()
+  {
+    ListDiff<String, Item> diff = ListDiff.compute(null, items("a:1", "b:1"), CALLBACK);
+
+    assertEquals(Arrays.asList(0, 1), diff.getInserted());
+    assertTrue(diff.getRemoved().isEmpty());
+    assertTrue(diff.getChanged().isEmpty());
+    assertTrue(diff.isStructural());
+    assertTrue(diff.getOldList().isEmpty());
+  }
+
+  public void
+  testSameLists()
+  {
+    ListDiff<String, Item> diff = ListDiff.compute(items("a:1", "b:2", "c:3"),
+                                                   items("a:1", "b:2", "c:3"), CALLBACK);
+
+    assertTrue(diff.isEmpty());
+    assertFalse(diff.isStructural());
+  }
+
+  public void
+  testChangedContent()
+  {
+    ListDiff<String, Item> diff = ListDiff.compute(items("a:1", "b:2", "c:3"),
+                                                   items("a:1", "b:5", "c:6"), CALLBACK);
+
+    assertEquals(Arrays.asList(1, 2), diff.getChanged());
+    assertFalse(diff.isStructural());
+    assertFalse(diff.isEmpty());
+  }
+
+  public void
+  testInsertedAndRemoved()
+  {
+    ListDiff<String, Item> diff = ListDiff.compute(items("a:1", "b:2", "c:3", "d:4"),
+                                                   items("x:0", "a:1", "c:9", "y:0"), CALLBACK);
+
+    // positions in the new list
+    assertEquals(Arrays.asList(0, 3), diff.getInserted());
+    assertEquals(Collections.singletonList(2), diff.getChanged());
+    // positions in the old list
+    assertEquals(Arrays.asList(1, 3), diff.getRemoved());
+    assertTrue(diff.isStructural());
+  }
+
+  public void
+  testRemovalIsNotReordering()
+  {
+    ListDiff<String, Item> diff = ListDiff.compute(items("a:1", "b:2", "c:3"),
+                                                   items("a:1", "c:3"), CALLBACK);
+
+    assertEquals(Collections.singletonList(1), diff.getRemoved());
+    assertEquals("0 inserted, 1 removed, 0 changed", diff.toString());
+  }
+
+  public void
+  testReordered()
+  {
+    ListDiff<String, Item> diff = ListDiff.compute(items("a:1", "b:2", "c:3"),
+                                                   items("c:3", "a:1", "b:2"), CALLBACK);
+
+    assertTrue(diff.getInserted().isEmpty());
+    assertTrue(diff.getRemoved().isEmpty());
+    assertTrue(diff.getChanged().isEmpty());
+    // unchanged rows moved, so the view has to be rebuilt
+    assertTrue(diff.isStructural());
+    assertFalse(diff.isEmpty());
+  }
+
+  /**
+   * Replaying a diff on the old list gives the new list, for random changes
+   */
+  public void
+  testRandomChanges()
+  {
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      List<Item> oldList = randomList(random);
+      List<Item> newList = randomList(random);
+      ListDiff<String, Item> diff = ListDiff.compute(oldList, newList, CALLBACK);
+
+      Map<String, Item> rows = new HashMap<>();
+      for (Item item : oldList) {
+        rows.put(item.key, item);
+      }
+      for (int position : diff.getRemoved()) {
+        assertNotNull(rows.remove(oldList.get(position).key));
+      }
+      for (int position : diff.getInserted()) {
+        assertNull(rows.put(newList.get(position).key, newList.get(position)));
+      }
+      for (int position : diff.getChanged()) {
+        Item newItem = newList.get(position);
+        assertFalse(rows.get(newItem.key).content.equals(newItem.content));
+        rows.put(newItem.key, newItem);
+      }
+
+      assertEquals(newList.size(), rows.size());
+      for (Item newItem : newList) {
+        assertEquals("round " + round, newItem.content, rows.get(newItem.key).content);
+      }
+
+      // the rows kept are reordered if they are not in the same order in both lists
+      List<String> keptInOldOrder = keysInBoth(oldList, newList);
+      List<String> keptInNewOrder = keysInBoth(newList, oldList);
+      boolean isReordered = !keptInOldOrder.equals(keptInNewOrder);
+      assertEquals("round " + round,
+                   !diff.getInserted().isEmpty() || !diff.getRemoved().isEmpty() || isReordered,
+                   diff.isStructural());
+    }
+  }
+
+  public void
+  testLargeList()
+  {
+    List<Item> oldList = new ArrayList<>();
+    List<Item> newList = new ArrayList<>();
+    for (int i = 0; i < LARGE_LIST_SIZE; i++) {
+      oldList.add(new Item("/prefix/" + i, "1"));
+      // every tenth item changes, and the last tenth is replaced
+      if (i < LARGE_LIST_SIZE * 9 / 10) {
+        newList.add(new Item("/prefix/" + i, i % 10 == 0 ? "2" : "1"));
+      }
+      else {
+        newList.add(new Item("/other/" + i, "1"));
+      }
+    }
+
+    long start = System.nanoTime();
+    ListDiff<String, Item> diff = ListDiff.compute(oldList, newList, CALLBACK);
+    long elapsedMs = (System.nanoTime() - start) / 1000000;
+    G.Log(TAG, LARGE_LIST_SIZE + " items: " + diff + " in " + elapsedMs + " ms");
+
+    assertEquals(LARGE_LIST_SIZE / 10, diff.getInserted().size());
+    assertEquals(LARGE_LIST_SIZE / 10, diff.getRemoved().size());
+    assertEquals(LARGE_LIST_SIZE * 9 / 100, diff.getChanged().size());
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static class Item
+  {
+    Item(String key, String content)
+    {
+      this.key = key;
+      this.content = content;
+    }
+
+    final String key;
+    final String content;
+  }
+
+  /**
+   * @param keysAndContents items as "key:content"
+   */
+  private static List<Item>
+  items(String... keysAndContents)
+  {
+    List<Item> items = new ArrayList<>();
+    for (String keyAndContent : keysAndContents) {
+      String[] parts = keyAndContent.split(":");
+      items.add(new Item(parts[0], parts[1]));
+    }
+    return items;
+  }
+
+  /**
+   * @return keys of list that are in otherList too, in the order of list
+   */
+  private static List<String>
+  keysInBoth(List<Item> list, List<Item> otherList)
+  {
+    Set<String> otherKeys = new HashSet<>();
+    for (Item item : otherList) {
+      otherKeys.add(item.key);
+    }
+    List<String> keys = new ArrayList<>();
+    for (Item item : list) {
+      if (otherKeys.contains(item.key)) {
+        keys.add(item.key);
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * @return up to 20 items with distinct keys out of 30, in random order
+   */
+  private static List<Item>
+  randomList(Random random)
+  {
+    List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      keys.add("k" + i);
+    }
+    Collections.shuffle(keys, random);
+
+    List<Item> items = new ArrayList<>();
+    for (String key : keys.subList(0, random.nextInt(21))) {
+      items.add(new Item(key, String.valueOf(random.nextInt(3))));
+    }
+    return items;
+  }
+
+  private static final ListDiff.ItemCallback<String, Item> CALLBACK =
+    new ListDiff.ItemCallback<String, Item>() {
+      @Override
+      public String
+      getKey(Item item)
+      {
+        return item.key;
+      }
+
+      @Override
+      public boolean
+      isSameContent(Item oldItem, Item newItem)
+      {
+        return oldItem.content.equals(newItem.content);
+      }
+    };
+
+  private static final String TAG = ListDiffTest.class.getName();
+
+  private static final int LARGE_LIST_SIZE = 100000;
+}
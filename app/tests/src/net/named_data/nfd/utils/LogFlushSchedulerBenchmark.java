@@ -0,0 +1,237 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares delivering captured log lines to a handler's thread one message per line, as
+ * LogcatFragment used to, with the batches of LogFlushScheduler.  Lines are added by a
+ * producer thread, in bursts as NFD logs at level ALL, and the handler stands in for the
+ * UI thread.
+ */
+public class LogFlushSchedulerBenchmark extends TestCase
+{
+  @Override
+  protected void
+  setUp() throws Exception
+  {
+    m_handlerThread = new HandlerThread("LogFlushSchedulerBenchmark");
+    m_handlerThread.start();
+    m_handler = new Handler(m_handlerThread.getLooper());
+  }
+
+  @Override
+  protected void
+  tearDown() throws Exception
+  {
+    m_handlerThread.quit();
+  }
+
+  public void
+  testMessagesPerLine() throws Exception
+  {
+    final AtomicInteger numMessages = new AtomicInteger();
+    final AtomicLong numDelivered = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(1);
+
+    long startTime = System.nanoTime();
+    produce(new LineSink() {
+      @Override
+      public void
+      linesAdded(int numLines)
+      {
+        m_handler.post(new Runnable() {
+          @Override
+          public void
+          run()
+          {
+            numMessages.incrementAndGet();
+            if (numDelivered.incrementAndGet() == NUM_LINES) {
+              done.countDown();
+            }
+          }
+        });
+      }
+    });
+    assertTrue(done.await(TIMEOUT_S, TimeUnit.SECONDS));
+    report("one message per line", numMessages.get(), System.nanoTime() - startTime);
+    assertEquals(NUM_LINES, numMessages.get());
+  }
+
+  public void
+  testBatches() throws Exception
+  {
+    final AtomicLong numAdded = new AtomicLong();
+    final AtomicLong numDelivered = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(1);
+    final LogFlushScheduler scheduler = new LogFlushScheduler(m_handler, new Runnable() {
+      @Override
+      public void
+      run()
+      {
+        numDelivered.set(numAdded.get());
+        if (numDelivered.get() == NUM_LINES) {
+          done.countDown();
+        }
+      }
+    }, FLUSH_INTERVAL_MS, FLUSH_MAX_LINES);
+
+    long startTime = System.nanoTime();
+    produce(new LineSink() {
+      @Override
+      public void
+      linesAdded(int numLines)
+      {
+        numAdded.addAndGet(numLines);
+        scheduler.linesAdded(numLines);
+      }
+    });
+    long producedTime = System.nanoTime();
+    assertTrue(done.await(TIMEOUT_S, TimeUnit.SECONDS));
+    long lagMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - producedTime);
+    report("batches", scheduler.getFlushCount(), System.nanoTime() - startTime);
+    G.Log(TAG, "All lines delivered " + lagMs + "ms after the producer finished");
+
+    // bounded by the count trigger, plus one timed flush per burst at most
+    assertTrue(scheduler.getFlushCount() <= NUM_LINES / FLUSH_MAX_LINES + 2 * NUM_BURSTS);
+    // lines of the last burst wait for the timed flush at most, not for more lines
+    assertTrue("lines delivered " + lagMs + "ms after the producer finished", lagMs <= MAX_FLUSH_LAG_MS);
+  }
+
+  public void
+  testNoFlushAfterCancel() throws Exception
+  {
+    final AtomicInteger numFlushes = new AtomicInteger();
+    final LogFlushScheduler scheduler = new LogFlushScheduler(m_handler, new Runnable() {
+      @Override
+      public void
+      run()
+      {
+        numFlushes.incrementAndGet();
+      }
+    }, FLUSH_INTERVAL_MS, FLUSH_MAX_LINES);
+
+    scheduler.linesAdded(1);
+    runOnHandler(new Runnable() {
+      @Override
+      public void
+      run()
+      {
+        scheduler.cancel();
+      }
+    });
+
+    // the capture thread keeps adding lines until it notices it was stopped
+    scheduler.linesAdded(FLUSH_MAX_LINES);
+    Thread.sleep(3 * FLUSH_INTERVAL_MS);
+    runOnHandler(new Runnable() {
+      @Override
+      public void
+      run()
+      {
+      }
+    });
+    assertEquals(0, numFlushes.get());
+    assertEquals(0, scheduler.getFlushCount());
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private interface LineSink
+  {
+    void
+    linesAdded(int numLines);
+  }
+
+  private void
+  produce(final LineSink sink) throws InterruptedException
+  {
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void
+      run()
+      {
+        for (int burst = 0; burst < NUM_BURSTS; burst++) {
+          for (int i = 0; i < NUM_LINES / NUM_BURSTS; i++) {
+            sink.linesAdded(1);
+          }
+          try {
+            Thread.sleep(BURST_GAP_MS);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, "LogFlushSchedulerBenchmark-producer");
+    producer.start();
+    producer.join();
+  }
+
+  private void
+  runOnHandler(final Runnable runnable) throws InterruptedException
+  {
+    final CountDownLatch done = new CountDownLatch(1);
+    m_handler.post(new Runnable() {
+      @Override
+      public void
+      run()
+      {
+        runnable.run();
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(TIMEOUT_S, TimeUnit.SECONDS));
+  }
+
+  private static void
+  report(String mode, long numMessages, long elapsedNs)
+  {
+    G.Log(TAG, mode + ": " + NUM_LINES + " lines, " + numMessages + " handler messages, " +
+          TimeUnit.NANOSECONDS.toMillis(elapsedNs) + "ms until all delivered");
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = LogFlushSchedulerBenchmark.class.getName();
+
+  private static final int NUM_LINES = 200000;
+  private static final int NUM_BURSTS = 20;
+  private static final long BURST_GAP_MS = 20;
+  private static final long FLUSH_INTERVAL_MS = 50; // as LogcatFragment
+  private static final int FLUSH_MAX_LINES = 190;   // as LogcatFragment
+
+  /** Flush interval, with room for a busy handler thread */
+  private static final long MAX_FLUSH_LAG_MS = 4 * FLUSH_INTERVAL_MS;
+  private static final long TIMEOUT_S = 60;
+
+  private HandlerThread m_handlerThread;
+  private Handler m_handler;
+}
@@ -0,0 +1,198 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Checks LogRingBuffer's view and eviction, and that its heap use stays bounded by the
+ * capacity however many lines go through it.
+ */
+public class LogRingBufferTest extends TestCase
+{
+  public void
+  testViewKeepsMostRecentLines()
+  {
+    LogRingBuffer buffer = new LogRingBuffer(3);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(buffer.offer("line " + i));
+    }
+
+    assertEquals(0, buffer.size());
+    assertEquals(5, buffer.refresh());
+    assertEquals(3, buffer.size());
+    assertEquals("line 2", buffer.get(0));
+    assertEquals("line 4", buffer.get(2));
+
+    buffer.offer("line 5");
+    assertEquals("line 2", buffer.get(0)); // stable until the next refresh
+    assertEquals(1, buffer.refresh());
+    assertEquals("line 3", buffer.get(0));
+    assertEquals("line 5", buffer.get(2));
+  }
+
+  public void
+  testGetOutsideViewThrows()
+  {
+    LogRingBuffer buffer = new LogRingBuffer(2);
+    buffer.offer("line");
+    buffer.refresh();
+    try {
+      buffer.get(1);
+      fail("expected IndexOutOfBoundsException");
+    }
+    catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  public void
+  testOfferDropsWhenConsumerIsBehind()
+  {
+    LogRingBuffer buffer = new LogRingBuffer(4); // storage for 8 lines
+    int numAccepted = 0;
+    for (int i = 0; i < 20; i++) {
+      if (buffer.offer("line " + i)) {
+        numAccepted++;
+      }
+    }
+    assertEquals(8, numAccepted);
+    assertEquals(12, buffer.getDroppedCount());
+
+    buffer.refresh();
+    assertEquals("line 4", buffer.get(0));
+    assertTrue(buffer.offer("line 20")); // the evicted slots are free again
+  }
+
+  public void
+  testClear()
+  {
+    LogRingBuffer buffer = new LogRingBuffer(4);
+    buffer.offer("line 0");
+    buffer.offer("line 1");
+    buffer.clear();
+    assertEquals(0, buffer.size());
+
+    buffer.offer("line 2");
+    buffer.refresh();
+    assertEquals(1, buffer.size());
+    assertEquals("line 2", buffer.get(0));
+  }
+
+  /**
+   * Pushes NUM_LINES distinct lines from a producer thread while the consumer refreshes,
+   * as LogcatFragment does, and checks that the retained heap does not grow with the
+   * number of lines.
+   */
+  public void
+  testHeapIsBoundedByCapacity() throws Exception
+  {
+    final LogRingBuffer buffer = new LogRingBuffer(CAPACITY);
+    final Semaphore sampled = new Semaphore(0);
+    final int linesPerSample = NUM_LINES / NUM_SAMPLES;
+    long[] heapSamples = new long[NUM_SAMPLES];
+    long baseline = usedHeap();
+
+    // the producer pauses after every linesPerSample lines, so that the heap is sampled
+    // without its in-flight allocations
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void
+      run()
+      {
+        for (int i = 0; i < NUM_LINES; i++) {
+          while (!buffer.offer(makeLine(i))) {
+            Thread.yield(); // like the log reader, wait for the consumer rather than lose lines
+          }
+          if ((i + 1) % linesPerSample == 0) {
+            sampled.acquireUninterruptibly();
+          }
+        }
+      }
+    }, "LogRingBufferTest-producer");
+    producer.start();
+
+    int numSamples = 0;
+    long numLinesSeen = 0;
+    while (numSamples < NUM_SAMPLES) {
+      numLinesSeen += buffer.refresh();
+      if (buffer.size() > 0) {
+        assertNotNull(buffer.get(0));
+        assertNotNull(buffer.get(buffer.size() - 1));
+      }
+      if (numLinesSeen == (numSamples + 1) * linesPerSample) {
+        heapSamples[numSamples++] = usedHeap() - baseline;
+        sampled.release();
+      }
+    }
+    producer.join();
+
+    assertEquals(NUM_LINES, numLinesSeen);
+    assertEquals(CAPACITY, buffer.size());
+    assertEquals(makeLine(NUM_LINES - 1), buffer.get(CAPACITY - 1));
+
+    // the ring holds at most twice the capacity, whatever went through it
+    long bound = 2L * CAPACITY * LINE_FOOTPRINT_UPPER_BOUND;
+    StringBuilder report = new StringBuilder("Heap above baseline after");
+    for (int i = 0; i < numSamples; i++) {
+      report.append(" ").append((i + 1) * linesPerSample).append(" lines: ")
+        .append(heapSamples[i] / 1024).append("KB;");
+      assertTrue("heap grew to " + heapSamples[i] + " bytes, bound is " + bound, heapSamples[i] < bound);
+    }
+    G.Log(TAG, report.append(" bound ").append(bound / 1024).append("KB").toString());
+
+    // once the ring is full, more lines going through it do not grow the heap
+    long growth = heapSamples[numSamples - 1] - heapSamples[0];
+    assertTrue("heap grew by " + growth + " bytes between the first and the last sample",
+               growth < CAPACITY * LINE_FOOTPRINT_UPPER_BOUND);
+  }
+
+  private static String
+  makeLine(int i)
+  {
+    return "10-18 12:00:00.000  1234  5678 I nfd.Forwarder: onIncomingInterest face=" + (300 + i % 64) +
+      " interest=/ndn/test/" + i;
+  }
+
+  private static long
+  usedHeap() throws InterruptedException
+  {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = LogRingBufferTest.class.getName();
+
+  private static final int CAPACITY = 10000;
+  private static final int NUM_LINES = 3000000;
+  private static final int NUM_SAMPLES = 3;
+
+  /** Generous size of one retained line of about 100 chars, String and char[] included */
+  private static final long LINE_FOOTPRINT_UPPER_BOUND = 512;
+}
@@ -0,0 +1,156 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.ControlParameters;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+
+/**
+ * Compares management commands on pooled Faces (as NfdcHelper uses them) with commands
+ * on a new, newly signed Face each time, as before the pool.  Both run against FakeNfd,
+ * which answers every command at once, so the difference is the cost of setting up a
+ * Face: connection, transport and command signing info.
+ */
+public class NfdcHelperBenchmark extends TestCase
+{
+  @Override
+  protected void
+  setUp() throws Exception
+  {
+    m_nfd = new FakeNfd();
+    m_nfd.start();
+  }
+
+  @Override
+  protected void
+  tearDown() throws Exception
+  {
+    m_nfd.stop();
+  }
+
+  public void
+  testPooledVersusFreshFaces() throws Exception
+  {
+    // a pool that keeps no idle Face creates a new one for every command
+    NfdcFacePool freshPool = new NfdcFacePool(NfdcHelper.s_keyChain, 0, FACE_IDLE_TIMEOUT_MS,
+                                              m_nfd.getConnectionInfo());
+    NfdcFacePool pool = new NfdcFacePool(NfdcHelper.s_keyChain, 1, FACE_IDLE_TIMEOUT_MS,
+                                         m_nfd.getConnectionInfo());
+
+    long freshNs = 0;
+    long pooledNs = 0;
+    for (int round = 0; round < 2; round++) {
+      // first round warms up both paths
+      freshNs = time(freshPool);
+      pooledNs = time(pool);
+    }
+    pool.clear();
+
+    G.Log(TAG, "rib/register command: fresh Face " + freshNs / N_COMMANDS / 1000 + " us, " +
+          "pooled Face " + pooledNs / N_COMMANDS / 1000 + " us (" + N_COMMANDS + " commands)");
+    assertTrue("pooled " + pooledNs / N_COMMANDS + " ns vs fresh " + freshNs / N_COMMANDS +
+               " ns per command", pooledNs < freshNs);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * @return time to run N_COMMANDS commands, each on a Face acquired from pool
+   */
+  private static long
+  time(NfdcFacePool pool) throws Exception
+  {
+    long start = System.nanoTime();
+    for (int i = 0; i < N_COMMANDS; i++) {
+      NfdcFacePool.ManagementFace face = pool.acquire();
+      try {
+        assertTrue("command " + i + " was not answered", register(face, i));
+      }
+      finally {
+        pool.release(face, true);
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Send a signed rib/register command and wait for the answer
+   *
+   * @return false if the command timed out
+   */
+  private static boolean
+  register(NfdcFacePool.ManagementFace face, int i) throws Exception
+  {
+    ControlParameters parameters = new ControlParameters().setName(new Name("/benchmark/" + i));
+    Interest command = new Interest(new Name(RIB_REGISTER).append(parameters.wireEncode()));
+    command.setInterestLifetimeMilliseconds(COMMAND_TIMEOUT_MS);
+    face.makeCommandInterest(command);
+
+    final int[] result = { PENDING };
+    face.expressInterest(command,
+      new OnData() {
+        @Override
+        public void
+        onData(Interest interest, Data data)
+        {
+          result[0] = ANSWERED;
+        }
+      },
+      new OnTimeout() {
+        @Override
+        public void
+        onTimeout(Interest interest)
+        {
+          result[0] = TIMED_OUT;
+        }
+      });
+
+    face.processEvents();
+    while (result[0] == PENDING) {
+      face.waitForEvents(COMMAND_TIMEOUT_MS);
+      face.processEvents();
+    }
+    return result[0] == ANSWERED;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = NfdcHelperBenchmark.class.getName();
+
+  private static final int N_COMMANDS = 200;
+
+  private static final long FACE_IDLE_TIMEOUT_MS = 60000;
+  private static final long COMMAND_TIMEOUT_MS = 1000;
+
+  private static final Name RIB_REGISTER = new Name("/localhost/nfd/rib/register");
+
+  private static final int PENDING = 0;
+  private static final int ANSWERED = 1;
+  private static final int TIMED_OUT = 2;
+
+  private FakeNfd m_nfd;
+}
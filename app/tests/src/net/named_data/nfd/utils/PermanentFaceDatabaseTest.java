@@ -0,0 +1,248 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests the migration of the permanent records from preferences, and the detection of
+ * changes by another process when writing.
+ *
+ * Runs on a device, against a database and preferences of its own, so that the records
+ * of the app are left alone.
+ */
+public class PermanentFaceDatabaseTest extends AndroidTestCase
+{
+  @Override
+  protected void
+  setUp() throws Exception
+  {
+    super.setUp();
+    m_context = new TestContext(getContext());
+    m_context.deleteDatabase(DATABASE_NAME);
+    getLegacyPreferences().edit().clear().commit();
+  }
+
+  @Override
+  protected void
+  tearDown() throws Exception
+  {
+    m_context.deleteDatabase(DATABASE_NAME);
+    getLegacyPreferences().edit().clear().commit();
+    super.tearDown();
+  }
+
+  public void
+  testMigrateFromPreferences()
+  {
+    storeLegacyRecords();
+
+    PermanentFaceDatabase database = new PermanentFaceDatabase(m_context);
+    try {
+      SQLiteDatabase db = database.getWritableDatabase();
+      assertEquals(Collections.singleton(FACE_URI), PermanentFaceDatabase.queryFaceUris(db));
+      assertTrue(Arrays.equals(new int[] {7, 12}, PermanentFaceDatabase.queryFaceIds(db)));
+
+      Map<String, Set<String>> routes = PermanentFaceDatabase.queryRoutes(db);
+      assertEquals(1, routes.size());
+      assertEquals(Collections.singleton(FACE_URI), routes.get(PREFIX));
+      assertEquals(1, PermanentFaceDatabase.getGeneration(db));
+    }
+    finally {
+      database.close();
+    }
+
+    assertTrue(getLegacyPreferences().getAll().isEmpty());
+  }
+
+  public void
+  testKeepPreferencesIfCreationFails()
+  {
+    storeLegacyRecords();
+
+    PermanentFaceDatabase failingDatabase = new PermanentFaceDatabase(m_context) {
+      @Override
+      public void onCreate(SQLiteDatabase db)
+      {
+        super.onCreate(db);
+        throw new SQLException("disk full");
+      }
+    };
+    try {
+      failingDatabase.getWritableDatabase();
+      fail("creating the database should have failed");
+    }
+    catch (SQLException e) {
+      // expected
+    }
+    finally {
+      failingDatabase.close();
+    }
+    assertFalse(getLegacyPreferences().getAll().isEmpty());
+
+    // the next open migrates the records again
+    PermanentFaceDatabase database = new PermanentFaceDatabase(m_context);
+    try {
+      SQLiteDatabase db = database.getWritableDatabase();
+      assertEquals(Collections.singleton(FACE_URI), PermanentFaceDatabase.queryFaceUris(db));
+    }
+    finally {
+      database.close();
+    }
+    assertTrue(getLegacyPreferences().getAll().isEmpty());
+  }
+
+  public void
+  testDetectChangesByAnotherProcess()
+  {
+    // two helpers on the same file stand for the UI and NfdService processes
+    PermanentFaceDatabase ours = new PermanentFaceDatabase(m_context);
+    PermanentFaceDatabase theirs = new PermanentFaceDatabase(m_context);
+    try {
+      SQLiteDatabase ourDb = ours.getWritableDatabase();
+      SQLiteDatabase theirDb = theirs.getWritableDatabase();
+      long loadedGeneration = PermanentFaceDatabase.getGeneration(ourDb);
+
+      assertTrue(PermanentFaceDatabase.writeChanges(theirDb, insertFaceId(3),
+                                                    loadedGeneration, 100));
+      assertFalse(PermanentFaceDatabase.writeChanges(ourDb, insertFaceId(4),
+                                                     loadedGeneration, 200));
+
+      // both changes are kept, and the next write from our side is clean again
+      assertTrue(Arrays.equals(new int[] {3, 4}, PermanentFaceDatabase.queryFaceIds(ourDb)));
+      assertEquals(200, PermanentFaceDatabase.getGeneration(theirDb));
+      assertTrue(PermanentFaceDatabase.writeChanges(ourDb, insertFaceId(5), 200, 300));
+    }
+    finally {
+      ours.close();
+      theirs.close();
+    }
+  }
+
+  public void
+  testFailedWriteChangesNothing()
+  {
+    PermanentFaceDatabase database = new PermanentFaceDatabase(m_context);
+    try {
+      SQLiteDatabase db = database.getWritableDatabase();
+      PermanentFaceDatabase.Change failingChange = new PermanentFaceDatabase.Change() {
+        @Override
+        public void apply(SQLiteDatabase db)
+        {
+          PermanentFaceDatabase.insertFaceId(db, 8);
+          throw new SQLException("disk full");
+        }
+      };
+
+      try {
+        PermanentFaceDatabase.writeChanges(db, Collections.singleton(failingChange), 0, 100);
+        fail("writing should have failed");
+      }
+      catch (SQLException e) {
+        // expected
+      }
+      assertEquals(0, PermanentFaceDatabase.queryFaceIds(db).length);
+      assertEquals(0, PermanentFaceDatabase.getGeneration(db));
+    }
+    finally {
+      database.close();
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Renames the database and preferences files, including for the application Context
+   * that PermanentFaceDatabase asks for
+   */
+  private static class TestContext extends RenamingDelegatingContext
+  {
+    TestContext(Context context)
+    {
+      super(context, FILE_PREFIX);
+    }
+
+    @Override
+    public Context
+    getApplicationContext()
+    {
+      return this;
+    }
+
+    @Override
+    public SharedPreferences
+    getSharedPreferences(String name, int mode)
+    {
+      return super.getSharedPreferences(FILE_PREFIX + name, mode);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private SharedPreferences
+  getLegacyPreferences()
+  {
+    return m_context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_MULTI_PROCESS);
+  }
+
+  private void
+  storeLegacyRecords()
+  {
+    getLegacyPreferences().edit()
+      .putStringSet("permanentFaceUri", Collections.singleton(FACE_URI))
+      .putStringSet("permanentFaceId", new HashSet<>(Arrays.asList("7", "12", "invalid")))
+      .putStringSet("permanentRoute", Collections.singleton(PREFIX + "\t" + FACE_URI))
+      .commit();
+  }
+
+  private static Set<PermanentFaceDatabase.Change>
+  insertFaceId(final int faceId)
+  {
+    return Collections.<PermanentFaceDatabase.Change>singleton(new PermanentFaceDatabase.Change() {
+      @Override
+      public void apply(SQLiteDatabase db)
+      {
+        PermanentFaceDatabase.insertFaceId(db, faceId);
+      }
+    });
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String FILE_PREFIX = "test.";
+  private static final String DATABASE_NAME = "permanent.db";
+  private static final String LEGACY_PREFS_NAME = "permanent";
+
+  private static final String FACE_URI = "udp4://192.0.2.1:6363";
+  private static final String PREFIX = "/example";
+
+  private Context m_context;
+}
@@ -0,0 +1,194 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.named_data.nfd.utils;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.Name;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares PermanentFaceRestorer with the sequential loop it replaced (one faces/create
+ * per permanent face, then one faces/create and one rib/register per route), against a
+ * stand-in NFD that charges COMMAND_DELAY_MS per management command.
+ */
+public class PermanentFaceRestorerBenchmark extends TestCase
+{
+  @Override
+  protected void
+  setUp() throws Exception
+  {
+    for (int i = 0; i < N_FACES; i++) {
+      m_faceUris.add("udp4://10.0." + (i / 250) + "." + (i % 250 + 1) + ":6363");
+    }
+    for (int i = 0; i < N_ROUTES; i++) {
+      m_routes.add(new String[]{"/benchmark/route" + i, m_faceUris.get(i % N_FACES)});
+    }
+  }
+
+  public void
+  testRestoreVersusSequentialLoop() throws Exception
+  {
+    FakeCommands sequentialNfd = new FakeCommands();
+    long start = System.nanoTime();
+    restoreSequentially(sequentialNfd);
+    long sequentialMs = (System.nanoTime() - start) / 1000000;
+
+    FakeCommands nfd = new FakeCommands();
+    PermanentFaceRestorer restorer = new PermanentFaceRestorer(nfd);
+
+    start = System.nanoTime();
+    PermanentFaceRestorer.Result cold = restorer.restore(m_faceUris, m_routes,
+                                                         new ArrayList<Integer>());
+    long coldMs = (System.nanoTime() - start) / 1000000;
+
+    start = System.nanoTime();
+    List<Integer> permanentFaceIds = new ArrayList<>();
+    PermanentFaceRestorer.Result warm = restorer.restore(m_faceUris, m_routes, permanentFaceIds);
+    long warmMs = (System.nanoTime() - start) / 1000000;
+
+    G.Log(TAG, N_FACES + " faces and " + N_ROUTES + " routes, " + COMMAND_DELAY_MS +
+          " ms per command: sequential loop " + sequentialMs + " ms, restorer " + coldMs +
+          " ms cold and " + warmMs + " ms when everything already exists");
+
+    assertEquals(N_FACES, cold.nFacesRestored);
+    assertEquals(N_ROUTES, cold.nRoutesRestored);
+    assertEquals(N_FACES, warm.nFacesRestored);
+    assertEquals(N_ROUTES, warm.nRoutesRestored);
+    assertEquals(N_FACES, permanentFaceIds.size());
+
+    // restoring twice creates no duplicate faces
+    assertEquals(N_FACES, nfd.getNFaces());
+    assertEquals(N_FACES, nfd.getNCreateCommands());
+
+    assertTrue("restorer (" + coldMs + " ms) should be at least twice as fast as the " +
+               "sequential loop (" + sequentialMs + " ms)", coldMs * 2 < sequentialMs);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The loop of the former FaceCreateAsyncTask and RouteCreateAsyncTask of NfdService,
+   * except that an existing face is looked up rather than aborting the loop
+   */
+  private void
+  restoreSequentially(FakeCommands nfd) throws Exception
+  {
+    for (String faceUri : m_faceUris) {
+      nfd.createOrGetFace(NfdcHelper.formatFaceUri(faceUri));
+    }
+    for (String[] prefixAndFaceUri : m_routes) {
+      int faceId = nfd.createOrGetFace(NfdcHelper.formatFaceUri(prefixAndFaceUri[1]));
+      nfd.registerRoute(new Name(prefixAndFaceUri[0]), faceId);
+    }
+  }
+
+  /**
+   * Stand-in for NFD: keeps the faces and routes, and takes COMMAND_DELAY_MS per command
+   */
+  private static class FakeCommands implements PermanentFaceRestorer.Commands
+  {
+    @Override
+    public Map<String, Integer>
+    listFaces() throws Exception
+    {
+      Thread.sleep(COMMAND_DELAY_MS);
+      synchronized (this) {
+        return new HashMap<>(m_faces);
+      }
+    }
+
+    @Override
+    public int
+    createFace(String canonicalFaceUri) throws Exception
+    {
+      Thread.sleep(COMMAND_DELAY_MS);
+      synchronized (this) {
+        m_nCreateCommands++;
+        if (m_faces.containsKey(canonicalFaceUri)) {
+          // as NFD, which answers 409 for an existing face
+          throw new Exception("Face exists: " + canonicalFaceUri);
+        }
+        int faceId = m_nextFaceId.getAndIncrement();
+        m_faces.put(canonicalFaceUri, faceId);
+        return faceId;
+      }
+    }
+
+    @Override
+    public void
+    registerRoute(Name prefix, int faceId) throws Exception
+    {
+      Thread.sleep(COMMAND_DELAY_MS);
+      synchronized (this) {
+        m_routes.add(prefix.toUri() + " " + faceId);
+      }
+    }
+
+    int
+    createOrGetFace(String canonicalFaceUri) throws Exception
+    {
+      try {
+        return createFace(canonicalFaceUri);
+      }
+      catch (Exception e) {
+        synchronized (this) {
+          return m_faces.get(canonicalFaceUri);
+        }
+      }
+    }
+
+    synchronized int
+    getNFaces()
+    {
+      return m_faces.size();
+    }
+
+    synchronized int
+    getNCreateCommands()
+    {
+      return m_nCreateCommands;
+    }
+
+    private final Map<String, Integer> m_faces = new HashMap<>();
+    private final Set<String> m_routes = new HashSet<>();
+    private final AtomicInteger m_nextFaceId = new AtomicInteger(256);
+    private int m_nCreateCommands = 0;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = PermanentFaceRestorerBenchmark.class.getName();
+
+  private static final int N_FACES = 50;
+  private static final int N_ROUTES = 500;
+  private static final long COMMAND_DELAY_MS = 5;
+
+  private final List<String> m_faceUris = new ArrayList<>();
+  private final List<String[]> m_routes = new ArrayList<>();
+}
@@ -0,0 +1,243 @@
+/* -*- Mode:jde; c-file-style:"gnu"; indent-tabs-mode:nil; -*- */
+/**
+ * Copyright (c) 2015-2016 Regents of the University of California
+ * <p>
+ * This file is part of NFD (Named Data Networking Forwarding Daemon) Android.
+ * See AUTHORS.md for complete list of NFD Android authors and contributors.
+ * <p>
+ * NFD Android is free software: you can redistribute it and/or modify it under the terms
+ * of the GNU General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ * <p>
+ * NFD Android is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE.  See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * NFD Android, e.g., in COPYING.md file.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.named_data.nfd.utils;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RibIndexTest extends TestCase
+{
+  public void
+  testCanonicalOrder() throws EncodingException
+  {
+    RibIndex index = RibIndex.decode(dataset("/b:1", "/a/c:2", "/a:1,2", "/a/b:3"));
+
+    assertEquals(4, index.size());
+    assertEquals(new Name("/a"), index.get(0).getName());
+    assertEquals(new Name("/a/b"), index.get(1).getName());
+    assertEquals(new Name("/a/c"), index.get(2).getName());
+    assertEquals(new Name("/b"), index.get(3).getName());
+    assertEquals(2, index.get(0).getRoutes().size());
+    assertEquals(2, index.get(0).getRoutes().get(1).getFaceId());
+    assertEquals(2, index.indexOf(new Name("/a/c")));
+    assertEquals(-1, index.indexOf(new Name("/c")));
+  }
+
+  public void
+  testQuery() throws EncodingException
+  {
+    RibIndex index = RibIndex.decode(dataset("/a:1,2", "/a/b:3", "/a/c:2,2", "/ab:2", "/b:1"));
+
+    RibIndex.Query all = index.query(new Name("/"), -1);
+    assertEquals(5, all.size());
+
+    RibIndex.Query underA = index.query(new Name("/a"), -1);
+    assertEquals(3, underA.size());
+    assertEquals(2, underA.indexOf(new Name("/a/c")));
+    assertEquals(-1, underA.indexOf(new Name("/ab")));
+
+    RibIndex.Query toFace2 = index.query(new Name("/"), 2);
+    assertEquals(3, toFace2.size());
+    assertEquals(index.indexOf(new Name("/a/c")), toFace2.getOrdinal(1));
+
+    RibIndex.Query underAToFace2 = index.query(new Name("/a"), 2);
+    assertEquals(2, underAToFace2.size());
+    assertEquals(-1, underAToFace2.indexOf(new Name("/a/b")));
+
+    assertEquals(0, index.query(new Name("/c"), -1).size());
+    assertEquals(0, index.query(new Name("/"), 4).size());
+  }
+
+  public void
+  testSkipsUnknownElements() throws EncodingException
+  {
+    TlvEncoder encoder = new TlvEncoder();
+    writeEntry(encoder, "/b", 1);
+    encoder.writeBlobTlv(0xfd, ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+    writeEntry(encoder, "/a", 2);
+
+    RibIndex index = RibIndex.decode(encoder.getOutput());
+
+    assertEquals(2, index.size());
+    assertEquals(1, index.query(new Name("/"), 2).size());
+  }
+
+  public void
+  testMalformedDataset()
+  {
+    ByteBuffer dataset = dataset("/a:1", "/b:2");
+    ByteBuffer truncated = (ByteBuffer)dataset.duplicate().limit(dataset.limit() - 1);
+    try {
+      RibIndex.decode(truncated);
+      fail("Truncated dataset was indexed");
+    }
+    catch (EncodingException e) {
+      // expected
+    }
+  }
+
+  public void
+  testSameAs() throws EncodingException
+  {
+    RibIndex index = RibIndex.decode(dataset("/a:1", "/b:2"));
+
+    assertTrue(index.isSameAs(RibIndex.decode(dataset("/b:2", "/a:1"))));
+    assertFalse(index.isSameAs(RibIndex.decode(dataset("/a:1", "/b:3"))));
+    assertFalse(index.isSameAs(RibIndex.decode(dataset("/a:1"))));
+    assertFalse(index.isSameAs(null));
+  }
+
+  public void
+  testChangedPositions() throws EncodingException
+  {
+    RibIndex.Query oldQuery = RibIndex.decode(dataset("/a:1", "/a/b:2", "/a/c:3", "/b:1"))
+      .query(new Name("/a"), -1);
+
+    RibIndex.Query sameQuery = RibIndex.decode(dataset("/a:1", "/a/b:2", "/a/c:3", "/b:2"))
+      .query(new Name("/a"), -1);
+    assertEquals(Collections.<Integer>emptyList(), sameQuery.getChangedPositions(oldQuery));
+
+    RibIndex.Query changedQuery = RibIndex.decode(dataset("/a:1", "/a/b:2,4", "/a/c:3"))
+      .query(new Name("/a"), -1);
+    assertEquals(Collections.singletonList(1), changedQuery.getChangedPositions(oldQuery));
+
+    RibIndex.Query renamedQuery = RibIndex.decode(dataset("/a:1", "/a/b:2", "/a/d:3"))
+      .query(new Name("/a"), -1);
+    assertNull(renamedQuery.getChangedPositions(oldQuery));
+
+    RibIndex.Query grownQuery = RibIndex.decode(dataset("/a:1", "/a/b:2", "/a/c:3", "/a/d:3"))
+      .query(new Name("/a"), -1);
+    assertNull(grownQuery.getChangedPositions(oldQuery));
+    assertNull(grownQuery.getChangedPositions(null));
+  }
+
+  public void
+  testLargeRib() throws EncodingException
+  {
+    TlvEncoder encoder = new TlvEncoder(LARGE_RIB_SIZE * 64);
+    for (int i = LARGE_RIB_SIZE - 1; i >= 0; i--) {
+      writeEntry(encoder, "/prefix/" + (i % 100) + "/" + i, i % N_FACES, N_FACES + i % 7);
+    }
+    ByteBuffer dataset = encoder.getOutput();
+
+    long memoryBefore = getUsedMemory();
+    long start = System.nanoTime();
+    RibIndex index = RibIndex.decode(dataset);
+    long decodeMs = (System.nanoTime() - start) / 1000000;
+    long indexBytes = getUsedMemory() - memoryBefore;
+
+    start = System.nanoTime();
+    int nResults = 0;
+    for (int i = 0; i < N_QUERIES; i++) {
+      RibIndex.Query query = index.query(new Name("/prefix/" + (i % 100)), i % 2 == 0 ? -1 : i % N_FACES);
+      nResults += query.size();
+      nResults += query.indexOf(new Name("/prefix/" + (i % 100) + "/" + i)) >= 0 ? 1 : 0;
+    }
+    long queryMs = (System.nanoTime() - start) / 1000000;
+
+    G.Log(TAG, LARGE_RIB_SIZE + " entries (" + dataset.remaining() + " bytes): decoded in " +
+          decodeMs + " ms, " + indexBytes + " bytes in memory; " + N_QUERIES + " queries in " +
+          queryMs + " ms");
+
+    assertEquals(LARGE_RIB_SIZE, index.size());
+    assertTrue(nResults > 0);
+    // the arena holds the dataset itself, the rest is a few ints per entry
+    assertTrue("Index takes " + indexBytes + " bytes",
+               indexBytes < dataset.remaining() + MAX_BYTES_PER_ENTRY * LARGE_RIB_SIZE);
+    assertTrue("Queries took " + queryMs + " ms", queryMs < MAX_QUERY_TIME_MS);
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * @param entries Entries as "name:faceId,faceId..."
+   * @return the rib/list dataset of the entries, in the given order
+   */
+  private static ByteBuffer
+  dataset(String... entries)
+  {
+    TlvEncoder encoder = new TlvEncoder();
+    for (int i = entries.length - 1; i >= 0; i--) {
+      String[] parts = entries[i].split(":");
+      String[] faceIdStrings = parts[1].split(",");
+      int[] faceIds = new int[faceIdStrings.length];
+      for (int j = 0; j < faceIds.length; j++) {
+        faceIds[j] = Integer.parseInt(faceIdStrings[j]);
+      }
+      writeEntry(encoder, parts[0], faceIds);
+    }
+    return encoder.getOutput();
+  }
+
+  /**
+   * Write a RibEntry TLV before the encoded output, as TlvEncoder encodes backwards
+   */
+  private static void
+  writeEntry(TlvEncoder encoder, String name, int... faceIds)
+  {
+    int saveLength = encoder.getLength();
+    for (int i = faceIds.length - 1; i >= 0; i--) {
+      int saveRouteLength = encoder.getLength();
+      encoder.writeNonNegativeIntegerTlv(TLV_FLAGS, 1);
+      encoder.writeNonNegativeIntegerTlv(TLV_COST, 0);
+      encoder.writeNonNegativeIntegerTlv(TLV_ORIGIN, 0);
+      encoder.writeNonNegativeIntegerTlv(Tlv.ControlParameters_FaceId, faceIds[i]);
+      encoder.writeTypeAndLength(TLV_ROUTE, encoder.getLength() - saveRouteLength);
+    }
+    encoder.writeBuffer(new Name(name).wireEncode().buf());
+    encoder.writeTypeAndLength(TLV_RIB_ENTRY, encoder.getLength() - saveLength);
+  }
+
+  private static long
+  getUsedMemory()
+  {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  private static final String TAG = RibIndexTest.class.getName();
+
+  private static final int TLV_RIB_ENTRY = 0x80;
+  private static final int TLV_ROUTE = 0x81;
+  private static final int TLV_ORIGIN = 0x6f;
+  private static final int TLV_COST = 0x6a;
+  private static final int TLV_FLAGS = 0x6c;
+
+  private static final int LARGE_RIB_SIZE = 100000;
+  private static final int N_FACES = 50;
+  private static final int N_QUERIES = 1000;
+
+  /** Bound on the memory the index takes beyond the dataset, per entry */
+  private static final int MAX_BYTES_PER_ENTRY = 64;
+
+  private static final long MAX_QUERY_TIME_MS = 1000;
+}
@@ -0,0 +1,163 @@
+package net.named_data.nfd.wifidirect.model;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+import net.named_data.jndn.util.Blob;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Round-trip tests for the ProbeResponse encoding, and a size and throughput comparison
+ * with the newline-separated text format that probe responses used before.
+ */
+public class ProbeResponseTest extends TestCase {
+
+    private static final String TAG = "ProbeResponseTest";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public void testFullRoundTrip() throws Exception {
+        List<String> prefixes = Arrays.asList("/ndn/wifidirect/a", "/ndn/wifidirect/b/%C3%A9", "/ndn/\u00e9t\u00e9");
+        ProbeResponse decoded = ProbeResponse.wireDecode(ProbeResponse.full(42, prefixes).wireEncode());
+
+        assertEquals(ProbeResponse.KIND_FULL, decoded.getKind());
+        assertEquals(42, decoded.getVersion());
+        assertEquals(ProbeResponse.NO_VERSION, decoded.getBaseVersion());
+        assertEquals(prefixes, decoded.getAdded());
+        assertTrue(decoded.getRemoved().isEmpty());
+    }
+
+    public void testEmptyFullRoundTrip() throws Exception {
+        ProbeResponse decoded = ProbeResponse.wireDecode(
+                ProbeResponse.full(1, Collections.<String>emptyList()).wireEncode());
+
+        assertEquals(ProbeResponse.KIND_FULL, decoded.getKind());
+        assertTrue(decoded.getAdded().isEmpty());
+    }
+
+    public void testDeltaRoundTrip() throws Exception {
+        // versions start at a time in ms, so they need more than 4 bytes
+        long baseVersion = 1480000000000L;
+        List<String> added = Arrays.asList("/ndn/wifidirect/new1", "/ndn/wifidirect/new2");
+        List<String> removed = Collections.singletonList("/ndn/wifidirect/old");
+        ProbeResponse decoded = ProbeResponse.wireDecode(
+                ProbeResponse.delta(baseVersion + 3, baseVersion, added, removed).wireEncode());
+
+        assertEquals(ProbeResponse.KIND_DELTA, decoded.getKind());
+        assertEquals(baseVersion + 3, decoded.getVersion());
+        assertEquals(baseVersion, decoded.getBaseVersion());
+        assertEquals(added, decoded.getAdded());
+        assertEquals(removed, decoded.getRemoved());
+    }
+
+    public void testNotModifiedRoundTrip() throws Exception {
+        Blob encoded = ProbeResponse.notModified(7).wireEncode();
+        ProbeResponse decoded = ProbeResponse.wireDecode(encoded);
+
+        assertEquals(ProbeResponse.KIND_NOT_MODIFIED, decoded.getKind());
+        assertEquals(7, decoded.getVersion());
+        assertTrue(decoded.getAdded().isEmpty());
+        assertTrue(decoded.getRemoved().isEmpty());
+        assertTrue("not modified response takes " + encoded.size() + " bytes", encoded.size() <= 8);
+    }
+
+    public void testRejectsUnknownKind() {
+        TlvEncoder encoder = new TlvEncoder(16);
+        int saveLength = encoder.getLength();
+        encoder.writeNonNegativeIntegerTlv(130, 9);     // Kind
+        encoder.writeNonNegativeIntegerTlv(129, 1);     // Version
+        encoder.writeTypeAndLength(128, encoder.getLength() - saveLength);
+
+        try {
+            ProbeResponse.wireDecode(new Blob(encoder.getOutput(), false));
+            fail("decoded a response of unknown kind");
+        } catch (EncodingException e) {
+            // expected
+        }
+    }
+
+    public void testRejectsTruncatedInput() {
+        ByteBuffer encoded = ProbeResponse.full(1, Arrays.asList("/a", "/b")).wireEncode().buf();
+        ByteBuffer truncated = encoded.duplicate();
+        truncated.limit(truncated.limit() - 2);
+
+        try {
+            ProbeResponse.wireDecode(new Blob(truncated, true));
+            fail("decoded a truncated response");
+        } catch (EncodingException e) {
+            // expected
+        }
+    }
+
+    public void testRejectsText() {
+        try {
+            ProbeResponse.wireDecode(new Blob(textEncode(Arrays.asList("/a", "/b"))));
+            fail("decoded the text format");
+        } catch (EncodingException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares sizes and encode+decode times with the text format at 10, 1k and 10k
+     * prefixes. A full response may only add a few bytes per prefix to the text format,
+     * while a steady-state (not modified) response stays a few bytes.
+     */
+    public void testSizeAndThroughputAgainstTextFormat() throws Exception {
+        for (int numPrefixes : new int[] {10, 1000, 10000}) {
+            List<String> prefixes = createPrefixes(numPrefixes);
+
+            long start = System.nanoTime();
+            byte[] text = textEncode(prefixes);
+            List<String> textDecoded = textDecode(text);
+            long textNs = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Blob tlv = ProbeResponse.full(1, prefixes).wireEncode();
+            ProbeResponse tlvDecoded = ProbeResponse.wireDecode(tlv);
+            long tlvNs = System.nanoTime() - start;
+
+            int notModifiedSize = ProbeResponse.notModified(1).wireEncode().size();
+
+            assertEquals(prefixes, textDecoded);
+            assertEquals(prefixes, tlvDecoded.getAdded());
+            assertTrue(tlv.size() <= text.length + 4 * numPrefixes);
+
+            Log.i(TAG, numPrefixes + " prefixes: text " + text.length + " bytes in " + textNs / 1000 +
+                    " us, TLV full " + tlv.size() + " bytes in " + tlvNs / 1000 + " us, TLV not modified " +
+                    notModifiedSize + " bytes");
+        }
+    }
+
+    private static List<String> createPrefixes(int numPrefixes) {
+        ArrayList<String> prefixes = new ArrayList<>(numPrefixes);
+        for (int i = 0; i < numPrefixes; i++) {
+            prefixes.add("/ndn/wifidirect/device" + (i % 8) + "/data/" + i);
+        }
+        return prefixes;
+    }
+
+    // the former format: one prefix per line, following the number of prefixes
+    private static byte[] textEncode(List<String> prefixes) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(prefixes.size());
+        for (String prefix : prefixes) {
+            builder.append('\n').append(prefix);
+        }
+        return builder.toString().getBytes(UTF_8);
+    }
+
+    private static List<String> textDecode(byte[] text) {
+        String[] lines = new String(text, UTF_8).split("\n");
+        int numPrefixes = Integer.parseInt(lines[0]);
+        return new ArrayList<>(Arrays.asList(lines).subList(1, numPrefixes + 1));
+    }
+}
@@ -0,0 +1,118 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import com.intel.jndn.management.types.FaceStatus;
+import com.intel.jndn.management.types.FibEntry;
+import com.intel.jndn.management.types.NextHopRecord;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.Name;
+import net.named_data.jndn.encoding.tlv.TlvEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares answering "which data prefixes go through this peer's face" by scanning the
+ * FIB entries, as each probe handler did before FibSnapshotCache, with a lookup in a
+ * FibSnapshotCache.Snapshot. The FIB holds NUM_PREFIXES data prefixes spread over
+ * NUM_PEERS peer faces, decoded from the FIB dataset encoding.
+ */
+public class FibSnapshotCacheBenchmark extends TestCase {
+
+    private static final String TAG = "FibSnapshotCacheBench";
+    private static final int NUM_PREFIXES = 1000;
+    private static final int NUM_PEERS = 5;
+    private static final int NUM_LOOKUPS = 1000;
+    private static final int FIRST_PEER_FACE_ID = 300;
+
+    // FIB dataset TLV types, see NFD management protocol
+    private static final int TLV_FIB_ENTRY = 0x80;
+    private static final int TLV_NEXT_HOP_RECORD = 0x81;
+    private static final int TLV_FACE_ID = 0x69;
+    private static final int TLV_COST = 0x6a;
+
+    public void testScanVersusSnapshotLookup() throws Exception {
+        List<FibEntry> fibEntries = createFib();
+        List<FaceStatus> faceStatuses = Collections.emptyList();
+
+        long start = System.nanoTime();
+        FibSnapshotCache.Snapshot snapshot = new FibSnapshotCache.Snapshot(fibEntries, faceStatuses,
+                System.currentTimeMillis());
+        long buildNs = System.nanoTime() - start;
+
+        for (int round = 0; round < 2; round++) {
+            // first round warms up both paths
+            int scanned = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < NUM_LOOKUPS; i++) {
+                scanned += scan(fibEntries, FIRST_PEER_FACE_ID + i % NUM_PEERS).size();
+            }
+            long scanNs = System.nanoTime() - start;
+
+            int looked = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < NUM_LOOKUPS; i++) {
+                looked += snapshot.getDataPrefixesForFace(FIRST_PEER_FACE_ID + i % NUM_PEERS).size();
+            }
+            long lookupNs = System.nanoTime() - start;
+
+            assertEquals(scanned, looked);
+            if (round == 1) {
+                Log.i(TAG, NUM_PREFIXES + " prefixes: scan " + scanNs / NUM_LOOKUPS / 1000 + " us, " +
+                        "snapshot lookup " + lookupNs / NUM_LOOKUPS + " ns per probe; " +
+                        "snapshot built in " + buildNs / 1000 + " us");
+            }
+        }
+    }
+
+    private static Set<String> scan(List<FibEntry> fibEntries, int faceId) {
+        HashSet<String> prefixes = new HashSet<>();
+        for (FibEntry fibEntry : fibEntries) {
+            String prefix = fibEntry.getPrefix().toString();
+            if (prefix.startsWith("/localhop") || prefix.startsWith("/localhost")) {
+                continue;
+            }
+            for (NextHopRecord nextHopRecord : fibEntry.getNextHopRecords()) {
+                if (nextHopRecord.getFaceId() == faceId) {
+                    prefixes.add(prefix);
+                }
+            }
+        }
+        return prefixes;
+    }
+
+    private static List<FibEntry> createFib() throws Exception {
+        ArrayList<FibEntry> fibEntries = new ArrayList<>();
+        for (int i = 0; i < NUM_PEERS; i++) {
+            fibEntries.add(decode(NDNController.PROBE_PREFIX + "/192.168.49." + (i + 2),
+                    FIRST_PEER_FACE_ID + i));
+        }
+        for (int i = 0; i < NUM_PREFIXES; i++) {
+            fibEntries.add(decode("/ndn/wifidirect/data/" + i, FIRST_PEER_FACE_ID + i % NUM_PEERS));
+        }
+        return fibEntries;
+    }
+
+    private static FibEntry decode(String prefix, int faceId) throws Exception {
+        TlvEncoder encoder = new TlvEncoder(256);
+        int saveLength = encoder.getLength();
+
+        int saveRecordLength = encoder.getLength();
+        encoder.writeNonNegativeIntegerTlv(TLV_COST, 0);
+        encoder.writeNonNegativeIntegerTlv(TLV_FACE_ID, faceId);
+        encoder.writeTypeAndLength(TLV_NEXT_HOP_RECORD, encoder.getLength() - saveRecordLength);
+
+        encoder.writeBuffer(new Name(prefix).wireEncode().buf());
+        encoder.writeTypeAndLength(TLV_FIB_ENTRY, encoder.getLength() - saveLength);
+
+        FibEntry fibEntry = new FibEntry();
+        fibEntry.wireDecode(encoder.getOutput());
+        return fibEntry;
+    }
+}
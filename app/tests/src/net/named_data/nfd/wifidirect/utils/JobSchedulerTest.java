@@ -0,0 +1,94 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that JobScheduler only skips the runs missed because of an overrun, also when
+ * its clock is stepped, as the wall clock is by a network time update.
+ */
+public class JobSchedulerTest extends TestCase {
+
+    private static final long PERIOD = 50;              // in ms
+    private static final long DEADLINE = 1000;          // in ms
+    private static final long CLOCK_STEP = 3600000;     // in ms
+    private static final long WINDOW = 500;             // in ms, time runs are counted for
+
+    private final AtomicLong clockOffset = new AtomicLong(0);
+    private JobScheduler scheduler;
+
+    @Override
+    protected void setUp() {
+        // a wall clock, which the test steps
+        scheduler = new JobScheduler(new JobScheduler.Clock() {
+            @Override
+            public long now() {
+                return System.currentTimeMillis() + clockOffset.get();
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdownAndAwait(DEADLINE, JobScheduler.Lane.values());
+    }
+
+    public void testClockStepForwardDoesNotSkipRuns() throws Exception {
+        assertRunsThroughClockStep(CLOCK_STEP);
+    }
+
+    public void testClockStepBackwardDoesNotDelayRuns() throws Exception {
+        assertRunsThroughClockStep(-CLOCK_STEP);
+    }
+
+    public void testOverrunSkipsMissedRuns() throws Exception {
+        final AtomicInteger runs = new AtomicInteger(0);
+        scheduler.schedulePeriodic(JobScheduler.Lane.PROBING, "overrun", new Runnable() {
+            @Override
+            public void run() {
+                if (runs.incrementAndGet() == 1) {
+                    sleep(PERIOD * 5 + PERIOD / 2);
+                }
+            }
+        }, 0, PERIOD, DEADLINE);
+
+        Thread.sleep(PERIOD * 8);
+        JobScheduler.Metrics metrics = scheduler.getMetrics().get("overrun");
+        assertTrue("skipped " + metrics.skippedRuns, metrics.skippedRuns >= 4);
+        assertTrue(metrics.maxQueueDelay < PERIOD);
+    }
+
+    /* helpers */
+
+    private void assertRunsThroughClockStep(long step) throws Exception {
+        final AtomicInteger runs = new AtomicInteger(0);
+        scheduler.schedulePeriodic(JobScheduler.Lane.PROBING, "periodic", new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 0, PERIOD, DEADLINE);
+
+        Thread.sleep(WINDOW);
+        int runsBefore = runs.get();
+        clockOffset.addAndGet(step);
+        Thread.sleep(WINDOW);
+        int runsAfter = runs.get() - runsBefore;
+
+        // 10 runs are due per window; leave room for a loaded machine
+        assertTrue("ran " + runsBefore + " times before the step", runsBefore >= WINDOW / PERIOD / 2);
+        assertTrue("ran " + runsAfter + " times after the step", runsAfter >= WINDOW / PERIOD / 2);
+        assertEquals(0, scheduler.getMetrics().get("periodic").skippedRuns);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import net.named_data.nfd.wifidirect.model.Peer;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compares the lookups by Face id that NDNController made by going over all logged
+ * peers before PeerRegistry indexed them by Face id, with the indexed lookups:
+ * whether a Face belongs to a peer (HashSet of every peer's Face id rebuilt on each
+ * prefix registration), and which peer a Face belongs to (scan of all peers).
+ */
+public class PeerRegistryBenchmark extends TestCase {
+
+    private static final String TAG = "PeerRegistryBench";
+    private static final int[] NUM_PEERS = { 5, 50, 500 };
+    private static final int NUM_LOOKUPS = 10000;
+    private static final int FIRST_PEER_FACE_ID = 300;
+
+    public void testScanVersusIndex() {
+        for (int numPeers : NUM_PEERS) {
+            PeerRegistry registry = new PeerRegistry(numPeers);
+            for (int i = 0; i < numPeers; i++) {
+                Peer peer = new Peer();
+                peer.setFaceId(FIRST_PEER_FACE_ID + i);
+                assertTrue(registry.addFacePeer("192.168." + (49 + i / 250) + "." + (i % 250 + 2), peer));
+            }
+
+            for (int round = 0; round < 2; round++) {
+                // first round warms up all paths
+                int found = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < NUM_LOOKUPS; i++) {
+                    found += buildFaceIdSet(registry).contains(faceIdFor(i, numPeers)) ? 1 : 0;
+                }
+                long rebuildNs = (System.nanoTime() - start) / NUM_LOOKUPS;
+
+                start = System.nanoTime();
+                for (int i = 0; i < NUM_LOOKUPS; i++) {
+                    found -= registry.hasFaceId(faceIdFor(i, numPeers)) ? 1 : 0;
+                }
+                long indexedMembershipNs = (System.nanoTime() - start) / NUM_LOOKUPS;
+                assertEquals(0, found);
+
+                start = System.nanoTime();
+                for (int i = 0; i < NUM_LOOKUPS; i++) {
+                    found += scan(registry, faceIdFor(i, numPeers)) != null ? 1 : 0;
+                }
+                long scanNs = (System.nanoTime() - start) / NUM_LOOKUPS;
+
+                start = System.nanoTime();
+                for (int i = 0; i < NUM_LOOKUPS; i++) {
+                    found -= registry.getByFaceId(faceIdFor(i, numPeers)) != null ? 1 : 0;
+                }
+                long indexedLookupNs = (System.nanoTime() - start) / NUM_LOOKUPS;
+                assertEquals(0, found);
+
+                if (round == 1) {
+                    Log.i(TAG, numPeers + " peers, ns per call: membership, HashSet rebuild " +
+                            rebuildNs + " vs index " + indexedMembershipNs + "; peer by Face id, scan " +
+                            scanNs + " vs index " + indexedLookupNs);
+                }
+            }
+        }
+    }
+
+    // every other lookup is for a Face that no peer has
+    private static int faceIdFor(int i, int numPeers) {
+        return FIRST_PEER_FACE_ID + i % (2 * numPeers);
+    }
+
+    private static Set<Integer> buildFaceIdSet(PeerRegistry registry) {
+        HashSet<Integer> faceIds = new HashSet<>();
+        for (Peer peer : registry.getFacePeers().values()) {
+            faceIds.add(peer.getFaceId());
+        }
+        return faceIds;
+    }
+
+    private static Peer scan(PeerRegistry registry, int faceId) {
+        for (Peer peer : registry.getFacePeers().values()) {
+            if (peer.getFaceId() == faceId) {
+                return peer;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,263 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import junit.framework.TestCase;
+
+import net.named_data.nfd.wifidirect.model.Peer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hammers PeerRegistry from many threads at once, and checks that no update is lost or
+ * applied twice, that every state change is a legal transition reported exactly once,
+ * and that readers iterating snapshots never fail.
+ */
+public class PeerRegistryStressTest extends TestCase {
+
+    private static final int NUM_THREADS = 16;
+    private static final int NUM_ITERATIONS = 20000;    // per thread
+    private static final int NUM_IPS = 8;               // shared by all threads, to collide often
+    private static final int MAX_DEVICES = 5;
+    private static final int NUM_ROUNDS = 10;           // of NUM_ITERATIONS / NUM_ROUNDS, checked after each
+    private static final long TIMEOUT = 60;             // in s
+
+    private final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+    public void testDeviceCapacityUnderContention() throws Exception {
+        final PeerRegistry registry = new PeerRegistry(MAX_DEVICES);
+        final AtomicInteger numAdded = new AtomicInteger();
+        final AtomicInteger numDiscovered = new AtomicInteger();
+        registry.addListener(new PeerRegistry.Listener() {
+            @Override
+            public void onPeerStateChanged(Peer peer, Peer.State oldState, Peer.State newState) {
+                if (newState == Peer.State.DISCOVERED) {
+                    numDiscovered.incrementAndGet();
+                }
+            }
+        });
+
+        runConcurrently(new Worker() {
+            @Override
+            public void run(int thread, Random random) {
+                for (int i = 0; i < 100; i++) {
+                    Peer peer = new Peer();
+                    peer.setDeviceAddress("device-" + thread + "-" + i);
+                    if (registry.addDevice(peer)) {
+                        numAdded.incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        assertEquals(MAX_DEVICES, numAdded.get());
+        assertEquals(MAX_DEVICES, numDiscovered.get());
+        assertEquals(MAX_DEVICES, registry.getDeviceAddresses().size());
+    }
+
+    public void testAddProbeRemoveCycles() throws Exception {
+        final PeerRegistry registry = new PeerRegistry(MAX_DEVICES);
+        final AtomicInteger nextFaceId = new AtomicInteger(300);
+        final AtomicInteger numAdded = new AtomicInteger();
+        final AtomicInteger numRemoved = new AtomicInteger();
+        final Set<Peer> removedPeers = Collections.newSetFromMap(new ConcurrentHashMap<Peer, Boolean>());
+        registry.addListener(new PeerRegistry.Listener() {
+            @Override
+            public void onPeerStateChanged(Peer peer, Peer.State oldState, Peer.State newState) {
+                if (!isLegalFacePeerTransition(oldState, newState)) {
+                    errors.add(new AssertionError("Illegal transition " + oldState + " -> " + newState));
+                }
+                if (newState == Peer.State.REMOVED && !removedPeers.add(peer)) {
+                    errors.add(new AssertionError("Peer removed twice: " + peer));
+                }
+            }
+        });
+
+        runConcurrently(new Worker() {
+            @Override
+            public void run(int thread, Random random) {
+                for (int i = 0; i < NUM_ITERATIONS; i++) {
+                    String ip = "192.168.49." + random.nextInt(NUM_IPS);
+                    switch (random.nextInt(6)) {
+                        case 0:
+                        case 1:
+                            Peer peer = new Peer();
+                            peer.setFaceId(nextFaceId.getAndIncrement());
+                            if (registry.addFacePeer(ip, peer)) {
+                                numAdded.incrementAndGet();
+                            }
+                            break;
+                        case 2:
+                            registry.markProbed(ip);
+                            break;
+                        case 3:
+                            if (registry.removeFacePeer(ip) != null) {
+                                numRemoved.incrementAndGet();
+                            }
+                            break;
+                        case 4:
+                            for (Map.Entry<String, Peer> entry : registry.getFacePeers().entrySet()) {
+                                entry.getValue().getState();
+                            }
+                            for (String knownIp : registry.getIps()) {
+                                registry.getByIp(knownIp);
+                            }
+                            break;
+                        default:
+                            for (int faceId : registry.getFaceIds()) {
+                                registry.getByFaceId(faceId);
+                            }
+                            break;
+                    }
+                }
+            }
+        });
+
+        int numLeft = registry.getIps().size();
+        registry.clear();
+
+        assertTrue(numAdded.get() > 0);
+        assertEquals(numAdded.get(), numRemoved.get() + numLeft);
+        assertEquals(numAdded.get(), removedPeers.size());
+        assertTrue(registry.getIps().isEmpty());
+    }
+
+    public void testIndexesStayConsistent() throws Exception {
+        final PeerRegistry registry = new PeerRegistry(MAX_DEVICES);
+        final AtomicInteger nextFaceId = new AtomicInteger(300);
+
+        for (int round = 0; round < NUM_ROUNDS; round++) {
+            runConcurrently(new Worker() {
+                @Override
+                public void run(int thread, Random random) {
+                    for (int i = 0; i < NUM_ITERATIONS / NUM_ROUNDS; i++) {
+                        String ip = "192.168.49." + random.nextInt(NUM_IPS);
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                Peer peer = new Peer();
+                                peer.setFaceId(nextFaceId.getAndIncrement());
+                                registry.addFacePeer(ip, peer);
+                                break;
+                            case 1:
+                                registry.removeFacePeer(ip);
+                                break;
+                            case 2:
+                                // one of the recently used Face ids, which may or may not be indexed
+                                registry.removeFacePeerByFaceId(nextFaceId.get() - 1 - random.nextInt(2 * NUM_IPS));
+                                break;
+                            default:
+                                registry.setFaceId(ip, nextFaceId.getAndIncrement());
+                                break;
+                        }
+                    }
+                }
+            });
+
+            // once quiet, the IP and Face id indexes hold the same peers
+            Map<String, Peer> peers = registry.getFacePeers();
+            int[] faceIds = registry.getFaceIds();
+            assertEquals("round " + round, peers.size(), faceIds.length);
+            for (int faceId : faceIds) {
+                Peer peer = peers.get(registry.getIpByFaceId(faceId));
+                assertNotNull("round " + round + ": Face " + faceId + " points to no peer", peer);
+                assertEquals("round " + round, faceId, peer.getFaceId());
+                assertSame(peer, registry.getByFaceId(faceId));
+            }
+            for (Map.Entry<String, Peer> entry : peers.entrySet()) {
+                assertEquals("round " + round, entry.getKey(), registry.getIpByFaceId(entry.getValue().getFaceId()));
+            }
+        }
+    }
+
+    public void testConcurrentRemovalOfSamePeer() throws Exception {
+        final PeerRegistry registry = new PeerRegistry(MAX_DEVICES);
+        final AtomicInteger numRemovedNotifications = new AtomicInteger();
+        registry.addListener(new PeerRegistry.Listener() {
+            @Override
+            public void onPeerStateChanged(Peer peer, Peer.State oldState, Peer.State newState) {
+                if (newState == Peer.State.REMOVED) {
+                    numRemovedNotifications.incrementAndGet();
+                }
+            }
+        });
+
+        for (int round = 0; round < 200; round++) {
+            Peer peer = new Peer();
+            peer.setFaceId(300 + round);
+            assertTrue(registry.addFacePeer("192.168.49.2", peer));
+
+            final AtomicInteger numWinners = new AtomicInteger();
+            final CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS);
+            runConcurrently(new Worker() {
+                @Override
+                public void run(int thread, Random random) throws Exception {
+                    barrier.await();
+                    if (registry.removeFacePeer("192.168.49.2") != null) {
+                        numWinners.incrementAndGet();
+                    }
+                }
+            });
+
+            assertEquals(1, numWinners.get());
+            assertEquals(round + 1, numRemovedNotifications.get());
+            assertEquals(Peer.State.REMOVED, peer.getState());
+        }
+    }
+
+    /* helpers */
+
+    private interface Worker {
+        void run(int thread, Random random) throws Exception;
+    }
+
+    private void runConcurrently(final Worker worker) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(NUM_THREADS);
+        for (int i = 0; i < NUM_THREADS; i++) {
+            final int thread = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        worker.run(thread, new Random(thread));
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        assertTrue("workers did not finish", done.await(TIMEOUT, TimeUnit.SECONDS));
+        if (!errors.isEmpty()) {
+            AssertionError error = new AssertionError(errors.size() + " errors, first: " + errors.peek());
+            error.initCause(errors.peek());
+            throw error;
+        }
+    }
+
+    private static boolean isLegalFacePeerTransition(Peer.State oldState, Peer.State newState) {
+        switch (newState) {
+            case FACE_UP:
+                return oldState == null;
+            case PROBED:
+                return oldState == Peer.State.FACE_UP;
+            case REMOVED:
+                // a peer removed while being added was never reported FACE_UP
+                return oldState == Peer.State.FACE_UP || oldState == Peer.State.PROBED ||
+                        oldState == Peer.State.DISCOVERED;
+            default:
+                return false;
+        }
+    }
+}
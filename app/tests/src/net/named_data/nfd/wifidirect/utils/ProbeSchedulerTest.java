@@ -0,0 +1,261 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import junit.framework.TestCase;
+
+import net.named_data.nfd.utils.G;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks ProbeScheduler against a fake clock: the time is only ever passed in, so the
+ * tests step through minutes of probing without sleeping.
+ */
+public class ProbeSchedulerTest extends TestCase {
+
+    private static final String TAG = "ProbeSchedulerTest";
+
+    private static final long TICK = 500;                   // in ms, as NDNController.PROBE_TICK
+    private static final long RTT = 50;                     // in ms
+    private static final long FIB_SNAPSHOT_TTL = 5000;      // in ms, as NDNController.FIB_SNAPSHOT_TTL
+    private static final int MAX_TIMEOUTS_ALLOWED = 3;      // as ProbeRunnable.MAX_TIMEOUTS_ALLOWED
+
+    // the scheme ProbeScheduler replaced: every peer probed every 12s, with the default
+    // interest lifetime, and dropped after 5 consecutive timeouts
+    private static final long FIXED_PERIOD = 12000;         // in ms
+    private static final long FIXED_PROBE_TIMEOUT = 4000;   // in ms
+    private static final int FIXED_MAX_TIMEOUTS = 5;
+
+    private static final long SIMULATION_STEP = 10;         // in ms
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private ProbeScheduler scheduler;
+    private long now;
+
+    @Override
+    protected void setUp() {
+        scheduler = new ProbeScheduler(new Random(1));
+        now = 1000000;
+    }
+
+    public void testNewPeerIsDueImmediately() {
+        List<String> peers = Collections.singletonList("192.168.49.2");
+        assertTrue(scheduler.hasDuePeer(peers, now));
+        assertTrue(scheduler.shouldProbe("192.168.49.2", now));
+    }
+
+    public void testNoPeersIsNeverDue() {
+        assertFalse(scheduler.hasDuePeer(Collections.<String>emptyList(), now));
+    }
+
+    public void testPeerInFlightIsNotDue() {
+        List<String> peers = Collections.singletonList("192.168.49.2");
+        assertTrue(scheduler.shouldProbe("192.168.49.2", now));
+
+        now += ProbeScheduler.MAX_INTERVAL * 2;
+        assertFalse(scheduler.hasDuePeer(peers, now));
+        assertFalse(scheduler.shouldProbe("192.168.49.2", now));
+
+        // an outcome that is never reported does not stop probing for good
+        now += 60001;
+        assertTrue(scheduler.hasDuePeer(peers, now));
+        assertTrue(scheduler.shouldProbe("192.168.49.2", now));
+    }
+
+    public void testHasDuePeerDoesNotRecordAProbe() {
+        List<String> peers = Collections.singletonList("192.168.49.2");
+        assertTrue(scheduler.hasDuePeer(peers, now));
+        assertTrue(scheduler.hasDuePeer(peers, now));
+        assertNull(scheduler.getStats("192.168.49.2"));
+    }
+
+    public void testIntervalGrowsWhileUnchanged() {
+        long interval = probeAndRespond("192.168.49.2", false);
+        assertTrue(interval > ProbeScheduler.INITIAL_INTERVAL);
+        for (int i = 0; i < 20; i++) {
+            interval = probeAndRespond("192.168.49.2", false);
+        }
+        assertEquals(ProbeScheduler.MAX_INTERVAL, interval);
+        assertEquals(RTT, scheduler.getStats("192.168.49.2").srtt);
+    }
+
+    public void testIntervalShrinksOnChange() {
+        for (int i = 0; i < 20; i++) {
+            probeAndRespond("192.168.49.2", false);
+        }
+        long interval = probeAndRespond("192.168.49.2", true);
+        assertEquals(ProbeScheduler.MAX_INTERVAL / 2, interval);
+        for (int i = 0; i < 20; i++) {
+            interval = probeAndRespond("192.168.49.2", true);
+        }
+        assertEquals(ProbeScheduler.MIN_INTERVAL, interval);
+    }
+
+    public void testTimeoutIsRetriedSoon() {
+        assertTrue(scheduler.shouldProbe("192.168.49.2", now));
+        now += 4000;
+        scheduler.onTimeout("192.168.49.2", now);
+
+        List<String> peers = Collections.singletonList("192.168.49.2");
+        long due = firstDueTime(peers);
+        assertTrue(due - now <= ProbeScheduler.TIMEOUT_RETRY_INTERVAL * 1.2);
+        assertTrue(due - now >= ProbeScheduler.TIMEOUT_RETRY_INTERVAL * 0.8);
+    }
+
+    public void testProbeTimeoutFollowsRtt() {
+        assertEquals(4000, scheduler.getProbeTimeout("192.168.49.2"));
+        for (int i = 0; i < 10; i++) {
+            probeAndRespond("192.168.49.2", false);
+        }
+        assertEquals(1000, scheduler.getProbeTimeout("192.168.49.2"));
+    }
+
+    /**
+     * Replays ProbeRunnable over ten minutes of steady state: the FIB is fetched on a tick
+     * only when hasDuePeer() says so, and every fetch leads to at least one probe.
+     */
+    public void testSnapshotIsOnlyFetchedWhenAPeerIsDue() {
+        List<String> peers = Arrays.asList("192.168.49.2", "192.168.49.3", "192.168.49.4");
+        long end = now + 10 * 60 * 1000;
+        int numTicks = 0;
+        int numFetches = 0;
+        int numProbes = 0;
+        for (; now < end; now += TICK) {
+            numTicks++;
+            if (!scheduler.hasDuePeer(peers, now)) {
+                continue;
+            }
+            numFetches++;
+
+            int numProbed = 0;
+            for (String peer : peers) {
+                if (scheduler.shouldProbe(peer, now)) {
+                    scheduler.onResponse(peer, now + RTT, false);
+                    numProbed++;
+                }
+            }
+            assertTrue("fetched the FIB without a due peer at " + now, numProbed > 0);
+            numProbes += numProbed;
+        }
+
+        // with a TTL-driven snapshot, every expiry would have been a fetch
+        int numTtlFetches = (int) (numTicks * TICK / FIB_SNAPSHOT_TTL);
+        G.Log(TAG, numTicks + " ticks, " + numFetches + " FIB fetches (" + numTtlFetches +
+                " when refreshed every " + FIB_SNAPSHOT_TTL + "ms), " + numProbes + " probes");
+        assertTrue(numFetches <= numProbes);
+        // three stable peers, whose intervals grow to 30s, need at most two thirds as many
+        assertTrue(numFetches * 3 < numTtlFetches * 2);
+    }
+
+    /**
+     * Compares with the fixed 12s schedule over ten minutes: a peer whose advertisement
+     * never changes is probed less than half as often.
+     */
+    public void testStablePeerIsProbedLessThanOnFixedSchedule() {
+        long duration = 10 * 60 * 1000;
+        long[] adaptive = simulateAdaptive(duration, NEVER);
+        long[] fixed = simulateFixed(duration, NEVER);
+
+        G.Log(TAG, "Stable peer over " + duration / 1000 + "s: " + adaptive[0] + " probes, " +
+                fixed[0] + " on the fixed schedule");
+        assertEquals(-1, adaptive[1]);
+        assertEquals(-1, fixed[1]);
+        assertTrue(adaptive[0] * 2 < fixed[0]);
+    }
+
+    /**
+     * Compares with the fixed 12s schedule for a peer that dies after five stable minutes,
+     * when its interval has grown to the maximum: it is dropped sooner, even though it is
+     * probed less often while alive.
+     */
+    public void testDeadPeerIsDroppedSoonerThanOnFixedSchedule() {
+        long deathTime = 5 * 60 * 1000;
+        long duration = deathTime + 5 * 60 * 1000;
+        long[] adaptive = simulateAdaptive(duration, deathTime);
+        long[] fixed = simulateFixed(duration, deathTime);
+
+        G.Log(TAG, "Dead peer dropped after " + adaptive[1] / 1000.0 + "s, " + fixed[1] / 1000.0 +
+                "s on the fixed schedule");
+        assertTrue(adaptive[1] > 0);
+        assertTrue(fixed[1] > 0);
+        assertTrue(adaptive[1] < fixed[1]);
+        // at worst a full interval to the next probe, then a few quick retries
+        long maxTimeToDrop = (long) (ProbeScheduler.MAX_INTERVAL * 1.2) +
+                MAX_TIMEOUTS_ALLOWED * (4000 + ProbeScheduler.TIMEOUT_RETRY_INTERVAL * 2);
+        assertTrue(adaptive[1] <= maxTimeToDrop);
+    }
+
+    /* helpers */
+
+    /**
+     * Replays ProbeRunnable's use of the scheduler for one peer, which responds after RTT
+     * until deathTime, and is dropped after MAX_TIMEOUTS_ALLOWED consecutive timeouts.
+     * @return { probes sent, time from deathTime to the drop, or -1 if not dropped }
+     */
+    private long[] simulateAdaptive(long duration, long deathTime) {
+        String peerIp = "192.168.49.2";
+        long start = now;
+        int numProbes = 0;
+        int numTimeouts = 0;
+        long outcomeTime = -1;      // time at which the probe in flight is answered or times out
+        boolean isAnswered = false;
+        for (long time = 0; time < duration; time += SIMULATION_STEP) {
+            now = start + time;
+            if (outcomeTime != -1 && now >= outcomeTime) {
+                outcomeTime = -1;
+                if (isAnswered) {
+                    numTimeouts = 0;
+                    scheduler.onResponse(peerIp, now, false);
+                } else if (++numTimeouts >= MAX_TIMEOUTS_ALLOWED) {
+                    return new long[] {numProbes, time - deathTime};
+                } else {
+                    scheduler.onTimeout(peerIp, now);
+                }
+            }
+
+            if (time % TICK == 0 && scheduler.shouldProbe(peerIp, now)) {
+                numProbes++;
+                isAnswered = time + RTT < deathTime;
+                outcomeTime = now + (isAnswered ? RTT : scheduler.getProbeTimeout(peerIp));
+            }
+        }
+        return new long[] {numProbes, -1};
+    }
+
+    /**
+     * Same as above, with every peer probed every FIXED_PERIOD and dropped after
+     * FIXED_MAX_TIMEOUTS consecutive timeouts.
+     */
+    private static long[] simulateFixed(long duration, long deathTime) {
+        int numProbes = 0;
+        int numTimeouts = 0;
+        for (long time = 0; time < duration; time += FIXED_PERIOD) {
+            numProbes++;
+            if (time + RTT < deathTime) {
+                numTimeouts = 0;
+            } else if (++numTimeouts >= FIXED_MAX_TIMEOUTS) {
+                return new long[] {numProbes, time + FIXED_PROBE_TIMEOUT - deathTime};
+            }
+        }
+        return new long[] {numProbes, -1};
+    }
+
+    // probes peerIp as soon as it is due, responds after RTT, and returns the resulting interval
+    private long probeAndRespond(String peerIp, boolean changed) {
+        now = firstDueTime(Collections.singletonList(peerIp));
+        assertTrue(scheduler.shouldProbe(peerIp, now));
+        now += RTT;
+        scheduler.onResponse(peerIp, now, changed);
+        return scheduler.getStats(peerIp).interval;
+    }
+
+    private long firstDueTime(List<String> peers) {
+        long time = now;
+        while (!scheduler.hasDuePeer(peers, time)) {
+            time += 10;
+        }
+        return time;
+    }
+}
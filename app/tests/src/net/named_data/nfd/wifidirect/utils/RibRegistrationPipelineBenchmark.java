@@ -0,0 +1,91 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.Name;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.identity.IdentityManager;
+import net.named_data.jndn.security.identity.MemoryIdentityStorage;
+import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
+import net.named_data.nfd.utils.FakeNfd;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures RibRegistrationPipeline throughput (registrations/sec) for batches of 10, 100
+ * and 1000 prefixes, against a FakeNfd that accepts every rib/register command.
+ */
+public class RibRegistrationPipelineBenchmark extends TestCase {
+
+    private static final String TAG = "RibRegPipelineBench";
+    private static final int FACE_ID = 300;
+    private static final long BATCH_TIMEOUT = 60;   // in s
+
+    private KeyChain keyChain;
+    private FakeNfd fakeNfd;
+
+    @Override
+    protected void setUp() throws Exception {
+        IdentityManager identityManager = new IdentityManager(new MemoryIdentityStorage(),
+                new MemoryPrivateKeyStorage());
+        keyChain = new KeyChain(identityManager);
+        keyChain.createIdentity(new Name("/test/identity"));
+        keyChain.getIdentityManager().setDefaultIdentity(new Name("/test/identity"));
+
+        fakeNfd = new FakeNfd();
+        fakeNfd.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        fakeNfd.stop();
+    }
+
+    public void testThroughput() throws Exception {
+        // warm up
+        registerBatch(100);
+
+        for (int numPrefixes : new int[] {10, 100, 1000}) {
+            long elapsedNs = registerBatch(numPrefixes);
+            Log.i(TAG, numPrefixes + " prefixes: " + elapsedNs / 1000000 + "ms, " +
+                    (long) (numPrefixes * 1e9 / elapsedNs) + " registrations/s");
+        }
+    }
+
+    private long registerBatch(int numPrefixes) throws Exception {
+        String[] prefixes = new String[numPrefixes];
+        for (int i = 0; i < numPrefixes; i++) {
+            prefixes[i] = "/bench/prefix/" + i;
+        }
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final int[] result = new int[2];
+        RibRegistrationPipeline pipeline = new RibRegistrationPipeline(keyChain,
+                fakeNfd.getConnectionInfo());
+        pipeline.setOnBatchComplete(new RibRegistrationPipeline.OnBatchComplete() {
+            @Override
+            public void onBatchComplete(int faceId, int numRegistered, int numFailed) {
+                result[0] = numRegistered;
+                result[1] = numFailed;
+                done.countDown();
+            }
+        });
+
+        pipeline.start();
+        try {
+            long start = System.nanoTime();
+            pipeline.enqueue(FACE_ID, prefixes);
+            assertTrue("batch did not complete", done.await(BATCH_TIMEOUT, TimeUnit.SECONDS));
+            long elapsedNs = System.nanoTime() - start;
+
+            assertEquals(numPrefixes, result[0]);
+            assertEquals(0, result[1]);
+            return elapsedNs;
+        } finally {
+            pipeline.stop();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package net.named_data.nfd.wifidirect.utils;
+
+import junit.framework.TestCase;
+
+import net.named_data.jndn.Name;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.identity.IdentityManager;
+import net.named_data.jndn.security.identity.MemoryIdentityStorage;
+import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
+import net.named_data.nfd.utils.FakeNfd;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that RibRegistrationPipeline survives NFD restarts and stop()/start(), and
+ * only retries the failures that may go away.
+ */
+public class RibRegistrationPipelineTest extends TestCase {
+
+    private static final int FACE_ID = 300;
+    private static final long BATCH_TIMEOUT = 30;   // in s
+    private static final String[] PREFIXES = {"/test/a", "/test/b", "/test/c"};
+
+    private KeyChain keyChain;
+    private FakeNfd fakeNfd;
+    private RibRegistrationPipeline pipeline;
+
+    // { numRegistered, numFailed } of every completed batch
+    private final LinkedBlockingQueue<int[]> results = new LinkedBlockingQueue<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        IdentityManager identityManager = new IdentityManager(new MemoryIdentityStorage(),
+                new MemoryPrivateKeyStorage());
+        keyChain = new KeyChain(identityManager);
+        keyChain.createIdentity(new Name("/test/identity"));
+        keyChain.getIdentityManager().setDefaultIdentity(new Name("/test/identity"));
+
+        fakeNfd = new FakeNfd();
+        fakeNfd.start();
+
+        pipeline = new RibRegistrationPipeline(keyChain, fakeNfd.getConnectionInfo());
+        pipeline.setOnBatchComplete(new RibRegistrationPipeline.OnBatchComplete() {
+            @Override
+            public void onBatchComplete(int faceId, int numRegistered, int numFailed) {
+                results.add(new int[] {numRegistered, numFailed});
+            }
+        });
+        pipeline.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pipeline.stop();
+        fakeNfd.stop();
+    }
+
+    public void testRegistersAfterNfdRestart() throws Exception {
+        assertBatch(PREFIXES.length, 0);
+
+        int port = fakeNfd.getConnectionInfo().getPort();
+        fakeNfd.stop();
+        fakeNfd = new FakeNfd(port);
+        fakeNfd.start();
+
+        assertBatch(PREFIXES.length, 0);
+    }
+
+    public void testRegistersOnceNfdIsUp() throws Exception {
+        int port = fakeNfd.getConnectionInfo().getPort();
+        fakeNfd.stop();
+
+        // the first attempts fail to connect, the retries reach the restarted forwarder
+        pipeline.enqueue(FACE_ID, PREFIXES);
+        Thread.sleep(100);
+        fakeNfd = new FakeNfd(port);
+        fakeNfd.start();
+
+        int[] result = results.poll(BATCH_TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull("batch did not complete", result);
+        assertEquals(PREFIXES.length, result[0]);
+        assertEquals(0, result[1]);
+    }
+
+    public void testRestartsAfterStop() throws Exception {
+        assertBatch(PREFIXES.length, 0);
+
+        pipeline.stop();
+        pipeline.start();
+
+        assertBatch(PREFIXES.length, 0);
+    }
+
+    public void testClientErrorFailsWithoutRetry() throws Exception {
+        fakeNfd.setStatusCode(410);
+
+        long start = System.nanoTime();
+        assertBatch(0, PREFIXES.length);
+        // a retry would have waited for at least the first backoff delay (250ms)
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    public void testServerErrorIsRetried() throws Exception {
+        fakeNfd.setStatusCode(503);
+        pipeline.enqueue(FACE_ID, PREFIXES);
+        Thread.sleep(100);
+        fakeNfd.setStatusCode(200);
+
+        int[] result = results.poll(BATCH_TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull("batch did not complete", result);
+        assertEquals(PREFIXES.length, result[0]);
+        assertEquals(0, result[1]);
+    }
+
+    private void assertBatch(int numRegistered, int numFailed) throws Exception {
+        pipeline.enqueue(FACE_ID, PREFIXES);
+        int[] result = results.poll(BATCH_TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull("batch did not complete", result);
+        assertEquals(numRegistered, result[0]);
+        assertEquals(numFailed, result[1]);
+    }
+}